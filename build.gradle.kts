@@ -652,7 +652,7 @@ dependencies {
     "jakartaServletCompileOnly"("jakarta.servlet.jsp:jakarta.servlet.jsp-api:3.0.0")
     "jakartaServletCompileOnly"("jakarta.el:jakarta.el-api:4.0.0")
 
-    "javaxServletCompileOnly"("javax.servlet:javax.servlet-api:3.0.1")
+    "javaxServletCompileOnly"("javax.servlet:javax.servlet-api:3.1.0")
     "javaxServletCompileOnly"("javax.servlet.jsp:jsp-api:2.2")
     "javaxServletCompileOnly"("javax.el:el-api:2.2")
 
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.cache;
+
+import freemarker.template.Configuration;
+
+/**
+ * Interface that can be implemented by {@link TemplateLoader}-s that are actively notified about the changes of the
+ * template sources (like by the file system). The {@link TemplateCache} re-checks all its cached entries when
+ * {@link #getChangeCount()} has changed since the entry was last checked, regardless if
+ * {@link Configuration#setTemplateUpdateDelayMilliseconds(long) template_update_delay} has elapsed. So with such a
+ * {@link TemplateLoader} you can set the template update delay to a very high value, and yet template changes will
+ * be picked up almost immediately, and the template sources will not be polled for changes in the steady state.
+ *
+ * @see FileTemplateLoader#setWatchForChanges(boolean)
+ *
+ * @since 2.3.33
+ */
+public interface ChangeTrackingTemplateLoader extends TemplateLoader {
+
+    /**
+     * Returns a number that's changed (typically, incremented) whenever any template source might have been changed,
+     * added, or removed. This is called by the {@link TemplateCache} for each template lookup, so it must be very
+     * fast, and of course thread safe (usually it just returns a {@code volatile} field).
+     */
+    long getChangeCount();
+
+}
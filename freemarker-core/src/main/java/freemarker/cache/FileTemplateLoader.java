@@ -19,16 +19,31 @@
 
 package freemarker.cache;
 
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
@@ -41,8 +56,11 @@ import freemarker.template.utility.StringUtil;
  * directory. If you want symbolic links that point outside the template directory to work, you need to disable this
  * feature by using {@link #FileTemplateLoader(File, boolean)} with {@code true} second argument, but before that, check
  * the security implications there!
+ * 
+ * <p>Optionally, it can watch the directories of the templates for changes with a {@link WatchService}; see
+ * {@link #setWatchForChanges(boolean)}.
  */
-public class FileTemplateLoader implements TemplateLoader {
+public class FileTemplateLoader implements ChangeTrackingTemplateLoader {
     
     /**
      * By setting this Java system property to {@code true}, you can change the default of
@@ -66,6 +84,8 @@ public class FileTemplateLoader implements TemplateLoader {
     private static final int CASE_CHECH_CACHE_HARD_SIZE = 50;
     private static final int CASE_CHECK_CACHE__SOFT_SIZE = 1000;
     private static final boolean SEP_IS_SLASH = File.separatorChar == '/';
+    /** Bigger files are read with a streaming {@link Reader}, instead of being read into memory at once. */
+    private static final long MAX_WHOLE_FILE_READ_SIZE = 16 * 1024 * 1024;
     
     private static final Logger LOG = Logger.getLogger("freemarker.cache");
     
@@ -73,6 +93,8 @@ public class FileTemplateLoader implements TemplateLoader {
     private final String canonicalBasePath;
     private boolean emulateCaseSensitiveFileSystem;
     private MruCacheStorage correctCasePaths;
+    private volatile DirectoryWatcher directoryWatcher;
+    private volatile long changeCount;
 
     /**
      * Creates a new file template cache that will use the current directory (the value of the system property
@@ -159,6 +181,11 @@ public class FileTemplateLoader implements TemplateLoader {
                 public File run() throws IOException {
                     File source = new File(baseDir, SEP_IS_SLASH ? name : 
                         name.replace('/', File.separatorChar));
+                    DirectoryWatcher directoryWatcher = FileTemplateLoader.this.directoryWatcher;
+                    if (directoryWatcher != null) {
+                        // Also for missing sources, so that we are notified if they are created later.
+                        directoryWatcher.watchDirectoryOf(source);
+                    }
                     if (!source.isFile()) {
                         return null;
                     }
@@ -207,23 +234,71 @@ public class FileTemplateLoader implements TemplateLoader {
                                 "templateSource wasn't a File, but a: " + 
                                 templateSource.getClass().getName());
                     }
-                    return new InputStreamReader(new FileInputStream((File) templateSource), encoding);
+                    return readWholeFile((File) templateSource, encoding);
                 }
             });
         } catch (PrivilegedActionException e) {
             throw (IOException) e.getException();
         }
     }
+
+    /**
+     * Reads and decodes the whole file with as few I/O calls as possible, and returns a {@link Reader} over the
+     * resulting single {@code char} array. As the parser needs the whole template text anyway, this is faster than
+     * decoding in small chunks, especially when loading lot of templates at once. Malformed input is handled the same
+     * way as {@link InputStreamReader} does, that is, it's replaced.
+     */
+    private static Reader readWholeFile(File file, String encoding) throws IOException {
+        final Charset charset;
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            // Same as what InputStreamReader(InputStream, String) does:
+            throw new UnsupportedEncodingException(encoding);
+        }
+        
+        final FileInputStream in = new FileInputStream(file);
+        boolean closeIn = true;
+        ByteBuffer bytes;
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > MAX_WHOLE_FILE_READ_SIZE) {
+                closeIn = false;
+                return new InputStreamReader(in, charset);
+            }
+            
+            // +1, so that unless the file has grown meanwhile, we can see the EOF without growing the buffer.
+            bytes = ByteBuffer.allocate((int) size + 1);
+            while (channel.read(bytes) != -1) {
+                if (!bytes.hasRemaining()) {
+                    ByteBuffer newBytes = ByteBuffer.allocate(bytes.capacity() * 2);
+                    bytes.flip();
+                    newBytes.put(bytes);
+                    bytes = newBytes;
+                }
+            }
+        } finally {
+            if (closeIn) {
+                in.close();
+            }
+        }
+        bytes.flip();
+        
+        CharBuffer chars = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(bytes);
+        return new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+    }
     
     /**
      * Called by {@link #findTemplateSource(String)} when {@link #getEmulateCaseSensitiveFileSystem()} is {@code true}.
      */
     private boolean isNameCaseCorrect(File source) throws IOException {
         final String sourcePath = source.getPath();
-        synchronized (correctCasePaths) {
-            if (correctCasePaths.get(sourcePath) != null) {
-                return true;
-            }
+        if (correctCasePaths.get(sourcePath) != null) {
+            return true;
         }
         
         final File parentDir = source.getParentFile();
@@ -259,9 +334,7 @@ public class FileTemplateLoader implements TemplateLoader {
             }
         }
 
-        synchronized (correctCasePaths) {
-            correctCasePaths.put(sourcePath, Boolean.TRUE);        
-        }
+        correctCasePaths.put(sourcePath, Boolean.TRUE);        
         return true;
     }
 
@@ -269,6 +342,65 @@ public class FileTemplateLoader implements TemplateLoader {
     public void closeTemplateSource(Object templateSource) {
         // Do nothing.
     }
+
+    /**
+     * Returns the number of changes noticed in the watched directories; see {@link #setWatchForChanges(boolean)}.
+     * When not watching for changes, this just stays the same.
+     * 
+     * @since 2.3.33
+     */
+    @Override
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Sets whether the directories of the templates are watched for changes with a {@link WatchService}, in which case
+     * the {@link TemplateCache} is notified about the changes through {@link #getChangeCount()}. This allows setting
+     * {@link Configuration#setTemplateUpdateDelayMilliseconds(long) template_update_delay} to a very high value (like
+     * {@link Long#MAX_VALUE}), so that the template files aren't polled for modification (one file system "stat" per
+     * template after each update delay) in the steady state, while changes are still picked up almost immediately.
+     * 
+     * <p>Only the directories from where templates were looked up (or the nearest existing parent directory of them,
+     * for templates that weren't found) are watched, and they are registered on the first lookup. Watching is done on
+     * a single daemon background thread. Note that a change in any watched directory causes all cached templates to be
+     * re-checked (with the usual last modification time check) once, not only the changed one.
+     * 
+     * <p>Setting this to {@code false} stops the background thread, and releases the {@link WatchService}, so you
+     * should do that when the {@link FileTemplateLoader} is not used anymore. The default is {@code false}.
+     * 
+     * @throws IOException
+     *             If the {@link WatchService} couldn't be created, like because the file system doesn't support it.
+     * 
+     * @since 2.3.33
+     */
+    public void setWatchForChanges(boolean watchForChanges) throws IOException {
+        synchronized (this) {
+            if (watchForChanges == (directoryWatcher != null)) {
+                return;
+            }
+            if (watchForChanges) {
+                DirectoryWatcher directoryWatcher = new DirectoryWatcher();
+                directoryWatcher.start();
+                this.directoryWatcher = directoryWatcher;
+            } else {
+                DirectoryWatcher directoryWatcher = this.directoryWatcher;
+                this.directoryWatcher = null;
+                directoryWatcher.stop();
+            }
+            // As we might have missed changes while not watching:
+            changeCount++;
+        }
+    }
+
+    /**
+     * Getter pair of {@link #setWatchForChanges(boolean)}.
+     * 
+     * @since 2.3.33
+     */
+    public boolean getWatchForChanges() {
+        return directoryWatcher != null;
+    }
     
     /**
      * Returns the base directory in which the templates are searched. This comes from the constructor argument, but
@@ -340,7 +472,101 @@ public class FileTemplateLoader implements TemplateLoader {
                 + "baseDir=\"" + baseDir + "\""
                 + (canonicalBasePath != null ? ", canonicalBasePath=\"" + canonicalBasePath + "\"" : "")
                 + (emulateCaseSensitiveFileSystem ? ", emulateCaseSensitiveFileSystem=true" : "")
+                + (directoryWatcher != null ? ", watchForChanges=true" : "")
                 + ")";
     }
+
+    private void onDirectoryChanged(Path changedPath) {
+        synchronized (this) {
+            changeCount++;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Template directory change noticed"
+                    + (changedPath != null ? ": " + changedPath : " (details were lost due to event overflow)"));
+        }
+    }
+
+    /**
+     * Watches the directories registered via {@link #watchDirectoryOf(File)} on a background thread, and calls
+     * {@link FileTemplateLoader#onDirectoryChanged(Path)} for each change event.
+     */
+    private class DirectoryWatcher implements Runnable {
+        
+        private final WatchService watchService;
+        private final ConcurrentMap<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+        private final Thread thread;
+        
+        DirectoryWatcher() throws IOException {
+            watchService = baseDir.toPath().getFileSystem().newWatchService();
+            thread = new Thread(this, "FreeMarker FileTemplateLoader watcher for " + baseDir);
+            thread.setDaemon(true);
+        }
+        
+        void start() {
+            thread.start();
+        }
+
+        void stop() throws IOException {
+            watchService.close();
+        }
+
+        /**
+         * Registers the directory of the file, or if that doesn't exist, the nearest existing parent directory of it,
+         * but never goes above the {@link #baseDir}. Must be called inside a privileged block.
+         */
+        void watchDirectoryOf(File file) throws IOException {
+            File dir = file.getParentFile();
+            while (dir != null) {
+                Path dirPath = dir.toPath();
+                if (watchedDirectories.containsKey(dirPath)) {
+                    return;
+                }
+                if (dir.isDirectory()) {
+                    try {
+                        WatchKey watchKey = dirPath.register(watchService,
+                                StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE,
+                                StandardWatchEventKinds.ENTRY_MODIFY);
+                        watchedDirectories.put(dirPath, watchKey);
+                    } catch (ClosedWatchServiceException e) {
+                        // Watching was turned off concurrently; ignore
+                    }
+                    return;
+                }
+                if (dir.equals(baseDir)) {
+                    return;
+                }
+                dir = dir.getParentFile();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    WatchKey watchKey = watchService.take();
+                    Path dirPath = (Path) watchKey.watchable();
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        onDirectoryChanged(event.kind() != StandardWatchEventKinds.OVERFLOW
+                                ? dirPath.resolve((Path) event.context())
+                                : null);
+                    }
+                    if (!watchKey.reset()) {
+                        // The directory was deleted (or become otherwise inaccessible); it will be re-registered by
+                        // findTemplateSource if it's recreated.
+                        watchedDirectories.remove(dirPath, watchKey);
+                    }
+                }
+            } catch (ClosedWatchServiceException e) {
+                // Normal termination, by setWatchForChanges(false)
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                LOG.error("Template directory watcher thread has failed; template changes will only be noticed "
+                        + "when the template update delay expires.", e);
+            }
+        }
+        
+    }
     
 }
@@ -23,6 +23,7 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A cache storage that implements a two-level Most Recently Used cache. In the
@@ -37,13 +38,13 @@ import java.util.Map;
  * On the other hand, if you wish to use this storage in a strong-only mode, or
  * in a soft-only mode, you might consider using {@link StrongCacheStorage} or
  * {@link SoftCacheStorage} instead, as they can be used by 
- * {@link TemplateCache} concurrently without any synchronization on a 5.0 or 
- * later JRE.
+ * {@link TemplateCache} concurrently without any locking.
  *  
- * <p>This class is <em>NOT</em> thread-safe. If it's accessed from multiple
- * threads concurrently, proper synchronization must be provided by the callers.
- * Note that {@link TemplateCache}, the natural user of this class provides the
- * necessary synchronizations when it uses the class.
+ * <p>Since 2.3.33 this class is thread-safe (earlier the callers had to
+ * synchronize the accesses). It uses a {@link ReentrantLock} instead of
+ * {@code synchronized}, so a virtual thread that waits for the lock doesn't pin
+ * its carrier thread. Note that as every access (including {@link #get(Object)})
+ * modifies the MRU list, all accesses are serialized.
  * Also you might consider whether you need this sort of a mixed storage at all
  * in your solution, as in most cases SoftCacheStorage can also be sufficient. 
  * SoftCacheStorage will use Java soft references, and they already use access 
@@ -54,7 +55,8 @@ import java.util.Map;
  *
  * @see freemarker.template.Configuration#setCacheStorage(CacheStorage)
  */
-public class MruCacheStorage implements CacheStorageWithGetSize {
+public class MruCacheStorage implements ConcurrentCacheStorage, CacheStorageWithGetSize {
+    private final ReentrantLock lock = new ReentrantLock();
     private final MruEntry strongHead = new MruEntry();
     private final MruEntry softHead = new MruEntry();
     {
@@ -82,40 +84,64 @@ public class MruCacheStorage implements CacheStorageWithGetSize {
         this.softSizeLimit = softSizeLimit;
     }
     
+    /**
+     * Always returns {@code true}, as since 2.3.33 this class is thread-safe.
+     * 
+     * @since 2.3.33
+     */
+    @Override
+    public boolean isConcurrent() {
+        return true;
+    }
+
     @Override
     public Object get(Object key) {
-        removeClearedReferences();
-        MruEntry entry = (MruEntry) map.get(key);
-        if (entry == null) {
-            return null;
-        }
-        relinkEntryAfterStrongHead(entry, null);
-        Object value = entry.getValue();
-        if (value instanceof MruReference) {
-            // This can only happen with strongSizeLimit == 0
-            return ((MruReference) value).get();
+        lock.lock();
+        try {
+            removeClearedReferences();
+            MruEntry entry = (MruEntry) map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            relinkEntryAfterStrongHead(entry, null);
+            Object value = entry.getValue();
+            if (value instanceof MruReference) {
+                // This can only happen with strongSizeLimit == 0
+                return ((MruReference) value).get();
+            }
+            return value;
+        } finally {
+            lock.unlock();
         }
-        return value;
     }
 
     @Override
     public void put(Object key, Object value) {
-        removeClearedReferences();
-        MruEntry entry = (MruEntry) map.get(key);
-        if (entry == null) {
-            entry = new MruEntry(key, value);
-            map.put(key, entry);
-            linkAfterStrongHead(entry);
-        } else {
-            relinkEntryAfterStrongHead(entry, value);
+        lock.lock();
+        try {
+            removeClearedReferences();
+            MruEntry entry = (MruEntry) map.get(key);
+            if (entry == null) {
+                entry = new MruEntry(key, value);
+                map.put(key, entry);
+                linkAfterStrongHead(entry);
+            } else {
+                relinkEntryAfterStrongHead(entry, value);
+            }
+        } finally {
+            lock.unlock();
         }
-        
     }
 
     @Override
     public void remove(Object key) {
-        removeClearedReferences();
-        removeInternal(key);
+        lock.lock();
+        try {
+            removeClearedReferences();
+            removeInternal(key);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void removeInternal(Object key) {
@@ -127,12 +153,17 @@ public class MruCacheStorage implements CacheStorageWithGetSize {
 
     @Override
     public void clear() {
-        strongHead.makeHead();
-        softHead.linkAfter(strongHead);
-        map.clear();
-        strongSize = softSize = 0;
-        // Quick refQueue processing
-        while (refQueue.poll() != null);
+        lock.lock();
+        try {
+            strongHead.makeHead();
+            softHead.linkAfter(strongHead);
+            map.clear();
+            strongSize = softSize = 0;
+            // Quick refQueue processing
+            while (refQueue.poll() != null);
+        } finally {
+            lock.unlock();
+        }
     }
 
     private void relinkEntryAfterStrongHead(MruEntry entry, Object newValue) {
@@ -230,7 +261,12 @@ public class MruCacheStorage implements CacheStorageWithGetSize {
      * @since 2.3.21
      */
     public int getStrongSize() {
-        return strongSize;
+        lock.lock();
+        try {
+            return strongSize;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -240,8 +276,13 @@ public class MruCacheStorage implements CacheStorageWithGetSize {
      * @since 2.3.21
      */
     public int getSoftSize() {
-        removeClearedReferences();
-        return softSize;
+        lock.lock();
+        try {
+            removeClearedReferences();
+            return softSize;
+        } finally {
+            lock.unlock();
+        }
     }
     
     /**
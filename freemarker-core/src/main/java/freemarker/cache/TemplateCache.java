@@ -37,6 +37,7 @@ import freemarker.core.TemplateConfiguration;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.MalformedTemplateNameException;
+import freemarker.template.MetricsRecorder;
 import freemarker.template.Template;
 import freemarker.template.TemplateNotFoundException;
 import freemarker.template._TemplateAPI;
@@ -73,6 +74,8 @@ public class TemplateCache {
 
     /** Maybe {@code null}. */
     private final TemplateLoader templateLoader;
+    /** {@link #templateLoader} if it's a {@link ChangeTrackingTemplateLoader}, otherwise {@code null}. */
+    private final ChangeTrackingTemplateLoader changeTrackingTemplateLoader;
     
     /** Here we keep our cached templates */
     private final CacheStorage storage;
@@ -178,6 +181,8 @@ public class TemplateCache {
             TemplateConfigurationFactory templateConfigurations,
             Configuration config) {
         this.templateLoader = templateLoader;
+        this.changeTrackingTemplateLoader = templateLoader instanceof ChangeTrackingTemplateLoader
+                ? (ChangeTrackingTemplateLoader) templateLoader : null;
         
         NullArgumentException.check("cacheStorage", cacheStorage);
         this.storage = cacheStorage;
@@ -329,6 +334,7 @@ public class TemplateCache {
                 ? buildDebugName(name, locale, customLookupCondition, encoding, parseAsFTL)
                 : null;
         final TemplateKey tk = new TemplateKey(name, locale, customLookupCondition, encoding, parseAsFTL);
+        final MetricsRecorder metricsRecorder = getMetricsRecorder();
         
         CachedTemplate cachedTemplate;
         if (isStorageConcurrent) {
@@ -340,17 +346,25 @@ public class TemplateCache {
         }
         
         final long now = System.currentTimeMillis();
+        // Must be read before the lookup, so that changes during the lookup will cause another check later.
+        final long loaderChangeCount = changeTrackingTemplateLoader != null
+                ? changeTrackingTemplateLoader.getChangeCount() : 0L;
         
         long lastModified = -1L;
         boolean rethrown = false;
         TemplateLookupResult newLookupResult = null;
         try {
             if (cachedTemplate != null) {
-                // If we're within the refresh delay, return the cached copy
-                if (now - cachedTemplate.lastChecked < updateDelay) {
+                // If we're within the refresh delay, and the template loader haven't reported changes since the last
+                // check, return the cached copy
+                if (now - cachedTemplate.lastChecked < updateDelay
+                        && cachedTemplate.loaderChangeCount == loaderChangeCount) {
                     if (debug) {
                         LOG.debug(debugName + " cached copy not yet stale; using cached.");
                     }
+                    if (metricsRecorder != null) {
+                        metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_CACHE_HITS);
+                    }
                     // Can be null, indicating a cached negative lookup
                     Object t = cachedTemplate.templateOrException;
                     if (t instanceof Template || t == null) {
@@ -369,6 +383,7 @@ public class TemplateCache {
                 cachedTemplate = cachedTemplate.cloneCachedTemplate();
                 // Update the last-checked flag
                 cachedTemplate.lastChecked = now;
+                cachedTemplate.loaderChangeCount = loaderChangeCount;
 
                 // Find the template source
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
@@ -378,6 +393,9 @@ public class TemplateCache {
                     if (debug) {
                         LOG.debug(debugName + " no source found.");
                     } 
+                    if (metricsRecorder != null) {
+                        metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES);
+                    }
                     storeNegativeLookup(tk, cachedTemplate, null);
                     return null;
                 }
@@ -392,6 +410,9 @@ public class TemplateCache {
                     if (debug) {
                         LOG.debug(debugName + ": using cached since " + newLookupResultSource + " hasn't changed.");
                     }
+                    if (metricsRecorder != null) {
+                        metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_CACHE_HITS);
+                    }
                     storeCached(tk, cachedTemplate);
                     return (Template) cachedTemplate.templateOrException;
                 } else if (debug) {
@@ -417,10 +438,14 @@ public class TemplateCache {
                 // a flag that signs it has to be explicitly queried later on.
                 cachedTemplate = new CachedTemplate();
                 cachedTemplate.lastChecked = now;
+                cachedTemplate.loaderChangeCount = loaderChangeCount;
                 
                 newLookupResult = lookupTemplate(name, locale, customLookupCondition);
                 
                 if (!newLookupResult.isPositive()) {
+                    if (metricsRecorder != null) {
+                        metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES);
+                    }
                     storeNegativeLookup(tk, cachedTemplate, null);
                     return null;
                 }
@@ -435,6 +460,9 @@ public class TemplateCache {
             if (debug) {
                 LOG.debug("Loading template for " + debugName + " from " + StringUtil.jQuoteNoXSS(source));
             }
+            if (metricsRecorder != null) {
+                metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES);
+            }
             
             lastModified = lastModified == Long.MIN_VALUE ? templateLoader.getLastModified(source) : lastModified;            
             Template template = loadTemplate(
@@ -602,7 +630,8 @@ public class TemplateCache {
 
     /**
      * Sets the delay in milliseconds between checking for newer versions of a
-     * template sources.
+     * template sources. If the {@link TemplateLoader} is a {@link ChangeTrackingTemplateLoader}, the templates are
+     * also re-checked when it reports a change, regardless of this delay.
      * @param delay the new value of the delay
      */
     public void setDelay(long delay) {
@@ -781,7 +810,12 @@ public class TemplateCache {
     }
 
     private Object findTemplateSource(String path) throws IOException {
+        final MetricsRecorder metricsRecorder = getMetricsRecorder();
+        final long startTime = metricsRecorder != null ? System.nanoTime() : 0L;
         final Object result = templateLoader.findTemplateSource(path);
+        if (metricsRecorder != null) {
+            metricsRecorder.recordTime(MetricsRecorder.TEMPLATE_LOADER_FIND_TIME, System.nanoTime() - startTime);
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("TemplateLoader.findTemplateSource(" +  StringUtil.jQuote(path) + "): "
                     + (result == null ? "Not found" : "Found"));
@@ -811,6 +845,10 @@ public class TemplateCache {
         return templateSource;
     }
 
+    private MetricsRecorder getMetricsRecorder() {
+        return config != null ? config.getMetricsRecorder() : null;
+    }
+
     private String concatPath(List path, int from, int to) {
         StringBuilder buf = new StringBuilder((to - from) * 16);
         for (int i = from; i < to; ++i) {
@@ -871,7 +909,8 @@ public class TemplateCache {
 
     /**
      * This class holds the cached template and associated information
-     * (the source object, and the last-checked and last-modified timestamps).
+     * (the source object, the last-checked and last-modified timestamps, and the
+     * {@link ChangeTrackingTemplateLoader#getChangeCount()} at the last check).
      * It is used as the value in the cached templates map. Note: this class
      * is Serializable to allow custom 3rd party CacheStorage implementations 
      * to serialize/replicate them (see tracker issue #1926150); FreeMarker 
@@ -884,6 +923,7 @@ public class TemplateCache {
         Object source;
         long lastChecked;
         long lastModified;
+        long loaderChangeCount;
         
         public CachedTemplate cloneCachedTemplate() {
             try {
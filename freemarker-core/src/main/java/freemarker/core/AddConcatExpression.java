@@ -23,9 +23,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.SimpleScalar;
 import freemarker.template.SimpleSequence;
 import freemarker.template.TemplateCollectionModel;
@@ -48,6 +50,12 @@ import freemarker.template._ObjectWrappers;
  */
 final class AddConcatExpression extends Expression {
 
+    /**
+     * When a {@link ConcatenatedSequence} or {@link ConcatenatedHashEx} would be deeper than this, we switch to
+     * {@link AppendableSequence} or {@link AppendableHash}, as then lookups in the concatenation tree become costly.
+     */
+    static final int MAX_CONCATENATION_DEPTH = 8;
+
     private final Expression left;
     private final Expression right;
 
@@ -77,7 +85,22 @@ final class AddConcatExpression extends Expression {
             Number second = EvalUtil.modelToNumber((TemplateNumberModel) rightModel, rightExp);
             return _evalOnNumbers(env, parent, first, second);
         } else if (leftModel instanceof TemplateSequenceModel && rightModel instanceof TemplateSequenceModel) {
-            return new ConcatenatedSequence((TemplateSequenceModel) leftModel, (TemplateSequenceModel) rightModel);
+            return _eval_concatenateSequences((TemplateSequenceModel) leftModel, (TemplateSequenceModel) rightModel);
+        } else if (leftModel instanceof ConcatenatedScalar) {
+            // Typically the result of an earlier concatenation in a loop, like <#assign s = s + x>. We avoid
+            // calling getAsString() on it, as then it couldn't be extended without copying.
+            Object rightOMOrStr = EvalUtil.coerceModelToStringOrMarkup(
+                    rightModel, rightExp, /* returnNullOnNonCoercableType = */ false, null,
+                    env);
+            if (rightOMOrStr instanceof String) {
+                return new ConcatenatedScalar(((ConcatenatedScalar) leftModel).value.concat((String) rightOMOrStr));
+            } else { // rightOMOrStr instanceof TemplateMarkupOutputModel
+                TemplateMarkupOutputModel<?> rightMO = (TemplateMarkupOutputModel<?>) rightOMOrStr;
+                return EvalUtil.concatMarkupOutputs(parent,
+                        rightMO.getOutputFormat().fromPlainTextByEscaping(
+                                ((ConcatenatedScalar) leftModel).getAsString()),
+                        rightMO);
+            }
         } else {
             boolean hashConcatPossible
                     = leftModel instanceof TemplateHashModel && rightModel instanceof TemplateHashModel;
@@ -102,7 +125,7 @@ final class AddConcatExpression extends Expression {
 
                 if (leftOMOrStr instanceof String) {
                     if (rightOMOrStr instanceof String) {
-                        return new SimpleScalar(((String) leftOMOrStr).concat((String) rightOMOrStr));
+                        return concatStrings((String) leftOMOrStr, (String) rightOMOrStr);
                     } else { // rightOMOrStr instanceof TemplateMarkupOutputModel
                         TemplateMarkupOutputModel<?> rightMO = (TemplateMarkupOutputModel<?>) rightOMOrStr; 
                         return EvalUtil.concatMarkupOutputs(parent,
@@ -133,6 +156,27 @@ final class AddConcatExpression extends Expression {
         }
     }
 
+    private static TemplateScalarModel concatStrings(String left, String right) {
+        Object result = ConcatenatedString.concat(left, right);
+        return result instanceof String
+                ? new SimpleScalar((String) result)
+                : new ConcatenatedScalar((ConcatenatedString) result);
+    }
+
+    private static TemplateModel _eval_concatenateSequences(
+            TemplateSequenceModel leftModel, TemplateSequenceModel rightModel) throws TemplateModelException {
+        if (leftModel instanceof AppendableSequence) {
+            return ((AppendableSequence) leftModel).append(rightModel);
+        }
+        int depth = 1 + Math.max(getConcatenationDepth(leftModel), getConcatenationDepth(rightModel));
+        if (depth > MAX_CONCATENATION_DEPTH) {
+            // Most probably an accumulator, like <#assign seq += [x]> in a loop, so we switch to a representation
+            // that's efficient for that.
+            return AppendableSequence.EMPTY.append(leftModel).append(rightModel);
+        }
+        return new ConcatenatedSequence(leftModel, rightModel, depth);
+    }
+
     private static TemplateModel _eval_concatenateHashes(TemplateModel leftModel, TemplateModel rightModel)
             throws TemplateModelException {
         if (leftModel instanceof TemplateHashModelEx && rightModel instanceof TemplateHashModelEx) {
@@ -142,8 +186,15 @@ final class AddConcatExpression extends Expression {
                 return rightModelEx;
             } else if (rightModelEx.size() == 0) {
                 return leftModelEx;
+            } else if (leftModelEx instanceof AppendableHash) {
+                return ((AppendableHash) leftModelEx).append(rightModelEx);
             } else {
-                return new ConcatenatedHashEx(leftModelEx, rightModelEx);
+                int depth = 1 + Math.max(getConcatenationDepth(leftModelEx), getConcatenationDepth(rightModelEx));
+                if (depth > MAX_CONCATENATION_DEPTH) {
+                    // Most probably an accumulator, like <#assign hash += {k: v}> in a loop.
+                    return AppendableHash.create().append(leftModelEx).append(rightModelEx);
+                }
+                return new ConcatenatedHashEx(leftModelEx, rightModelEx, depth);
             }
         } else {
             return new ConcatenatedHash((TemplateHashModel) leftModel,
@@ -151,10 +202,24 @@ final class AddConcatExpression extends Expression {
         }
     }
 
+    /**
+     * The depth of the tree of {@link ConcatenatedSequence}-s, or of {@link ConcatenatedHashEx}-s; 0 for anything
+     * else.
+     */
+    private static int getConcatenationDepth(TemplateModel model) {
+        if (model instanceof ConcatenatedSequence) {
+            return ((ConcatenatedSequence) model).depth;
+        }
+        if (model instanceof ConcatenatedHashEx) {
+            return ((ConcatenatedHashEx) model).depth;
+        }
+        return 0;
+    }
+
     static TemplateModel _evalOnNumbers(Environment env, TemplateObject parent, Number first, Number second)
             throws TemplateException {
         ArithmeticEngine ae = EvalUtil.getArithmeticEngine(env, parent);
-        return new SimpleNumber(ae.add(first, second));
+        return SmallIntegerModels.valueOf(ae.add(first, second));
     }
 
     @Override
@@ -195,16 +260,47 @@ final class AddConcatExpression extends Expression {
         return ParameterRole.forBinaryOperatorOperand(idx);
     }
 
+    /**
+     * The result of a long enough string concatenation; see {@link ConcatenatedString}. For the outside world, this
+     * behaves just like {@link SimpleScalar}.
+     */
+    // Non-private for unit testing
+    static final class ConcatenatedScalar implements TemplateScalarModel {
+
+        private final ConcatenatedString value;
+
+        ConcatenatedScalar(ConcatenatedString value) {
+            this.value = value;
+        }
+
+        @Override
+        public String getAsString() {
+            return value.toString();
+        }
+
+        @Override
+        public String toString() {
+            return value.toString();
+        }
+
+    }
+
     // Non-private for unit testing
     static final class ConcatenatedSequence
     implements
         TemplateSequenceModel, TemplateCollectionModelEx {
         private final TemplateSequenceModel left;
         private final TemplateSequenceModel right;
+        private final int depth;
 
         ConcatenatedSequence(TemplateSequenceModel left, TemplateSequenceModel right) {
+            this(left, right, 1 + Math.max(getConcatenationDepth(left), getConcatenationDepth(right)));
+        }
+
+        private ConcatenatedSequence(TemplateSequenceModel left, TemplateSequenceModel right, int depth) {
             this.left = left;
             this.right = right;
+            this.depth = depth;
         }
 
         @Override
@@ -486,11 +582,13 @@ final class AddConcatExpression extends Expression {
     private static final class ConcatenatedHashEx
     extends ConcatenatedHash
     implements TemplateHashModelEx {
+        private final int depth;
         private CollectionAndSequence keys;
         private CollectionAndSequence values;
 
-        ConcatenatedHashEx(TemplateHashModelEx left, TemplateHashModelEx right) {
+        ConcatenatedHashEx(TemplateHashModelEx left, TemplateHashModelEx right, int depth) {
             super(left, right);
+            this.depth = depth;
         }
         
         @Override
@@ -552,4 +650,278 @@ final class AddConcatExpression extends Expression {
         }
     }
     
+
+    /**
+     * A sequence that's efficient for repeated concatenation, like {@code <#assign seq += [x]>} in a loop. The items
+     * are stored in an array that's shared with the {@link AppendableSequence} it was created from (as far as that was
+     * the last one created from the same array), so appending to it doesn't copy the earlier items. As the array is
+     * only ever appended to, the item range that an earlier instance sees doesn't change. Which instance may append
+     * into the shared array is decided with a compare-and-set on the used size of the array, so no locking is
+     * needed.
+     */
+    // Non-private for unit testing
+    static final class AppendableSequence implements TemplateSequenceModel, TemplateCollectionModelEx {
+
+        static final AppendableSequence EMPTY = new AppendableSequence(new TemplateModel[0], 0, null);
+
+        private static final int MIN_CAPACITY = 16;
+
+        /**
+         * Possibly shared with other instances, which see a shorter prefix of it. When the array has to be grown, the
+         * instance that grows it switches to a copy, but the items we see are never changed in this one either.
+         */
+        private final TemplateModel[] items;
+        private final int size;
+        /**
+         * How much of {@link #items} was claimed by the instances sharing it; {@code null} if no items were appended
+         * yet.
+         */
+        private final AtomicInteger usedSize;
+
+        private AppendableSequence(TemplateModel[] items, int size, AtomicInteger usedSize) {
+            this.items = items;
+            this.size = size;
+            this.usedSize = usedSize;
+        }
+
+        /**
+         * Returns the concatenation of this and the parameter; doesn't modify this object.
+         */
+        AppendableSequence append(TemplateSequenceModel seq) throws TemplateModelException {
+            final TemplateModel[] newItems;
+            final int newItemsLength;
+            if (seq instanceof AppendableSequence) {
+                AppendableSequence appendableSeq = (AppendableSequence) seq;
+                newItems = appendableSeq.items;
+                newItemsLength = appendableSeq.size;
+            } else {
+                newItemsLength = seq.size();
+                newItems = new TemplateModel[newItemsLength];
+                for (int i = 0; i < newItemsLength; i++) {
+                    newItems[i] = seq.get(i);
+                }
+            }
+            if (newItemsLength == 0) {
+                return this;
+            }
+
+            int newSize = size + newItemsLength;
+            if (usedSize != null && usedSize.compareAndSet(size, newSize)) {
+                // We own the part of the array after our items now.
+                TemplateModel[] resultItems = newSize <= items.length
+                        ? items : Arrays.copyOf(items, Math.max(newSize, items.length * 2));
+                System.arraycopy(newItems, 0, resultItems, size, newItemsLength);
+                return new AppendableSequence(resultItems, newSize, usedSize);
+            }
+
+            // We aren't the last one created from our array (or we have no array), so we need a new one:
+            TemplateModel[] resultItems = new TemplateModel[Math.max(newSize * 2, MIN_CAPACITY)];
+            System.arraycopy(items, 0, resultItems, 0, size);
+            System.arraycopy(newItems, 0, resultItems, size, newItemsLength);
+            return new AppendableSequence(resultItems, newSize, new AtomicInteger(newSize));
+        }
+
+        @Override
+        public TemplateModel get(int index) throws TemplateModelException {
+            return index >= 0 && index < size ? items[index] : null;
+        }
+
+        @Override
+        public int size() throws TemplateModelException {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() throws TemplateModelException {
+            return size == 0;
+        }
+
+        @Override
+        public TemplateModelIterator iterator() throws TemplateModelException {
+            return new TemplateModelIterator() {
+                private int nextIndex;
+
+                @Override
+                public TemplateModel next() throws TemplateModelException {
+                    if (nextIndex >= size) {
+                        throw new TemplateModelException("The collection has no more elements.");
+                    }
+                    return items[nextIndex++];
+                }
+
+                @Override
+                public boolean hasNext() throws TemplateModelException {
+                    return nextIndex < size;
+                }
+            };
+        }
+
+    }
+
+    /**
+     * A hash that's efficient for repeated concatenation, like {@code <#assign hash += {k: v}>} in a loop. Similarly
+     * to {@link AppendableSequence}, it shares a {@link Buffer} with the {@link AppendableHash} it was created from (as
+     * far as that was the last one created from the same {@link Buffer}). Each concatenation creates a new version in
+     * the {@link Buffer}, and each {@link AppendableHash} sees the state of the {@link Buffer} as of its own version.
+     * To not keep an unbounded number of overridden values alive, once a key was overridden
+     * {@link #MAX_VALUE_VERSIONS} times, the concatenation result gets a new {@link Buffer} instead.
+     */
+    // Non-private for unit testing
+    static final class AppendableHash implements TemplateHashModelEx {
+
+        static final int MAX_VALUE_VERSIONS = 8;
+
+        private final Buffer buffer;
+        private final int version;
+        /** The array of the {@link Buffer} when this object was created; see {@link AppendableSequence#items}. */
+        private final String[] keys;
+        private final int size;
+        private CollectionAndSequence keysModel;
+        private CollectionAndSequence valuesModel;
+
+        private AppendableHash(Buffer buffer, int version, String[] keys, int size) {
+            this.buffer = buffer;
+            this.version = version;
+            this.keys = keys;
+            this.size = size;
+        }
+
+        static AppendableHash create() {
+            Buffer buffer = new Buffer();
+            return new AppendableHash(buffer, 0, buffer.keys, 0);
+        }
+
+        /**
+         * Returns the concatenation of this and the parameter, where the values in the parameter override those with
+         * the same key in this; doesn't modify this object.
+         */
+        AppendableHash append(TemplateHashModelEx hash) throws TemplateModelException {
+            int newEntriesLength = hash.size();
+            String[] newKeys = new String[newEntriesLength];
+            TemplateModel[] newValues = new TemplateModel[newEntriesLength];
+            TemplateModelIterator keyIter = hash.keys().iterator();
+            for (int i = 0; i < newEntriesLength && keyIter.hasNext(); i++) {
+                String key = ((TemplateScalarModel) keyIter.next()).getAsString();
+                newKeys[i] = key;
+                newValues[i] = hash.get(key);
+            }
+
+            int newVersion = version + 1;
+            if (!buffer.hasTooManyValueVersions(newKeys) && buffer.version.compareAndSet(version, newVersion)) {
+                // Only we can modify the buffer until we publish the new version.
+                buffer.append(newKeys, newValues, newVersion);
+                return new AppendableHash(buffer, newVersion, buffer.keys, buffer.size);
+            }
+
+            // We aren't the last one created from our buffer, or it holds too many old values, so we need a new one:
+            return create().append(this).append(hash);
+        }
+
+        @Override
+        public TemplateModel get(String key) throws TemplateModelException {
+            for (ValueEntry entry = buffer.values.get(key); entry != null; entry = entry.previous) {
+                if (entry.version <= version) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isEmpty() throws TemplateModelException {
+            return size == 0;
+        }
+
+        @Override
+        public int size() throws TemplateModelException {
+            return size;
+        }
+
+        @Override
+        public TemplateCollectionModel keys() throws TemplateModelException {
+            if (keysModel == null) {
+                SimpleSequence keySeq = new SimpleSequence(size, _ObjectWrappers.SAFE_OBJECT_WRAPPER);
+                for (int i = 0; i < size; i++) {
+                    keySeq.add(new SimpleScalar(keys[i]));
+                }
+                keysModel = new CollectionAndSequence(keySeq);
+            }
+            return keysModel;
+        }
+
+        @Override
+        public TemplateCollectionModel values() throws TemplateModelException {
+            if (valuesModel == null) {
+                SimpleSequence valueSeq = new SimpleSequence(size, _ObjectWrappers.SAFE_OBJECT_WRAPPER);
+                for (int i = 0; i < size; i++) {
+                    valueSeq.add(get(keys[i]));
+                }
+                valuesModel = new CollectionAndSequence(valueSeq);
+            }
+            return valuesModel;
+        }
+
+        private static final class Buffer {
+            /**
+             * The version of the last {@link AppendableHash} created from this; only the instance that has this
+             * version may modify the other fields, after it has incremented this.
+             */
+            private final AtomicInteger version = new AtomicInteger();
+            /** The keys in the order of their first occurrence. */
+            private String[] keys = new String[16];
+            private int size;
+            private final Set<String> keySet = new HashSet<>();
+            /** Concurrent, as it's read while being modified. */
+            private final Map<String, ValueEntry> values = new ConcurrentHashMap<>();
+
+            private boolean hasTooManyValueVersions(String[] newKeys) {
+                for (String key : newKeys) {
+                    if (key == null) {
+                        break;
+                    }
+                    ValueEntry entry = values.get(key);
+                    if (entry != null && entry.versionCount >= MAX_VALUE_VERSIONS) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private void append(String[] newKeys, TemplateModel[] newValues, int newVersion) {
+                for (int i = 0; i < newKeys.length; i++) {
+                    String key = newKeys[i];
+                    if (key == null) {
+                        break; // The hash had less keys than its size()
+                    }
+                    if (keySet.add(key)) {
+                        if (size == keys.length) {
+                            keys = Arrays.copyOf(keys, size * 2);
+                        }
+                        keys[size++] = key;
+                    }
+                    TemplateModel value = newValues[i];
+                    if (value != null) { // Like in ConcatenatedHash, null values don't hide the earlier value
+                        values.put(key, new ValueEntry(newVersion, value, values.get(key)));
+                    }
+                }
+            }
+        }
+
+        private static final class ValueEntry {
+            private final int version;
+            private final TemplateModel value;
+            private final ValueEntry previous;
+            /** The length of the chain starting with this entry. */
+            private final int versionCount;
+
+            private ValueEntry(int version, TemplateModel value, ValueEntry previous) {
+                this.version = version;
+                this.value = value;
+                this.previous = previous;
+                this.versionCount = previous != null ? previous.versionCount + 1 : 1;
+            }
+        }
+
+    }
+
 }
@@ -189,9 +189,9 @@ final class Assignment extends TemplateElement {
         }
         
         if (namespace == null) {
-            env.setLocalVariable(variableName, value);
+            env.setTemplateDeclaredLocalVariable(variableName, value);
         } else {
-            namespace.put(variableName, value);
+            namespace.putTemplateDeclaredVariable(variableName, value);
         }
         return null;
     }
@@ -20,7 +20,6 @@
 package freemarker.core;
 
 import java.io.IOException;
-import java.io.StringWriter;
 
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateException;
@@ -51,11 +50,15 @@ final class BlockAssignment extends TemplateElement {
         
         TemplateModel value;
         if (children != null) {
-            StringWriter out = new StringWriter();
-            env.visit(children, out);
-            value = capturedStringToModel(out.toString());
+            ChunkedOutputBuffer out = new ChunkedOutputBuffer(env.getOutputChunkPool());
+            try {
+                env.visit(children, out);
+                value = capturedContentToModel(out.takeContent());
+            } finally {
+                out.release();
+            }
         } else {
-            value = capturedStringToModel("");
+            value = capturedContentToModel("");
         }
         
         if (namespaceExp != null) {
@@ -69,13 +72,13 @@ final class BlockAssignment extends TemplateElement {
             if (namespace == null) {
                 throw InvalidReferenceException.getInstance(namespaceExp, env);
             }
-            namespace.put(varName, value);
+            namespace.putTemplateDeclaredVariable(varName, value);
         } else if (scope == Assignment.NAMESPACE) {
-            env.setVariable(varName, value);
+            env.getCurrentNamespace().putTemplateDeclaredVariable(varName, value);
         } else if (scope == Assignment.GLOBAL) {
-            env.setGlobalVariable(varName, value);
+            env.getGlobalNamespace().putTemplateDeclaredVariable(varName, value);
         } else if (scope == Assignment.LOCAL) {
-            env.setLocalVariable(varName, value);
+            env.setTemplateDeclaredLocalVariable(varName, value);
         } else {
             throw new BugException("Unhandled scope");
         }
@@ -83,8 +86,25 @@ final class BlockAssignment extends TemplateElement {
         return null;
     }
 
-    private TemplateModel capturedStringToModel(String s) throws TemplateModelException {
-        return markupOutputFormat == null ? new SimpleScalar(s) : markupOutputFormat.fromMarkup(s);
+    /**
+     * @param content
+     *            The result of {@link ChunkedOutputBuffer#takeContent()}
+     */
+    private TemplateModel capturedContentToModel(Object content) throws TemplateModelException {
+        if (content instanceof String) {
+            String s = (String) content;
+            return markupOutputFormat == null ? new SimpleScalar(s) : markupOutputFormat.fromMarkup(s);
+        }
+
+        CapturedOutput capturedOutput = (CapturedOutput) content;
+        if (markupOutputFormat == null) {
+            return capturedOutput;
+        }
+        if (markupOutputFormat instanceof CommonMarkupOutputFormat) {
+            return ((CommonMarkupOutputFormat<?>) markupOutputFormat).newTemplateMarkupOutputModel(
+                    capturedOutput, false);
+        }
+        return markupOutputFormat.fromMarkup(capturedOutput.toString());
     }
 
     @Override
@@ -19,10 +19,17 @@
 
 package freemarker.core;
 
+import java.util.regex.Pattern;
+
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
 
 abstract class BuiltInForString extends BuiltIn {
+
+    /** Used by {@link #getRegexpPattern(String, int)}; {@code null} until the first call. */
+    private volatile RegexpHelper.CompiledPattern lastCompiledPattern;
+
     @Override
     TemplateModel _eval(Environment env)
     throws TemplateException {
@@ -33,5 +40,17 @@ abstract class BuiltInForString extends BuiltIn {
     static String getTargetString(Expression target, Environment env) throws TemplateException {
         return target.evalAndCoerceToStringOrUnsupportedMarkup(env);
     }
+
+    /**
+     * For built-ins that use regular expressions; use this instead of {@link RegexpHelper#getPattern(String, int)}.
+     * This remembers the last pattern in this AST node, so if the pattern is a literal (as it's typical), it's
+     * only compiled (or looked up in the shared cache) once.
+     */
+    final Pattern getRegexpPattern(String patternString, int flags) throws TemplateModelException {
+        RegexpHelper.CompiledPattern compiledPattern = RegexpHelper.getCompiledPattern(
+                patternString, flags, lastCompiledPattern);
+        lastCompiledPattern = compiledPattern;
+        return compiledPattern.pattern;
+    }
     
 }
\ No newline at end of file
@@ -27,7 +27,6 @@ import freemarker.ext.beans.OverloadedMethodsModel;
 import freemarker.ext.beans.SimpleMethodModel;
 import freemarker.ext.beans._BeansAPI;
 import freemarker.template.SimpleDate;
-import freemarker.template.SimpleNumber;
 import freemarker.template.SimpleScalar;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
@@ -508,7 +507,7 @@ class BuiltInsForMultipleTypes {
                         },
                         env);
             }
-            return new SimpleNumber(size);
+            return SmallIntegerModels.valueOf(size);
         }
 
         /**
@@ -174,7 +174,7 @@ class BuiltInsForStringsBasic {
                             startsWithPrefix = s.toLowerCase().startsWith(checkedPrefix.toLowerCase());
                         }
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(checkedPrefix, (int) flags);
+                        Pattern pattern = getRegexpPattern(checkedPrefix, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         startsWithPrefix = matcher.lookingAt();
                     } 
@@ -256,7 +256,7 @@ class BuiltInsForStringsBasic {
                         startIndex += separatorString.length();
                     }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                    Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                     final Matcher matcher = pattern.matcher(s);
                     if (matcher.find()) {
                         startIndex = matcher.end();
@@ -305,7 +305,7 @@ class BuiltInsForStringsBasic {
                     if (separatorString.length() == 0) {
                         startIndex = s.length();
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                        Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         if (matcher.find()) {
                             startIndex = matcher.end();
@@ -352,7 +352,7 @@ class BuiltInsForStringsBasic {
                         stopIndex = s.toLowerCase().indexOf(separatorString.toLowerCase());
                     }
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                    Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                     final Matcher matcher = pattern.matcher(s);
                     if (matcher.find()) {
                         stopIndex = matcher.start();
@@ -399,7 +399,7 @@ class BuiltInsForStringsBasic {
                     if (separatorString.length() == 0) {
                         stopIndex = s.length();
                     } else {
-                        Pattern pattern = RegexpHelper.getPattern(separatorString, (int) flags);
+                        Pattern pattern = getRegexpPattern(separatorString, (int) flags);
                         final Matcher matcher = pattern.matcher(s);
                         if (matcher.find()) {
                             stopIndex = matcher.start();
@@ -426,7 +426,7 @@ class BuiltInsForStringsBasic {
     
         @Override
         TemplateModel calculateResult(String s, Environment env) throws TemplateException {
-            return new SimpleNumber(s.length());
+            return SmallIntegerModels.valueOf(s.length());
         }
         
     }    
@@ -562,7 +562,7 @@ class BuiltInsForStringsBasic {
                     result = StringUtil.split(s, splitString,
                             (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0);
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(splitString, (int) flags);
+                    Pattern pattern = getRegexpPattern(splitString, (int) flags);
                     result = pattern.split(s);
                 } 
                 return ObjectWrapper.DEFAULT_WRAPPER.wrap(result);
@@ -81,7 +81,7 @@ class BuiltInsForStringsRegexp {
                 if ((flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0) {
                     RegexpHelper.logFlagWarning("?" + key + " doesn't support the \"f\" flag.");
                 }
-                Pattern pattern = RegexpHelper.getPattern(patternString, (int) flags);
+                Pattern pattern = getRegexpPattern(patternString, (int) flags);
                 return new RegexMatchModel(pattern, matchString);
             }
         }
@@ -116,7 +116,7 @@ class BuiltInsForStringsRegexp {
                             (flags & RegexpHelper.RE_FLAG_CASE_INSENSITIVE) != 0,
                             (flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0);
                 } else {
-                    Pattern pattern = RegexpHelper.getPattern(arg1, (int) flags);
+                    Pattern pattern = getRegexpPattern(arg1, (int) flags);
                     Matcher matcher = pattern.matcher(s);
                     result = (flags & RegexpHelper.RE_FLAG_FIRST_ONLY) != 0
                             ? matcher.replaceFirst(arg2)
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import freemarker.template.TemplateException;
+
+/**
+ * Like [#cache key=...]...[/#cache]; stores the output of its nested content in the {@link FragmentCache}.
+ */
+final class CachedBlock extends TemplateElement {
+
+    private final Expression keyExp;
+    private final Expression ttlExp;
+    private final MarkupOutputFormat markupOutputFormat;
+    /** Lazily calculated hash of the canonical form; 0 if not yet calculated. (Benign race, like in String.) */
+    private int contentHash;
+
+    CachedBlock(TemplateElements children, Expression keyExp, Expression ttlExp,
+            MarkupOutputFormat<?> markupOutputFormat) {
+        setChildren(children);
+        this.keyExp = keyExp;
+        this.ttlExp = ttlExp;
+        this.markupOutputFormat = markupOutputFormat;
+    }
+
+    @Override
+    TemplateElement[] accept(Environment env) throws TemplateException, IOException {
+        FragmentCache fragmentCache = env.getConfiguration().getFragmentCache();
+        if (fragmentCache == null) {
+            return getChildBuffer();
+        }
+
+        FragmentKey fragmentKey = new FragmentKey(
+                getTemplate().getSourceName(), beginLine, beginColumn, getContentHash(),
+                keyExp.evalAndCoerceToPlainText(env));
+        long ttlNanos;
+        if (ttlExp != null) {
+            double ttlSeconds = ttlExp.evalToNumber(env).doubleValue();
+            if (ttlSeconds < 0 || Double.isNaN(ttlSeconds)) {
+                throw new _MiscTemplateException(ttlExp, env,
+                        "The \"ttl\" parameter of #cache can't be negative, but was ",
+                        new _DelayedToString(ttlSeconds), ".");
+            }
+            if (ttlSeconds == 0) {
+                return getChildBuffer();
+            }
+            ttlNanos = (long) (ttlSeconds * 1000000000L);
+        } else {
+            ttlNanos = -1;
+        }
+
+        final Writer out = env.getOut();
+        FragmentCache.CachedFragment fragment = fragmentCache.get(fragmentKey);
+        if (fragment == null) {
+            String output;
+            TemplateElement[] children = getChildBuffer();
+            if (children != null) {
+                StringWriter capturingOut = new StringWriter();
+                env.visit(children, capturingOut);
+                output = capturingOut.toString();
+            } else {
+                output = "";
+            }
+            fragment = markupOutputFormat == null
+                    ? new FragmentCache.CachedFragment(output, null, ttlNanos)
+                    : new FragmentCache.CachedFragment(null, markupOutputFormat.fromMarkup(output), ttlNanos);
+            fragmentCache.put(fragmentKey, fragment);
+        }
+
+        TemplateMarkupOutputModel markup = fragment.getMarkup();
+        if (markup != null) {
+            markup.getOutputFormat().output(markup, out);
+        } else {
+            out.write(fragment.getPlainText());
+        }
+        return null;
+    }
+
+    private int getContentHash() {
+        int contentHash = this.contentHash;
+        if (contentHash == 0) {
+            contentHash = getCanonicalForm().hashCode();
+            if (contentHash == 0) {
+                contentHash = 1;
+            }
+            this.contentHash = contentHash;
+        }
+        return contentHash;
+    }
+
+    @Override
+    protected String dump(boolean canonical) {
+        StringBuilder sb = new StringBuilder();
+        if (canonical) sb.append('<');
+        sb.append(getNodeTypeSymbol());
+        sb.append(" key=");
+        sb.append(keyExp.getCanonicalForm());
+        if (ttlExp != null) {
+            sb.append(" ttl=");
+            sb.append(ttlExp.getCanonicalForm());
+        }
+        if (canonical) {
+            sb.append('>');
+            sb.append(getChildrenCanonicalForm());
+            sb.append("</");
+            sb.append(getNodeTypeSymbol());
+            sb.append('>');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    String getNodeTypeSymbol() {
+        return "#cache";
+    }
+
+    @Override
+    int getParameterCount() {
+        return 2;
+    }
+
+    @Override
+    Object getParameterValue(int idx) {
+        switch (idx) {
+        case 0: return keyExp;
+        case 1: return ttlExp;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    ParameterRole getParameterRole(int idx) {
+        switch (idx) {
+        case 0: return ParameterRole.CACHE_KEY_PARAMETER;
+        case 1: return ParameterRole.TTL_PARAMETER;
+        default: throw new IndexOutOfBoundsException();
+        }
+    }
+
+    @Override
+    boolean isNestedBlockRepeater() {
+        return false;
+    }
+
+    /**
+     * The key in the {@link FragmentCache}. The {@link CachedBlock} is identified by its template and position (and
+     * not by the AST node itself), so that the entries don't keep old versions of reloaded templates in memory. To
+     * avoid using the entries of an earlier version of a modified template, the hash of the content of the block is
+     * also part of the key.
+     */
+    private static final class FragmentKey {
+        private final String templateSourceName;
+        private final int beginLine;
+        private final int beginColumn;
+        private final int contentHash;
+        private final String key;
+
+        FragmentKey(String templateSourceName, int beginLine, int beginColumn, int contentHash, String key) {
+            this.templateSourceName = templateSourceName;
+            this.beginLine = beginLine;
+            this.beginColumn = beginColumn;
+            this.contentHash = contentHash;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FragmentKey)) return false;
+            FragmentKey that = (FragmentKey) o;
+            return beginLine == that.beginLine
+                    && beginColumn == that.beginColumn
+                    && contentHash == that.contentHash
+                    && key.equals(that.key)
+                    && (templateSourceName == null
+                            ? that.templateSourceName == null
+                            : templateSourceName.equals(that.templateSourceName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = templateSourceName != null ? templateSourceName.hashCode() : 0;
+            result = 31 * result + beginLine;
+            result = 31 * result + beginColumn;
+            result = 31 * result + contentHash;
+            result = 31 * result + key.hashCode();
+            return result;
+        }
+    }
+
+}
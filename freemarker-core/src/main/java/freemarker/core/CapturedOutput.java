@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * The output captured by {@code <#assign x>...</#assign>} and its variations, if it's longer than a single
+ * {@link ChunkedOutputBuffer} chunk. This stores the chunks taken over from the {@link ChunkedOutputBuffer}, and
+ * creates the {@link String} only on demand. As {@code ${x}} writes the chunks directly (see {@link #writeTo(Writer)}),
+ * the typical "capture a big block, then print it somewhere else" use case doesn't need the {@link String} at all.
+ *
+ * <p>The chunks are never modified after this object was created, so this class is thread safe.
+ *
+ * @since 2.3.33
+ */
+final class CapturedOutput implements TemplateScalarModel, StringRope {
+
+    /** The chunks; the last one is possibly shorter than the others. */
+    private final char[][] chunks;
+    private final int length;
+    private String flattened;
+
+    CapturedOutput(char[][] chunks, int length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        String flattened = this.flattened;
+        if (flattened != null) {
+            out.write(flattened);
+            return;
+        }
+        for (char[] chunk : chunks) {
+            out.write(chunk);
+        }
+    }
+
+    @Override
+    public String getAsString() {
+        return toString();
+    }
+
+    @Override
+    public String toString() {
+        String flattened = this.flattened;
+        if (flattened == null) {
+            StringBuilder sb = new StringBuilder(length);
+            for (char[] chunk : chunks) {
+                sb.append(chunk);
+            }
+            flattened = sb.toString();
+            this.flattened = flattened;
+        }
+        return flattened;
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Buffers the output of an {@code #attempt} block (until it turns out if it has succeeded), or of a capturing
+ * assignment (like {@code <#assign x>...</#assign>}). Unlike {@link java.io.StringWriter}, it's not synchronized, and
+ * it stores the content in fixed size chunks that are recycled through a {@link ChunkPool}, so growing it never copies
+ * the already written content. It also supports rolling back to an earlier position, so that {@code #attempt} blocks
+ * that are directly nested into each other can share the same buffer; then a successful nested block needs no copying
+ * at all.
+ * 
+ * <p>Not thread safe.
+ */
+final class ChunkedOutputBuffer extends Writer {
+
+    static final int CHUNK_SIZE = 4096;
+
+    private final ChunkPool chunkPool;
+
+    private char[][] chunks = new char[4][];
+
+    /** The number of chunks used; all but the last one is full. */
+    private int chunkCount;
+
+    /** The number of chars used in the last chunk; 0 if there are no chunks. */
+    private int lastChunkLength;
+
+    ChunkedOutputBuffer(ChunkPool chunkPool) {
+        this.chunkPool = chunkPool;
+    }
+
+    @Override
+    public void write(int c) {
+        if (chunkCount == 0 || lastChunkLength == CHUNK_SIZE) {
+            addChunk();
+        }
+        chunks[chunkCount - 1][lastChunkLength++] = (char) c;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        while (len > 0) {
+            if (chunkCount == 0 || lastChunkLength == CHUNK_SIZE) {
+                addChunk();
+            }
+            int copiedLen = Math.min(len, CHUNK_SIZE - lastChunkLength);
+            System.arraycopy(cbuf, off, chunks[chunkCount - 1], lastChunkLength, copiedLen);
+            lastChunkLength += copiedLen;
+            off += copiedLen;
+            len -= copiedLen;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        while (len > 0) {
+            if (chunkCount == 0 || lastChunkLength == CHUNK_SIZE) {
+                addChunk();
+            }
+            int copiedLen = Math.min(len, CHUNK_SIZE - lastChunkLength);
+            str.getChars(off, off + copiedLen, chunks[chunkCount - 1], lastChunkLength);
+            lastChunkLength += copiedLen;
+            off += copiedLen;
+            len -= copiedLen;
+        }
+    }
+
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = chunkPool.obtain();
+        lastChunkLength = 0;
+    }
+
+    /**
+     * Returns the current position (the number of chars written so far), which can be later passed to
+     * {@link #rollBack(long)}.
+     */
+    long getMark() {
+        return chunkCount == 0 ? 0 : (long) (chunkCount - 1) * CHUNK_SIZE + lastChunkLength;
+    }
+
+    /**
+     * Discards everything that was written after the given position.
+     * 
+     * @param mark
+     *            A value earlier returned by {@link #getMark()}, and not yet rolled back.
+     */
+    void rollBack(long mark) {
+        int keptChunkCount = (int) ((mark + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        releaseChunksFrom(keptChunkCount);
+        lastChunkLength = keptChunkCount == 0 ? 0 : (int) (mark - (long) (keptChunkCount - 1) * CHUNK_SIZE);
+    }
+
+    /**
+     * Writes the content of the buffer to the given {@link Writer}, chunk by chunk.
+     */
+    void writeTo(Writer out) throws IOException {
+        int lastChunkIdx = chunkCount - 1;
+        for (int i = 0; i < lastChunkIdx; i++) {
+            out.write(chunks[i], 0, CHUNK_SIZE);
+        }
+        if (lastChunkIdx >= 0) {
+            out.write(chunks[lastChunkIdx], 0, lastChunkLength);
+        }
+    }
+
+    /**
+     * Returns the content, and empties the buffer. If the content fits into a single chunk, it's returned as a
+     * {@link String}, and the chunk goes back to the {@link ChunkPool}. Otherwise a {@link CapturedOutput} is returned,
+     * which takes over the chunks, and so the bigger part of the content is not copied.
+     */
+    Object takeContent() {
+        if (chunkCount <= 1) {
+            String content = chunkCount == 0 ? "" : new String(chunks[0], 0, lastChunkLength);
+            release();
+            return content;
+        }
+        char[][] takenChunks = Arrays.copyOf(chunks, chunkCount);
+        // Don't keep the unused part of the last chunk allocated:
+        takenChunks[chunkCount - 1] = Arrays.copyOf(takenChunks[chunkCount - 1], lastChunkLength);
+        chunkPool.release(chunks[chunkCount - 1]);
+        CapturedOutput content = new CapturedOutput(takenChunks, (int) getMark());
+        Arrays.fill(chunks, 0, chunkCount, null);
+        chunkCount = 0;
+        lastChunkLength = 0;
+        return content;
+    }
+
+    /**
+     * Discards the whole content, and gives back all chunks to the {@link ChunkPool}.
+     */
+    void release() {
+        releaseChunksFrom(0);
+        lastChunkLength = 0;
+    }
+
+    private void releaseChunksFrom(int firstReleasedChunkIdx) {
+        for (int i = firstReleasedChunkIdx; i < chunkCount; i++) {
+            chunkPool.release(chunks[i]);
+            chunks[i] = null;
+        }
+        chunkCount = firstReleasedChunkIdx;
+    }
+
+    /**
+     * Does nothing, as the content can't be flushed until the {@code #attempt} block has succeeded.
+     */
+    @Override
+    public void flush() {
+        // Do nothing
+    }
+
+    @Override
+    public void close() {
+        // Do nothing
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder((int) Math.min(getMark(), Integer.MAX_VALUE));
+        for (int i = 0; i < chunkCount; i++) {
+            sb.append(chunks[i], 0, i == chunkCount - 1 ? lastChunkLength : CHUNK_SIZE);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Recycles the chunks of {@link ChunkedOutputBuffer}-s. An {@link Environment} has at most one instance, so no
+     * synchronization is needed.
+     */
+    static final class ChunkPool {
+
+        private static final int MAX_SIZE = 16;
+
+        private final char[][] chunks = new char[MAX_SIZE][];
+        private int size;
+
+        char[] obtain() {
+            if (size == 0) {
+                return new char[CHUNK_SIZE];
+            }
+            char[] chunk = chunks[--size];
+            chunks[size] = null;
+            return chunk;
+        }
+
+        void release(char[] chunk) {
+            if (size < MAX_SIZE) {
+                chunks[size++] = chunk;
+            }
+        }
+
+    }
+
+}
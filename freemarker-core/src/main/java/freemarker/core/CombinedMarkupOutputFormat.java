@@ -107,5 +107,10 @@ public final class CombinedMarkupOutputFormat extends CommonMarkupOutputFormat<T
             String plainTextContent, String markupContent) {
         return new TemplateCombinedMarkupOutputModel(plainTextContent, markupContent, this);
     }
+
+    @Override
+    TemplateCombinedMarkupOutputModel newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText) {
+        return new TemplateCombinedMarkupOutputModel(contentRope, isPlainText, this);
+    }
     
 }
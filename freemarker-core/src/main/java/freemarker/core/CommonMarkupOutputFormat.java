@@ -48,6 +48,12 @@ public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOu
 
     @Override
     public final void output(MO mo, Writer out) throws IOException, TemplateModelException {
+        Object mcStrOrRope = mo.getMarkupContentStringOrRope();
+        if (mcStrOrRope instanceof StringRope) {
+            // Possibly a big captured output, which we can write without creating a String from it:
+            ((StringRope) mcStrOrRope).writeTo(out);
+            return;
+        }
         String mc = mo.getMarkupContent();
         if (mc != null) {
             out.write(mc);
@@ -78,31 +84,57 @@ public abstract class CommonMarkupOutputFormat<MO extends CommonTemplateMarkupOu
     
     @Override
     public final MO concat(MO mo1, MO mo2) throws TemplateModelException {
-        String pc1 = mo1.getPlainTextContent();
-        String mc1 = mo1.getMarkupContent();
-        String pc2 = mo2.getPlainTextContent();
-        String mc2 = mo2.getMarkupContent();
-        
-        String pc3 = pc1 != null && pc2 != null ? pc1 + pc2 : null;
-        String mc3 = mc1 != null && mc2 != null ? mc1 + mc2 : null;
-        if (pc3 != null || mc3 != null) {
-            return newTemplateMarkupOutputModel(pc3, mc3);
+        // The left hand content is used without flattening, as with repeated concatenation (like <#assign s += x> in
+        // a loop), it's usually the result of an earlier concatenation, which then we can extend without copying.
+        Object pc1 = mo1.getPlainTextContentStringOrRope();
+        Object pc2 = mo2.getPlainTextContentStringOrRope();
+        if (pc1 != null && pc2 != null) {
+            return newTemplateMarkupOutputModel(ConcatenatedString.concat(pc1, pc2.toString()), true);
         }
-        
-        if (pc1 != null) {
-            return newTemplateMarkupOutputModel(null, getMarkupString(mo1) + mc2);
-        } else {
-            return newTemplateMarkupOutputModel(null, mc1 + getMarkupString(mo2));
+
+        Object mc1 = pc1 == null ? mo1.getMarkupContentStringOrRope() : getMarkupString(mo1);
+        String mc2 = pc2 == null ? mo2.getMarkupContent() : getMarkupString(mo2);
+        return newTemplateMarkupOutputModel(ConcatenatedString.concat(mc1, mc2), false);
+    }
+
+    /**
+     * @param contentStrOrRope
+     *            A {@link String} or a {@link StringRope}
+     */
+    final MO newTemplateMarkupOutputModel(Object contentStrOrRope, boolean isPlainText)
+            throws TemplateModelException {
+        if (contentStrOrRope instanceof String) {
+            return isPlainText
+                    ? newTemplateMarkupOutputModel((String) contentStrOrRope, null)
+                    : newTemplateMarkupOutputModel(null, (String) contentStrOrRope);
         }
+
+        return newTemplateMarkupOutputModel((StringRope) contentStrOrRope, isPlainText);
+    }
+
+    /**
+     * Creates a {@link TemplateMarkupOutputModel} that stores its content as a {@link StringRope}. The built-in
+     * output formats override this to pass the rope to the constructor of the model, so that it needn't be
+     * flattened; this default implementation flattens it, and calls
+     * {@link #newTemplateMarkupOutputModel(String, String)}, which a subclass outside this package may have
+     * overridden.
+     *
+     * @since 2.3.33
+     */
+    MO newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText) throws TemplateModelException {
+        String content = contentRope.toString();
+        return isPlainText ? newTemplateMarkupOutputModel(content, null) : newTemplateMarkupOutputModel(null, content);
     }
     
     @Override
     public boolean isEmpty(MO mo) throws TemplateModelException {
-        String s = mo.getPlainTextContent();
-        if (s != null) {
-            return s.length() == 0;
+        Object content = mo.getPlainTextContentStringOrRope();
+        if (content == null) {
+            content = mo.getMarkupContentStringOrRope();
         }
-        return mo.getMarkupContent().length() == 0;
+        return content instanceof String
+                ? ((String) content).length() == 0
+                : ((StringRope) content).length() == 0;
     }
     
     @Override
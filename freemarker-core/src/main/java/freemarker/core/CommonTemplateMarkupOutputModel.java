@@ -34,6 +34,15 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
 
     private final String plainTextContent;
     private String markupContent;
+    /**
+     * If non-{@code null}, then this stores the plain text content or the markup content (which one, depends on
+     * {@link #contentRopeIsPlainText}) instead of {@link #plainTextContent} or {@link #markupContent}. This is used for
+     * the result of {@link CommonMarkupOutputFormat#concat}, so that repeated concatenation is cheap, and for big
+     * captured outputs (see {@link CapturedOutput}), so that printing them doesn't need creating a {@link String}.
+     * (The {@link StringRope} caches the {@link String} it was flattened to.)
+     */
+    private final StringRope contentRope;
+    private final boolean contentRopeIsPlainText;
 
     /**
      * A least one of the parameters must be non-{@code null}!
@@ -41,6 +50,26 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
     protected CommonTemplateMarkupOutputModel(String plainTextContent, String markupContent) {
         this.plainTextContent = plainTextContent;
         this.markupContent = markupContent;
+        this.contentRope = null;
+        this.contentRopeIsPlainText = false;
+    }
+
+    /**
+     * Stores the content as a {@link StringRope}; see {@link CommonMarkupOutputFormat#newTemplateMarkupOutputModel(
+     * StringRope, boolean)}.
+     *
+     * @param contentRope
+     *            Not {@code null}
+     * @param contentRopeIsPlainText
+     *            Whether the rope stores the plain text content, or the markup content.
+     *
+     * @since 2.3.33
+     */
+    protected CommonTemplateMarkupOutputModel(StringRope contentRope, boolean contentRopeIsPlainText) {
+        this.plainTextContent = null;
+        this.markupContent = null;
+        this.contentRope = contentRope;
+        this.contentRopeIsPlainText = contentRopeIsPlainText;
     }
 
     @Override
@@ -48,12 +77,28 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
 
     /** Maybe {@code null}, but then {@link #getMarkupContent()} isn't {@code null}. */
     final String getPlainTextContent() {
-        return plainTextContent;
+        return contentRope != null && contentRopeIsPlainText ? contentRope.toString() : plainTextContent;
     }
 
     /** Maybe {@code null}, but then {@link #getPlainTextContent()} isn't {@code null}. */
     final String getMarkupContent() {
-        return markupContent;
+        return contentRope != null && !contentRopeIsPlainText ? contentRope.toString() : markupContent;
+    }
+
+    /**
+     * Returns the plain text content as {@link String} or {@link StringRope}, without flattening the content
+     * rope; {@code null} if the content is stored as markup.
+     */
+    final Object getPlainTextContentStringOrRope() {
+        return contentRope != null && contentRopeIsPlainText ? contentRope : plainTextContent;
+    }
+
+    /**
+     * Returns the markup content as {@link String} or {@link StringRope}, without flattening the content
+     * rope; {@code null} if the content is only stored as plain text.
+     */
+    final Object getMarkupContentStringOrRope() {
+        return contentRope != null && !contentRopeIsPlainText ? contentRope : markupContent;
     }
 
     /**
@@ -73,8 +118,9 @@ public abstract class CommonTemplateMarkupOutputModel<MO extends CommonTemplateM
      */
     @Override
     public String toString() {
+        String plainTextContent = getPlainTextContent();
         return "markupOutput(format=" + getOutputFormat().getName() + ", " + (plainTextContent != null ?
-            "plainText=" + plainTextContent : "markup=" + markupContent) + ")";
+            "plainText=" + plainTextContent : "markup=" + getMarkupContent()) + ")";
     }
 
 }
@@ -35,6 +35,33 @@ final class CompressedBlock extends TemplateElement {
         setChildren(children);
     }
 
+    @Override
+    TemplateElement postParseCleanup(boolean stripWhitespace) throws ParseException {
+        TemplateElement result = super.postParseCleanup(stripWhitespace);
+        compressStaticText(this);
+        return result;
+    }
+
+    /**
+     * Compresses the whitespace of the static text in the nested content at parse time, so that it needn't be done on
+     * each template execution (see {@link TextBlock#compressWhitespace()}). Elements whose nested content isn't
+     * necessarily written to the output of the enclosing element (like {@code #macro}, or a capturing
+     * {@code #assign}) are skipped. That's only for saving memory; the result would be correct anyway, as the
+     * compressed text is only used when it's written directly to the compressing {@link java.io.Writer}.
+     */
+    static void compressStaticText(TemplateElement element) {
+        int childCount = element.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            TemplateElement child = element.getChild(i);
+            if (child instanceof TextBlock) {
+                ((TextBlock) child).compressWhitespace();
+            } else if (!(child instanceof Macro || child instanceof BlockAssignment || child instanceof UnifiedCall
+                    || child instanceof TransformBlock)) {
+                compressStaticText(child);
+            }
+        }
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         TemplateElement[] childBuffer = getChildBuffer();
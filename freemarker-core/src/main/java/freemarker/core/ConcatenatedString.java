@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A string that was created by concatenation, stored as the prefix of a {@code char} array. The array is shared with
+ * the {@link ConcatenatedString} it was created from, as far as that was the last one created from the array, so, for
+ * example, with {@code <#assign s = s + x>} executed in a loop, the characters of {@code s} aren't copied again and
+ * again. The array is only ever written after the end of the longest prefix used so far, hence the prefixes that
+ * earlier {@link ConcatenatedString}-s point to don't change.
+ *
+ * <p>This class is thread safe, as in rare cases it can leak out of the {@link Environment} that has created it (like
+ * when it's stored in a shared variable). It doesn't use locks; the right to append to the shared array is claimed by
+ * an atomic compare-and-set on the used length.
+ *
+ * @since 2.3.33
+ */
+final class ConcatenatedString implements StringRope {
+
+    /**
+     * Concatenation results shorter than this are just plain {@link String}-s, as for those the copying is cheaper
+     * than the overhead of this class.
+     */
+    static final int MIN_LENGTH = 256;
+
+    /**
+     * Contains this string as prefix. As it's a final field, the content of the prefix is visible to all threads
+     * that see this object.
+     */
+    private final char[] chars;
+    private final int length;
+    /** The number of characters already used (or being written) in the arrays shared with this string. */
+    private final AtomicInteger usedLength;
+    private String flattened;
+
+    private ConcatenatedString(char[] chars, int length, AtomicInteger usedLength) {
+        this.chars = chars;
+        this.length = length;
+        this.usedLength = usedLength;
+    }
+
+    /**
+     * Concatenates two strings.
+     *
+     * @param left
+     *            A {@link String} or a {@link StringRope}; the last is only extended without copying if it's a
+     *            {@link ConcatenatedString}.
+     *
+     * @return A {@link String} or a {@link ConcatenatedString}; the later only if the result is at least
+     *            {@link #MIN_LENGTH} long.
+     */
+    static Object concat(Object left, String right) {
+        if (left instanceof ConcatenatedString) {
+            return ((ConcatenatedString) left).concat(right);
+        }
+
+        String leftStr = left.toString();
+        int resultLength = leftStr.length() + right.length();
+        if (resultLength < MIN_LENGTH) {
+            return leftStr.concat(right);
+        }
+        return newConcatenatedString(leftStr, right);
+    }
+
+    private static ConcatenatedString newConcatenatedString(String left, String right) {
+        int resultLength = left.length() + right.length();
+        char[] chars = new char[resultLength * 2];
+        left.getChars(0, left.length(), chars, 0);
+        right.getChars(0, right.length(), chars, left.length());
+        return new ConcatenatedString(chars, resultLength, new AtomicInteger(resultLength));
+    }
+
+    /**
+     * Returns this concatenated with the parameter. If this is the last {@link ConcatenatedString} that was created
+     * from the shared array, then the result shares the array with this (unless the array has to be grown), otherwise
+     * the characters are copied into a new array.
+     */
+    ConcatenatedString concat(String right) {
+        int rightLength = right.length();
+        if (rightLength == 0) {
+            return this;
+        }
+        int resultLength = length + rightLength;
+        if (usedLength.compareAndSet(length, resultLength)) {
+            // We have exclusively claimed the [length, resultLength) range.
+            char[] chars = this.chars;
+            if (chars.length < resultLength) {
+                chars = Arrays.copyOf(chars, Math.max(resultLength, chars.length * 2));
+            }
+            right.getChars(0, rightLength, chars, length);
+            return new ConcatenatedString(chars, resultLength, usedLength);
+        }
+        return newConcatenatedString(toString(), right);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        out.write(chars, 0, length);
+    }
+
+    /**
+     * Returns the string value; the {@link String} object is only created on the first call.
+     */
+    @Override
+    public String toString() {
+        String flattened = this.flattened;
+        if (flattened == null) {
+            flattened = new String(chars, 0, length);
+            this.flattened = flattened;
+        }
+        return flattened;
+    }
+
+}
@@ -2237,7 +2237,7 @@ public class Configurable {
      *       expression</a>.
      *       If the value does not contain dot,
      *       then it must be one of these special values (case insensitive):
-     *       {@code "bigdecimal"}, {@code "conservative"}.
+     *       {@code "bigdecimal"}, {@code "conservative"}, {@code "fast_bigdecimal"} (since 2.3.33).
      *       
      *   <li><p>{@code "object_wrapper"}:
      *       See {@link #setObjectWrapper(ObjectWrapper)}.
@@ -2739,6 +2739,8 @@ public class Configurable {
                         setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
                     } else if ("conservative".equalsIgnoreCase(value)) {
                         setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+                    } else if ("fast_bigdecimal".equalsIgnoreCase(value) || "fastBigDecimal".equalsIgnoreCase(value)) {
+                        setArithmeticEngine(ArithmeticEngine.FAST_BIGDECIMAL_ENGINE);
                     } else {
                         throw invalidSettingValueException(name, value);
                     }
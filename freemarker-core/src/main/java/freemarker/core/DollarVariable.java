@@ -24,6 +24,7 @@ import java.io.Writer;
 
 import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
 import freemarker.template.utility.StringUtil;
 
 /**
@@ -60,8 +61,14 @@ final class DollarVariable extends Interpolation {
      */
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
-        final Object moOrStr = calculateInterpolatedStringOrMarkup(env);
+        final TemplateModel tm = escapedExpression.eval(env);
         final Writer out = env.getOut();
+        if (tm instanceof CapturedOutput && !autoEscape) {
+            // Typically a big block captured with #assign; no need to create a String from it.
+            ((CapturedOutput) tm).writeTo(out);
+            return null;
+        }
+        final Object moOrStr = EvalUtil.coerceModelToStringOrMarkup(tm, escapedExpression, null, env);
         if (moOrStr instanceof String) {
             final String s = (String) moOrStr;
             if (autoEscape) {
@@ -19,6 +19,7 @@
 
 package freemarker.core;
 
+import java.io.FilterWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -32,12 +33,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TimeZone;
 
@@ -45,8 +47,10 @@ import freemarker.cache.TemplateNameFormat;
 import freemarker.cache._CacheAPI;
 import freemarker.ext.beans.BeansWrapper;
 import freemarker.log.Logger;
+import freemarker.template.AttemptExceptionReporter;
 import freemarker.template.Configuration;
 import freemarker.template.MalformedTemplateNameException;
+import freemarker.template.MetricsRecorder;
 import freemarker.template.ObjectWrapper;
 import freemarker.template.SimpleHash;
 import freemarker.template.SimpleSequence;
@@ -71,6 +75,7 @@ import freemarker.template.TemplateTransformModel;
 import freemarker.template.TransformControl;
 import freemarker.template.Version;
 import freemarker.template._ObjectWrappers;
+import freemarker.template._TemplateAPI;
 import freemarker.template._VersionInts;
 import freemarker.template.utility.DateUtil;
 import freemarker.template.utility.DateUtil.DateToISO8601CalendarFactory;
@@ -136,6 +141,12 @@ public final class Environment extends Configurable {
     private static final int CACHED_TDFS_SQL_D_T_TZ_OFFS = CACHED_TDFS_ZONELESS_INPUT_OFFS * 2;
     private static final int CACHED_TDFS_LENGTH = CACHED_TDFS_SQL_D_T_TZ_OFFS * 2;
 
+    /** The maximum macro/function call nesting depth for which we can reuse {@link Macro.Context}-s. */
+    private static final int MACRO_CONTEXT_POOL_MAX_SIZE = 16;
+
+    /** The processing deadline is checked on every 64th element or loop iteration; see {@link #checkDeadline()}. */
+    private static final int DEADLINE_CHECK_INTERVAL_MASK = 0x3F;
+
     /** Caches the result of {@link #isSQLDateAndTimeTimeZoneSameAsNormal()}. */
     private Boolean cachedSQLDateAndTimeTimeZoneSameAsNormal;
 
@@ -162,12 +173,40 @@ public final class Environment extends Configurable {
 
     private Collator cachedCollator;
 
+    /**
+     * The values of frequently read settings, resolved through the parent chain; {@code null} if it has to be
+     * (re)created. See {@link #getSettingsSnapshot()}.
+     */
+    private SettingsSnapshot settingsSnapshot;
+
     private Writer out;
     private Macro.Context currentMacroContext;
+    /** Recycled {@link Macro.Context}-s; see {@link #obtainMacroContext}. */
+    private Macro.Context[] macroContextPool;
+    private int macroContextPoolSize;
     private LocalContextStack localContextStack;
     private final Namespace mainNamespace;
     private Namespace currentNamespace, globalNamespace;
     private HashMap<String, Namespace> loadedLibs;
+    /**
+     * Caches the results of {@link #getTemplateForInclusion(String, String, boolean, boolean)}, for the duration of
+     * a {@link #process()} call; created on demand.
+     */
+    private HashMap<IncludedTemplateKey, Object> includedTemplateCache;
+    /**
+     * The variables declared by the first template (with variable declarations) that was entered; see
+     * {@link #isDataModelShortcutAllowed(Set, String)}.
+     */
+    private Set<String> firstTemplateDeclaredVariableNames;
+    /**
+     * Union of the variables declared by all templates entered, plus the variables that were set through the Java API;
+     * {@code null} as far as {@link #firstTemplateDeclaredVariableNames} is the only source of declarations.
+     */
+    private HashSet<String> allDeclaredVariableNames;
+    /** The sets already added to {@link #allDeclaredVariableNames}; non-{@code null} exactly if that's. */
+    private IdentityHashMap<Set<String>, Boolean> registeredTemplateDeclaredVariableNames;
+    /** Created on demand by {@link #getOutputChunkPool()}. */
+    private ChunkedOutputBuffer.ChunkPool outputChunkPool;
     private Configurable legacyParent;
 
     private boolean inAttemptBlock;
@@ -189,6 +228,17 @@ public final class Environment extends Configurable {
 
     private TemplateProcessingTracer templateProcessingTracer;
 
+    private long processingDeadline = Long.MAX_VALUE;
+    private long maxOutputCharacters = Long.MAX_VALUE;
+    private long maxLoopIterations = Long.MAX_VALUE;
+    private int maxMacroCallDepth = Integer.MAX_VALUE;
+    /** Whether {@link #pushElement(TemplateElement)} has to call {@link #checkProcessingBudget()}. */
+    private boolean processingBudgetCheckedOnElements;
+    private int deadlineCheckSkips;
+    private OutputCharacterCountingWriter outputCharacterCounter;
+    private long loopIterationCount;
+    private int macroCallDepth;
+
     /**
      * Retrieves the environment object associated with the current thread, or {@code null} if there's no template
      * processing going on in this thread. Data model implementations that need access to the environment can call this
@@ -307,30 +357,55 @@ public final class Environment extends Configurable {
         cachedCollator = null;
         cachedURLEscapingCharset = null;
         cachedURLEscapingCharsetSet = false;
+
+        settingsSnapshot = null;
+        includedTemplateCache = null;
     }
 
     /**
      * Processes the template to which this environment belongs to.
      */
     public void process() throws TemplateException, IOException {
+        final MetricsRecorder metricsRecorder = configuration.getMetricsRecorder();
+        final long startTime = metricsRecorder != null ? System.nanoTime() : 0L;
+        boolean successful = false;
         Object savedEnv = threadEnv.get();
         threadEnv.set(this);
+        final Writer prevOut = out;
+        loopIterationCount = 0;
+        deadlineCheckSkips = 0;
+        if (maxOutputCharacters != Long.MAX_VALUE) {
+            outputCharacterCounter = new OutputCharacterCountingWriter(out);
+            out = outputCharacterCounter;
+        }
         try {
             // Cached values from a previous execution are possibly outdated.
             clearCachedValues();
             try {
+                registerTemplateDeclaredVariableNames(getTemplate());
                 doAutoImportsAndIncludes(this);
                 visit(getTemplate().getRootTreeNode());
                 // It's here as we must not flush if there was an exception.
                 if (getAutoFlush()) {
                     out.flush();
                 }
+                successful = true;
             } finally {
                 // It's just to allow the GC to free memory...
                 clearCachedValues();
             }
         } finally {
             threadEnv.set(savedEnv);
+            if (outputCharacterCounter != null) {
+                outputCharacterCounter = null;
+                out = prevOut;
+            }
+            if (metricsRecorder != null) {
+                metricsRecorder.recordTime(MetricsRecorder.TEMPLATE_PROCESSING_TIME, System.nanoTime() - startTime);
+                if (!successful) {
+                    metricsRecorder.incrementCounter(MetricsRecorder.TEMPLATE_PROCESSING_ERRORS);
+                }
+            }
         }
     }
 
@@ -424,6 +499,11 @@ public final class Environment extends Configurable {
     public void visit(final TemplateElement element,
             TemplateDirectiveModel directiveModel, Map args,
             final List bodyParameterNames) throws TemplateException, IOException {
+        if (bodyParameterNames != null) {
+            for (Object bodyParameterName : bodyParameterNames) {
+                registerDynamicallyDeclaredVariable((String) bodyParameterName);
+            }
+        }
         visit(new TemplateElement[] { element }, directiveModel, args, bodyParameterNames);
     }
     
@@ -550,15 +630,44 @@ public final class Environment extends Configurable {
      void visitAttemptRecover(
              AttemptBlock attemptBlock, TemplateElement attemptedSection, RecoveryBlock recoverySection)
              throws TemplateException, IOException {
+        final Writer prevOut = this.out;
+        final ChunkedOutputBuffer buffer;
+        final boolean ownBuffer;
+        final long bufferMark;
+        if (prevOut instanceof ChunkedOutputBuffer) {
+            // Directly nested into another #attempt (or a capturing assignment), so we just write into its buffer, and
+            // roll back on failure.
+            buffer = (ChunkedOutputBuffer) prevOut;
+            ownBuffer = false;
+            bufferMark = buffer.getMark();
+        } else {
+            buffer = new ChunkedOutputBuffer(getOutputChunkPool());
+            ownBuffer = true;
+            bufferMark = 0;
+        }
+        try {
+            visitAttemptRecover(attemptBlock, attemptedSection, recoverySection, buffer, bufferMark, ownBuffer);
+        } finally {
+            if (ownBuffer) {
+                buffer.release();
+            }
+        }
+    }
+
+    private void visitAttemptRecover(
+            AttemptBlock attemptBlock, TemplateElement attemptedSection, RecoveryBlock recoverySection,
+            ChunkedOutputBuffer buffer, long bufferMark, boolean ownBuffer)
+            throws TemplateException, IOException {
         Writer prevOut = this.out;
-        StringWriter sw = new StringWriter();
-        this.out = sw;
+        this.out = buffer;
         TemplateException thrownException = null;
         boolean lastFIRE = setFastInvalidReferenceExceptions(false);
         boolean lastInAttemptBlock = inAttemptBlock;
         try {
             inAttemptBlock = true;
             visit(attemptedSection);
+        } catch (ProcessingBudgetExceededException e) {
+            throw e;
         } catch (TemplateException te) {
             thrownException = te;
         } finally {
@@ -567,6 +676,7 @@ public final class Environment extends Configurable {
             this.out = prevOut;
         }
         if (thrownException != null) {
+            buffer.rollBack(bufferMark);
             if (ATTEMPT_LOGGER.isDebugEnabled()) {
                 ATTEMPT_LOGGER.debug("Error in attempt block " +
                         attemptBlock.getStartLocationQuoted(), thrownException);
@@ -577,11 +687,23 @@ public final class Environment extends Configurable {
             } finally {
                 recoveredErrorStack.remove(recoveredErrorStack.size() - 1);
             }
-        } else {
-            out.write(sw.toString());
+        } else if (ownBuffer) {
+            buffer.writeTo(out);
         }
     }
 
+    /**
+     * The pool of chunks used by the {@link ChunkedOutputBuffer}-s created in this {@link Environment}.
+     */
+    ChunkedOutputBuffer.ChunkPool getOutputChunkPool() {
+        ChunkedOutputBuffer.ChunkPool outputChunkPool = this.outputChunkPool;
+        if (outputChunkPool == null) {
+            outputChunkPool = new ChunkedOutputBuffer.ChunkPool();
+            this.outputChunkPool = outputChunkPool;
+        }
+        return outputChunkPool;
+    }
+
     String getCurrentRecoveredErrorMessage() throws TemplateException {
         if (recoveredErrorStack.isEmpty()) {
             throw new _MiscTemplateException(this, ".error is not available outside of a #recover block");
@@ -852,6 +974,11 @@ public final class Environment extends Configurable {
         if (macroOrFunction == Macro.DO_NOTHING_MACRO) {
             return;
         }
+        if (macroCallDepth >= maxMacroCallDepth) {
+            throw new ProcessingBudgetExceededException(ProcessingBudgetExceededException.Limit.MACRO_CALL_DEPTH,
+                    "The maximum macro call depth (" + maxMacroCallDepth + ") was exceeded when calling "
+                    + macroOrFunction.getName() + ".", this);
+        }
 
         boolean elementPushed;
         if (!incompatibleImprovementsGE2328) {
@@ -862,8 +989,12 @@ public final class Environment extends Configurable {
         } else {
             elementPushed = false;
         }
+        // The macro might come from a template that wasn't entered in this Environment yet:
+        registerTemplateDeclaredVariableNames(macroOrFunction.getTemplate());
+
+        final Macro.Context macroCtx = obtainMacroContext();
         try {
-            final Macro.Context macroCtx = macroOrFunction.new Context(this, callPlace, bodyParameterNames);
+            macroCtx.init(this, macroOrFunction, callPlace, bodyParameterNames);
             // Causes the evaluation of argument expressions:
             setMacroContextLocalsFromArguments(macroCtx, macroOrFunction, namedArgs, positionalArgs);
 
@@ -874,6 +1005,7 @@ public final class Environment extends Configurable {
 
             final Macro.Context prevMacroCtx = currentMacroContext;
             currentMacroContext = macroCtx;
+            macroCallDepth++;
 
             final LocalContextStack prevLocalContextStack = localContextStack;
             localContextStack = null;
@@ -889,6 +1021,7 @@ public final class Environment extends Configurable {
             } catch (TemplateException te) {
                 handleTemplateException(te);
             } finally {
+                macroCallDepth--;
                 currentMacroContext = prevMacroCtx;
                 localContextStack = prevLocalContextStack;
                 currentNamespace = prevNamespace;
@@ -897,9 +1030,34 @@ public final class Environment extends Configurable {
             if (elementPushed) {
                 popElement();
             }
+            releaseMacroContext(macroCtx);
         }
     }
 
+    /**
+     * Returns a {@link Macro.Context} that was used by an earlier call that has already returned, or a new one. As
+     * calls are nested, this is a stack. The result must be passed to {@link #releaseMacroContext(Macro.Context)}
+     * after the call has returned.
+     */
+    private Macro.Context obtainMacroContext() {
+        if (macroContextPoolSize == 0) {
+            return new Macro.Context();
+        }
+        Macro.Context macroCtx = macroContextPool[--macroContextPoolSize];
+        macroContextPool[macroContextPoolSize] = null;
+        return macroCtx;
+    }
+
+    private void releaseMacroContext(Macro.Context macroCtx) {
+        macroCtx.reset();
+        if (macroContextPool == null) {
+            macroContextPool = new Macro.Context[MACRO_CONTEXT_POOL_MAX_SIZE];
+        } else if (macroContextPoolSize == MACRO_CONTEXT_POOL_MAX_SIZE) {
+            return;
+        }
+        macroContextPool[macroContextPoolSize++] = macroCtx;
+    }
+
     /**
      * Sets the local variables corresponding to the macro call arguments in the macro context.
      */
@@ -909,8 +1067,9 @@ public final class Environment extends Configurable {
             final Map<String, ? extends Expression> namedArgs, final List<? extends Expression> positionalArgs)
             throws TemplateException {
         String catchAllParamName = macro.getCatchAll();
-        SimpleHash namedCatchAllParamValue = null;
-        SimpleSequence positionalCatchAllParamValue = null;
+        // The catch-all parameter value is only created when the first argument is added to it (or when it's read):
+        boolean hasNamedCatchAllParam = false;
+        boolean hasPositionalCatchAllParam = false;
         int nextPositionalArgToAssignIdx = 0;
 
         // Used for ?with_args(...):
@@ -944,11 +1103,12 @@ public final class Environment extends Configurable {
                     if (isArgNameDeclared) {
                         macroCtx.setLocalVar(argName, argValue);
                     } else if (catchAllParamName != null) {
-                        if (namedCatchAllParamValue == null) {
-                            namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                        if (!hasNamedCatchAllParam) {
+                            macroCtx.setCatchAllParamValueToEmpty(true);
+                            hasNamedCatchAllParam = true;
                         }
                         if (!withArgsState.orderLast) {
-                            namedCatchAllParamValue.put(argName, argValue);
+                            macroCtx.getNamedCatchAllParamValue().put(argName, argValue);
                         } else {
                             List<NameValuePair> orderLastByNameCatchAll = withArgsState.orderLastByNameCatchAll;
                             if (orderLastByNameCatchAll == null) {
@@ -975,10 +1135,11 @@ public final class Environment extends Configurable {
                                 String argName = argNames[nextPositionalArgToAssignIdx++];
                                 macroCtx.setLocalVar(argName, argValue);
                             } else {
-                                if (positionalCatchAllParamValue == null) {
-                                    positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                                if (!hasPositionalCatchAllParam) {
+                                    macroCtx.setCatchAllParamValueToEmpty(false);
+                                    hasPositionalCatchAllParam = true;
                                 }
-                                positionalCatchAllParamValue.add(argValue);
+                                macroCtx.getPositionalCatchAllParamValue().add(argValue);
                             }
                         } catch (RuntimeException re) {
                             throw new _MiscTemplateException(re, this);
@@ -1004,29 +1165,31 @@ public final class Environment extends Configurable {
         } // if (withArgsState != null)
 
         if (namedArgs != null) {
-            if (catchAllParamName != null && namedCatchAllParamValue == null && positionalCatchAllParamValue == null) {
+            if (catchAllParamName != null && !hasNamedCatchAllParam && !hasPositionalCatchAllParam) {
                 // If a macro call has no argument (like <@m />), before 2.3.30 we assumed it's a by-name call. But now
                 // if we have ?with_args(args), its argument type decides if the call is by-name or by-position.
                 if (namedArgs.isEmpty() && withArgsState != null && withArgsState.byPosition != null) {
-                    positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                    macroCtx.setCatchAllParamValueToEmpty(false);
+                    hasPositionalCatchAllParam = true;
                 } else {
-                    namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                    macroCtx.setCatchAllParamValueToEmpty(true);
+                    hasNamedCatchAllParam = true;
                 }
             }
 
             for (Map.Entry<String, ? extends Expression> argNameAndValExp : namedArgs.entrySet()) {
                 final String argName = argNameAndValExp.getKey();
                 final boolean isArgNameDeclared = macro.hasArgNamed(argName);
-                if (isArgNameDeclared || namedCatchAllParamValue != null) {
+                if (isArgNameDeclared || hasNamedCatchAllParam) {
                     final Expression argValueExp = argNameAndValExp.getValue();
                     TemplateModel argValue = argValueExp.eval(this);
                     if (isArgNameDeclared) {
                         macroCtx.setLocalVar(argName, argValue);
                     } else {
-                        namedCatchAllParamValue.put(argName, argValue);
+                        macroCtx.getNamedCatchAllParamValue().put(argName, argValue);
                     }
                 } else {
-                    if (positionalCatchAllParamValue != null) {
+                    if (hasPositionalCatchAllParam) {
                         throw newBothNamedAndPositionalCatchAllParamsException(macro);
                     } else {
                         throw newUndeclaredParamNameException(macro, argName);
@@ -1034,19 +1197,21 @@ public final class Environment extends Configurable {
                 }
             }
         } else if (positionalArgs != null) {
-            if (catchAllParamName != null && positionalCatchAllParamValue == null && namedCatchAllParamValue == null) {
+            if (catchAllParamName != null && !hasPositionalCatchAllParam && !hasNamedCatchAllParam) {
                 if (positionalArgs.isEmpty() && withArgsState != null && withArgsState.byName != null) {
-                    namedCatchAllParamValue = initNamedCatchAllParameter(macroCtx, catchAllParamName);
+                    macroCtx.setCatchAllParamValueToEmpty(true);
+                    hasNamedCatchAllParam = true;
                 } else {
-                    positionalCatchAllParamValue = initPositionalCatchAllParameter(macroCtx, catchAllParamName);
+                    macroCtx.setCatchAllParamValueToEmpty(false);
+                    hasPositionalCatchAllParam = true;
                 }
             }
 
             String[] argNames = macro.getArgumentNamesNoCopy();
             final int argsCnt = positionalArgs.size();
             final int argsWithWithArgsCnt = argsCnt + nextPositionalArgToAssignIdx;
-            if (argNames.length < argsWithWithArgsCnt && positionalCatchAllParamValue == null) {
-                if (namedCatchAllParamValue != null) {
+            if (argNames.length < argsWithWithArgsCnt && !hasPositionalCatchAllParam) {
+                if (hasNamedCatchAllParam) {
                     throw newBothNamedAndPositionalCatchAllParamsException(macro);
                 } else {
                     throw newTooManyArgumentsException(macro, argNames, argsWithWithArgsCnt);
@@ -1064,7 +1229,7 @@ public final class Environment extends Configurable {
                     String argName = argNames[nextPositionalArgToAssignIdx++];
                     macroCtx.setLocalVar(argName, argValue);
                 } else {
-                    positionalCatchAllParamValue.add(argValue);
+                    macroCtx.getPositionalCatchAllParamValue().add(argValue);
                 }
             }
         } // else if (positionalArgs != null)
@@ -1072,6 +1237,7 @@ public final class Environment extends Configurable {
         if (withArgsState != null && withArgsState.orderLast) {
             if (withArgsState.orderLastByNameCatchAll != null) {
                 for (NameValuePair nameValuePair : withArgsState.orderLastByNameCatchAll) {
+                    SimpleHash namedCatchAllParamValue = macroCtx.getNamedCatchAllParamValue();
                     if (!namedCatchAllParamValue.containsKey(nameValuePair.name)) {
                         namedCatchAllParamValue.put(nameValuePair.name, nameValuePair.value);
                     }
@@ -1087,7 +1253,7 @@ public final class Environment extends Configurable {
                         macroCtx.setLocalVar(argName, withArgValue);
                     } else {
                         // It was checked much earlier that we don't have too many arguments, so this must work:
-                        positionalCatchAllParamValue.add(withArgValue);
+                        macroCtx.getPositionalCatchAllParamValue().add(withArgValue);
                     }
                 }
             }
@@ -1130,21 +1296,6 @@ public final class Environment extends Configurable {
                 new _DelayedToString(argsCnt), ".");
     }
 
-    private static SimpleSequence initPositionalCatchAllParameter(Macro.Context macroCtx, String catchAllParamName) {
-        SimpleSequence positionalCatchAllParamValue;
-        positionalCatchAllParamValue = new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER);
-        macroCtx.setLocalVar(catchAllParamName, positionalCatchAllParamValue);
-        return positionalCatchAllParamValue;
-    }
-
-    private static SimpleHash initNamedCatchAllParameter(Macro.Context macroCtx, String catchAllParamName) {
-        SimpleHash namedCatchAllParamValue;
-        namedCatchAllParamValue = new SimpleHash(
-                new LinkedHashMap<String, Object>(), _ObjectWrappers.SAFE_OBJECT_WRAPPER, 0);
-        macroCtx.setLocalVar(catchAllParamName, namedCatchAllParamValue);
-        return namedCatchAllParamValue;
-    }
-
     private _MiscTemplateException newUndeclaredParamNameException(Macro macro, String argName) {
         return new _MiscTemplateException(this,
                 (macro.isFunction() ? "Function " : "Macro "), new _DelayedJQuote(macro.getName()),
@@ -1219,7 +1370,8 @@ public final class Environment extends Configurable {
         try {
             // Stop exception is not passed to the handler, but
             // explicitly rethrown.
-            if (templateException instanceof StopException) {
+            if (templateException instanceof StopException
+                    || templateException instanceof ProcessingBudgetExceededException) {
                 throw templateException;
             }
     
@@ -1237,13 +1389,181 @@ public final class Environment extends Configurable {
     @Override
     public void setTemplateExceptionHandler(TemplateExceptionHandler templateExceptionHandler) {
         super.setTemplateExceptionHandler(templateExceptionHandler);
+        settingsSnapshot = null;
         lastThrowable = null;
     }
 
+    @Override
+    public TemplateExceptionHandler getTemplateExceptionHandler() {
+        return getSettingsSnapshot().templateExceptionHandler;
+    }
+
+    @Override
+    public void setAttemptExceptionReporter(AttemptExceptionReporter attemptExceptionReporter) {
+        super.setAttemptExceptionReporter(attemptExceptionReporter);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public AttemptExceptionReporter getAttemptExceptionReporter() {
+        return getSettingsSnapshot().attemptExceptionReporter;
+    }
+
+    @Override
+    public void setArithmeticEngine(ArithmeticEngine arithmeticEngine) {
+        super.setArithmeticEngine(arithmeticEngine);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public ArithmeticEngine getArithmeticEngine() {
+        return getSettingsSnapshot().arithmeticEngine;
+    }
+
+    @Override
+    public void setObjectWrapper(ObjectWrapper objectWrapper) {
+        super.setObjectWrapper(objectWrapper);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public ObjectWrapper getObjectWrapper() {
+        return getSettingsSnapshot().objectWrapper;
+    }
+
+    @Override
+    public void setClassicCompatible(boolean classicCompatibility) {
+        super.setClassicCompatible(classicCompatibility);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public void setClassicCompatibleAsInt(int classicCompatibility) {
+        super.setClassicCompatibleAsInt(classicCompatibility);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public boolean isClassicCompatible() {
+        return getSettingsSnapshot().classicCompatible != 0;
+    }
+
+    @Override
+    public int getClassicCompatibleAsInt() {
+        return getSettingsSnapshot().classicCompatible;
+    }
+
+    @Override
+    public void setTruncateBuiltinAlgorithm(TruncateBuiltinAlgorithm truncateBuiltinAlgorithm) {
+        super.setTruncateBuiltinAlgorithm(truncateBuiltinAlgorithm);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public TruncateBuiltinAlgorithm getTruncateBuiltinAlgorithm() {
+        return getSettingsSnapshot().truncateBuiltinAlgorithm;
+    }
+
+    @Override
+    public void setLogTemplateExceptions(boolean value) {
+        super.setLogTemplateExceptions(value);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public boolean getLogTemplateExceptions() {
+        return getSettingsSnapshot().logTemplateExceptions;
+    }
+
+    @Override
+    public void setWrapUncheckedExceptions(boolean wrapUncheckedExceptions) {
+        super.setWrapUncheckedExceptions(wrapUncheckedExceptions);
+        settingsSnapshot = null;
+    }
+
+    @Override
+    public boolean getWrapUncheckedExceptions() {
+        return getSettingsSnapshot().wrapUncheckedExceptions;
+    }
+
+    @Override
+    public Locale getLocale() {
+        return getSettingsSnapshot().locale;
+    }
+
+    @Override
+    void setParent(Configurable parent) {
+        super.setParent(parent);
+        settingsSnapshot = null;
+    }
+
+    /**
+     * Returns the {@link SettingsSnapshot}, creating it if it was invalidated. It's invalidated when the
+     * {@link Environment} starts processing, when the setters of the involved settings are called on the
+     * {@link Environment}, and when the parent {@link Template} is switched (only happens with
+     * {@code incompatible_improvements} less than 2.3.22). Changing the settings of the parent {@link Template} or of
+     * the {@link Configuration} during template processing is not supported, and will be possibly ignored.
+     */
+    private SettingsSnapshot getSettingsSnapshot() {
+        SettingsSnapshot settingsSnapshot = this.settingsSnapshot;
+        if (settingsSnapshot == null) {
+            settingsSnapshot = new SettingsSnapshot(
+                    super.getTemplateExceptionHandler(),
+                    super.getAttemptExceptionReporter(),
+                    super.getArithmeticEngine(),
+                    super.getObjectWrapper(),
+                    super.getClassicCompatibleAsInt(),
+                    super.getTruncateBuiltinAlgorithm(),
+                    super.getLogTemplateExceptions(),
+                    super.getWrapUncheckedExceptions(),
+                    super.getLocale());
+            this.settingsSnapshot = settingsSnapshot;
+        }
+        return settingsSnapshot;
+    }
+
+    /**
+     * The values of some frequently read settings; otherwise each read would walk the {@link Configurable} parent
+     * chain ({@link Environment}, {@link Template}, {@link Configuration}).
+     */
+    private static final class SettingsSnapshot {
+        private final TemplateExceptionHandler templateExceptionHandler;
+        private final AttemptExceptionReporter attemptExceptionReporter;
+        private final ArithmeticEngine arithmeticEngine;
+        private final ObjectWrapper objectWrapper;
+        private final int classicCompatible;
+        private final TruncateBuiltinAlgorithm truncateBuiltinAlgorithm;
+        private final boolean logTemplateExceptions;
+        private final boolean wrapUncheckedExceptions;
+        private final Locale locale;
+
+        SettingsSnapshot(
+                TemplateExceptionHandler templateExceptionHandler,
+                AttemptExceptionReporter attemptExceptionReporter,
+                ArithmeticEngine arithmeticEngine,
+                ObjectWrapper objectWrapper,
+                int classicCompatible,
+                TruncateBuiltinAlgorithm truncateBuiltinAlgorithm,
+                boolean logTemplateExceptions,
+                boolean wrapUncheckedExceptions,
+                Locale locale) {
+            this.templateExceptionHandler = templateExceptionHandler;
+            this.attemptExceptionReporter = attemptExceptionReporter;
+            this.arithmeticEngine = arithmeticEngine;
+            this.objectWrapper = objectWrapper;
+            this.classicCompatible = classicCompatible;
+            this.truncateBuiltinAlgorithm = truncateBuiltinAlgorithm;
+            this.logTemplateExceptions = logTemplateExceptions;
+            this.wrapUncheckedExceptions = wrapUncheckedExceptions;
+            this.locale = locale;
+        }
+    }
+
     @Override
     public void setLocale(Locale locale) {
         Locale prevLocale = getLocale();
         super.setLocale(locale);
+        settingsSnapshot = null;
         if (!locale.equals(prevLocale)) {
             cachedTemplateNumberFormats = null;
             if (cachedTemplateNumberFormat != null && cachedTemplateNumberFormat.isLocaleBound()) {
@@ -2501,6 +2821,76 @@ public final class Environment extends Configurable {
         return configuration.getSharedVariable(name);
     }
 
+    /**
+     * Tells if reading the top-level variable {@code name} can go directly to
+     * {@link #getDataModelOrSharedVariable(String)}, instead of going through {@link #getVariable(String)}. That's the
+     * case if no code that has run in this {@link Environment} could have declared a variable with that name. The
+     * parser has already ensured that the template where the variable is read doesn't declare it; here we only check
+     * the other templates (included, imported, {@code ?interpret}-ed, etc.), and the variables set via the Java API.
+     * 
+     * @param templateDeclaredVariableNames
+     *            The variables declared in the template whose code reads the variable; see
+     *            {@link Template#getDataModelShortcutVariableNames()}.
+     */
+    boolean isDataModelShortcutAllowed(Set<String> templateDeclaredVariableNames, String name) {
+        HashSet<String> allDeclaredVariableNames = this.allDeclaredVariableNames;
+        if (allDeclaredVariableNames == null) {
+            Set<String> firstTemplateDeclaredVariableNames = this.firstTemplateDeclaredVariableNames;
+            return templateDeclaredVariableNames == firstTemplateDeclaredVariableNames
+                    || templateDeclaredVariableNames.isEmpty()
+                            && (firstTemplateDeclaredVariableNames == null
+                                    || !firstTemplateDeclaredVariableNames.contains(name));
+        }
+        return !allDeclaredVariableNames.contains(name)
+                && (templateDeclaredVariableNames.isEmpty()
+                        || registeredTemplateDeclaredVariableNames.containsKey(templateDeclaredVariableNames));
+    }
+
+    /**
+     * Must be called before any code of the template is executed in this {@link Environment}; see
+     * {@link #isDataModelShortcutAllowed(Set, String)}.
+     */
+    void registerTemplateDeclaredVariableNames(Template template) {
+        Set<String> names = _TemplateAPI.getDeclaredVariableNames(template);
+        if (names.isEmpty() || names == firstTemplateDeclaredVariableNames) {
+            return;
+        }
+        if (allDeclaredVariableNames == null && firstTemplateDeclaredVariableNames == null) {
+            firstTemplateDeclaredVariableNames = names;
+            return;
+        }
+        HashSet<String> allDeclaredVariableNames = getAllDeclaredVariableNames();
+        if (registeredTemplateDeclaredVariableNames.put(names, Boolean.TRUE) == null) {
+            allDeclaredVariableNames.addAll(names);
+        }
+    }
+
+    /**
+     * Called when a variable is set in a way that's not visible for the parser, like via the Java API.
+     */
+    private void registerDynamicallyDeclaredVariable(String name) {
+        HashSet<String> allDeclaredVariableNames = this.allDeclaredVariableNames;
+        if (allDeclaredVariableNames == null) {
+            if (firstTemplateDeclaredVariableNames != null && firstTemplateDeclaredVariableNames.contains(name)) {
+                return;
+            }
+            allDeclaredVariableNames = getAllDeclaredVariableNames();
+        }
+        allDeclaredVariableNames.add(name);
+    }
+
+    private HashSet<String> getAllDeclaredVariableNames() {
+        if (allDeclaredVariableNames == null) {
+            allDeclaredVariableNames = new HashSet<>();
+            registeredTemplateDeclaredVariableNames = new IdentityHashMap<>();
+            if (firstTemplateDeclaredVariableNames != null) {
+                allDeclaredVariableNames.addAll(firstTemplateDeclaredVariableNames);
+                registeredTemplateDeclaredVariableNames.put(firstTemplateDeclaredVariableNames, Boolean.TRUE);
+            }
+        }
+        return allDeclaredVariableNames;
+    }
+
     /**
      * Sets a variable in the global namespace, like {@code <#global name=value>}.
      * This can be considered a convenient shorthand for {@code getGlobalNamespace().put(name, model)}.
@@ -2548,6 +2938,15 @@ public final class Environment extends Configurable {
      *             if the environment is not executing a macro body.
      */
     public void setLocalVariable(String name, TemplateModel value) {
+        registerDynamicallyDeclaredVariable(name);
+        setTemplateDeclaredLocalVariable(name, value);
+    }
+
+    /**
+     * Like {@link #setLocalVariable(String, TemplateModel)}, but for variables that are declared in the template (like
+     * with {@code #local}), and so were already seen by the parser.
+     */
+    void setTemplateDeclaredLocalVariable(String name, TemplateModel value) {
         if (currentMacroContext == null) {
             throw new IllegalStateException("Not executing macro body");
         }
@@ -2899,7 +3298,131 @@ public final class Environment extends Configurable {
         return templateProcessingTracer;
     }
 
-    private void pushElement(TemplateElement element) {
+    /**
+     * Sets the point in time (as in {@link System#currentTimeMillis()}) after which the template processing is aborted
+     * with {@link ProcessingBudgetExceededException}. The default is {@link Long#MAX_VALUE}, which means that there's
+     * no deadline. The deadline is only checked between the executions of template elements (and not on each of
+     * them), so an element that takes long to execute (like a slow method call) will still run to completion.
+     *
+     * @since 2.3.33
+     */
+    public void setProcessingDeadline(long processingDeadline) {
+        this.processingDeadline = processingDeadline;
+        updateProcessingBudgetCheckedOnElements();
+    }
+
+    /**
+     * Getter pair of {@link #setProcessingDeadline(long)}.
+     *
+     * @since 2.3.33
+     */
+    public long getProcessingDeadline() {
+        return processingDeadline;
+    }
+
+    /**
+     * Sets the maximum number of characters that {@link #process()} can write to its output {@link Writer}, or else it
+     * throws {@link ProcessingBudgetExceededException}. The default is {@link Long#MAX_VALUE}, which means that
+     * there's no limit. This is checked when a template element execution starts, so the output can be somewhat longer
+     * than the limit. Output that's captured instead of written out (like with {@code <#assign x>...</#assign>}) is
+     * only counted when it's actually written out, if ever.
+     *
+     * @since 2.3.33
+     */
+    public void setMaxOutputCharacters(long maxOutputCharacters) {
+        this.maxOutputCharacters = maxOutputCharacters;
+        updateProcessingBudgetCheckedOnElements();
+    }
+
+    /**
+     * Getter pair of {@link #setMaxOutputCharacters(long)}.
+     *
+     * @since 2.3.33
+     */
+    public long getMaxOutputCharacters() {
+        return maxOutputCharacters;
+    }
+
+    /**
+     * Sets the maximum number of iterations that all the {@code #list}, {@code #items}, and {@code #foreach}
+     * directives can do together during {@link #process()}, or else it throws
+     * {@link ProcessingBudgetExceededException}. The default is {@link Long#MAX_VALUE}, which means that there's no
+     * limit.
+     *
+     * @since 2.3.33
+     */
+    public void setMaxLoopIterations(long maxLoopIterations) {
+        this.maxLoopIterations = maxLoopIterations;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxLoopIterations(long)}.
+     *
+     * @since 2.3.33
+     */
+    public long getMaxLoopIterations() {
+        return maxLoopIterations;
+    }
+
+    /**
+     * Sets how deeply macro and function calls can be nested into each other (most importantly, how deep a recursion
+     * can go), or else {@link ProcessingBudgetExceededException} is thrown. The default is {@link Integer#MAX_VALUE},
+     * which means that there's no limit (other than the Java stack size).
+     *
+     * @since 2.3.33
+     */
+    public void setMaxMacroCallDepth(int maxMacroCallDepth) {
+        this.maxMacroCallDepth = maxMacroCallDepth;
+    }
+
+    /**
+     * Getter pair of {@link #setMaxMacroCallDepth(int)}.
+     *
+     * @since 2.3.33
+     */
+    public int getMaxMacroCallDepth() {
+        return maxMacroCallDepth;
+    }
+
+    private void updateProcessingBudgetCheckedOnElements() {
+        processingBudgetCheckedOnElements
+                = processingDeadline != Long.MAX_VALUE || maxOutputCharacters != Long.MAX_VALUE;
+    }
+
+    private void checkProcessingBudget() throws ProcessingBudgetExceededException {
+        if (outputCharacterCounter != null && outputCharacterCounter.getCount() > maxOutputCharacters) {
+            throw new ProcessingBudgetExceededException(ProcessingBudgetExceededException.Limit.OUTPUT_CHARACTERS,
+                    "The maximum number of output characters (" + maxOutputCharacters + ") was exceeded.", this);
+        }
+        checkDeadline();
+    }
+
+    private void checkDeadline() throws ProcessingBudgetExceededException {
+        // Reading the clock is relatively costly, so we only do it occasionally
+        if (processingDeadline != Long.MAX_VALUE
+                && (++deadlineCheckSkips & DEADLINE_CHECK_INTERVAL_MASK) == 0
+                && System.currentTimeMillis() > processingDeadline) {
+            throw new ProcessingBudgetExceededException(ProcessingBudgetExceededException.Limit.DEADLINE,
+                    "The processing deadline was exceeded.", this);
+        }
+    }
+
+    /**
+     * Called by the looping directives before each iteration. Also checks the deadline, as loops with an empty body
+     * don't push any elements.
+     */
+    void countLoopIteration() throws ProcessingBudgetExceededException {
+        if (++loopIterationCount > maxLoopIterations) {
+            throw new ProcessingBudgetExceededException(ProcessingBudgetExceededException.Limit.LOOP_ITERATIONS,
+                    "The maximum number of loop iterations (" + maxLoopIterations + ") was exceeded.", this);
+        }
+        checkDeadline();
+    }
+
+    private void pushElement(TemplateElement element) throws ProcessingBudgetExceededException {
+        if (processingBudgetCheckedOnElements) {
+            checkProcessingBudget();
+        }
         final int newSize = ++instructionStackSize;
         TemplateElement[] instructionStack = this.instructionStack;
         if (newSize > instructionStack.length) {
@@ -3094,11 +3617,110 @@ public final class Environment extends Configurable {
      */
     public Template getTemplateForInclusion(String name, String encoding, boolean parseAsFTL, boolean ignoreMissing)
             throws IOException {
-        return configuration.getTemplate(
-                name, getLocale(), getIncludedTemplateCustomLookupCondition(),
-                encoding != null ? encoding : getIncludedTemplateEncoding(),
-                parseAsFTL,
-                ignoreMissing);
+        final Locale locale = getLocale();
+        final Object customLookupCondition = getIncludedTemplateCustomLookupCondition();
+        if (encoding == null) {
+            encoding = getIncludedTemplateEncoding();
+        }
+
+        // Including the same template repeatedly (like in a #list) is common, and the template cache lookup is
+        // relatively expensive, so we remember the result until the end of the processing.
+        final IncludedTemplateKey key = new IncludedTemplateKey(
+                name, locale, customLookupCondition, encoding, parseAsFTL, ignoreMissing);
+        if (includedTemplateCache == null) {
+            includedTemplateCache = new HashMap<>();
+        } else {
+            Object cachedResult = includedTemplateCache.get(key);
+            if (cachedResult != null) {
+                return cachedResult != MISSING_INCLUDED_TEMPLATE ? (Template) cachedResult : null;
+            }
+        }
+
+        Template template = configuration.getTemplate(
+                name, locale, customLookupCondition, encoding, parseAsFTL, ignoreMissing);
+        includedTemplateCache.put(key, template != null ? template : MISSING_INCLUDED_TEMPLATE);
+        return template;
+    }
+
+    /**
+     * Used in {@link #includedTemplateCache} when the template was missing (and that was allowed).
+     */
+    private static final Object MISSING_INCLUDED_TEMPLATE = new Object();
+
+    /**
+     * Counts the characters written to the output; used for {@link #setMaxOutputCharacters(long)}.
+     */
+    private static final class OutputCharacterCountingWriter extends FilterWriter {
+        private long count;
+
+        OutputCharacterCountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            count++;
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            count += len;
+            out.write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            count += len;
+            out.write(str, off, len);
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private static final class IncludedTemplateKey {
+        private final String name;
+        private final Locale locale;
+        private final Object customLookupCondition;
+        private final String encoding;
+        private final boolean parseAsFTL;
+        private final boolean ignoreMissing;
+
+        IncludedTemplateKey(String name, Locale locale, Object customLookupCondition, String encoding,
+                boolean parseAsFTL, boolean ignoreMissing) {
+            this.name = name;
+            this.locale = locale;
+            this.customLookupCondition = customLookupCondition;
+            this.encoding = encoding;
+            this.parseAsFTL = parseAsFTL;
+            this.ignoreMissing = ignoreMissing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof IncludedTemplateKey)) return false;
+            IncludedTemplateKey that = (IncludedTemplateKey) o;
+            return parseAsFTL == that.parseAsFTL
+                    && ignoreMissing == that.ignoreMissing
+                    && name.equals(that.name)
+                    && locale.equals(that.locale)
+                    && Objects.equals(customLookupCondition, that.customLookupCondition)
+                    && Objects.equals(encoding, that.encoding);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = name.hashCode();
+            result = 31 * result + locale.hashCode();
+            result = 31 * result + Objects.hashCode(customLookupCondition);
+            result = 31 * result + Objects.hashCode(encoding);
+            result = 31 * result + (parseAsFTL ? 1 : 0);
+            result = 31 * result + (ignoreMissing ? 1 : 0);
+            return result;
+        }
     }
 
     private Object getIncludedTemplateCustomLookupCondition() {
@@ -3134,6 +3756,7 @@ public final class Environment extends Configurable {
             legacyParent = includedTemplate;
         }
 
+        registerTemplateDeclaredVariableNames(includedTemplate);
         importMacros(includedTemplate);
         try {
             visit(includedTemplate.getRootTreeNode());
@@ -3491,6 +4114,20 @@ public final class Environment extends Configurable {
         void setTemplate(Template template) {
             this.template = template; 
         }
+
+        @Override
+        public void put(String key, Object value) {
+            registerDynamicallyDeclaredVariable(key);
+            super.put(key, value);
+        }
+
+        /**
+         * Like {@link #put(String, Object)}, but for variables that are declared in the template (like with
+         * {@code #assign}), and so were already seen by the parser.
+         */
+        void putTemplateDeclaredVariable(String key, TemplateModel value) {
+            super.put(key, value);
+        }
         
     }
     
@@ -3586,6 +4223,12 @@ public final class Environment extends Configurable {
             super.put(key, value);
         }
 
+        @Override
+        void putTemplateDeclaredVariable(String key, TemplateModel value) {
+            ensureInitializedRTE();
+            super.putTemplateDeclaredVariable(key, value);
+        }
+
         @Override
         public void put(String key, boolean b) {
             ensureInitializedRTE();
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import freemarker.cache.CacheStorage;
+import freemarker.cache.ConcurrentCacheStorage;
+import freemarker.cache.MruCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * Stores the output generated by the {@code #cache} directive, so that it needn't be generated again for the same key.
+ * Set it with {@link Configuration#setFragmentCache(FragmentCache)}; when that's {@code null} (the default), the
+ * {@code #cache} directive just executes its nested content every time.
+ *
+ * <p>The entries are stored in a {@link CacheStorage}, which decides how many entries are kept, and which are evicted
+ * (for example, a {@link MruCacheStorage} with a limited strong size). An entry is identified by the {@code #cache}
+ * directive (so the same key used in different {@code #cache} directives won't clash) and by the value of its
+ * {@code key} parameter. The entries don't reference the templates, so the cache doesn't prevent unloading them.
+ *
+ * <p>This class is thread safe, and is meant to be shared by all the templates of a {@link Configuration}.
+ *
+ * @since 2.3.33
+ */
+public final class FragmentCache {
+
+    private final CacheStorage storage;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param storage
+     *            Where the fragments are stored. It must be a {@link ConcurrentCacheStorage} that returns
+     *            {@code true} for {@link ConcurrentCacheStorage#isConcurrent()} (like {@link MruCacheStorage}), as
+     *            it's accessed without synchronization. Not {@code null}.
+     */
+    public FragmentCache(CacheStorage storage) {
+        NullArgumentException.check("storage", storage);
+        if (!(storage instanceof ConcurrentCacheStorage && ((ConcurrentCacheStorage) storage).isConcurrent())) {
+            throw new IllegalArgumentException(
+                    "The storage must be a concurrent ConcurrentCacheStorage, but it was: " + storage);
+        }
+        this.storage = storage;
+    }
+
+    public CacheStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Returns the not expired fragment stored for the key, or {@code null}; also updates the hit/miss statistics.
+     */
+    CachedFragment get(Object key) {
+        CachedFragment fragment = (CachedFragment) storage.get(key);
+        if (fragment != null && fragment.isExpired(System.nanoTime())) {
+            fragment = null;
+        }
+        (fragment != null ? hitCount : missCount).incrementAndGet();
+        return fragment;
+    }
+
+    void put(Object key, CachedFragment fragment) {
+        storage.put(key, fragment);
+    }
+
+    /**
+     * Removes all entries; the statistics aren't reset.
+     */
+    public void clear() {
+        storage.clear();
+    }
+
+    /**
+     * The number of times a {@code #cache} directive could use a stored fragment.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * The number of times a {@code #cache} directive had to execute its nested content, because there was no stored
+     * fragment for the key, or it has expired.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * The ratio of hits among all lookups, or 0 if there was no lookup yet.
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long lookups = hits + missCount.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * Sets the hit and miss counts to 0.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentCache(storage=" + storage + ", hitCount=" + hitCount + ", missCount=" + missCount + ")";
+    }
+
+    /**
+     * An output fragment stored in the {@link FragmentCache}.
+     */
+    static final class CachedFragment {
+        private final String plainText;
+        private final TemplateMarkupOutputModel markup;
+        private final long expiresAtNanos;
+        private final boolean expires;
+
+        /**
+         * @param plainText
+         *            The output, if it wasn't generated in a markup output format, otherwise {@code null}.
+         * @param markup
+         *            The output, if it was generated in a markup output format, otherwise {@code null}.
+         * @param ttlNanos
+         *            Time-to-live in nanoseconds, or negative if the entry never expires.
+         */
+        CachedFragment(String plainText, TemplateMarkupOutputModel markup, long ttlNanos) {
+            this.plainText = plainText;
+            this.markup = markup;
+            this.expires = ttlNanos >= 0;
+            this.expiresAtNanos = expires ? System.nanoTime() + ttlNanos : 0;
+        }
+
+        String getPlainText() {
+            return plainText;
+        }
+
+        TemplateMarkupOutputModel getMarkup() {
+            return markup;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return expires && nowNanos - expiresAtNanos >= 0;
+        }
+    }
+
+}
@@ -77,4 +77,13 @@ public class HTMLOutputFormat extends CommonMarkupOutputFormat<TemplateHTMLOutpu
         return new TemplateHTMLOutputModel(plainTextContent, markupContent);
     }
 
+    @Override
+    TemplateHTMLOutputModel newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText)
+            throws TemplateModelException {
+        // Subclasses may override newTemplateMarkupOutputModel(String, String) to create a model subclass:
+        return getClass() == HTMLOutputFormat.class
+                ? new TemplateHTMLOutputModel(contentRope, isPlainText)
+                : super.newTemplateMarkupOutputModel(contentRope, isPlainText);
+    }
+
 }
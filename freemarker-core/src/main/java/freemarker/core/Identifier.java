@@ -19,6 +19,8 @@
 
 package freemarker.core;
 
+import java.util.Set;
+
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 
@@ -29,6 +31,13 @@ final class Identifier extends Expression {
 
     private final String name;
 
+    /**
+     * If the variable is never declared in the template (with {@code #assign}, {@code #list}, etc.), then the set of
+     * the names of the variables that the template declares, otherwise {@code null}. Set by the parser, after the whole
+     * template was parsed.
+     */
+    private Set<String> templateDeclaredVariableNames;
+
     Identifier(String name) {
         this.name = name;
     }
@@ -36,6 +45,11 @@ final class Identifier extends Expression {
     @Override
     TemplateModel _eval(Environment env) throws TemplateException {
         try {
+            Set<String> templateDeclaredVariableNames = this.templateDeclaredVariableNames;
+            if (templateDeclaredVariableNames != null
+                    && env.isDataModelShortcutAllowed(templateDeclaredVariableNames, name)) {
+                return env.getDataModelOrSharedVariable(name);
+            }
             return env.getVariable(name);
         } catch (NullPointerException e) {
             if (env == null) {
@@ -59,6 +73,13 @@ final class Identifier extends Expression {
     String getName() {
         return name;
     }
+
+    /**
+     * See {@link #templateDeclaredVariableNames}.
+     */
+    void setTemplateDeclaredVariableNames(Set<String> templateDeclaredVariableNames) {
+        this.templateDeclaredVariableNames = templateDeclaredVariableNames;
+    }
     
     @Override
     String getNodeTypeSymbol() {
@@ -23,8 +23,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 
-import freemarker.template.SimpleNumber;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateCollectionModel;
 import freemarker.template.TemplateException;
@@ -33,9 +33,11 @@ import freemarker.template.TemplateHashModelEx2;
 import freemarker.template.TemplateHashModelEx2.KeyValuePair;
 import freemarker.template.TemplateHashModelEx2.KeyValuePairIterator;
 import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateModelIterator;
 import freemarker.template.TemplateScalarModel;
 import freemarker.template.TemplateSequenceModel;
+import freemarker.template._UnwrappedItemIterable;
 import freemarker.template.utility.Constants;
 
 /**
@@ -197,6 +199,12 @@ final class IteratorBlock extends TemplateElement {
         private Object openedIterator;
         private boolean hasNext;
         private TemplateModel loopVar1Value;
+        /**
+         * If {@code true}, {@link #loopVar1Value} wasn't set yet, and it must be created by wrapping
+         * {@link #unwrappedLoopVar1Value} with {@link #listedValue}, which is an {@link _UnwrappedItemIterable} then.
+         */
+        private boolean loopVar1ValueNotYetWrapped;
+        private Object unwrappedLoopVar1Value;
         private TemplateModel loopVar2Value;
         private int index;
         private boolean alreadyEntered;
@@ -274,6 +282,15 @@ final class IteratorBlock extends TemplateElement {
 
         private boolean executedNestedContentForCollOrSeqListing(Environment env, TemplateElement[] childBuffer)
                 throws IOException, TemplateException {
+            if (listedValue instanceof _UnwrappedItemIterable) {
+                Iterator<?> unwrappedItemIter = openedIterator == null
+                        ? ((_UnwrappedItemIterable) listedValue).unwrappedItemIterator()
+                        : openedIterator instanceof Iterator ? (Iterator<?>) openedIterator : null;
+                if (unwrappedItemIter != null) {
+                    return executedNestedContentForUnwrappedItemListing(env, childBuffer, unwrappedItemIter);
+                }
+            }
+
             final boolean listNotEmpty;
             if (listedValue instanceof TemplateCollectionModel) {
                 final TemplateCollectionModel collModel = (TemplateCollectionModel) listedValue;
@@ -286,6 +303,7 @@ final class IteratorBlock extends TemplateElement {
                         listLoop: do {
                             loopVar1Value = iterModel.next();
                             hasNext = iterModel.hasNext();
+                            env.countLoopIteration();
                             try {
                                 visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
                                 env.visit(childBuffer);
@@ -316,6 +334,7 @@ final class IteratorBlock extends TemplateElement {
                             listLoop: for (index = 0; index < size; index++) {
                                 loopVar1Value = seqModel.get(index);
                                 hasNext = (size > index + 1);
+                                env.countLoopIteration();
                                 try {
                                     visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
                                     env.visit(childBuffer);
@@ -361,6 +380,50 @@ final class IteratorBlock extends TemplateElement {
             return listNotEmpty;
         }
 
+        /**
+         * Lists the items of an {@link _UnwrappedItemIterable} without wrapping them, unless the loop variable is
+         * actually read; see {@link #getLocalVariable(String)}.
+         */
+        private boolean executedNestedContentForUnwrappedItemListing(
+                Environment env, TemplateElement[] childBuffer, Iterator<?> unwrappedItemIter)
+                throws IOException, TemplateException {
+            final boolean listNotEmpty = unwrappedItemIter.hasNext();
+            if (listNotEmpty) {
+                if (loopVar1Name != null) {
+                    try {
+                        listLoop: do {
+                            unwrappedLoopVar1Value = unwrappedItemIter.next();
+                            loopVar1Value = null;
+                            loopVar1ValueNotYetWrapped = true;
+                            hasNext = unwrappedItemIter.hasNext();
+                            env.countLoopIteration();
+                            try {
+                                visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
+                                env.visit(childBuffer);
+                            } catch (BreakOrContinueException br) {
+                                if (br == BreakOrContinueException.BREAK_INSTANCE) {
+                                    break listLoop;
+                                }
+                            } finally {
+                                visibleLoopVar1Name = null; // Hides all loop variables in FTL
+                            }
+                            index++;
+                        } while (hasNext);
+                    } finally {
+                        unwrappedLoopVar1Value = null;
+                        loopVar1ValueNotYetWrapped = false;
+                    }
+                    openedIterator = null;
+                } else {
+                    // We will reuse this at #items
+                    openedIterator = unwrappedItemIter;
+                    // Note: Loop variables will only become visible inside #items
+                    env.visit(childBuffer);
+                }
+            }
+            return listNotEmpty;
+        }
+
         private boolean executedNestedContentForHashListing(Environment env, TemplateElement[] childBuffer)
                 throws IOException, TemplateException {
             final boolean hashNotEmpty;
@@ -378,6 +441,7 @@ final class IteratorBlock extends TemplateElement {
                                 loopVar1Value = kvp.getKey();
                                 loopVar2Value = kvp.getValue();
                                 hasNext = kvpIter.hasNext();
+                                env.countLoopIteration();
                                 try {
                                     visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
                                     env.visit(childBuffer);
@@ -411,6 +475,7 @@ final class IteratorBlock extends TemplateElement {
                                 }
                                 loopVar2Value = listedHash.get(((TemplateScalarModel) loopVar1Value).getAsString());
                                 hasNext = keysIter.hasNext();
+                                env.countLoopIteration();
                                 try {
                                     visibleLoopVar1Name = loopVar1Name; // Makes all loop variables visible in FTL
                                     env.visit(childBuffer);
@@ -453,7 +518,7 @@ final class IteratorBlock extends TemplateElement {
         }
 
         @Override
-        public TemplateModel getLocalVariable(String name) {
+        public TemplateModel getLocalVariable(String name) throws TemplateModelException {
             String visibleLoopVar1Name = this.visibleLoopVar1Name; // Not this.loopVar1Name!
             if (visibleLoopVar1Name == null) {
                 // Loop variables aren't yet in scope in FTL
@@ -463,12 +528,16 @@ final class IteratorBlock extends TemplateElement {
             if (name.startsWith(visibleLoopVar1Name)) {
                 switch(name.length() - visibleLoopVar1Name.length()) {
                     case 0:
+                        if (loopVar1ValueNotYetWrapped) {
+                            loopVar1Value = ((_UnwrappedItemIterable) listedValue).wrapItem(unwrappedLoopVar1Value);
+                            loopVar1ValueNotYetWrapped = false;
+                        }
                         return loopVar1Value != null ? loopVar1Value
                                 : getTemplate().getConfiguration().getFallbackOnNullLoopVariable()
                                         ? null : TemplateNullModel.INSTANCE;
                     case 6: 
                         if (name.endsWith(LOOP_STATE_INDEX)) {
-                            return new SimpleNumber(index);
+                            return SmallIntegerModels.valueOf(index);
                         }
                         break;
                     case 9: 
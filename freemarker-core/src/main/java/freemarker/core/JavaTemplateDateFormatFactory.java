@@ -27,6 +27,7 @@ import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.log.Logger;
+import freemarker.template.MetricsRecorder;
 import freemarker.template.TemplateDateModel;
 
 class JavaTemplateDateFormatFactory extends TemplateDateFormatFactory {
@@ -50,20 +51,25 @@ class JavaTemplateDateFormatFactory extends TemplateDateFormatFactory {
     @Override
     public TemplateDateFormat get(String params, int dateType, Locale locale, TimeZone timeZone, boolean zonelessInput,
             Environment env) throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
-        return new JavaTemplateDateFormat(getJavaDateFormat(dateType, params, locale, timeZone));
+        return new JavaTemplateDateFormat(getJavaDateFormat(dateType, params, locale, timeZone, env));
     }
 
     /**
      * Returns a "private" copy (not in the global cache) for the given format.  
      */
-    private DateFormat getJavaDateFormat(int dateType, String nameOrPattern, Locale locale, TimeZone timeZone)
-            throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
+    private DateFormat getJavaDateFormat(int dateType, String nameOrPattern, Locale locale, TimeZone timeZone,
+            Environment env) throws UnknownDateTypeFormattingUnsupportedException, InvalidFormatParametersException {
 
         // Get DateFormat from global cache:
         CacheKey cacheKey = new CacheKey(dateType, nameOrPattern, locale, timeZone);
         DateFormat jFormat;
         
         jFormat = GLOBAL_FORMAT_CACHE.get(cacheKey);
+        MetricsRecorder metricsRecorder = env != null ? env.getConfiguration().getMetricsRecorder() : null;
+        if (metricsRecorder != null) {
+            metricsRecorder.incrementCounter(jFormat != null
+                    ? MetricsRecorder.DATE_FORMAT_CACHE_HITS : MetricsRecorder.DATE_FORMAT_CACHE_MISSES);
+        }
         if (jFormat == null) {
             // Add format to global format cache.
             StringTokenizer tok = new StringTokenizer(nameOrPattern, "_");
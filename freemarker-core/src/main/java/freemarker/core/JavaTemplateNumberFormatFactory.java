@@ -24,6 +24,7 @@ import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.log.Logger;
+import freemarker.template.MetricsRecorder;
 
 /**
  * Deals with {@link TemplateNumberFormat}-s that just wrap a Java {@link NumberFormat}.
@@ -47,6 +48,11 @@ class JavaTemplateNumberFormatFactory extends TemplateNumberFormatFactory {
             throws InvalidFormatParametersException {
         CacheKey cacheKey = new CacheKey(params, locale);
         NumberFormat jFormat = GLOBAL_FORMAT_CACHE.get(cacheKey);
+        MetricsRecorder metricsRecorder = env != null ? env.getConfiguration().getMetricsRecorder() : null;
+        if (metricsRecorder != null) {
+            metricsRecorder.incrementCounter(jFormat != null
+                    ? MetricsRecorder.NUMBER_FORMAT_CACHE_HITS : MetricsRecorder.NUMBER_FORMAT_CACHE_MISSES);
+        }
         if (jFormat == null) {
             if ("number".equals(params)) {
                 jFormat = NumberFormat.getNumberInstance(locale);
@@ -19,6 +19,7 @@
 
 package freemarker.core;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -224,28 +225,102 @@ public final class Macro extends TemplateElement implements TemplateModel {
         return function;
     }
 
-    class Context implements LocalContext {
-        final Environment.Namespace localVars; 
-        final TemplateObject callPlace;
-        final Environment.Namespace nestedContentNamespace;
-        final List<String> nestedContentParameterNames;
-        final LocalContextStack prevLocalContextStack;
-        final Context prevMacroContext;
+    /**
+     * Returns the index of the parameter in {@link #getArgumentNamesNoCopy()}, or the length of that array for the
+     * catch-all parameter, or -1 if there's no such parameter.
+     */
+    int getParameterIndex(String name) {
+        final String[] paramNames = this.paramNames;
+        for (int i = 0; i < paramNames.length; i++) {
+            if (paramNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return catchAllParamName != null && catchAllParamName.equals(name) ? paramNames.length : -1;
+    }
+
+    /**
+     * The number of slots needed by {@link Context} for the parameter values, including the catch-all parameter.
+     */
+    int getParameterSlotCount() {
+        return catchAllParamName != null ? paramNames.length + 1 : paramNames.length;
+    }
+
+    /**
+     * The local variables of a macro or function call. Instances are recycled by the {@link Environment} (see
+     * {@link Environment#invokeMacro}), so references to them must not be kept after the call has returned.
+     */
+    static final class Context implements LocalContext {
+        
+        /** Stored in {@link #paramValues} for parameters that were explicitly set to {@code null}. */
+        private static final TemplateModel NULL_VALUE = new TemplateModel() { };
+        /** Stored in {@link #paramValues} for an empty named catch-all parameter that wasn't yet created. */
+        private static final TemplateModel EMPTY_NAMED_CATCH_ALL = new TemplateModel() { };
+        /** Stored in {@link #paramValues} for an empty positional catch-all parameter that wasn't yet created. */
+        private static final TemplateModel EMPTY_POSITIONAL_CATCH_ALL = new TemplateModel() { };
+        private static final int MIN_PARAM_VALUES_CAPACITY = 8;
+        
+        private Environment env;
+        private Macro macro;
+        TemplateObject callPlace;
+        Environment.Namespace nestedContentNamespace;
+        List<String> nestedContentParameterNames;
+        LocalContextStack prevLocalContextStack;
+        Context prevMacroContext;
         TemplateModel argsSpecialVariableValue;
         
-        Context(Environment env, 
-                TemplateObject callPlace,
-                List<String> nestedContentParameterNames) {
-            this.localVars = env.new Namespace(); 
+        /**
+         * The values of the declared parameters (as ordered in {@link Macro#paramNames}), then of the catch-all
+         * parameter (if there's any). A {@code null} element means that the parameter wasn't set. It can be longer
+         * than needed, as it's reused when the context is recycled. It's {@code null} after {@link #getLocals()} was
+         * called, as then all local variables are stored in {@link #localVars}. 
+         */
+        private TemplateModel[] paramValues;
+        
+        /**
+         * The local variables that aren't parameters, or all local variables after {@link #getLocals()} was called;
+         * created on demand.
+         */
+        private Environment.Namespace localVars;
+        
+        /**
+         * Must be followed by {@link #reset()} once the call has ended, so that the context can be recycled.
+         */
+        void init(Environment env, Macro macro, TemplateObject callPlace, List<String> nestedContentParameterNames) {
+            this.env = env;
+            this.macro = macro;
             this.callPlace = callPlace;
             this.nestedContentNamespace = env.getCurrentNamespace();
             this.nestedContentParameterNames = nestedContentParameterNames;
             this.prevLocalContextStack = env.getLocalContextStack();
             this.prevMacroContext = env.getCurrentMacroContext();
+            
+            int paramSlotCount = macro.getParameterSlotCount();
+            if (paramValues == null || paramValues.length < paramSlotCount) {
+                paramValues = new TemplateModel[Math.max(paramSlotCount, MIN_PARAM_VALUES_CAPACITY)];
+            }
+        }
+        
+        /**
+         * Releases all references, so that this context can be recycled. 
+         */
+        void reset() {
+            if (paramValues != null) {
+                Arrays.fill(paramValues, 0, macro.getParameterSlotCount(), null);
+            }
+            env = null;
+            macro = null;
+            callPlace = null;
+            nestedContentNamespace = null;
+            nestedContentParameterNames = null;
+            prevLocalContextStack = null;
+            prevMacroContext = null;
+            argsSpecialVariableValue = null;
+            localVars = null;
         }
 
         Macro getMacro() {
-            return Macro.this;
+            return macro;
         }
 
         /**
@@ -257,8 +332,9 @@ public final class Macro extends TemplateElement implements TemplateModel {
             Expression firstUnresolvedDefaultValueExpression;
             InvalidReferenceException firstInvalidReferenceExceptionForDefaultValue;
 
+            final String[] paramNames = macro.paramNames;
             final TemplateModel[] argsSpecVarDraft;
-            if (Macro.this.requireArgsSpecialVariable) {
+            if (macro.requireArgsSpecialVariable) {
                 argsSpecVarDraft = new TemplateModel[paramNames.length];
             } else {
                 argsSpecVarDraft = null;
@@ -269,9 +345,9 @@ public final class Macro extends TemplateElement implements TemplateModel {
                 resolvedADefaultValue = hasUnresolvedDefaultValue = false;
                 for (int paramIndex = 0; paramIndex < paramNames.length; ++paramIndex) {
                     final String argName = paramNames[paramIndex];
-                    final TemplateModel argValue = localVars.get(argName);
+                    final TemplateModel argValue = getParamValue(paramIndex);
                     if (argValue == null) {
-                        Expression defaultValueExp = paramNamesWithDefault.get(argName);
+                        Expression defaultValueExp = macro.paramNamesWithDefault.get(argName);
                         if (defaultValueExp != null) {
                             try {
                                 TemplateModel defaultValue = defaultValueExp.eval(env);
@@ -281,7 +357,7 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                         hasUnresolvedDefaultValue = true;
                                     }
                                 } else {
-                                    localVars.put(argName, defaultValue);
+                                    setParamValue(paramIndex, defaultValue);
                                     resolvedADefaultValue = true;
 
                                     if (argsSpecVarDraft != null) {
@@ -295,11 +371,11 @@ public final class Macro extends TemplateElement implements TemplateModel {
                                 }
                             }
                         } else if (!env.isClassicCompatible()) {
-                            boolean argWasSpecified = localVars.containsKey(argName);
+                            boolean argWasSpecified = isParamSet(paramIndex);
                             throw new _MiscTemplateException(env,
                                     new _ErrorDescriptionBuilder(
-                                            "When calling ", (isFunction() ? "function" : "macro"), " ",
-                                            new _DelayedJQuote(name), 
+                                            "When calling ", (macro.isFunction() ? "function" : "macro"), " ",
+                                            new _DelayedJQuote(macro.name), 
                                             ", required parameter ", new _DelayedJQuote(argName),
                                             " (parameter #", Integer.valueOf(paramIndex + 1), ") was ",
                                             (argWasSpecified
@@ -333,11 +409,11 @@ public final class Macro extends TemplateElement implements TemplateModel {
             }
             
             if (argsSpecVarDraft != null) {
-                final String catchAllParamName = getMacro().catchAllParamName;
+                final String catchAllParamName = macro.catchAllParamName;
                 final TemplateModel catchAllArgValue = catchAllParamName != null
-                        ? localVars.get(catchAllParamName) : null;
+                        ? getParamValue(paramNames.length) : null;
 
-                if (getMacro().isFunction()) {
+                if (macro.isFunction()) {
                     int lengthWithCatchAlls = argsSpecVarDraft.length;
                     if (catchAllArgValue != null) {
                         lengthWithCatchAlls += ((TemplateSequenceModel) catchAllArgValue).size();
@@ -399,12 +475,75 @@ public final class Macro extends TemplateElement implements TemplateModel {
             } // if (argsSpecVarDraft != null)
         }
 
+        /**
+         * @param paramIndex
+         *            As returned by {@link Macro#getParameterIndex(String)}.
+         */
+        private TemplateModel getParamValue(int paramIndex) throws TemplateModelException {
+            if (paramValues == null) {
+                return localVars.get(getParamName(paramIndex));
+            }
+            
+            TemplateModel value = paramValues[paramIndex];
+            if (value == null || value == NULL_VALUE) {
+                return null;
+            }
+            if (value == EMPTY_NAMED_CATCH_ALL || value == EMPTY_POSITIONAL_CATCH_ALL) {
+                value = value == EMPTY_NAMED_CATCH_ALL
+                        ? new SimpleHash(new LinkedHashMap<String, Object>(), _ObjectWrappers.SAFE_OBJECT_WRAPPER, 0)
+                        : new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER);
+                paramValues[paramIndex] = value;
+            }
+            return value;
+        }
+        
+        private void setParamValue(int paramIndex, TemplateModel value) {
+            if (paramValues == null) {
+                localVars.put(getParamName(paramIndex), value);
+            } else {
+                paramValues[paramIndex] = value != null ? value : NULL_VALUE;
+            }
+        }
+
+        private boolean isParamSet(int paramIndex) {
+            return paramValues != null
+                    ? paramValues[paramIndex] != null
+                    : localVars.containsKey(getParamName(paramIndex));
+        }
+        
+        private String getParamName(int paramIndex) {
+            return paramIndex < macro.paramNames.length ? macro.paramNames[paramIndex] : macro.catchAllParamName;
+        }
+
         @Override
         public TemplateModel getLocalVariable(String name) throws TemplateModelException {
-             return localVars.get(name);
+            if (paramValues != null) {
+                int paramIndex = macro.getParameterIndex(name);
+                if (paramIndex != -1) {
+                    return getParamValue(paramIndex);
+                }
+            }
+            return localVars != null ? localVars.get(name) : null;
         }
 
-        Environment.Namespace getLocals() {
+        /**
+         * Returns all the local variables as a hash, which is live (changes in the local variables will be visible
+         * in it). As this can be leaked into the data model, after this was called, the local variables will be only
+         * stored in the returned hash.
+         */
+        Environment.Namespace getLocals() throws TemplateModelException {
+            if (paramValues != null) {
+                if (localVars == null) {
+                    localVars = env.new Namespace();
+                }
+                int paramSlotCount = macro.getParameterSlotCount();
+                for (int paramIndex = 0; paramIndex < paramSlotCount; paramIndex++) {
+                    if (paramValues[paramIndex] != null) {
+                        localVars.put(getParamName(paramIndex), getParamValue(paramIndex));
+                    }
+                }
+                paramValues = null;
+            }
             return localVars;
         }
         
@@ -412,14 +551,64 @@ public final class Macro extends TemplateElement implements TemplateModel {
          * Set a local variable in this macro 
          */
         void setLocalVar(String name, TemplateModel var) {
+            if (paramValues != null) {
+                int paramIndex = macro.getParameterIndex(name);
+                if (paramIndex != -1) {
+                    setParamValue(paramIndex, var);
+                    return;
+                }
+            }
+            if (localVars == null) {
+                localVars = env.new Namespace();
+            }
             localVars.put(name, var);
         }
 
+        /**
+         * Sets the catch-all parameter to an empty hash or sequence, though that's only created if it's read, or
+         * {@link #getNamedCatchAllParamValue()} or {@link #getPositionalCatchAllParamValue()} is called.
+         */
+        void setCatchAllParamValueToEmpty(boolean named) {
+            if (paramValues != null) {
+                paramValues[macro.paramNames.length] = named ? EMPTY_NAMED_CATCH_ALL : EMPTY_POSITIONAL_CATCH_ALL;
+            } else {
+                localVars.put(macro.catchAllParamName, named
+                        ? new SimpleHash(new LinkedHashMap<String, Object>(), _ObjectWrappers.SAFE_OBJECT_WRAPPER, 0)
+                        : new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER));
+            }
+        }
+
+        /**
+         * Returns the catch-all parameter value, creating it if needed; only call if
+         * {@link #setCatchAllParamValueToEmpty(boolean)} was called with {@code true}.
+         */
+        SimpleHash getNamedCatchAllParamValue() throws TemplateModelException {
+            return (SimpleHash) getParamValue(macro.paramNames.length);
+        }
+
+        /**
+         * Returns the catch-all parameter value, creating it if needed; only call if
+         * {@link #setCatchAllParamValueToEmpty(boolean)} was called with {@code false}.
+         */
+        SimpleSequence getPositionalCatchAllParamValue() throws TemplateModelException {
+            return (SimpleSequence) getParamValue(macro.paramNames.length);
+        }
+
         @Override
         public Collection getLocalVariableNames() throws TemplateModelException {
             HashSet result = new HashSet();
-            for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
-                result.add(((TemplateScalarModel) it.next()).getAsString());
+            if (paramValues != null) {
+                int paramSlotCount = macro.getParameterSlotCount();
+                for (int paramIndex = 0; paramIndex < paramSlotCount; paramIndex++) {
+                    if (paramValues[paramIndex] != null) {
+                        result.add(getParamName(paramIndex));
+                    }
+                }
+            }
+            if (localVars != null) {
+                for (TemplateModelIterator it = localVars.keys().iterator(); it.hasNext(); ) {
+                    result.add(((TemplateScalarModel) it.next()).getAsString());
+                }
             }
             return result;
         }
@@ -31,14 +31,17 @@ import freemarker.template.TemplateNumberModel;
 final class NumberLiteral extends Expression implements TemplateNumberModel {
 
     private final Number value;
+    /** As {@link SimpleNumber} is immutable, we can return the same instance on each evaluation. */
+    private final TemplateNumberModel valueModel;
 
     public NumberLiteral(Number value) {
         this.value = value;
+        this.valueModel = new SimpleNumber(value);
     }
     
     @Override
     TemplateModel _eval(Environment env) {
-        return new SimpleNumber(value);
+        return valueModel;
     }
 
     @Override
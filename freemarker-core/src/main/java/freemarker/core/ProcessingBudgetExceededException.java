@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateExceptionHandler;
+
+/**
+ * Thrown when a processing budget limit that was set in the {@link Environment} (like
+ * {@link Environment#setProcessingDeadline(long)}) was exceeded. Unlike other {@link TemplateException}-s, this is
+ * not passed to the {@link TemplateExceptionHandler}, and can't be caught with {@code #attempt}/{@code #recover}, so
+ * it always aborts the template processing.
+ *
+ * @since 2.3.33
+ */
+public class ProcessingBudgetExceededException extends TemplateException {
+
+    /**
+     * The kind of limit that was exceeded.
+     */
+    public enum Limit {
+        /** See {@link Environment#setProcessingDeadline(long)}. */
+        DEADLINE,
+        /** See {@link Environment#setMaxOutputCharacters(long)}. */
+        OUTPUT_CHARACTERS,
+        /** See {@link Environment#setMaxLoopIterations(long)}. */
+        LOOP_ITERATIONS,
+        /** See {@link Environment#setMaxMacroCallDepth(int)}. */
+        MACRO_CALL_DEPTH
+    }
+
+    private final Limit limit;
+
+    ProcessingBudgetExceededException(Limit limit, String description, Environment env) {
+        super(description, env);
+        this.limit = limit;
+    }
+
+    /**
+     * The kind of limit that was exceeded.
+     */
+    public Limit getLimit() {
+        return limit;
+    }
+
+}
@@ -77,4 +77,13 @@ public class RTFOutputFormat extends CommonMarkupOutputFormat<TemplateRTFOutputM
         return new TemplateRTFOutputModel(plainTextContent, markupContent);
     }
 
+    @Override
+    TemplateRTFOutputModel newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText)
+            throws TemplateModelException {
+        // Subclasses may override newTemplateMarkupOutputModel(String, String) to create a model subclass:
+        return getClass() == RTFOutputFormat.class
+                ? new TemplateRTFOutputModel(contentRope, isPlainText)
+                : super.newTemplateMarkupOutputModel(contentRope, isPlainText);
+    }
+
 }
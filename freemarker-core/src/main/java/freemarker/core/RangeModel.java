@@ -42,7 +42,7 @@ abstract class RangeModel implements TemplateSequenceModel, java.io.Serializable
             throw new _TemplateModelException("Range item index ", Integer.valueOf(index), " is out of bounds.");
         }
         long value = begin + getStep() * (long) index;
-        return value <= Integer.MAX_VALUE ? new SimpleNumber((int) value) : new SimpleNumber(value);
+        return value <= Integer.MAX_VALUE ? SmallIntegerModels.valueOf((int) value) : new SimpleNumber(value);
     }
     
     /**
@@ -19,12 +19,13 @@
 
 package freemarker.core;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-import freemarker.cache.MruCacheStorage;
 import freemarker.log.Logger;
 import freemarker.template.TemplateModelException;
+import freemarker.template.utility.SecurityUtilities;
 import freemarker.template.utility.StringUtil;
 
 /**
@@ -39,7 +40,18 @@ final class RegexpHelper {
     private static final Object flagWarningsCntSync = new Object();
     private static int flagWarningsCnt;
     
-    private static final MruCacheStorage patternCache = new MruCacheStorage(50, 150);
+    /**
+     * The maximum number of entries in {@link #patternCache}; can be set with the {@code freemarker.regexpCacheSize}
+     * system property.
+     */
+    private static final int PATTERN_CACHE_MAX_SIZE = Math.max(
+            SecurityUtilities.getSystemProperty("freemarker.regexpCacheSize", 500).intValue(), 1);
+
+    /**
+     * Used for patterns that aren't found in the {@link CompiledPattern} of the call place (which are typically
+     * dynamically generated patterns). Read without locking; when it's full, it's simply cleared.
+     */
+    private static final ConcurrentHashMap<PatternCacheKey, Pattern> patternCache = new ConcurrentHashMap<>();
 
     static private long intFlagToLong(int flag) {
         return flag & 0x0000FFFFL;
@@ -66,11 +78,7 @@ final class RegexpHelper {
     throws TemplateModelException {
         PatternCacheKey patternKey = new PatternCacheKey(patternString, flags);
         
-        Pattern result;
-        
-        synchronized (patternCache) {
-            result = (Pattern) patternCache.get(patternKey);
-        }
+        Pattern result = patternCache.get(patternKey);
         if (result != null) {
             return result;
         }
@@ -81,11 +89,46 @@ final class RegexpHelper {
             throw new _TemplateModelException(e,
                     "Malformed regular expression: ", new _DelayedGetMessage(e));
         }
-        synchronized (patternCache) {
-            patternCache.put(patternKey, result);
+        if (patternCache.size() >= PATTERN_CACHE_MAX_SIZE) {
+            patternCache.clear();
         }
+        patternCache.put(patternKey, result);
         return result;
-    };
+    }
+
+    /**
+     * Same as {@link #getPattern(String, int)}, but first checks if {@code lastCompiledPattern}, which is the result of
+     * the previous call at the same place in the template, is for the same pattern. As the pattern is usually a
+     * literal, that's normally the case, and so we don't even touch the shared cache.
+     *
+     * @param lastCompiledPattern
+     *            Maybe {@code null}
+     *
+     * @return The {@link CompiledPattern} that the caller should store, and pass in next time.
+     */
+    static CompiledPattern getCompiledPattern(String patternString, int flags, CompiledPattern lastCompiledPattern)
+            throws TemplateModelException {
+        if (lastCompiledPattern != null
+                && lastCompiledPattern.flags == flags && lastCompiledPattern.patternString.equals(patternString)) {
+            return lastCompiledPattern;
+        }
+        return new CompiledPattern(patternString, flags, getPattern(patternString, flags));
+    }
+
+    /**
+     * A {@link Pattern} together with the parameters it was created from.
+     */
+    static final class CompiledPattern {
+        private final String patternString;
+        private final int flags;
+        final Pattern pattern;
+
+        private CompiledPattern(String patternString, int flags, Pattern pattern) {
+            this.patternString = patternString;
+            this.flags = flags;
+            this.pattern = pattern;
+        }
+    }
 
     private static class PatternCacheKey {
         private final String patternString;
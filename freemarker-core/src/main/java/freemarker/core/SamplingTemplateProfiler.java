@@ -0,0 +1,543 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import freemarker.core.TemplateProcessingTracer.TracedElement;
+import freemarker.template.Template;
+import freemarker.template.utility.NullArgumentException;
+
+/**
+ * A low overhead profiler that's built on {@link TemplateProcessingTracer}, and so measures where the time is spent
+ * inside templates, on the level of template elements (directive calls, interpolations, static text). It's meant to
+ * be cheap enough to be left on in production.
+ *
+ * <p>
+ * To keep the overhead low, only a sample of the template processings is profiled; see
+ * {@link #SamplingTemplateProfiler(int)}. Call {@link #startProfiling(Environment)} for each {@link Environment} you
+ * create (or only for some of them), before calling {@link Environment#process()}. If the processing wasn't selected
+ * for profiling, that does nothing, and so that processing will run with no overhead at all. Otherwise it sets a
+ * {@link TemplateProcessingTracer} in the {@link Environment} that measures the time of each element with
+ * {@link System#nanoTime()}. That tracer only belongs to the given {@link Environment}, so it accumulates the data
+ * without any synchronization, and it only merges its data into the shared statistics when the processing of the
+ * top-level element has ended.
+ *
+ * <p>
+ * The results can be queried with {@link #getElementStatistics()}, and with {@link #writeCollapsedStacks(Writer)},
+ * which outputs them in the format that the usual flame graph tools use as input. All the numbers come from the
+ * sampled processings only; to estimate the totals, multiply them with {@link #getSamplingInterval()}.
+ *
+ * <p>
+ * This class is thread safe; the same instance is normally used for all {@link Environment}-s. Elements are
+ * identified by the name of their template, and their position in it, so the statistics remains meaningful if the
+ * template is reloaded (but not if it was modified).
+ *
+ * @since 2.3.33
+ */
+public class SamplingTemplateProfiler {
+
+    /**
+     * Call paths deeper than this (like with a runaway recursive macro) are cut off, and the time spent in the elements
+     * below this depth is accounted for as the self time of the element at the maximum depth.
+     */
+    static final int MAX_CALL_PATH_DEPTH = 128;
+
+    private static final int MAX_ELEMENT_LABEL_LENGTH = 60;
+
+    private final int samplingInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // The fields below are guarded by the lock
+    private MergedCallNode callTreeRoot = new MergedCallNode(null, null);
+    private long sampledProcessingCount;
+
+    /**
+     * Same as {@link #SamplingTemplateProfiler(int)} with 1 as parameter, that is, all template processings will be
+     * profiled.
+     */
+    public SamplingTemplateProfiler() {
+        this(1);
+    }
+
+    /**
+     * @param samplingInterval
+     *            On average every how manyth {@link #startProfiling(Environment)} call should start profiling. Which
+     *            calls will do that is decided randomly. Must be at least 1.
+     */
+    public SamplingTemplateProfiler(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("samplingInterval must be at least 1, but was " + samplingInterval);
+        }
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Decides if the processing in the given {@link Environment} will be profiled, and if so, sets the
+     * {@link TemplateProcessingTracer} of the {@link Environment} accordingly (replacing the earlier one). Must be
+     * called before {@link Environment#process()}, from the thread that will do the processing.
+     *
+     * @return Whether the processing will be profiled.
+     */
+    public boolean startProfiling(Environment env) {
+        NullArgumentException.check("env", env);
+        if (samplingInterval != 1 && ThreadLocalRandom.current().nextInt(samplingInterval) != 0) {
+            return false;
+        }
+        env.setTemplateProcessingTracer(new ProfilingTracer());
+        return true;
+    }
+
+    /**
+     * The sampling interval that was specified in the constructor.
+     */
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * The number of template processings (more precisely, top-level element executions) whose data was already
+     * merged into the statistics.
+     */
+    public long getSampledProcessingCount() {
+        lock.lock();
+        try {
+            return sampledProcessingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Discards all the statistics collected so far. Processings that are in progress when this is called will still
+     * add their data when they finish.
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            callTreeRoot = new MergedCallNode(null, null);
+            sampledProcessingCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the statistics of each template element that was executed in the sampled processings, in decreasing
+     * order of the self time.
+     */
+    public List<ElementStatistics> getElementStatistics() {
+        Map<ElementKey, ElementStatisticsBuilder> builders = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            addElementStatistics(callTreeRoot, builders, new HashMap<ElementKey, Boolean>());
+        } finally {
+            lock.unlock();
+        }
+
+        List<ElementStatistics> result = new ArrayList<>(builders.size());
+        for (ElementStatisticsBuilder builder : builders.values()) {
+            result.add(builder.build());
+        }
+        Collections.sort(result, new Comparator<ElementStatistics>() {
+            @Override
+            public int compare(ElementStatistics o1, ElementStatistics o2) {
+                return Long.compare(o2.getSelfTimeNanos(), o1.getSelfTimeNanos());
+            }
+        });
+        return result;
+    }
+
+    private static void addElementStatistics(
+            MergedCallNode node, Map<ElementKey, ElementStatisticsBuilder> builders,
+            Map<ElementKey, Boolean> keysOnPath) {
+        for (MergedCallNode child : node.children.values()) {
+            ElementStatisticsBuilder builder = builders.get(child.key);
+            if (builder == null) {
+                builder = new ElementStatisticsBuilder(child.key, child.label);
+                builders.put(child.key, builder);
+            }
+            builder.callCount += child.callCount;
+            builder.selfTimeNanos += child.selfTimeNanos;
+            // With recursion, the total time of the inner calls is already included in that of the outermost call:
+            boolean recursive = keysOnPath.containsKey(child.key);
+            if (!recursive) {
+                builder.totalTimeNanos += child.totalTimeNanos;
+                keysOnPath.put(child.key, Boolean.TRUE);
+            }
+            addElementStatistics(child, builders, keysOnPath);
+            if (!recursive) {
+                keysOnPath.remove(child.key);
+            }
+        }
+    }
+
+    /**
+     * Writes the self times of all the sampled call paths in the "collapsed stacks" format, which is accepted by most
+     * flame graph generators (like {@code flamegraph.pl}, or speedscope). Each line is a call path, from the top-level
+     * element to the element whose self time is shown, with the elements separated by {@code ;}, then a space and the
+     * self time in microseconds. Call paths with less than 1 microsecond of self time are omitted.
+     */
+    public void writeCollapsedStacks(Writer out) throws IOException {
+        NullArgumentException.check("out", out);
+        StringBuilder sb = new StringBuilder();
+        lock.lock();
+        try {
+            for (MergedCallNode child : callTreeRoot.children.values()) {
+                appendCollapsedStacks(child, new StringBuilder(), sb);
+            }
+        } finally {
+            lock.unlock();
+        }
+        out.write(sb.toString());
+    }
+
+    private static void appendCollapsedStacks(MergedCallNode node, StringBuilder path, StringBuilder out) {
+        int pathLength = path.length();
+        if (pathLength != 0) {
+            path.append(';');
+        }
+        path.append(node.label);
+        long selfTimeMicros = node.selfTimeNanos / 1000;
+        if (selfTimeMicros != 0) {
+            out.append(path).append(' ').append(selfTimeMicros).append('\n');
+        }
+        for (MergedCallNode child : node.children.values()) {
+            appendCollapsedStacks(child, path, out);
+        }
+        path.setLength(pathLength);
+    }
+
+    private void merge(LocalCallNode localRoot) {
+        lock.lock();
+        try {
+            mergeChildren(localRoot, callTreeRoot);
+            sampledProcessingCount++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void mergeChildren(LocalCallNode localNode, MergedCallNode mergedNode) {
+        for (int i = 0; i < localNode.childCount; i++) {
+            LocalCallNode localChild = localNode.children[i];
+            TracedElement element = localChild.element;
+            ElementKey key = new ElementKey(element);
+            MergedCallNode mergedChild = mergedNode.children.get(key);
+            if (mergedChild == null) {
+                mergedChild = new MergedCallNode(key, createLabel(element));
+                mergedNode.children.put(key, mergedChild);
+            }
+            mergedChild.callCount += localChild.callCount;
+            mergedChild.totalTimeNanos += localChild.totalTimeNanos;
+            mergedChild.selfTimeNanos += localChild.selfTimeNanos;
+            mergeChildren(localChild, mergedChild);
+        }
+    }
+
+    private static String createLabel(TracedElement element) {
+        String description = element.getDescription();
+        if (description.length() > MAX_ELEMENT_LABEL_LENGTH) {
+            description = description.substring(0, MAX_ELEMENT_LABEL_LENGTH - 3) + "...";
+        }
+        Template template = element.getTemplate();
+        String label = (template != null ? template.getSourceName() : null)
+                + ":" + element.getBeginLine() + ":" + element.getBeginColumn() + " " + description;
+        // These would break the collapsed stacks format:
+        return label.replace(';', ',').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static Object getElementType(TracedElement element) {
+        return element instanceof TemplateObject
+                ? ((TemplateObject) element).getNodeTypeSymbol()
+                : element.getClass();
+    }
+
+    /**
+     * The per-{@link Environment} tracer; it's only used by a single thread, so it doesn't synchronize.
+     */
+    private final class ProfilingTracer implements TemplateProcessingTracer {
+
+        private LocalCallNode root = new LocalCallNode(null);
+        private LocalCallNode[] frameNodes = new LocalCallNode[16];
+        private long[] frameStartTimes = new long[16];
+        private long[] frameChildTimes = new long[16];
+        /** The number of elements we are inside; can be more than the length of the arrays. */
+        private int depth;
+
+        @Override
+        public void enterElement(Environment env, TracedElement tracedElement) {
+            if (depth >= MAX_CALL_PATH_DEPTH) {
+                depth++;
+                return;
+            }
+            if (depth == frameNodes.length) {
+                int newLength = Math.min(depth * 2, MAX_CALL_PATH_DEPTH);
+                LocalCallNode[] newFrameNodes = new LocalCallNode[newLength];
+                System.arraycopy(frameNodes, 0, newFrameNodes, 0, depth);
+                frameNodes = newFrameNodes;
+                long[] newFrameStartTimes = new long[newLength];
+                System.arraycopy(frameStartTimes, 0, newFrameStartTimes, 0, depth);
+                frameStartTimes = newFrameStartTimes;
+                long[] newFrameChildTimes = new long[newLength];
+                System.arraycopy(frameChildTimes, 0, newFrameChildTimes, 0, depth);
+                frameChildTimes = newFrameChildTimes;
+            }
+            LocalCallNode parent = depth == 0 ? root : frameNodes[depth - 1];
+            frameNodes[depth] = parent.getOrAddChild(tracedElement);
+            frameChildTimes[depth] = 0;
+            frameStartTimes[depth] = System.nanoTime();
+            depth++;
+        }
+
+        @Override
+        public void exitElement(Environment env) {
+            if (depth == 0) {
+                // Profiling was started in the middle of the processing
+                return;
+            }
+            depth--;
+            if (depth >= MAX_CALL_PATH_DEPTH) {
+                return;
+            }
+
+            long totalTime = System.nanoTime() - frameStartTimes[depth];
+            LocalCallNode node = frameNodes[depth];
+            frameNodes[depth] = null;
+            node.callCount++;
+            node.totalTimeNanos += totalTime;
+            node.selfTimeNanos += totalTime - frameChildTimes[depth];
+
+            if (depth != 0) {
+                frameChildTimes[depth - 1] += totalTime;
+            } else {
+                merge(root);
+                root = new LocalCallNode(null);
+            }
+        }
+    }
+
+    /**
+     * Call tree node used by {@link ProfilingTracer}. As the number of children is usually small, they are stored in
+     * an array, and are looked up by element identity.
+     */
+    private static final class LocalCallNode {
+        private final TracedElement element;
+        private LocalCallNode[] children;
+        private int childCount;
+        private long callCount;
+        private long totalTimeNanos;
+        private long selfTimeNanos;
+
+        LocalCallNode(TracedElement element) {
+            this.element = element;
+        }
+
+        LocalCallNode getOrAddChild(TracedElement element) {
+            for (int i = 0; i < childCount; i++) {
+                LocalCallNode child = children[i];
+                if (child.element == element) {
+                    return child;
+                }
+            }
+
+            if (children == null) {
+                children = new LocalCallNode[4];
+            } else if (childCount == children.length) {
+                LocalCallNode[] newChildren = new LocalCallNode[childCount * 2];
+                System.arraycopy(children, 0, newChildren, 0, childCount);
+                children = newChildren;
+            }
+            LocalCallNode child = new LocalCallNode(element);
+            children[childCount++] = child;
+            return child;
+        }
+    }
+
+    /**
+     * Call tree node of the merged statistics; doesn't reference the {@link TemplateElement}-s, so it doesn't keep
+     * the {@link Template}-s in memory.
+     */
+    private static final class MergedCallNode {
+        private final ElementKey key;
+        private final String label;
+        private final Map<ElementKey, MergedCallNode> children = new LinkedHashMap<>();
+        private long callCount;
+        private long totalTimeNanos;
+        private long selfTimeNanos;
+
+        MergedCallNode(ElementKey key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+    }
+
+    private static final class ElementKey {
+        private final String templateSourceName;
+        private final int beginLine;
+        private final int beginColumn;
+        /** Elements can start at the same position (like a #list and its first nested element), hence this. */
+        private final Object elementType;
+
+        ElementKey(TracedElement element) {
+            Template template = element.getTemplate();
+            this.templateSourceName = template != null ? template.getSourceName() : null;
+            this.beginLine = element.getBeginLine();
+            this.beginColumn = element.getBeginColumn();
+            this.elementType = getElementType(element);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = templateSourceName != null ? templateSourceName.hashCode() : 0;
+            result = 31 * result + beginLine;
+            result = 31 * result + beginColumn;
+            result = 31 * result + elementType.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || obj.getClass() != getClass()) return false;
+            ElementKey other = (ElementKey) obj;
+            return beginLine == other.beginLine
+                    && beginColumn == other.beginColumn
+                    && elementType.equals(other.elementType)
+                    && (templateSourceName == null
+                            ? other.templateSourceName == null
+                            : templateSourceName.equals(other.templateSourceName));
+        }
+    }
+
+    private static final class ElementStatisticsBuilder {
+        private final ElementKey key;
+        private final String label;
+        private long callCount;
+        private long totalTimeNanos;
+        private long selfTimeNanos;
+
+        ElementStatisticsBuilder(ElementKey key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+
+        ElementStatistics build() {
+            return new ElementStatistics(
+                    key.templateSourceName, key.beginLine, key.beginColumn, label,
+                    callCount, totalTimeNanos, selfTimeNanos);
+        }
+    }
+
+    /**
+     * The aggregated statistics of a single template element, as returned by
+     * {@link SamplingTemplateProfiler#getElementStatistics()}.
+     */
+    public static final class ElementStatistics {
+        private final String templateSourceName;
+        private final int beginLine;
+        private final int beginColumn;
+        private final String label;
+        private final long callCount;
+        private final long totalTimeNanos;
+        private final long selfTimeNanos;
+
+        private ElementStatistics(
+                String templateSourceName, int beginLine, int beginColumn, String label,
+                long callCount, long totalTimeNanos, long selfTimeNanos) {
+            this.templateSourceName = templateSourceName;
+            this.beginLine = beginLine;
+            this.beginColumn = beginColumn;
+            this.label = label;
+            this.callCount = callCount;
+            this.totalTimeNanos = totalTimeNanos;
+            this.selfTimeNanos = selfTimeNanos;
+        }
+
+        /**
+         * The {@link Template#getSourceName()} of the template that contains the element; can be {@code null}.
+         */
+        public String getTemplateSourceName() {
+            return templateSourceName;
+        }
+
+        /**
+         * See {@link TracedElement#getBeginLine()}.
+         */
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        /**
+         * See {@link TracedElement#getBeginColumn()}.
+         */
+        public int getBeginColumn() {
+            return beginColumn;
+        }
+
+        /**
+         * Human readable identification of the element, which contains the template name, the position, and the
+         * (possibly truncated) {@link TracedElement#getDescription()}. This is also what
+         * {@link SamplingTemplateProfiler#writeCollapsedStacks(Writer)} uses.
+         */
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * The number of times the element was executed.
+         */
+        public long getCallCount() {
+            return callCount;
+        }
+
+        /**
+         * The time spent executing the element, including the time spent in the nested elements.
+         */
+        public long getTotalTimeNanos() {
+            return totalTimeNanos;
+        }
+
+        /**
+         * The time spent executing the element, excluding the time spent in the nested elements (including the
+         * elements of the called macros and functions).
+         */
+        public long getSelfTimeNanos() {
+            return selfTimeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return label + ": callCount=" + callCount
+                    + ", totalTimeNanos=" + totalTimeNanos + ", selfTimeNanos=" + selfTimeNanos;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import freemarker.template.SimpleNumber;
+import freemarker.template.TemplateNumberModel;
+
+/**
+ * Shared {@link TemplateNumberModel}-s for small {@code int} values, like loop indexes, sizes, and the results of
+ * arithmetic on such values, so that those don't need a new object each time.
+ */
+final class SmallIntegerModels {
+
+    private static final int MIN_CACHED = -128;
+    private static final int MAX_CACHED = 1023;
+    private static final SimpleNumber[] CACHE = new SimpleNumber[MAX_CACHED - MIN_CACHED + 1];
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new SimpleNumber(i + MIN_CACHED);
+        }
+    }
+
+    private SmallIntegerModels() {
+        // Not meant to be instantiated
+    }
+
+    static TemplateNumberModel valueOf(int n) {
+        return n >= MIN_CACHED && n <= MAX_CACHED ? CACHE[n - MIN_CACHED] : new SimpleNumber(n);
+    }
+
+    /**
+     * Returns a shared instance if the number is an {@link Integer} in the cached range, otherwise a new
+     * {@link SimpleNumber} that wraps the number as is.
+     */
+    static TemplateNumberModel valueOf(Number n) {
+        if (n instanceof Integer) {
+            int i = n.intValue();
+            if (i >= MIN_CACHED && i <= MAX_CACHED) {
+                return CACHE[i - MIN_CACHED];
+            }
+        }
+        return new SimpleNumber(n);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A string whose {@link String} form is only created on demand, in {@link #toString()}. Implementations must be
+ * immutable (as far as the represented content is concerned), and thread safe.
+ *
+ * @since 2.3.33
+ */
+interface StringRope {
+
+    /**
+     * The length of the content in characters.
+     */
+    int length();
+
+    /**
+     * Writes the content into the {@link Writer}; avoids creating the {@link String} if possible.
+     */
+    void writeTo(Writer out) throws IOException;
+
+    /**
+     * Returns the content as {@link String}; this is cached after the first call.
+     */
+    @Override
+    String toString();
+
+}
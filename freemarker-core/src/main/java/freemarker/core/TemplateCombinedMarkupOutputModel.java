@@ -42,6 +42,16 @@ public final class TemplateCombinedMarkupOutputModel
         this.outputFormat = outputFormat; 
     }
 
+    /**
+     * See {@link CommonTemplateMarkupOutputModel#CommonTemplateMarkupOutputModel(StringRope, boolean)}, and
+     * {@link #TemplateCombinedMarkupOutputModel(String, String, CombinedMarkupOutputFormat)}.
+     */
+    TemplateCombinedMarkupOutputModel(StringRope contentRope, boolean contentRopeIsPlainText,
+            CombinedMarkupOutputFormat outputFormat) {
+        super(contentRope, contentRopeIsPlainText);
+        this.outputFormat = outputFormat;
+    }
+
     @Override
     public CombinedMarkupOutputFormat getOutputFormat() {
         return outputFormat;
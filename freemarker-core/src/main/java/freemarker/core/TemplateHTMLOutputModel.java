@@ -35,6 +35,14 @@ public class TemplateHTMLOutputModel extends CommonTemplateMarkupOutputModel<Tem
         super(plainTextContent, markupContent);
     }
 
+    /**
+     * See {@link CommonTemplateMarkupOutputModel#CommonTemplateMarkupOutputModel(StringRope, boolean)}.
+     * @since 2.3.33
+     */
+    TemplateHTMLOutputModel(StringRope contentRope, boolean contentRopeIsPlainText) {
+        super(contentRope, contentRopeIsPlainText);
+    }
+
     @Override
     public HTMLOutputFormat getOutputFormat() {
         return HTMLOutputFormat.INSTANCE;
@@ -28,6 +28,8 @@ import freemarker.template.Template;
  * Use {@link Environment#setTemplateProcessingTracer(TemplateProcessingTracer)} to set a tracer for the current
  * environment.
  * 
+ * @see SamplingTemplateProfiler
+ *
  * @since 2.3.33
  */
 public interface TemplateProcessingTracer {
@@ -35,6 +35,14 @@ public class TemplateRTFOutputModel extends CommonTemplateMarkupOutputModel<Temp
         super(plainTextContent, markupContent);
     }
 
+    /**
+     * See {@link CommonTemplateMarkupOutputModel#CommonTemplateMarkupOutputModel(StringRope, boolean)}.
+     * @since 2.3.33
+     */
+    TemplateRTFOutputModel(StringRope contentRope, boolean contentRopeIsPlainText) {
+        super(contentRope, contentRopeIsPlainText);
+    }
+
     @Override
     public RTFOutputFormat getOutputFormat() {
         return RTFOutputFormat.INSTANCE;
@@ -35,6 +35,14 @@ public class TemplateXHTMLOutputModel extends TemplateXMLOutputModel {
         super(plainTextContent, markupContent);
     }
 
+    /**
+     * See {@link CommonTemplateMarkupOutputModel#CommonTemplateMarkupOutputModel(StringRope, boolean)}.
+     * @since 2.3.33
+     */
+    TemplateXHTMLOutputModel(StringRope contentRope, boolean contentRopeIsPlainText) {
+        super(contentRope, contentRopeIsPlainText);
+    }
+
     @Override
     public XHTMLOutputFormat getOutputFormat() {
         return XHTMLOutputFormat.INSTANCE;
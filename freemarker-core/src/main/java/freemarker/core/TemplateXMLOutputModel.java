@@ -35,6 +35,14 @@ public class TemplateXMLOutputModel extends CommonTemplateMarkupOutputModel<Temp
         super(plainTextContent, markupContent);
     }
 
+    /**
+     * See {@link CommonTemplateMarkupOutputModel#CommonTemplateMarkupOutputModel(StringRope, boolean)}.
+     * @since 2.3.33
+     */
+    TemplateXMLOutputModel(StringRope contentRope, boolean contentRopeIsPlainText) {
+        super(contentRope, contentRopeIsPlainText);
+    }
+
     @Override
     public XMLOutputFormat getOutputFormat() {
         return XMLOutputFormat.INSTANCE;
@@ -20,6 +20,8 @@
 package freemarker.core;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
 
 import freemarker.template.utility.CollectionUtils;
 import freemarker.template.utility.StringUtil;
@@ -38,6 +40,15 @@ public final class TextBlock extends TemplateElement {
     // write. 
     private char[] text;
     private final boolean unparsed;
+    /**
+     * If not {@code null}, it's {@link #text} with the whitespace compressed like
+     * {@link freemarker.template.utility.StandardCompress} does, except that the leading and trailing whitespace is
+     * kept as is (as its compression depends on the surrounding output). Set for the static text inside
+     * {@code #compress} by {@link #compressWhitespace()}.
+     */
+    private char[] compressedText;
+    /** The start and end of the section of {@link #compressedText} that's not the leading or trailing whitespace. */
+    private int compressedTextStart, compressedTextEnd;
 
     public TextBlock(String text) {
         this(text, false);
@@ -54,6 +65,72 @@ public final class TextBlock extends TemplateElement {
     
     void replaceText(String text) {
         this.text = text.toCharArray();
+        this.compressedText = null;
+    }
+
+    /**
+     * Calculates {@link #compressedText}, so that when this is written to the {@link _WhitespaceCompressingWriter} of
+     * {@link freemarker.template.utility.StandardCompress}, only the leading and trailing whitespace has to be
+     * processed by it. Must be called after {@link #postParseCleanup(boolean)}.
+     */
+    void compressWhitespace() {
+        if (compressedText != null) {
+            return;
+        }
+
+        final char[] text = this.text;
+        final int len = text.length;
+        int start = 0;
+        while (start < len && Character.isWhitespace(text[start])) {
+            start++;
+        }
+        if (start == len) {
+            // Only whitespace, so nothing can be done at parse time.
+            return;
+        }
+        int end = len;
+        while (Character.isWhitespace(text[end - 1])) {
+            end--;
+        }
+
+        StringBuilder sb = new StringBuilder(len);
+        sb.append(text, 0, start);
+        int i = start;
+        while (i < end) {
+            char c = text[i];
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+                i++;
+            } else {
+                // Same state machine as in StandardCompress, except that here the whitespace always follows a
+                // non-whitespace character, and is followed by one.
+                String lineBreak = null;
+                boolean sawCr = false;
+                do {
+                    if (lineBreak == null) {
+                        if (sawCr) {
+                            lineBreak = c == '\n' ? "\r\n" : "\r";
+                        } else if (c == '\r') {
+                            sawCr = true;
+                        } else if (c == '\n') {
+                            lineBreak = "\n";
+                        }
+                    }
+                    c = text[++i];
+                } while (Character.isWhitespace(c));
+                sb.append(lineBreak != null ? lineBreak : sawCr ? "\r" : " ");
+            }
+        }
+        int compressedEnd = sb.length();
+        sb.append(text, end, len - end);
+
+        char[] compressedText = sb.toString().toCharArray();
+        if (Arrays.equals(compressedText, text)) {
+            compressedText = text;
+        }
+        compressedTextStart = start;
+        compressedTextEnd = compressedEnd;
+        this.compressedText = compressedText;
     }
 
     /**
@@ -64,7 +141,21 @@ public final class TextBlock extends TemplateElement {
     @Override
     public TemplateElement[] accept(Environment env)
     throws IOException {
-        env.getOut().write(text);
+        Writer out = env.getOut();
+        char[] compressedText = this.compressedText;
+        if (compressedText != null && out instanceof _WhitespaceCompressingWriter) {
+            int start = compressedTextStart;
+            int end = compressedTextEnd;
+            if (start != 0) {
+                out.write(compressedText, 0, start);
+            }
+            ((_WhitespaceCompressingWriter) out).writeCompressed(compressedText, start, end - start);
+            if (end != compressedText.length) {
+                out.write(compressedText, end, compressedText.length - end);
+            }
+        } else {
+            out.write(text);
+        }
         return null;
     }
 
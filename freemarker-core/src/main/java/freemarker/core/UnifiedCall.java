@@ -68,6 +68,17 @@ final class UnifiedCall extends TemplateElement implements DirectiveCallPlace {
         this.bodyParameterNames = bodyParameterNames;
     }
 
+    @Override
+    TemplateElement postParseCleanup(boolean stripWhitespace) throws ParseException {
+        TemplateElement result = super.postParseCleanup(stripWhitespace);
+        if (nameExp instanceof Identifier && "compress".equals(((Identifier) nameExp).getName())) {
+            // Most probably the StandardCompress from the shared variables, and if it's not, the compressed text won't
+            // be used:
+            CompressedBlock.compressStaticText(this);
+        }
+        return result;
+    }
+
     @Override
     TemplateElement[] accept(Environment env) throws TemplateException, IOException {
         TemplateModel tm = nameExp.eval(env);
@@ -77,4 +77,13 @@ public class XHTMLOutputFormat extends XMLOutputFormat {
         return new TemplateXHTMLOutputModel(plainTextContent, markupContent);
     }
 
+    @Override
+    TemplateXMLOutputModel newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText)
+            throws TemplateModelException {
+        // Subclasses may override newTemplateMarkupOutputModel(String, String) to create a model subclass:
+        return getClass() == XHTMLOutputFormat.class
+                ? new TemplateXHTMLOutputModel(contentRope, isPlainText)
+                : super.newTemplateMarkupOutputModel(contentRope, isPlainText);
+    }
+
 }
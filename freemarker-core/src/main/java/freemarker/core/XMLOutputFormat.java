@@ -77,4 +77,13 @@ public class XMLOutputFormat extends CommonMarkupOutputFormat<TemplateXMLOutputM
         return new TemplateXMLOutputModel(plainTextContent, markupContent);
     }
 
+    @Override
+    TemplateXMLOutputModel newTemplateMarkupOutputModel(StringRope contentRope, boolean isPlainText)
+            throws TemplateModelException {
+        // Subclasses may override newTemplateMarkupOutputModel(String, String) to create a model subclass:
+        return getClass() == XMLOutputFormat.class
+                ? new TemplateXMLOutputModel(contentRope, isPlainText)
+                : super.newTemplateMarkupOutputModel(contentRope, isPlainText);
+    }
+
 }
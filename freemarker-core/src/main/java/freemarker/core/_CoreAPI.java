@@ -77,6 +77,7 @@ public class _CoreAPI {
         addName(allNames, lcNames, ccNames, "attempt");
         addName(allNames, lcNames, ccNames, "autoesc", "autoEsc");
         addName(allNames, lcNames, ccNames, "break");
+        addName(allNames, lcNames, ccNames, "cache");
         addName(allNames, lcNames, ccNames, "call");
         addName(allNames, lcNames, ccNames, "case");
         addName(allNames, lcNames, ccNames, "comment");
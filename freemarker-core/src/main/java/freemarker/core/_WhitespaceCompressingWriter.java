@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+
+/**
+ * Don't use this; used internally by FreeMarker, might changes without notice.
+ * 
+ * <p>Implemented by the {@link java.io.Writer} of {@link freemarker.template.utility.StandardCompress}, so that the
+ * static text inside {@code #compress} (and {@code <@compress>}), which was already compressed when the template was
+ * parsed, needn't go through its whitespace compressing state machine again on each template execution.
+ * 
+ * @since 2.3.33
+ */
+public interface _WhitespaceCompressingWriter {
+
+    /**
+     * Writes text whose whitespace was already compressed, with the same result as if it was written with
+     * {@link java.io.Writer#write(char[], int, int)}.
+     * 
+     * @param cbuf
+     *            The section to write must start and end with a non-whitespace character, and each of its whitespace
+     *            sequences must be already compressed to a single space, or to a single line break (CR, LF, or
+     *            CRLF), just like the {@link freemarker.template.utility.StandardCompress} does it when it's not in
+     *            single line mode.
+     */
+    void writeCompressed(char[] cbuf, int off, int len) throws IOException;
+
+}
@@ -23,6 +23,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import freemarker.ext.util.ModelCache;
 import freemarker.ext.util.ModelFactory;
@@ -31,6 +32,7 @@ import freemarker.template.TemplateModel;
 public class BeansModelCache extends ModelCache {
     private final Map<Class<?>, ModelFactory> classToFactory = new ConcurrentHashMap<>();
     private final Set<String> mappedClassNames = new HashSet<>();
+    private final ReentrantLock factoryCreationLock = new ReentrantLock();
 
     private final BeansWrapper wrapper;
     
@@ -44,15 +46,17 @@ public class BeansModelCache extends ModelCache {
     }
     
     @Override
-    @SuppressFBWarnings(value="JLM_JSR166_UTILCONCURRENT_MONITORENTER", justification="Locks for factory creation only")
     protected TemplateModel create(Object object) {
         Class clazz = object.getClass();
         
         ModelFactory factory = classToFactory.get(clazz);
         
         if (factory == null) {
-            // Synchronized so that we won't unnecessarily create the same factory for multiple times in parallel.
-            synchronized (classToFactory) {
+            // Locked so that we won't unnecessarily create the same factory for multiple times in parallel. (Not
+            // synchronized, as getModelFactory might wait for class introspection, which would pin the carrier thread
+            // of virtual threads.)
+            factoryCreationLock.lock();
+            try {
                 factory = classToFactory.get(clazz);
                 if (factory == null) {
                     String className = clazz.getName();
@@ -65,6 +69,8 @@ public class BeansModelCache extends ModelCache {
                     factory = wrapper.getModelFactory(clazz);
                     classToFactory.put(clazz, factory);
                 }
+            } finally {
+                factoryCreationLock.unlock();
             }
         }
         
@@ -1698,7 +1698,6 @@ public class BeansWrapper implements RichObjectWrapper, WriteProtectable {
         return enumModels;
     }
     
-    /** For Unit tests only */
     ModelCache getModelCache() {
         return modelCache;
     }
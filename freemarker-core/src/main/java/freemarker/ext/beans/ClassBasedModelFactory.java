@@ -19,10 +19,10 @@
 
 package freemarker.ext.beans;
 
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import freemarker.core._DelayedJQuote;
 import freemarker.core._TemplateModelException;
@@ -38,7 +38,8 @@ abstract class ClassBasedModelFactory implements TemplateHashModel {
     private final BeansWrapper wrapper;
     
     private final Map<String,TemplateModel> cache = new ConcurrentHashMap<>();
-    private final Set<String> classIntrospectionsInProgress = new HashSet<>();
+    /** Guarded by the shared introspection lock; the latch is released when the introspection has ended. */
+    private final Map<String, CountDownLatch> classIntrospectionsInProgress = new HashMap<>();
     
     protected ClassBasedModelFactory(BeansWrapper wrapper) {
         this.wrapper = wrapper;
@@ -66,30 +67,35 @@ abstract class ClassBasedModelFactory implements TemplateHashModel {
 
         final ClassIntrospector classIntrospector;
         int classIntrospectorClearingCounter;
+        final CountDownLatch introspectionDone;
         final Object sharedLock = wrapper.getSharedIntrospectionLock();
-        synchronized (sharedLock) {
-            TemplateModel model = cache.get(key);
-            if (model != null) return model;
-            
-            while (model == null && classIntrospectionsInProgress.contains(key)) {
-                // Another thread is already introspecting this class;
-                // waiting for its result.
-                try {
-                    sharedLock.wait();
-                    model = cache.get(key);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException("Class inrospection data lookup aborted: " + e);
+        while (true) {
+            CountDownLatch introspectionInProgress;
+            synchronized (sharedLock) {
+                TemplateModel model = cache.get(key);
+                if (model != null) return model;
+
+                introspectionInProgress = classIntrospectionsInProgress.get(key);
+                if (introspectionInProgress == null) {
+                    // This will be the thread that introspects this class.
+                    introspectionDone = new CountDownLatch(1);
+                    classIntrospectionsInProgress.put(key, introspectionDone);
+
+                    // While the classIntrospector should not be changed from another thread, badly written apps can do
+                    // that, and it's cheap to get the classIntrospector from inside the lock here:
+                    classIntrospector = wrapper.getClassIntrospector();
+                    classIntrospectorClearingCounter = classIntrospector.getClearingCounter();
+                    break;
                 }
             }
-            if (model != null) return model;
-            
-            // This will be the thread that introspects this class.
-            classIntrospectionsInProgress.add(key);
 
-            // While the classIntrospector should not be changed from another thread, badly written apps can do that,
-            // and it's cheap to get the classIntrospector from inside the lock here:   
-            classIntrospector = wrapper.getClassIntrospector();
-            classIntrospectorClearingCounter = classIntrospector.getClearingCounter();
+            // Another thread is already introspecting this class; waiting for its result outside the monitor (so
+            // that the carrier thread isn't pinned if we are on a virtual thread).
+            try {
+                introspectionInProgress.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException("Class inrospection data lookup aborted: " + e);
+            }
         }
         try {
             final Class<?> clazz = ClassUtil.forName(key);
@@ -117,8 +123,8 @@ abstract class ClassBasedModelFactory implements TemplateHashModel {
         } finally {
             synchronized (sharedLock) {
                 classIntrospectionsInProgress.remove(key);
-                sharedLock.notifyAll();
             }
+            introspectionDone.countDown();
         }
     }
     
@@ -46,6 +46,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 
 import freemarker.core.BugException;
 import freemarker.core._JavaVersions;
@@ -171,7 +172,8 @@ class ClassIntrospector {
     private final Map<Class<?>, Map<Object, Object>> cache
             = new ConcurrentHashMap<>(0, 0.75f, 16);
     private final Set<String> cacheClassNames = new HashSet<>(0);
-    private final Set<Class<?>> classIntrospectionsInProgress = new HashSet<>(0);
+    /** Guarded by {@link #sharedLock}; the latch is released when the introspection of the class has ended. */
+    private final Map<Class<?>, CountDownLatch> classIntrospectionsInProgress = new HashMap<>(0);
 
     private final List<WeakReference<Object/*ClassBasedModelFactory|ModelCache>*/>> modelFactories
             = new LinkedList<>();
@@ -242,31 +244,39 @@ class ClassIntrospector {
             if (introspData != null) return introspData;
         }
 
-        String className;
-        synchronized (sharedLock) {
-            Map<Object, Object> introspData = cache.get(clazz);
-            if (introspData != null) return introspData;
+        final String className = clazz.getName();
+        final CountDownLatch introspectionDone;
+        boolean sameNameClassesChecked = false;
+        while (true) {
+            CountDownLatch introspectionInProgress;
+            synchronized (sharedLock) {
+                Map<Object, Object> introspData = cache.get(clazz);
+                if (introspData != null) return introspData;
 
-            className = clazz.getName();
-            if (cacheClassNames.contains(className)) {
-                onSameNameClassesDetected(className);
-            }
+                if (!sameNameClassesChecked) {
+                    if (cacheClassNames.contains(className)) {
+                        onSameNameClassesDetected(className);
+                    }
+                    sameNameClassesChecked = true;
+                }
 
-            while (introspData == null && classIntrospectionsInProgress.contains(clazz)) {
-                // Another thread is already introspecting this class;
-                // waiting for its result.
-                try {
-                    sharedLock.wait();
-                    introspData = cache.get(clazz);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(
-                            "Class introspection data lookup aborted: " + e);
+                introspectionInProgress = classIntrospectionsInProgress.get(clazz);
+                if (introspectionInProgress == null) {
+                    // This will be the thread that introspects this class.
+                    introspectionDone = new CountDownLatch(1);
+                    classIntrospectionsInProgress.put(clazz, introspectionDone);
+                    break;
                 }
             }
-            if (introspData != null) return introspData;
 
-            // This will be the thread that introspects this class.
-            classIntrospectionsInProgress.add(clazz);
+            // Another thread is already introspecting this class; waiting for its result. We wait outside the
+            // monitor, as waiting inside it would pin the carrier thread if we are on a virtual thread.
+            try {
+                introspectionInProgress.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(
+                        "Class introspection data lookup aborted: " + e);
+            }
         }
         try {
             Map<Object, Object> introspData = createClassIntrospectionData(clazz);
@@ -278,8 +288,8 @@ class ClassIntrospector {
         } finally {
             synchronized (sharedLock) {
                 classIntrospectionsInProgress.remove(clazz);
-                sharedLock.notifyAll();
             }
+            introspectionDone.countDown();
         }
     }
 
@@ -1011,6 +1021,13 @@ class ClassIntrospector {
         }
     }
 
+    /**
+     * Returns the number of classes whose introspection data is currently cached.
+     */
+    int getCachedClassCount() {
+        return cache.size();
+    }
+
     private void onSameNameClassesDetected(String className) {
         // TODO: This behavior should be pluggable, as in environments where
         // some classes are often reloaded or multiple versions of the
@@ -227,4 +227,18 @@ packedArgs[i] = args[i];
         return bwc.getClassIntrospectorBuilder();
     }
 
+    /**
+     * @since 2.3.33
+     */
+    public static int getIntrospectedClassCount(BeansWrapper bw) {
+        return bw.getClassIntrospector().getCachedClassCount();
+    }
+
+    /**
+     * @since 2.3.33
+     */
+    public static long getModelCacheMissCount(BeansWrapper bw) {
+        return bw.getModelCache().getCacheMissCount();
+    }
+
 }
@@ -23,6 +23,8 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelAdapter;
@@ -35,6 +37,12 @@ public abstract class ModelCache {
     private boolean useCache = false;
     private Map<Object, ModelReference> modelCache = null;
     private ReferenceQueue<TemplateModel> refQueue = null;
+    /**
+     * Guards {@link #modelCache}; not a {@code synchronized} block, so that threads waiting for it won't pin the
+     * carrier thread of virtual threads.
+     */
+    private final ReentrantLock modelCacheLock = new ReentrantLock();
+    private final LongAdder cacheMissCount = new LongAdder();
     
     protected ModelCache() {
     }
@@ -74,6 +82,7 @@ public abstract class ModelCache {
             if (model == null) {
                 model = create(object);
                 register(model, object);
+                cacheMissCount.increment();
             }
             return model;
         } else {
@@ -81,13 +90,26 @@ public abstract class ModelCache {
         }
     }
     
+    /**
+     * The number of times {@link #getInstance(Object)} had to create a new model, because it wasn't found in the
+     * cache. This doesn't include the cases when the cache is not used (see {@link #setUseCache(boolean)}).
+     *
+     * @since 2.3.33
+     */
+    public long getCacheMissCount() {
+        return cacheMissCount.sum();
+    }
+
     protected abstract TemplateModel create(Object object);
     protected abstract boolean isCacheable(Object object);
     
     public void clearCache() {
         if (modelCache != null) {
-            synchronized (modelCache) {
+            modelCacheLock.lock();
+            try {
                 modelCache.clear();
+            } finally {
+                modelCacheLock.unlock();
             }
         }
     }
@@ -97,8 +119,11 @@ public abstract class ModelCache {
         // NOTE: we're doing minimal synchronizations -- which can lead to
         // duplicate wrapper creation. However, this has no harmful side-effects and
         // is a lesser performance hit.
-        synchronized (modelCache) {
+        modelCacheLock.lock();
+        try {
             ref = modelCache.get(object);
+        } finally {
+            modelCacheLock.unlock();
         }
 
         if (ref != null)
@@ -108,7 +133,8 @@ public abstract class ModelCache {
     }
 
     private final void register(TemplateModel model, Object object) {
-        synchronized (modelCache) {
+        modelCacheLock.lock();
+        try {
             // Remove cleared references
             for (; ; ) {
                 ModelReference queuedRef = (ModelReference) refQueue.poll();
@@ -119,6 +145,8 @@ public abstract class ModelCache {
             }
             // Register new reference
             modelCache.put(object, new ModelReference(model, object, refQueue));
+        } finally {
+            modelCacheLock.unlock();
         }
     }
 
@@ -26,6 +26,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.net.URLConnection;
 import java.text.Collator;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -42,8 +43,12 @@ import java.util.TimeZone;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import freemarker.cache.CacheStorage;
+import freemarker.cache.CacheStorageWithGetSize;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.FileTemplateLoader;
 import freemarker.cache.MruCacheStorage;
@@ -63,6 +68,7 @@ import freemarker.core.CSSOutputFormat;
 import freemarker.core.CombinedMarkupOutputFormat;
 import freemarker.core.Configurable;
 import freemarker.core.Environment;
+import freemarker.core.FragmentCache;
 import freemarker.core.HTMLOutputFormat;
 import freemarker.core.JSONOutputFormat;
 import freemarker.core.JavaScriptOrJSONCFormat;
@@ -90,6 +96,7 @@ import freemarker.core._SortedArraySet;
 import freemarker.core._UnmodifiableCompositeSet;
 import freemarker.ext.beans.BeansWrapper;
 import freemarker.ext.beans.BeansWrapperBuilder;
+import freemarker.ext.beans._BeansAPI;
 import freemarker.log.Logger;
 import freemarker.template.utility.CaptureOutput;
 import freemarker.template.utility.ClassUtil;
@@ -560,6 +567,8 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private boolean preventStrippings;
 
     private TemplateCache cache;
+    private FragmentCache fragmentCache;
+    private MetricsRecorder metricsRecorder;
     
     private boolean templateLoaderExplicitlySet;
     private boolean templateLookupStrategyExplicitlySet;
@@ -577,14 +586,20 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     private boolean cFormatExplicitlySet;
 
     
-    private HashMap/*<String, TemplateModel>*/ sharedVariables = new HashMap();
+    /**
+     * The current shared variables. The {@link Map} object is never modified after it was assigned to this field;
+     * modifications create a modified copy, and then replace the field value (under the lock of {@code this}). So
+     * reading it needs no synchronization, even if the shared variables are modified while templates are processed.
+     */
+    private volatile Map<String, TemplateModel> sharedVariables = Collections.emptyMap();
 
     /**
      * Needed so that it doesn't mater in what order do you call {@link #setSharedVaribles(Map)}
      * and {@link #setObjectWrapper(ObjectWrapper)}. When the user configures FreeMarker from Spring XML, he has no
-     * control over the order, so it has to work on both ways.
+     * control over the order, so it has to work on both ways. Just like {@link #sharedVariables}, the {@link Map} is
+     * never modified after it was assigned to this field. Only accessed under the lock of {@code this}.
      */
-    private HashMap/*<String, Object>*/ rewrappableSharedVariables = null;
+    private Map<String, Object> rewrappableSharedVariables = null;
     
     private String defaultEncoding = getDefaultDefaultEncoding();
     private ConcurrentMap localeToCharsetMap = new ConcurrentHashMap();
@@ -1173,7 +1188,11 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     public Object clone() {
         try {
             Configuration copy = (Configuration) super.clone();
-            copy.sharedVariables = new HashMap(sharedVariables);
+            synchronized (this) {
+                // As these maps are never modified after they were published, they can be shared among the copies.
+                copy.sharedVariables = sharedVariables;
+                copy.rewrappableSharedVariables = rewrappableSharedVariables;
+            }
             copy.localeToCharsetMap = new ConcurrentHashMap(localeToCharsetMap);
             copy.recreateTemplateCacheWith(
                     cache.getTemplateLoader(), cache.getCacheStorage(),
@@ -1186,6 +1205,12 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     }
     
     private void loadBuiltInSharedVariables() {
+        HashMap<String, TemplateModel> newSharedVariables = new HashMap<>();
+        putBuiltInSharedVariables(newSharedVariables);
+        sharedVariables = newSharedVariables;
+    }
+
+    private static void putBuiltInSharedVariables(Map<String, TemplateModel> sharedVariables) {
         sharedVariables.put("capture_output", new CaptureOutput());
         sharedVariables.put("compress", StandardCompress.INSTANCE);
         sharedVariables.put("html_escape", new HtmlEscape());
@@ -1602,6 +1627,81 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         }
     }
 
+    /**
+     * Sets the {@link FragmentCache} where the {@code #cache} directive stores the output it has generated; the default
+     * is {@code null}, in which case {@code #cache} just executes its nested content every time. Note that in a
+     * {@link Configuration} cloned with {@link #clone()}, the same {@link FragmentCache} instance will be used, unless
+     * you set another one.
+     *
+     * @since 2.3.33
+     */
+    public void setFragmentCache(FragmentCache fragmentCache) {
+        this.fragmentCache = fragmentCache;
+    }
+
+    /**
+     * The getter pair of {@link #setFragmentCache(FragmentCache)}.
+     *
+     * @since 2.3.33
+     */
+    public FragmentCache getFragmentCache() {
+        return fragmentCache;
+    }
+
+    /**
+     * Sets the {@link MetricsRecorder} that will receive metrics about template loading, parsing, and processing, and
+     * about some internal caches; the default is {@code null}, in which case no metrics are recorded, and the
+     * instrumentation has practically no overhead. Setting a non-{@code null} value will call
+     * {@link MetricsRecorder#registerGauge(String, MetricsRecorder.Gauge)} for each gauge FreeMarker has (the gauges
+     * always reflect the current state of this {@link Configuration}, even if some settings are changed later). Note
+     * that in a {@link Configuration} cloned with {@link #clone()}, the same {@link MetricsRecorder} instance will be
+     * used, unless you set another one.
+     *
+     * @since 2.3.33
+     */
+    public void setMetricsRecorder(MetricsRecorder metricsRecorder) {
+        this.metricsRecorder = metricsRecorder;
+        if (metricsRecorder != null) {
+            registerGauges(metricsRecorder);
+        }
+    }
+
+    /**
+     * The getter pair of {@link #setMetricsRecorder(MetricsRecorder)}.
+     *
+     * @since 2.3.33
+     */
+    public MetricsRecorder getMetricsRecorder() {
+        return metricsRecorder;
+    }
+
+    private void registerGauges(MetricsRecorder metricsRecorder) {
+        metricsRecorder.registerGauge(MetricsRecorder.TEMPLATE_CACHE_SIZE, new MetricsRecorder.Gauge() {
+            @Override
+            public long getValue() {
+                CacheStorage cacheStorage = getCacheStorage();
+                return cacheStorage instanceof CacheStorageWithGetSize
+                        ? ((CacheStorageWithGetSize) cacheStorage).getSize() : -1;
+            }
+        });
+        metricsRecorder.registerGauge(MetricsRecorder.INTROSPECTED_CLASS_COUNT, new MetricsRecorder.Gauge() {
+            @Override
+            public long getValue() {
+                ObjectWrapper objectWrapper = getObjectWrapper();
+                return objectWrapper instanceof BeansWrapper
+                        ? _BeansAPI.getIntrospectedClassCount((BeansWrapper) objectWrapper) : -1;
+            }
+        });
+        metricsRecorder.registerGauge(MetricsRecorder.MODEL_CACHE_MISSES, new MetricsRecorder.Gauge() {
+            @Override
+            public long getValue() {
+                ObjectWrapper objectWrapper = getObjectWrapper();
+                return objectWrapper instanceof BeansWrapper
+                        ? _BeansAPI.getModelCacheMissCount((BeansWrapper) objectWrapper) : -1;
+            }
+        });
+    }
+
     /**
      * Sets the file system directory from which to load templates. This is equivalent to
      * {@code setTemplateLoader(new FileTemplateLoader(dir))}, so see
@@ -1729,7 +1829,14 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * could mean I/O), possibly reloading the template and updating the cache as a consequence (can mean even more
      * I/O). The {@link #getTemplate(String)} (or some of its overloads) call will only return after this all is
      * done, so it will return the fresh template.
-     * 
+     *
+     * <p>
+     * If the {@link #setTemplateLoader(TemplateLoader) template_loader} is a
+     * {@link freemarker.cache.ChangeTrackingTemplateLoader} (like a {@link freemarker.cache.FileTemplateLoader} with
+     * {@link freemarker.cache.FileTemplateLoader#setWatchForChanges(boolean) watchForChanges} set to {@code true}),
+     * then templates are also re-checked when the template loader reports a change, so then you can set this to a
+     * very high value.
+     *
      * @since 2.3.23
      */
     public void setTemplateUpdateDelayMilliseconds(long millis) {
@@ -2985,6 +3092,105 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
         }
         return temp;
     }
+
+    /**
+     * Same as {@link #preloadTemplates(Collection, Locale, Executor)} with {@code null} {@code locale}.
+     * 
+     * @since 2.3.33
+     */
+    public List<TemplatePreloadResult> preloadTemplates(Collection<String> names, Executor executor)
+            throws InterruptedException {
+        return preloadTemplates(names, null, executor);
+    }
+
+    /**
+     * Loads the templates with the given names into the template cache in parallel, typically to warm up the cache
+     * when the application starts. Each template is loaded with {@link #getTemplate(String, Locale)} (so normally it's
+     * also parsed), on the specified {@link Executor} (which can be a {@link java.util.concurrent.ForkJoinPool} as
+     * well). This method returns when all templates were loaded.
+     * 
+     * <p>
+     * The errors aren't thrown, but are reported in the returned list, so one bad template doesn't prevent loading the
+     * others. That includes if the {@link Executor} rejects a task; then the result will contain the
+     * {@link RejectedExecutionException}. Templates that are already in the cache, and aren't stale, won't be loaded
+     * again.
+     * 
+     * <p>
+     * This method is thread-safe.
+     * 
+     * @param names
+     *            The names of the templates to load; see {@link #getTemplate(String, Locale, Object, String, boolean,
+     *            boolean)}. Can't be {@code null}.
+     * @param locale
+     *            The locale of the templates; {@code null} means {@link #getLocale()}.
+     * @param executor
+     *            Runs the template loading tasks. If it's {@code null}, the templates are loaded on the calling
+     *            thread, one after the other.
+     * 
+     * @return The results in the order of {@code names}; not {@code null}.
+     * 
+     * @throws InterruptedException
+     *             If the calling thread was interrupted while waiting for the tasks to finish.
+     * 
+     * @since 2.3.33
+     */
+    public List<TemplatePreloadResult> preloadTemplates(
+            Collection<String> names, final Locale locale, Executor executor)
+            throws InterruptedException {
+        NullArgumentException.check("names", names);
+        final TemplatePreloadResult[] results = new TemplatePreloadResult[names.size()];
+        final CountDownLatch unfinishedTasks = new CountDownLatch(results.length);
+        int index = 0;
+        for (final String name : names) {
+            final int resultIndex = index++;
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    final long startTime = System.nanoTime();
+                    try {
+                        results[resultIndex] = preloadTemplate(name, locale);
+                    } catch (Error e) {
+                        // So that there's no null in the result list; the Error itself goes on to the Executor.
+                        results[resultIndex] = new TemplatePreloadResult(name, null,
+                                new RuntimeException("Error while loading the template; see cause exception", e),
+                                System.nanoTime() - startTime);
+                        throw e;
+                    } finally {
+                        unfinishedTasks.countDown();
+                    }
+                }
+            };
+            if (executor != null) {
+                try {
+                    executor.execute(task);
+                } catch (RejectedExecutionException e) {
+                    results[resultIndex] = new TemplatePreloadResult(name, null, e, 0);
+                    unfinishedTasks.countDown();
+                }
+            } else {
+                task.run();
+            }
+        }
+        unfinishedTasks.await();
+        
+        List<TemplatePreloadResult> resultList = new ArrayList<>(results.length);
+        Collections.addAll(resultList, results);
+        return resultList;
+    }
+    
+    private TemplatePreloadResult preloadTemplate(String name, Locale locale) {
+        final long startTime = System.nanoTime();
+        Template template;
+        Exception exception;
+        try {
+            template = getTemplate(name, locale);
+            exception = null;
+        } catch (Exception e) {
+            template = null;
+            exception = e;
+        }
+        return new TemplatePreloadResult(name, template, exception, System.nanoTime() - startTime);
+    }
     
     private boolean isKnownNonConfusingLookupStrategy(TemplateLookupStrategy templateLookupStrategy) {
         return templateLookupStrategy == TemplateLookupStrategy.DEFAULT_2_3_0;
@@ -3118,7 +3324,10 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * <p>Never use {@code TemplateModel} implementation that is not thread-safe for shared sharedVariables,
      * if the configuration is used by multiple threads! It is the typical situation for Servlet based Web sites.
      * 
-     * <p>This method is <b>not</b> thread safe; use it with the same restrictions as those that modify setting values. 
+     * <p>Since 2.3.33 this method is thread safe, and can be called while templates are being processed with this
+     * configuration. Templates that are being processed will see either the old or the new value, but nothing in
+     * between. Note however that as the shared variables are stored in an immutable map that's replaced on each
+     * modification, modifying them is relatively costly, so don't do it on a per-request basis.
      *
      * @param name the name used to access the data object from your template.
      *     If a shared variable with this name already exists, it will replace
@@ -3128,9 +3337,57 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * @see #setSharedVariable(String,Object)
      */
     public void setSharedVariable(String name, TemplateModel tm) {
-        Object replaced = sharedVariables.put(name, tm);
-        if (replaced != null && rewrappableSharedVariables != null) {
-            rewrappableSharedVariables.remove(name);
+        synchronized (this) {
+            HashMap<String, TemplateModel> newSharedVariables = new HashMap<>(sharedVariables);
+            newSharedVariables.put(name, tm);
+            removeRewrappableSharedVariables(Collections.singleton(name));
+            sharedVariables = newSharedVariables;
+        }
+    }
+
+    /**
+     * Removes a shared variable, if it exists. This can also remove the predefined shared variables (like
+     * {@code compress}); {@link #clearSharedVariables()} restores those.
+     *
+     * <p>This method is thread safe, and can be called while templates are being processed with this configuration
+     * (see {@link #setSharedVariable(String, TemplateModel)} for more).
+     *
+     * @return Whether there was a shared variable with the given name.
+     *
+     * @since 2.3.33
+     */
+    public boolean removeSharedVariable(String name) {
+        synchronized (this) {
+            if (!sharedVariables.containsKey(name)) {
+                return false;
+            }
+            HashMap<String, TemplateModel> newSharedVariables = new HashMap<>(sharedVariables);
+            newSharedVariables.remove(name);
+            removeRewrappableSharedVariables(Collections.singleton(name));
+            sharedVariables = newSharedVariables;
+            return true;
+        }
+    }
+
+    /**
+     * Must be called under the lock of {@code this}.
+     */
+    private void removeRewrappableSharedVariables(Collection<String> names) {
+        if (rewrappableSharedVariables == null) {
+            return;
+        }
+        HashMap<String, Object> newRewrappableSharedVariables = null;
+        for (String name : names) {
+            if ((newRewrappableSharedVariables != null ? newRewrappableSharedVariables : rewrappableSharedVariables)
+                    .containsKey(name)) {
+                if (newRewrappableSharedVariables == null) {
+                    newRewrappableSharedVariables = new HashMap<>(rewrappableSharedVariables);
+                }
+                newRewrappableSharedVariables.remove(name);
+            }
+        }
+        if (newRewrappableSharedVariables != null) {
+            rewrappableSharedVariables = newRewrappableSharedVariables;
         }
     }
 
@@ -3141,14 +3398,14 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * no effect on the Configuration object.
      */
     public Set getSharedVariableNames() {
-        return new HashSet(sharedVariables.keySet());
+        return new HashSet<>(sharedVariables.keySet());
     }
     
     /**
      * Adds shared variable to the configuration; It uses {@link Configurable#getObjectWrapper()} to wrap the 
      * {@code value}, so it's important that the object wrapper is set before this.
      * 
-     * <p>This method is <b>not</b> thread safe; use it with the same restrictions as those that modify setting values.
+     * <p>Since 2.3.33 this method is thread safe (see {@link #setSharedVariable(String, TemplateModel)} for more).
      * 
      * <p>The added value should be thread safe, if you are running templates from multiple threads with this
      * configuration.
@@ -3178,6 +3435,11 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * by the {@link ObjectWrapper} must be thread safe. (The standard {@link ObjectWrapper}-s of FreeMarker create
      * thread safe {@link TemplateModel}-s.) The {@link Map} itself need not be thread-safe.
      * 
+     * <p>Since 2.3.33 this method is thread safe, and the replacement is atomic; templates that are being processed
+     * with this configuration will see either all the old shared variables, or all the new ones. If some of the values
+     * can't be wrapped, the shared variables remain unchanged. This makes this method suitable for reloading
+     * configuration-dependent shared variables on the fly.
+     * 
      * <p>This setter method has no getter pair because of the tricky relation ship with
      * {@link #setSharedVariable(String, Object)}.
      * 
@@ -3186,9 +3448,13 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * @since 2.3.29
      */
     public void setSharedVariables(Map<String, ?> map) throws TemplateModelException {
-        rewrappableSharedVariables = new HashMap(map);
-        sharedVariables.clear();
-        setSharedVariablesFromRewrappableSharedVariables();
+        HashMap<String, Object> newRewrappableSharedVariables = new HashMap<>(map);
+        synchronized (this) {
+            HashMap<String, TemplateModel> newSharedVariables = new HashMap<>();
+            putRewrappedSharedVariables(newRewrappableSharedVariables, newSharedVariables);
+            rewrappableSharedVariables = newRewrappableSharedVariables;
+            sharedVariables = newSharedVariables;
+        }
     }
 
     /**
@@ -3201,10 +3467,18 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
     }
     
     private void setSharedVariablesFromRewrappableSharedVariables() throws TemplateModelException {
-        if (rewrappableSharedVariables == null) return;
-        for (Iterator it = rewrappableSharedVariables.entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry/*<String, Object>*/ ent = (Entry) it.next();
-            String name = (String) ent.getKey();
+        synchronized (this) {
+            if (rewrappableSharedVariables == null) return;
+            HashMap<String, TemplateModel> newSharedVariables = new HashMap<>(sharedVariables);
+            putRewrappedSharedVariables(rewrappableSharedVariables, newSharedVariables);
+            sharedVariables = newSharedVariables;
+        }
+    }
+
+    private void putRewrappedSharedVariables(
+            Map<String, Object> rewrappableSharedVariables, Map<String, TemplateModel> sharedVariables)
+            throws TemplateModelException {
+        for (Entry<String, Object> ent : rewrappableSharedVariables.entrySet()) {
             Object value = ent.getValue();
             
             TemplateModel valueAsTM;
@@ -3213,7 +3487,7 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
             } else {
                 valueAsTM = getObjectWrapper().wrap(value);
             }
-            sharedVariables.put(name, valueAsTM);
+            sharedVariables.put(ent.getKey(), valueAsTM);
         }
     }
 
@@ -3225,7 +3499,9 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * <p>Never use {@code TemplateModel} implementation that is not thread-safe for shared shared variable values,
      * if the configuration is used by multiple threads! It is the typical situation for Servlet based Web sites.
      *
-     * <p>This method is <b>not</b> thread safe; use it with the same restrictions as those that modify setting values. 
+     * <p>Since 2.3.33 this method is thread safe, and all the variables are added atomically; templates that are being
+     * processed with this configuration will see either none, or all of them. If reading the hash fails, the shared
+     * variables remain unchanged.
      *
      * @param hash a hash model whose objects will be copied to the
      * configuration with same names as they are given in the hash.
@@ -3237,10 +3513,17 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * @see #setSharedVariable(String,TemplateModel)
      */
     public void setAllSharedVariables(TemplateHashModelEx hash) throws TemplateModelException {
+        LinkedHashMap<String, TemplateModel> addedSharedVariables = new LinkedHashMap<>();
         TemplateModelIterator keys = hash.keys().iterator();
         TemplateModelIterator values = hash.values().iterator();
         while (keys.hasNext()) {
-            setSharedVariable(((TemplateScalarModel) keys.next()).getAsString(), values.next());
+            addedSharedVariables.put(((TemplateScalarModel) keys.next()).getAsString(), values.next());
+        }
+        synchronized (this) {
+            HashMap<String, TemplateModel> newSharedVariables = new HashMap<>(sharedVariables);
+            newSharedVariables.putAll(addedSharedVariables);
+            removeRewrappableSharedVariables(addedSharedVariables.keySet());
+            sharedVariables = newSharedVariables;
         }
     }
     
@@ -3257,15 +3540,18 @@ public class Configuration extends Configurable implements Cloneable, ParserConf
      * @see #setAllSharedVariables
      */
     public TemplateModel getSharedVariable(String name) {
-        return (TemplateModel) sharedVariables.get(name);
+        return sharedVariables.get(name);
     }
     
     /**
      * Removes all shared variables, except the predefined ones (compress, html_escape, etc.).
+     *
+     * <p>Since 2.3.33 this method is thread safe (see {@link #setSharedVariable(String, TemplateModel)} for more).
      */
     public void clearSharedVariables() {
-        sharedVariables.clear();
-        loadBuiltInSharedVariables();
+        synchronized (this) {
+            loadBuiltInSharedVariables();
+        }
     }
     
     /**
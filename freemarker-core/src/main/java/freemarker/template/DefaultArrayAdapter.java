@@ -21,6 +21,8 @@ package freemarker.template;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import freemarker.ext.util.WrapperTemplateModel;
 
@@ -45,7 +47,7 @@ import freemarker.ext.util.WrapperTemplateModel;
  * @since 2.3.22
  */
 public abstract class DefaultArrayAdapter extends WrappingTemplateModel implements TemplateSequenceModel,
-        AdapterTemplateModel, WrapperTemplateModel, Serializable {
+        AdapterTemplateModel, WrapperTemplateModel, _UnwrappedItemIterable, Serializable {
 
     /**
      * Factory method for creating new adapter instances.
@@ -102,6 +104,24 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
         return getWrappedObject();
     }
 
+    /**
+     * Only supported for arrays of non-primitive elements; returns {@code null} otherwise.
+     *
+     * @since 2.3.33
+     */
+    @Override
+    public Iterator<?> unwrappedItemIterator() {
+        return null;
+    }
+
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public final TemplateModel wrapItem(Object item) throws TemplateModelException {
+        return wrap(item);
+    }
+
     private static class ObjectArrayAdapter extends DefaultArrayAdapter {
 
         private final Object[] array;
@@ -116,6 +136,11 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
             return index >= 0 && index < array.length ? wrap(array[index]) : null;
         }
 
+        @Override
+        public Iterator<?> unwrappedItemIterator() {
+            return new ObjectArrayIterator(array);
+        }
+
         @Override
         public int size() throws TemplateModelException {
             return array.length;
@@ -128,6 +153,33 @@ public abstract class DefaultArrayAdapter extends WrappingTemplateModel implemen
 
     }
 
+    private static class ObjectArrayIterator implements Iterator<Object> {
+        private final Object[] array;
+        private int nextIndex;
+
+        private ObjectArrayIterator(Object[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < array.length;
+        }
+
+        @Override
+        public Object next() {
+            if (nextIndex >= array.length) {
+                throw new NoSuchElementException();
+            }
+            return array[nextIndex++];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private static class ByteArrayAdapter extends DefaultArrayAdapter {
 
         private final byte[] array;
@@ -45,7 +45,7 @@ import freemarker.template.utility.ObjectWrapperWithAPISupport;
  */
 @SuppressWarnings("serial")
 public class DefaultIterableAdapter extends WrappingTemplateModel implements TemplateCollectionModel,
-        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, Serializable {
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, _UnwrappedItemIterable, Serializable {
     
     private final Iterable<?> iterable;
 
@@ -72,6 +72,22 @@ public class DefaultIterableAdapter extends WrappingTemplateModel implements Tem
         return new IteratorToTemplateModelIteratorAdapter(iterable.iterator(), getObjectWrapper());
     }
 
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public Iterator<?> unwrappedItemIterator() {
+        return iterable.iterator();
+    }
+
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public TemplateModel wrapItem(Object item) throws TemplateModelException {
+        return wrap(item);
+    }
+
     @Override
     public Object getWrappedObject() {
         return iterable;
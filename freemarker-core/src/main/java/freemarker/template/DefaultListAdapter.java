@@ -21,7 +21,9 @@ package freemarker.template;
 
 import java.io.Serializable;
 import java.util.AbstractSequentialList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import freemarker.ext.util.WrapperTemplateModel;
 import freemarker.template.utility.ObjectWrapperWithAPISupport;
@@ -48,9 +50,15 @@ import freemarker.template.utility.RichObjectWrapper;
  * @since 2.3.22
  */
 public class DefaultListAdapter extends WrappingTemplateModel implements TemplateSequenceModel,
-        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, Serializable {
+        AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport, _UnwrappedItemIterable, Serializable {
 
     protected final List list;
+    private final boolean memoizeItems;
+    /**
+     * The already wrapped items, indexed with the list index; {@code null} if memoization is disabled, or nothing was
+     * memoized yet. As the elements are immutable, racy publishing is fine; in the worst case we just lose entries.
+     */
+    private transient volatile MemoizedItem[] memoizedItems;
 
     /**
      * Factory method for creating new adapter instances.
@@ -61,20 +69,75 @@ public class DefaultListAdapter extends WrappingTemplateModel implements Templat
      *            The {@link ObjectWrapper} used to wrap the items in the array.
      */
     public static DefaultListAdapter adapt(List list, RichObjectWrapper wrapper) {
+        return adapt(list, wrapper, false);
+    }
+
+    /**
+     * Same as {@link #adapt(List, RichObjectWrapper)}, but optionally memoizes the wrapped items.
+     *
+     * @param memoizeItems
+     *            If {@code true}, the {@link TemplateModel} created for an item is remembered, and is returned again
+     *            when the same index is read later, as far as the list still stores the same object (by identity) at
+     *            that index. See {@link DefaultObjectWrapper#setMemoizeAdaptedItems(boolean)}.
+     *
+     * @since 2.3.33
+     */
+    public static DefaultListAdapter adapt(List list, RichObjectWrapper wrapper, boolean memoizeItems) {
         // [2.4] DefaultListAdapter should implement TemplateCollectionModelEx, so this choice becomes unnecessary
         return list instanceof AbstractSequentialList
-                ? new DefaultListAdapterWithCollectionSupport(list, wrapper)
-                : new DefaultListAdapter(list, wrapper);
+                ? new DefaultListAdapterWithCollectionSupport(list, wrapper, memoizeItems)
+                : new DefaultListAdapter(list, wrapper, memoizeItems);
     }
 
-    private DefaultListAdapter(List list, RichObjectWrapper wrapper) {
+    private DefaultListAdapter(List list, RichObjectWrapper wrapper, boolean memoizeItems) {
         super(wrapper);
         this.list = list;
+        this.memoizeItems = memoizeItems;
     }
 
     @Override
     public TemplateModel get(int index) throws TemplateModelException {
-        return index >= 0 && index < list.size() ? wrap(list.get(index)) : null;
+        if (index < 0) {
+            return null;
+        }
+        int size = list.size();
+        if (index >= size) {
+            return null;
+        }
+        Object item = list.get(index);
+        if (!memoizeItems) {
+            return wrap(item);
+        }
+
+        MemoizedItem[] memoizedItems = this.memoizedItems;
+        if (memoizedItems != null && index < memoizedItems.length) {
+            MemoizedItem memoizedItem = memoizedItems[index];
+            if (memoizedItem != null && memoizedItem.item == item) {
+                return memoizedItem.model;
+            }
+        }
+
+        TemplateModel model = wrap(item);
+        if (memoizedItems == null || index >= memoizedItems.length) {
+            MemoizedItem[] newMemoizedItems = new MemoizedItem[size];
+            if (memoizedItems != null) {
+                System.arraycopy(memoizedItems, 0, newMemoizedItems, 0, Math.min(memoizedItems.length, size));
+            }
+            memoizedItems = newMemoizedItems;
+            this.memoizedItems = memoizedItems;
+        }
+        memoizedItems[index] = new MemoizedItem(item, model);
+        return model;
+    }
+
+    private static final class MemoizedItem {
+        private final Object item;
+        private final TemplateModel model;
+
+        private MemoizedItem(Object item, TemplateModel model) {
+            this.item = item;
+            this.model = model;
+        }
     }
 
     @Override
@@ -82,6 +145,59 @@ public class DefaultListAdapter extends WrappingTemplateModel implements Templat
         return list.size();
     }
 
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public Iterator<?> unwrappedItemIterator() {
+        if (memoizeItems) {
+            return null; // Let the memoizing get(int) do the work
+        }
+        return list instanceof AbstractSequentialList ? list.iterator() : new IndexBasedIterator(list);
+    }
+
+    /**
+     * @since 2.3.33
+     */
+    @Override
+    public TemplateModel wrapItem(Object item) throws TemplateModelException {
+        return wrap(item);
+    }
+
+    /**
+     * Mimics how listing with {@link #size()} and {@link #get(int)} behaves, so unlike {@link List#iterator()}, this
+     * tolerates modifications during the iteration.
+     */
+    private static class IndexBasedIterator implements Iterator<Object> {
+        private final List<?> list;
+        private final int size;
+        private int nextIndex;
+
+        private IndexBasedIterator(List<?> list) {
+            this.list = list;
+            this.size = list.size();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public Object next() {
+            if (nextIndex >= size) {
+                throw new NoSuchElementException();
+            }
+            int index = nextIndex++;
+            return index < list.size() ? list.get(index) : null;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     @Override
     public Object getAdaptedObject(Class hint) {
         return getWrappedObject();
@@ -95,8 +211,8 @@ public class DefaultListAdapter extends WrappingTemplateModel implements Templat
     private static class DefaultListAdapterWithCollectionSupport extends DefaultListAdapter implements
             TemplateCollectionModel {
 
-        private DefaultListAdapterWithCollectionSupport(List list, RichObjectWrapper wrapper) {
-            super(list, wrapper);
+        private DefaultListAdapterWithCollectionSupport(List list, RichObjectWrapper wrapper, boolean memoizeItems) {
+            super(list, wrapper, memoizeItems);
         }
 
         @Override
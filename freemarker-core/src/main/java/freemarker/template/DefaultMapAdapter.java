@@ -48,7 +48,17 @@ public class DefaultMapAdapter extends WrappingTemplateModel
         implements TemplateHashModelEx2, AdapterTemplateModel, WrapperTemplateModel, TemplateModelWithAPISupport,
         Serializable {
 
+    private static final int MIN_MEMOIZED_VALUES_CAPACITY = 8;
+
     private final Map map;
+    private final boolean memoizeValues;
+    /**
+     * Open addressing hash table of the already wrapped values, with linear probing; {@code null} if memoization is
+     * disabled, or nothing was memoized yet. The length is always a power of 2. As the elements are immutable, racy
+     * publishing is fine; in the worst case we just lose entries.
+     */
+    private transient volatile MemoizedValue[] memoizedValues;
+    private transient int memoizedValueCount;
 
     /**
      * Factory method for creating new adapter instances.
@@ -59,12 +69,27 @@ public class DefaultMapAdapter extends WrappingTemplateModel
      *            The {@link ObjectWrapper} used to wrap the items in the array.
      */
     public static DefaultMapAdapter adapt(Map map, ObjectWrapperWithAPISupport wrapper) {
-        return new DefaultMapAdapter(map, wrapper);
+        return new DefaultMapAdapter(map, wrapper, false);
+    }
+
+    /**
+     * Same as {@link #adapt(Map, ObjectWrapperWithAPISupport)}, but optionally memoizes the wrapped values.
+     *
+     * @param memoizeValues
+     *            If {@code true}, the {@link TemplateModel} created for a value is remembered, and is returned again
+     *            when {@link #get(String)} is called with the same key later, as far as the map still stores the same
+     *            object (by identity) for that key. See {@link DefaultObjectWrapper#setMemoizeAdaptedItems(boolean)}.
+     *
+     * @since 2.3.33
+     */
+    public static DefaultMapAdapter adapt(Map map, ObjectWrapperWithAPISupport wrapper, boolean memoizeValues) {
+        return new DefaultMapAdapter(map, wrapper, memoizeValues);
     }
-    
-    private DefaultMapAdapter(Map map, ObjectWrapper wrapper) {
+
+    private DefaultMapAdapter(Map map, ObjectWrapper wrapper, boolean memoizeValues) {
         super(wrapper);
         this.map = map;
+        this.memoizeValues = memoizeValues;
     }
 
     @Override
@@ -116,7 +141,83 @@ public class DefaultMapAdapter extends WrappingTemplateModel
             }
         }
         
-        return wrap(val);
+        return memoizeValues ? wrapMemoized(key, val) : wrap(val);
+    }
+
+    private TemplateModel wrapMemoized(String key, Object val) throws TemplateModelException {
+        MemoizedValue[] memoizedValues = this.memoizedValues;
+        int hash = key.hashCode();
+        if (memoizedValues != null) {
+            int mask = memoizedValues.length - 1;
+            for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                MemoizedValue memoizedValue = memoizedValues[i];
+                if (memoizedValue == null) {
+                    break;
+                }
+                if (memoizedValue.key.equals(key)) {
+                    if (memoizedValue.value == val) {
+                        return memoizedValue.model;
+                    }
+                    break;
+                }
+            }
+        }
+
+        TemplateModel model = wrap(val);
+        putMemoizedValue(new MemoizedValue(key, val, model), hash);
+        return model;
+    }
+
+    private void putMemoizedValue(MemoizedValue newMemoizedValue, int hash) {
+        MemoizedValue[] memoizedValues = this.memoizedValues;
+        if (memoizedValues == null || (memoizedValueCount + 1) * 2 > memoizedValues.length) {
+            MemoizedValue[] newMemoizedValues = new MemoizedValue[
+                    memoizedValues == null ? MIN_MEMOIZED_VALUES_CAPACITY : memoizedValues.length * 2];
+            if (memoizedValues != null) {
+                for (MemoizedValue memoizedValue : memoizedValues) {
+                    if (memoizedValue != null) {
+                        putMemoizedValue(newMemoizedValues, memoizedValue, memoizedValue.key.hashCode());
+                    }
+                }
+            }
+            memoizedValues = newMemoizedValues;
+            this.memoizedValues = memoizedValues;
+        }
+        if (putMemoizedValue(memoizedValues, newMemoizedValue, hash)) {
+            memoizedValueCount++;
+        }
+    }
+
+    /**
+     * @return Whether a new entry was added (as opposed to replacing an existing one, or doing nothing because the
+     *     table is full, which can happen due to concurrent modifications)
+     */
+    private static boolean putMemoizedValue(MemoizedValue[] memoizedValues, MemoizedValue newMemoizedValue, int hash) {
+        int mask = memoizedValues.length - 1;
+        for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            MemoizedValue memoizedValue = memoizedValues[i];
+            if (memoizedValue == null) {
+                memoizedValues[i] = newMemoizedValue;
+                return true;
+            }
+            if (memoizedValue.key.equals(newMemoizedValue.key)) {
+                memoizedValues[i] = newMemoizedValue;
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static final class MemoizedValue {
+        private final String key;
+        private final Object value;
+        private final TemplateModel model;
+
+        private MemoizedValue(String key, Object value, TemplateModel model) {
+            this.key = key;
+            this.value = value;
+            this.model = model;
+        }
     }
 
     @Override
@@ -75,6 +75,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
     private boolean iterableSupport;
     private boolean domNodeSupport;
     private boolean jythonSupport;
+    private boolean memoizeAdaptedItems;
     private final boolean useAdapterForEnumerations;
 
     /**
@@ -138,6 +139,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         iterableSupport = dowDowCfg.getIterableSupport();
         domNodeSupport = dowDowCfg.getDOMNodeSupport();
         jythonSupport = dowDowCfg.getJythonSupport();
+        memoizeAdaptedItems = dowDowCfg.getMemoizeAdaptedItems();
         finalizeConstruction(writeProtected);
     }
 
@@ -222,7 +224,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         if (obj instanceof Collection) {
             if (useAdaptersForContainers) {
                 if (obj instanceof List) {
-                    return DefaultListAdapter.adapt((List<?>) obj, this);
+                    return DefaultListAdapter.adapt((List<?>) obj, this, memoizeAdaptedItems);
                 } else {
                     return forceLegacyNonListCollections
                             ? new SimpleSequence((Collection<?>) obj, this)
@@ -234,7 +236,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         }
         if (obj instanceof Map) {
             return useAdaptersForContainers
-                    ? DefaultMapAdapter.adapt((Map<?, ?>) obj, this)
+                    ? DefaultMapAdapter.adapt((Map<?, ?>) obj, this, memoizeAdaptedItems)
                     : new SimpleHash((Map<?, ?>) obj, this);
         }
         if (obj instanceof Boolean) {
@@ -442,6 +444,39 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
         this.jythonSupport = jythonSupport;
     }
 
+    /**
+     * Getter pair of {@link #setMemoizeAdaptedItems(boolean)}; see there.
+     *
+     * @since 2.3.33
+     */
+    public boolean getMemoizeAdaptedItems() {
+        return memoizeAdaptedItems;
+    }
+
+    /**
+     * Specifies whether the {@link DefaultListAdapter} and {@link DefaultMapAdapter} instances created by this object
+     * wrapper remember the {@link TemplateModel}-s they have created for the items of the wrapped container; defaults
+     * to {@code false}. When enabled, reading the same item again (like {@code items[i]} in a loop, or
+     * {@code user.name} at multiple places) returns the earlier created {@link TemplateModel}, instead of wrapping the
+     * item again, as far as the container still contains the same object (by identity) at that index or key. As the
+     * memoized items are often containers themselves (like a {@link List} inside a {@link Map}), the benefit
+     * accumulates for deeper data models.
+     *
+     * <p>
+     * The memoized items are stored in the adapter, so they live as long as the adapter itself, which is usually
+     * created for a single template processing (unless the adapter is a shared variable, or is otherwise reused). So
+     * this has a similar effect as {@link #setUseCache(boolean) useCache}, but without the global cache, and without
+     * the related lock contention. The price is that the adapters will use more memory, and will keep the
+     * wrapped items reachable. This only has effect if {@link #setUseAdaptersForContainers(boolean)
+     * useAdaptersForContainers} is {@code true}.
+     *
+     * @since 2.3.33
+     */
+    public void setMemoizeAdaptedItems(boolean memoizeAdaptedItems) {
+        checkModifiable();
+        this.memoizeAdaptedItems = memoizeAdaptedItems;
+    }
+
     /**
      * Returns the lowest version number that is equivalent with the parameter version.
      * 
@@ -475,6 +510,7 @@ public class DefaultObjectWrapper extends freemarker.ext.beans.BeansWrapper {
                 + ", iterableSupport=" + iterableSupport
                 + ", domNodeSupport=" + domNodeSupport
                 + ", jythonSupport=" + jythonSupport
+                + ", memoizeAdaptedItems=" + memoizeAdaptedItems
                 + bwProps;
     }
     
@@ -37,6 +37,7 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
     private boolean iterableSupport;
     private boolean domNodeSupport;
     private boolean jythonSupport;
+    private boolean memoizeAdaptedItems;
 
     protected DefaultObjectWrapperConfiguration(Version incompatibleImprovements) {
         super(DefaultObjectWrapper.normalizeIncompatibleImprovementsVersion(incompatibleImprovements), true);
@@ -107,6 +108,24 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         this.iterableSupport = iterableSupport;
     }
     
+    /**
+     * See {@link DefaultObjectWrapper#getMemoizeAdaptedItems()}.
+     *
+     * @since 2.3.33
+     */
+    public boolean getMemoizeAdaptedItems() {
+        return memoizeAdaptedItems;
+    }
+
+    /**
+     * See {@link DefaultObjectWrapper#setMemoizeAdaptedItems(boolean)}.
+     *
+     * @since 2.3.33
+     */
+    public void setMemoizeAdaptedItems(boolean memoizeAdaptedItems) {
+        this.memoizeAdaptedItems = memoizeAdaptedItems;
+    }
+
     @Override
     public int hashCode() {
         int result = super.hashCode();
@@ -116,6 +135,7 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
         result = result * prime + (iterableSupport ? 1231 : 1237);
         result = result * prime + (domNodeSupport ? 1231 : 1237);
         result = result * prime + (jythonSupport ? 1231 : 1237);
+        result = result * prime + (memoizeAdaptedItems ? 1231 : 1237);
         return result;
     }
 
@@ -127,7 +147,8 @@ public abstract class DefaultObjectWrapperConfiguration extends BeansWrapperConf
                 && forceLegacyNonListCollections == thatDowCfg.forceLegacyNonListCollections
                 && iterableSupport == thatDowCfg.iterableSupport
                 && domNodeSupport == thatDowCfg.domNodeSupport
-                && jythonSupport == thatDowCfg.jythonSupport;
+                && jythonSupport == thatDowCfg.jythonSupport
+                && memoizeAdaptedItems == thatDowCfg.memoizeAdaptedItems;
     }
 
 }
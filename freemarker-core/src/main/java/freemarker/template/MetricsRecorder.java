@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import freemarker.cache.CacheStorageWithGetSize;
+import freemarker.cache.TemplateLoader;
+import freemarker.core.Environment;
+import freemarker.ext.beans.BeansWrapper;
+
+/**
+ * Receives metrics (counters, timings, and gauges) from FreeMarker, which you can forward to the metrics library of
+ * your choice. Set it with {@link Configuration#setMetricsRecorder(MetricsRecorder)}. If no {@link MetricsRecorder}
+ * is set (the default), FreeMarker doesn't even measure the times, so the instrumentation has practically no
+ * overhead.
+ *
+ * <p>
+ * The metrics are identified by the names that are defined as constants in this interface (like
+ * {@link #TEMPLATE_CACHE_HITS}). More metrics may be added in later versions, so implementations should ignore the
+ * names they don't recognize.
+ *
+ * <p>
+ * Implementations must be thread safe, and the {@code incrementCounter} and {@code recordTime} methods must be fast,
+ * as they are called on the hot paths (for example, for each template lookup). Note that the same
+ * {@link MetricsRecorder} instance will be used by a {@link Configuration} clone, unless you set another one.
+ *
+ * @since 2.3.33
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Counter; a template lookup (as with {@link Configuration#getTemplate(String)}, {@code #include}, or
+     * {@code #import}) was served from the template cache, including when a negative lookup result was cached. That
+     * the template loader was asked if the template has changed (if the update delay has elapsed) doesn't change
+     * this, as long as it hasn't changed.
+     */
+    String TEMPLATE_CACHE_HITS = "freemarker.templateCache.hits";
+
+    /**
+     * Counter; a template lookup had to load the template, as it wasn't cached, or it was changed, or it was
+     * found to be missing.
+     */
+    String TEMPLATE_CACHE_MISSES = "freemarker.templateCache.misses";
+
+    /**
+     * Timer; the time {@link TemplateLoader#findTemplateSource(String)} has taken. As a template lookup might try
+     * multiple template source names (like because of localized lookup), there can be multiple of these per lookup.
+     */
+    String TEMPLATE_LOADER_FIND_TIME = "freemarker.templateLoader.findTime";
+
+    /**
+     * Timer; the time needed for loading and parsing a template, recorded when a {@link Template} was successfully
+     * created from its source code.
+     */
+    String TEMPLATE_PARSING_TIME = "freemarker.template.parsingTime";
+
+    /**
+     * Timer; the time needed for processing a template, that is, the duration of {@link Environment#process()}
+     * (which {@link Template#process(Object, java.io.Writer)} calls), recorded even if the processing has failed.
+     */
+    String TEMPLATE_PROCESSING_TIME = "freemarker.template.processingTime";
+
+    /**
+     * Counter; {@link Environment#process()} has thrown an exception.
+     */
+    String TEMPLATE_PROCESSING_ERRORS = "freemarker.template.processingErrors";
+
+    /**
+     * Counter; a number format that's backed by a {@link java.text.NumberFormat} was found in the global cache of
+     * such formats. (That cache is shared by all {@link Configuration}-s, but the counters are recorded by the
+     * {@link MetricsRecorder} of the {@link Configuration} that has caused the lookup.)
+     */
+    String NUMBER_FORMAT_CACHE_HITS = "freemarker.numberFormatCache.hits";
+
+    /**
+     * Counter; the counterpart of {@link #NUMBER_FORMAT_CACHE_HITS}, when the {@link java.text.NumberFormat} had to
+     * be created.
+     */
+    String NUMBER_FORMAT_CACHE_MISSES = "freemarker.numberFormatCache.misses";
+
+    /**
+     * Counter; same as {@link #NUMBER_FORMAT_CACHE_HITS}, but for {@link java.text.DateFormat}-s.
+     */
+    String DATE_FORMAT_CACHE_HITS = "freemarker.dateFormatCache.hits";
+
+    /**
+     * Counter; same as {@link #NUMBER_FORMAT_CACHE_MISSES}, but for {@link java.text.DateFormat}-s.
+     */
+    String DATE_FORMAT_CACHE_MISSES = "freemarker.dateFormatCache.misses";
+
+    /**
+     * Gauge; the number of entries in the template cache, or -1 if the {@link Configuration#getCacheStorage()
+     * cache_storage} isn't a {@link CacheStorageWithGetSize}.
+     */
+    String TEMPLATE_CACHE_SIZE = "freemarker.templateCache.size";
+
+    /**
+     * Gauge; the number of classes in the class introspection cache of the
+     * {@link Configuration#getObjectWrapper() object_wrapper}, or -1 if that's not a {@link BeansWrapper}.
+     */
+    String INTROSPECTED_CLASS_COUNT = "freemarker.beansWrapper.introspectedClasses";
+
+    /**
+     * Gauge; the number of times the model cache of the {@link Configuration#getObjectWrapper() object_wrapper} had to
+     * create a new model (an ever increasing number), or -1 if the object wrapper is not a {@link BeansWrapper}. It's
+     * always 0 if {@link BeansWrapper#getUseCache()} is {@code false}.
+     */
+    String MODEL_CACHE_MISSES = "freemarker.beansWrapper.modelCacheMisses";
+
+    /**
+     * Increments the counter with the given name by 1.
+     */
+    void incrementCounter(String name);
+
+    /**
+     * Records that something that the timer with the given name measures has taken the given amount of time.
+     */
+    void recordTime(String name, long nanos);
+
+    /**
+     * Registers a gauge, whose value will be queried by the metrics library whenever it needs it. This is called
+     * by {@link Configuration#setMetricsRecorder(MetricsRecorder)}, for each gauge that FreeMarker provides.
+     */
+    void registerGauge(String name, Gauge gauge);
+
+    /**
+     * A value that's queried on demand; see {@link MetricsRecorder#registerGauge(String, Gauge)}. Thread safe.
+     */
+    interface Gauge {
+        long getValue();
+    }
+
+}
@@ -20,6 +20,7 @@
 package freemarker.template;
 
 import java.io.BufferedReader;
+import java.io.CharArrayReader;
 import java.io.FilterReader;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -35,6 +36,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 import freemarker.cache.TemplateCache;
@@ -91,6 +93,8 @@ public class Template extends Configurable {
     private int actualNamingConvention;
     private boolean autoEscaping;
     private OutputFormat outputFormat;
+    private Set<String> declaredVariableNames = Collections.emptySet();
+    private Set<String> dataModelShortcutVariableNames = Collections.emptySet();
     private final String name;
     private final String sourceName;
     private final ArrayList lines = new ArrayList();
@@ -230,12 +234,15 @@ public class Template extends Configurable {
            String encoding) throws IOException {
         this(name, sourceName, cfg, customParserConfiguration);
         
+        final MetricsRecorder metricsRecorder = getConfiguration().getMetricsRecorder();
+        final long parsingStartTime = metricsRecorder != null ? System.nanoTime() : 0L;
         this.setEncoding(encoding);
         LineTableBuilder ltbReader;
         try {
             ParserConfiguration actualParserConfiguration = getParserConfiguration();
             
-            if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)) {
+            if (!(reader instanceof BufferedReader) && !(reader instanceof StringReader)
+                    && !(reader instanceof CharArrayReader)) {
                 reader = new BufferedReader(reader, READER_BUFFER_SIZE);
             }
             ltbReader = new LineTableBuilder(reader, actualParserConfiguration);
@@ -278,6 +285,10 @@ public class Template extends Configurable {
         DebuggerService.registerTemplate(this);
         namespaceURIToPrefixLookup = Collections.unmodifiableMap(namespaceURIToPrefixLookup);
         prefixToNamespaceURILookup = Collections.unmodifiableMap(prefixToNamespaceURILookup);
+
+        if (metricsRecorder != null) {
+            metricsRecorder.recordTime(MetricsRecorder.TEMPLATE_PARSING_TIME, System.nanoTime() - parsingStartTime);
+        }
     }
 
     /**
@@ -720,6 +731,38 @@ public class Template extends Configurable {
     void setAutoEscaping(boolean autoEscaping) {
         this.autoEscaping = autoEscaping;
     }
+
+    /**
+     * Returns the names of the top-level variables that are read in this template, but are never declared in it (with
+     * {@code #assign}, {@code #global}, {@code #local}, {@code #macro}, {@code #list}, etc.). Reading these variables
+     * skips the local variables and the namespaces, and goes directly to the data-model (and then to the
+     * {@linkplain Configuration#getSharedVariable(String) shared variables}), unless some other template that was
+     * executed in the same {@link Environment}, or the Java API, has declared a variable with the same name. This is
+     * meant to be used for diagnostics.
+     * 
+     * @return An unmodifiable {@link Set}, in the order of first occurrence; not {@code null}.
+     * 
+     * @since 2.3.33
+     */
+    public Set<String> getDataModelShortcutVariableNames() {
+        return dataModelShortcutVariableNames;
+    }
+
+    /**
+     * Meant to be called by the parser only. 
+     */
+    void setDeclaredVariableNames(Set<String> declaredVariableNames, Set<String> dataModelShortcutVariableNames) {
+        this.declaredVariableNames = declaredVariableNames;
+        this.dataModelShortcutVariableNames = Collections.unmodifiableSet(dataModelShortcutVariableNames);
+    }
+
+    /**
+     * The names of the variables declared in the template; never {@code null}. Don't modify the returned
+     * {@link Set}, also, it's identity matters.
+     */
+    Set<String> getDeclaredVariableNames() {
+        return declaredVariableNames;
+    }
     
     /**
      * Dump the raw template in canonical form.
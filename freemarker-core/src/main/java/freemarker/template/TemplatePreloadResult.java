@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.Collection;
+import java.util.concurrent.Executor;
+
+/**
+ * The outcome of loading a single template with {@link Configuration#preloadTemplates(Collection, Executor)}.
+ *
+ * @since 2.3.33
+ */
+public final class TemplatePreloadResult {
+
+    private final String name;
+    private final Template template;
+    private final Exception exception;
+    private final long loadingTimeNanos;
+
+    TemplatePreloadResult(String name, Template template, Exception exception, long loadingTimeNanos) {
+        this.name = name;
+        this.template = template;
+        this.exception = exception;
+        this.loadingTimeNanos = loadingTimeNanos;
+    }
+
+    /**
+     * The template name as it was passed in.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The loaded template, or {@code null} if loading has failed.
+     */
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * The exception that was thrown when getting the template, or {@code null} if loading was successful. This is
+     * usually an {@link java.io.IOException}, like a {@link TemplateNotFoundException},
+     * {@link MalformedTemplateNameException}, or {@link freemarker.core.ParseException}.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * Shorthand for {@code getException() == null}.
+     */
+    public boolean isSuccessful() {
+        return exception == null;
+    }
+
+    /**
+     * The time it took to get the template, in nanoseconds. If the template was already in the cache (and wasn't
+     * stale), this will be very short, as then the template wasn't loaded and parsed again.
+     */
+    public long getLoadingTimeNanos() {
+        return loadingTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TemplatePreloadResult(name=" + name
+                + (exception == null ? ", successful" : ", exception=" + exception)
+                + ", loadingTimeNanos=" + loadingTimeNanos + ")";
+    }
+
+}
@@ -19,6 +19,7 @@
 
 package freemarker.template;
 
+import java.util.Collections;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TimeZone;
@@ -137,6 +138,18 @@ public class _TemplateAPI {
         t.setOutputFormat(outputFormat);
     }
 
+    public static void setDeclaredVariableNames(
+            Template t, Set<String> declaredVariableNames, Set<String> dataModelShortcutVariableNames) {
+        t.setDeclaredVariableNames(declaredVariableNames, dataModelShortcutVariableNames);
+    }
+
+    /**
+     * @param t Maybe {@code null}, in which case an empty set is returned.
+     */
+    public static Set<String> getDeclaredVariableNames(Template t) {
+        return t != null ? t.getDeclaredVariableNames() : Collections.<String>emptySet();
+    }
+
     public static void validateAutoEscapingPolicyValue(int autoEscaping) {
         if (autoEscaping != Configuration.ENABLE_IF_DEFAULT_AUTO_ESCAPING_POLICY
                 && autoEscaping != Configuration.ENABLE_IF_SUPPORTED_AUTO_ESCAPING_POLICY
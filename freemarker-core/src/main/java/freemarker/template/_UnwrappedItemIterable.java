@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import java.util.Iterator;
+
+/**
+ * For internal use only; don't depend on this, there's no backward compatibility guarantee at all!
+ * Implemented by the adapters of Java containers (like {@link DefaultListAdapter}), so that {@code #list} can walk the
+ * Java items directly, and only wrap an item if the template actually reads the loop variable.
+ *
+ * @since 2.3.33
+ */
+public interface _UnwrappedItemIterable {
+
+    /**
+     * Returns an iterator over the items of the adapted container, without wrapping them; the items returned by it
+     * must be wrapped with {@link #wrapItem(Object)}. This is called at most once per listing (like per
+     * {@code #list}). Returns {@code null} if this {@link TemplateModel} instance doesn't support this, in which case
+     * the caller must fall back to the usual {@link TemplateSequenceModel} or {@link TemplateCollectionModel} API.
+     */
+    Iterator<?> unwrappedItemIterator() throws TemplateModelException;
+
+    /**
+     * Wraps an item returned by {@link #unwrappedItemIterator()} into the same kind of {@link TemplateModel} that the
+     * {@link TemplateSequenceModel} or {@link TemplateCollectionModel} API would have returned for it.
+     */
+    TemplateModel wrapItem(Object item) throws TemplateModelException;
+
+}
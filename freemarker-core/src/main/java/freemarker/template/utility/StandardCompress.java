@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Map;
 
+import freemarker.core._WhitespaceCompressingWriter;
 import freemarker.template.TemplateBooleanModel;
 import freemarker.template.TemplateModelException;
 import freemarker.template.TemplateNumberModel;
@@ -111,7 +112,7 @@ public class StandardCompress implements TemplateTransformModel {
         return new StandardCompressWriter(out, bufferSize, singleLine);
     }
 
-    private static class StandardCompressWriter extends Writer {
+    private static class StandardCompressWriter extends Writer implements _WhitespaceCompressingWriter {
         private static final int MAX_EOL_LENGTH = 2; // CRLF is two bytes
         
         private static final int AT_BEGINNING = 0;
@@ -155,6 +156,34 @@ public class StandardCompress implements TemplateTransformModel {
             }
         }
 
+        @Override
+        public void writeCompressed(char[] cbuf, int off, int len) throws IOException {
+            if (singleLine || len == 0) {
+                // The already compressed line breaks still have to be replaced with spaces.
+                write(cbuf, off, len);
+                return;
+            }
+
+            // As the first character isn't whitespace, this writes the pending line break or space:
+            write(cbuf, off, 1);
+            off++;
+            len--;
+
+            // The state machine would just copy the rest, as the whitespace was already compressed:
+            while (len > 0) {
+                int room = buf.length - pos - MAX_EOL_LENGTH;
+                if (room <= 0) {
+                    flushInternal();
+                } else {
+                    int copyLen = Math.min(room, len);
+                    System.arraycopy(cbuf, off, buf, pos, copyLen);
+                    pos += copyLen;
+                    off += copyLen;
+                    len -= copyLen;
+                }
+            }
+        }
+
         private void writeHelper(char[] cbuf, int off, int len) {
             for (int i = off, end = off + len; i < end; i++) {
                 char c = cbuf[i];
@@ -837,12 +837,12 @@ public class StringUtil {
             buf = new StringBuilder(
                     tln + Math.max(newsub.length() - oln, 0) * 3);
             do {
-                buf.append(text.substring(b, e));
+                buf.append(text, b, e);
                 buf.append(newsub);
                 b = e + oln;
                 e = input.indexOf(oldsub, b);
             } while (e != -1 && !firstOnly);
-            buf.append(text.substring(b));
+            buf.append(text, b, tln);
             return buf.toString();
         }
     }
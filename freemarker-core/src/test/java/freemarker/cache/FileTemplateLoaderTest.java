@@ -23,6 +23,8 @@ import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.SystemUtils;
@@ -72,6 +74,33 @@ public class FileTemplateLoaderTest {
     }
     
     
+    @Test
+    public void testEncoding() throws Exception {
+        File tFile = new File(templateRootDir, "enc.ftl");
+        FileUtils.write(tFile, "\u00e1rv\u00edzt\u0171r\u0151 ${1}", "UTF-8");
+        assertEquals("\u00e1rv\u00edzt\u0171r\u0151 1", getTemplateOutput("enc.ftl", "UTF-8"));
+        assertEquals("\u00c3\u00a1rv\u00c3\u00adzt\u00c5\u00b1r\u00c5\u0091 1",
+                getTemplateOutput("enc.ftl", "ISO-8859-1"));
+        
+        // Malformed input is replaced, like with InputStreamReader: 
+        FileUtils.writeByteArrayToFile(tFile, new byte[] { 'a', (byte) 0xC3, 'b' });
+        cfg.clearTemplateCache();
+        assertEquals("a\uFFFDb", getTemplateOutput("enc.ftl", "UTF-8"));
+        
+        try {
+            cfg.getTemplate("enc.ftl", "noSuchEncoding");
+            fail();
+        } catch (UnsupportedEncodingException e) {
+            // Expected
+        }
+    }
+
+    private String getTemplateOutput(String name, String encoding) throws Exception {
+        StringWriter sw = new StringWriter();
+        cfg.getTemplate(name, encoding).process(null, sw);
+        return sw.toString();
+    }
+    
     @Test
     public void testNotFound() throws Exception {
         for (int i = 0; i < 2; i++) {
@@ -111,6 +140,53 @@ public class FileTemplateLoaderTest {
     @Test
     public void testDefault() throws IOException {
         assertFalse(new FileTemplateLoader(templateRootDir).getEmulateCaseSensitiveFileSystem());
+        assertFalse(new FileTemplateLoader(templateRootDir).getWatchForChanges());
+    }
+
+    @Test
+    public void testWatchForChanges() throws Exception {
+        FileTemplateLoader tl = (FileTemplateLoader) cfg.getTemplateLoader();
+        tl.setWatchForChanges(true);
+        try {
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+            assertEquals("foo", cfg.getTemplate("sub1/sub2/t.ftl").toString());
+            try {
+                cfg.getTemplate("sub1/sub2/t2.ftl");
+                fail();
+            } catch (TemplateNotFoundException e) {
+                // Expected
+            }
+
+            File tFile = new File(templateRootDir, "sub1/sub2/t.ftl");
+            long lastModified = tFile.lastModified();
+            FileUtils.write(tFile, "bar");
+            // Ensure that the change is visible even with coarse file system time granularity:
+            tFile.setLastModified(lastModified + 10000);
+            FileUtils.write(new File(templateRootDir, "sub1/sub2/t2.ftl"), "baaz");
+
+            waitForTemplateContent("sub1/sub2/t.ftl", "bar");
+            waitForTemplateContent("sub1/sub2/t2.ftl", "baaz");
+        } finally {
+            tl.setWatchForChanges(false);
+        }
+        assertFalse(tl.getWatchForChanges());
+    }
+
+    private void waitForTemplateContent(String name, String expectedContent) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            try {
+                if (cfg.getTemplate(name).toString().equals(expectedContent)) {
+                    return;
+                }
+            } catch (TemplateNotFoundException e) {
+                // Not yet noticed
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Change of " + name + " wasn't noticed in time");
+            }
+            Thread.sleep(50);
+        }
     }
     
     @After
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.core.AddConcatExpression.AppendableHash;
+import freemarker.core.AddConcatExpression.AppendableSequence;
+import freemarker.template.Template;
+import freemarker.template.SimpleSequence;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.template._ObjectWrappers;
+import freemarker.test.TemplateTest;
+
+public class AppendableConcatenationTest extends TemplateTest {
+
+    @Test
+    public void testSequenceAccumulation() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign seq = []><#list 1..100 as i><#assign seq += [i]></#list>"
+                + "${seq?size} ${seq[0]} ${seq[50]} ${seq[99]} ${seq?first} ${seq?last} ${seq?join('')?length}",
+                "100 1 51 100 1 100 192");
+        assertOutput(
+                "<#assign seq = []><#list 1..20 as i><#assign seq = seq + [i, -i]></#list>"
+                + "<#list seq as x>${x}<#sep>,</#list>",
+                "1,-1,2,-2,3,-3,4,-4,5,-5,6,-6,7,-7,8,-8,9,-9,10,-10,"
+                + "11,-11,12,-12,13,-13,14,-14,15,-15,16,-16,17,-17,18,-18,19,-19,20,-20");
+        assertOutput(
+                "<#assign seq = []><#list 1..20 as i><#assign seq += []></#list>${seq?size} ${seq?has_content?c}",
+                "0 false");
+        assertOutput(
+                "<#assign seq = []><#list 1..20 as i><#assign seq += [i]></#list>"
+                + "${(seq + seq)?size} ${(seq + seq)[20]} ${seq[20]!'-'}",
+                "40 1 -");
+    }
+
+    @Test
+    public void testSequenceBranching() throws IOException, TemplateException {
+        // Extending the same (not the last) version must not affect the other versions:
+        assertOutput(
+                "<#assign seq = []><#list 1..20 as i><#assign seq += [i]></#list>"
+                + "<#assign seqA = seq + ['a']><#assign seqB = seq + ['b']><#assign seqAC = seqA + ['c']>"
+                + "${seq?size} ${seq?last} ${seqA?size} ${seqA?last} ${seqB?size} ${seqB?last} "
+                + "${seqAC?size} ${seqAC[20]} ${seqAC?last}",
+                "20 20 21 a 21 b 22 a c");
+    }
+
+    @Test
+    public void testHashAccumulation() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign h = {}><#list 1..100 as i><#assign h += {'k' + i: i}></#list>"
+                + "${h?size} ${h.k1} ${h.k50} ${h.k100} ${h?keys?first} ${h?values?last}",
+                "100 1 50 100 k1 100");
+        // Later values override earlier ones, but the key order is decided by the first occurrence:
+        assertOutput(
+                "<#assign h = {}><#list 1..20 as i><#assign h += {'k' + (i % 3): i, 'x': i}></#list>"
+                + "<#list h as k, v>${k}=${v}<#sep>, </#list>",
+                "k1=19, x=20, k2=20, k0=18");
+    }
+
+    @Test
+    public void testHashBranching() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign h = {}><#list 1..20 as i><#assign h += {'k' + i: i}></#list>"
+                + "<#assign hA = h + {'k1': 'a', 'new': 'a'}><#assign hB = h + {'k1': 'b'}>"
+                + "<#assign hAC = hA + {'k2': 'c'}>"
+                + "${h.k1} ${h.new!'-'} ${h?size} | ${hA.k1} ${hA.new} ${hA?size} | ${hB.k1} ${hB.new!'-'} ${hB?size} | "
+                + "${hAC.k1} ${hAC.k2} ${hAC.new} ${hAC?size} ${hAC?keys?last}",
+                "1 - 20 | a a 21 | b - 20 | a c a 21 new");
+    }
+
+    @Test
+    public void testHashValueOverriding() throws IOException, TemplateException {
+        // Goes past AppendableHash.MAX_VALUE_VERSIONS, and so switches to new buffers:
+        assertOutput(
+                "<#assign h = {}><#list 1..50 as i>"
+                + "<#assign h += {'x': i, 'k' + i: i}><#if i == 5><#assign h5 = h></#if>"
+                + "</#list>"
+                + "${h.x} ${h?size} ${h?keys?first} ${h?keys?last} | ${h5.x} ${h5?size} ${h5.k6!'-'}",
+                "50 51 x k50 | 5 6 -");
+    }
+
+    @Test
+    public void testConcurrentSequenceBranching() throws InterruptedException, TemplateModelException {
+        SimpleSequence init = new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER);
+        init.add("base");
+        final AppendableSequence base = AppendableSequence.EMPTY.append(init);
+        final int threadCount = 8;
+        final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final String item = "t" + t;
+            threads[t] = new Thread(() -> {
+                try {
+                    SimpleSequence toAppend = new SimpleSequence(_ObjectWrappers.SAFE_OBJECT_WRAPPER);
+                    toAppend.add(item);
+                    for (int i = 0; i < 1000; i++) {
+                        AppendableSequence seq = base;
+                        for (int j = 0; j < 20; j++) {
+                            seq = seq.append(toAppend);
+                        }
+                        if (seq.size() != 21 || !"base".equals(((TemplateScalarModel) seq.get(0)).getAsString())) {
+                            failures.add("Wrong start or size");
+                        }
+                        for (int j = 1; j < 21; j++) {
+                            if (!item.equals(((TemplateScalarModel) seq.get(j)).getAsString())) {
+                                failures.add("Wrong item at " + j);
+                            }
+                        }
+                    }
+                } catch (TemplateModelException e) {
+                    failures.add(e.toString());
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(1, base.size());
+    }
+
+    @Test
+    public void testSwitchesToAppendableModels() throws IOException, TemplateException {
+        Template t = new Template(null,
+                "<#assign seq = [], h = {}>"
+                + "<#list 1..20 as i><#assign seq += [i], h += {'k' + i: i}></#list>",
+                getConfiguration());
+        Environment env = t.createProcessingEnvironment(null, new StringWriter());
+        env.process();
+        assertTrue(env.getGlobalVariable("seq") instanceof AppendableSequence);
+        assertTrue(env.getGlobalVariable("h") instanceof AppendableHash);
+    }
+
+}
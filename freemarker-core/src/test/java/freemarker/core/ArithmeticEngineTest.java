@@ -97,7 +97,8 @@ public class ArithmeticEngineTest {
 
     @Test
     public void toNumberTest() {
-        for (ArithmeticEngine arithmeticEngine : new ArithmeticEngine[]{BIGDECIMAL_ENGINE, CONSERVATIVE_ENGINE}) {
+        for (ArithmeticEngine arithmeticEngine : new ArithmeticEngine[]{
+                BIGDECIMAL_ENGINE, CONSERVATIVE_ENGINE, FAST_BIGDECIMAL_ENGINE}) {
             assertEquals(Double.POSITIVE_INFINITY, arithmeticEngine.toNumber("INF"));
             assertEquals(Double.NEGATIVE_INFINITY, arithmeticEngine.toNumber("-INF"));
             assertEquals(Double.NEGATIVE_INFINITY, arithmeticEngine.toNumber("-Infinity"));
@@ -121,6 +122,65 @@ public class ArithmeticEngineTest {
 
         assertEquals(new BigDecimal("0.9"), BIGDECIMAL_ENGINE.toNumber(".9"));
         assertEquals(0.9, CONSERVATIVE_ENGINE.toNumber(".9"));
+
+        assertEquals(1234567, FAST_BIGDECIMAL_ENGINE.toNumber("1234567"));
+        assertEquals(-5, FAST_BIGDECIMAL_ENGINE.toNumber("-0005"));
+        assertEquals(12345678901234L, FAST_BIGDECIMAL_ENGINE.toNumber("12345678901234"));
+        assertEquals(new BigDecimal("12345678901234567890"), FAST_BIGDECIMAL_ENGINE.toNumber("12345678901234567890"));
+        assertEquals(new BigDecimal("1.9"), FAST_BIGDECIMAL_ENGINE.toNumber("1.9"));
+        assertEquals(new BigDecimal("1E3"), FAST_BIGDECIMAL_ENGINE.toNumber("1E3"));
+    }
+
+    @Test
+    public void fastBigDecimalEngineIntegralOperationsTest() throws Exception {
+        assertEquals(5, FAST_BIGDECIMAL_ENGINE.add(2, 3));
+        assertEquals(5, FAST_BIGDECIMAL_ENGINE.add((byte) 2, 3L));
+        assertEquals(3000000000L, FAST_BIGDECIMAL_ENGINE.add(Integer.MAX_VALUE, 852516353));
+        assertEquals(-1, FAST_BIGDECIMAL_ENGINE.subtract(2, 3));
+        assertEquals(6, FAST_BIGDECIMAL_ENGINE.multiply((short) 2, 3));
+        assertEquals(2, FAST_BIGDECIMAL_ENGINE.divide(6, 3));
+        assertEquals(1, FAST_BIGDECIMAL_ENGINE.modulus(7, 3));
+        assertEquals(-1, FAST_BIGDECIMAL_ENGINE.compareNumbers(Long.MIN_VALUE, 0));
+        assertEquals(1, FAST_BIGDECIMAL_ENGINE.compareNumbers(Long.MAX_VALUE, Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void fastBigDecimalEngineFallbackTest() throws Exception {
+        assertEquals(
+                new BigDecimal(Long.MAX_VALUE).add(BigDecimal.ONE),
+                FAST_BIGDECIMAL_ENGINE.add(Long.MAX_VALUE, 1));
+        assertEquals(
+                new BigDecimal(Long.MIN_VALUE).subtract(BigDecimal.ONE),
+                FAST_BIGDECIMAL_ENGINE.subtract(Long.MIN_VALUE, 1));
+        assertEquals(
+                new BigDecimal(Long.MIN_VALUE).negate(),
+                FAST_BIGDECIMAL_ENGINE.multiply(-1, Long.MIN_VALUE));
+        assertEquals(
+                new BigDecimal(Long.MAX_VALUE).multiply(BigDecimal.TEN),
+                FAST_BIGDECIMAL_ENGINE.multiply(Long.MAX_VALUE, 10));
+
+        for (Number[] operands : new Number[][] {
+                { 1, 3 }, { 7L, 2 }, { Long.MIN_VALUE, -1 }, { new BigDecimal("1.50"), 2 }, { 1.1, 2 },
+                { BigInteger.TEN, 4 } }) {
+            assertEquals(0, BIGDECIMAL_ENGINE.compareNumbers(
+                    BIGDECIMAL_ENGINE.divide(operands[0], operands[1]),
+                    FAST_BIGDECIMAL_ENGINE.divide(operands[0], operands[1])));
+            assertEquals(0, BIGDECIMAL_ENGINE.compareNumbers(
+                    BIGDECIMAL_ENGINE.add(operands[0], operands[1]),
+                    FAST_BIGDECIMAL_ENGINE.add(operands[0], operands[1])));
+            assertEquals(0, BIGDECIMAL_ENGINE.compareNumbers(
+                    BIGDECIMAL_ENGINE.multiply(operands[0], operands[1]),
+                    FAST_BIGDECIMAL_ENGINE.multiply(operands[0], operands[1])));
+        }
+        assertThat(FAST_BIGDECIMAL_ENGINE.divide(1, 3), Matchers.instanceOf(BigDecimal.class));
+        assertThat(FAST_BIGDECIMAL_ENGINE.add(1.5, 1), Matchers.instanceOf(BigDecimal.class));
+
+        try {
+            FAST_BIGDECIMAL_ENGINE.divide(1, 0);
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected
+        }
     }
 
 }
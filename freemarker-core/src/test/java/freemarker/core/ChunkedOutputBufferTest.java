@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class ChunkedOutputBufferTest extends TemplateTest {
+
+    private static final int CHUNK_SIZE = ChunkedOutputBuffer.CHUNK_SIZE;
+
+    @Test
+    public void testWriteAndRollBack() throws IOException {
+        ChunkedOutputBuffer buffer = new ChunkedOutputBuffer(new ChunkedOutputBuffer.ChunkPool());
+        StringBuilder expected = new StringBuilder();
+
+        assertEquals(0, buffer.getMark());
+        buffer.write("abc");
+        expected.append("abc");
+        long mark1 = buffer.getMark();
+        assertEquals(3, mark1);
+
+        String longStr = repeat('x', CHUNK_SIZE * 2 + 10);
+        buffer.write(longStr);
+        buffer.write('y');
+        assertEquals(3 + longStr.length() + 1, buffer.getMark());
+        assertEquals(expected + longStr + "y", buffer.toString());
+
+        buffer.rollBack(mark1);
+        assertEquals(expected.toString(), buffer.toString());
+
+        char[] fill = repeat('z', CHUNK_SIZE - 3).toCharArray();
+        buffer.write(fill, 0, fill.length);
+        expected.append(fill);
+        long chunkBoundaryMark = buffer.getMark();
+        assertEquals(CHUNK_SIZE, chunkBoundaryMark);
+        buffer.write("123");
+        buffer.rollBack(chunkBoundaryMark);
+        buffer.write('!');
+        expected.append('!');
+
+        StringWriter out = new StringWriter();
+        buffer.writeTo(out);
+        assertEquals(expected.toString(), out.toString());
+
+        buffer.rollBack(0);
+        assertEquals("", buffer.toString());
+        buffer.write("a");
+        buffer.release();
+        assertEquals(0, buffer.getMark());
+    }
+
+    @Test
+    public void testNestedAttempts() throws IOException, TemplateException {
+        assertOutput(
+                "<#attempt>a<#attempt>b<#attempt>c${noSuchVar}<#recover>C</#attempt>d<#recover>B</#attempt>"
+                + "e<#recover>A</#attempt>",
+                "abCde");
+        assertOutput(
+                "<#attempt>a<#attempt>b${noSuchVar}<#recover>B</#attempt>c${noSuchVar}<#recover>A</#attempt>",
+                "A");
+        assertOutput(
+                "<#attempt>a<#assign captured><#attempt>b${noSuchVar}<#recover>B</#attempt></#assign>${captured}"
+                + "<#recover>A</#attempt>",
+                "aB");
+    }
+
+    @Test
+    public void testLongAttemptedOutput() throws IOException, TemplateException {
+        addToDataModel("s", repeat('x', CHUNK_SIZE - 1));
+        String s = repeat('x', CHUNK_SIZE - 1);
+        assertOutput(
+                "<#attempt><#list 1..3 as i>${s}${i}</#list><#attempt>${s}${noSuchVar}<#recover>!</#attempt>"
+                + "<#recover>failed</#attempt>",
+                s + "1" + s + "2" + s + "3!");
+    }
+
+    @Test
+    public void testTakeContent() throws IOException {
+        ChunkedOutputBuffer buffer = new ChunkedOutputBuffer(new ChunkedOutputBuffer.ChunkPool());
+        assertEquals("", buffer.takeContent());
+
+        buffer.write("abc");
+        assertEquals("abc", buffer.takeContent());
+        assertEquals(0, buffer.getMark());
+
+        String longStr = repeat('x', CHUNK_SIZE + 10);
+        buffer.write(longStr);
+        Object content = buffer.takeContent();
+        assertTrue(content instanceof CapturedOutput);
+        assertEquals(0, buffer.getMark());
+        buffer.write("reused");
+        assertEquals("reused", buffer.toString());
+        buffer.release();
+
+        CapturedOutput capturedOutput = (CapturedOutput) content;
+        assertEquals(longStr.length(), capturedOutput.length());
+        StringWriter out = new StringWriter();
+        capturedOutput.writeTo(out);
+        assertEquals(longStr, out.toString());
+        assertEquals(longStr, capturedOutput.getAsString());
+    }
+
+    @Test
+    public void testLongCapture() throws IOException, TemplateException {
+        String s = repeat('x', CHUNK_SIZE - 1);
+        addToDataModel("s", s);
+        String captured = s + "1" + s + "2" + s + "3";
+        assertOutput(
+                "<#assign c><#list 1..3 as i>${s}${i}</#list></#assign>"
+                + "${c}|${c?length}|${(c + '!')?length}|${c?substring(0, 3)}",
+                captured + "|" + captured.length() + "|" + (captured.length() + 1) + "|xxx");
+        assertOutput(
+                "<#ftl outputFormat='HTML'><#assign c><#list 1..3 as i>${s}<p></#list></#assign>"
+                + "${c}|${c + '<'}|${c?markupString?length}",
+                repeat3(s + "<p>") + "|" + repeat3(s + "<p>") + "&lt;|" + 3 * (s.length() + 3));
+        assertOutput(
+                "<#assign c><#attempt>${s}${s}${noSuchVar}<#recover>${s}!</#attempt></#assign>${c}",
+                s + "!");
+    }
+
+    private static String repeat3(String s) {
+        return s + s + s;
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.junit.Test;
+
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.utility.StandardCompress;
+import freemarker.test.TemplateTest;
+
+public class CompressedBlockTest extends TemplateTest {
+
+    @Test
+    public void testStaticTextCompressedAtParseTime() throws IOException, TemplateException {
+        addToDataModel("x", "  X \n ");
+        assertOutput("<#compress>  a  b\n\n c \r\n d \r \n e${x}f \t \n</#compress>", "a b\nc\r\nd\re X\nf");
+        assertOutput("<#compress> a ${x} <#if true> b \n </#if>\n\tc </#compress>", "a X\nb\nc");
+        assertOutput("<@compress single_line=true>  a \n b ${x}\r\n c </@compress>", "a b X c");
+        assertOutput("<#compress>a  <#attempt>b \n\n c${noSuchVar}<#recover>d  \n e</#attempt></#compress>",
+                "a d\ne");
+    }
+
+    @Test
+    public void testSameAsStandardCompress() throws IOException, TemplateException {
+        String text = " \t a \r\n\r\n b  c\rd \r e\n\n\nf\r";
+        StringWriter expected = new StringWriter();
+        Writer compressWriter = StandardCompress.INSTANCE.getWriter(expected, null);
+        compressWriter.write(text);
+        compressWriter.write("|");
+        compressWriter.write(text);
+        compressWriter.flush();
+        addToDataModel("text", text);
+        assertOutput("<#compress>" + text + "|${text}</#compress>", expected.toString());
+    }
+
+    @Test
+    public void testUserDefinedCompressGetsOriginalText() throws IOException, TemplateException {
+        addTemplate("lib.ftl", "<#macro compress>[<#nested>]</#macro>");
+        assertOutput("<#import 'lib.ftl' as lib><#assign compress = lib.compress><@compress> a  b </@compress>",
+                "[ a  b ]");
+    }
+
+    @Test
+    public void testCanonicalFormUnchanged() throws IOException {
+        Template t = new Template(null, "<#compress>a  \n  b</#compress>", getConfiguration());
+        assertEquals("<#compress>a  \n  b</#compress>", t.getRootTreeNode().getCanonicalForm());
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.core.AddConcatExpression.ConcatenatedScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.TemplateScalarModel;
+import freemarker.test.TemplateTest;
+
+public class ConcatenatedStringTest extends TemplateTest {
+
+    @Test
+    public void testConcatenatedString() {
+        Object s = "";
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            String item = i + ",";
+            s = ConcatenatedString.concat(s, item);
+            expected.append(item);
+            if (expected.length() < ConcatenatedString.MIN_LENGTH) {
+                assertTrue(s instanceof String);
+            } else {
+                assertTrue(s instanceof ConcatenatedString);
+                assertEquals(expected.length(), ((ConcatenatedString) s).length());
+            }
+        }
+        assertEquals(expected.toString(), s.toString());
+
+        // The shared buffer must not be visible for the earlier instances:
+        ConcatenatedString base = (ConcatenatedString) s;
+        ConcatenatedString s1 = base.concat("A");
+        ConcatenatedString s2 = base.concat("B");
+        ConcatenatedString s3 = s1.concat("C");
+        assertEquals(expected.toString(), base.toString());
+        assertEquals(expected + "A", s1.toString());
+        assertEquals(expected + "B", s2.toString());
+        assertEquals(expected + "AC", s3.toString());
+        assertSame(base, base.concat(""));
+    }
+
+    @Test
+    public void testConcurrentConcatenation() throws InterruptedException {
+        final ConcatenatedString base = (ConcatenatedString) ConcatenatedString.concat(
+                "", repeat('x', ConcatenatedString.MIN_LENGTH));
+        final int threadCount = 8;
+        final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final String suffix = String.valueOf((char) ('a' + t));
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    ConcatenatedString s = base;
+                    StringBuilder expected = new StringBuilder(base.toString());
+                    for (int j = 0; j < 10; j++) {
+                        s = s.concat(suffix);
+                        expected.append(suffix);
+                    }
+                    if (!expected.toString().equals(s.toString())) {
+                        failures.add(s.toString());
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(repeat('x', ConcatenatedString.MIN_LENGTH), base.toString());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void testStringConcatenationInTemplates() throws IOException, TemplateException {
+        assertOutput(
+                "<#assign s = ''><#list 1..1000 as i><#assign s += i + ','></#list>"
+                + "${s?length?c} ${s?substring(0, 10)} ${s?keep_after_last('99')}",
+                "3893 1,2,3,4,5, ,1000,");
+        assertOutput(
+                "<#assign s = ''><#list 1..200 as i><#assign s = s + i></#list>"
+                + "<#assign s1 = s + 'A'><#assign s2 = s + 'B'><#assign s3 = s1 + 'C'>"
+                + "${s?length}|${s1?keep_after('199')} ${s2?keep_after('199')} ${s3?keep_after('199')}",
+                "492|200A 200B 200AC");
+        assertOutput(
+                "<#assign s = ''><#list 1..200 as i><#assign s += i></#list>"
+                + "${(s + 1)?ends_with('2001')?c} ${(s + true?c)?ends_with('200true')?c} ${s?is_string?c}",
+                "true true true");
+    }
+
+    @Test
+    public void testMarkupConcatenationInTemplates() throws IOException, TemplateException {
+        assertOutput(
+                "<#ftl outputFormat='HTML'><#assign s = ''?esc><#list 1..300 as i><#assign s += '<' + i></#list>"
+                + "${s?markup_string?substring(0, 20)}",
+                "&lt;1&lt;2&lt;3&lt;4");
+        assertOutput(
+                "<#ftl outputFormat='HTML'><#assign s = ''?no_esc><#list 1..300 as i><#assign s += '<br>'?no_esc + i>"
+                + "</#list>${s?markup_string?substring(0, 20)}|${s?markup_string?length?c}",
+                "<br>1<br>2<br>3<br>4|1992");
+        assertOutput(
+                "<#ftl outputFormat='HTML'><#assign s = ''><#list 1..300 as i><#assign s += i></#list>"
+                + "<#assign m = s + '<br>'?no_esc>${m?markup_string?keep_after('299')}",
+                "300<br>");
+    }
+
+    @Test
+    public void testMarkupConcatenationKeepsModelClass() throws TemplateModelException {
+        String longText = repeat('x', ConcatenatedString.MIN_LENGTH);
+
+        TemplateHTMLOutputModel mo = HTMLOutputFormat.INSTANCE.concat(
+                HTMLOutputFormat.INSTANCE.fromPlainTextByEscaping(longText),
+                HTMLOutputFormat.INSTANCE.fromPlainTextByEscaping("<"));
+        assertSame(TemplateHTMLOutputModel.class, mo.getClass());
+        assertTrue(mo.getPlainTextContentStringOrRope() instanceof StringRope);
+        assertEquals(longText + "&lt;", HTMLOutputFormat.INSTANCE.getMarkupString(mo));
+
+        // Subclasses that override newTemplateMarkupOutputModel(String, String) get their own model class:
+        mo = CustomHTMLOutputFormat.INSTANCE.concat(
+                CustomHTMLOutputFormat.INSTANCE.fromPlainTextByEscaping(longText),
+                CustomHTMLOutputFormat.INSTANCE.fromPlainTextByEscaping("<"));
+        assertSame(CustomTemplateHTMLModel.class, mo.getClass());
+        assertEquals(longText.replace('x', 'X') + "&lt;", CustomHTMLOutputFormat.INSTANCE.getMarkupString(mo));
+    }
+
+    @Test
+    public void testResultIsAPlainScalar() throws IOException, TemplateException {
+        Template t = new Template(null,
+                "<#assign s = ''><#list 1..100 as i><#assign s += i + ','></#list>", getConfiguration());
+        Environment env = t.createProcessingEnvironment(null, new StringWriter());
+        env.process();
+        TemplateModel s = env.getGlobalVariable("s");
+        assertTrue(s instanceof ConcatenatedScalar);
+        assertTrue(((TemplateScalarModel) s).getAsString().startsWith("1,2,3,"));
+        assertEquals(((TemplateScalarModel) s).getAsString(), s.toString());
+    }
+
+}
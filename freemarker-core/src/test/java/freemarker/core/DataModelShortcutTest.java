@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import freemarker.template.SimpleScalar;
+import freemarker.template.Template;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class DataModelShortcutTest extends TemplateTest {
+
+    @Before
+    public void setup() {
+        addToDataModel("x", "dm");
+        addToDataModel("xs", new int[] { 1, 2 });
+    }
+
+    @Test
+    public void testDataModelShortcutVariableNames() throws IOException {
+        Template t = new Template(null, ""
+                + "<#assign a = 1>${a} ${x} ${b!} "
+                + "<#list xs as i>${i} ${i_index} ${y!}</#list>"
+                + "<#macro m p><#local l = p>${l} ${z!}</#macro>"
+                + "<@m p=x ; n>${n}</@m>"
+                + "${[1]?map(e -> e + w!0)?join(',')}",
+                getConfiguration());
+        assertEquals(ImmutableSet.of("x", "b", "xs", "y", "z", "w"), t.getDataModelShortcutVariableNames());
+    }
+
+    @Test
+    public void testDeclaredInSameTemplate() throws IOException, TemplateException {
+        assertOutput("${x} <#assign x = 'ns'>${x}", "dm ns");
+        assertOutput("${x} <#global x = 'g'>${x}", "dm g");
+        assertOutput("<#list ['l'] as x>${x}</#list> ${x}", "l dm");
+    }
+
+    @Test
+    public void testDeclaredInIncludedTemplate() throws IOException, TemplateException {
+        addTemplate("inc.ftl", "<#assign x = 'inc'>");
+        assertOutput("${x} <#include 'inc.ftl'>${x}", "dm inc");
+    }
+
+    @Test
+    public void testDeclaredInImportedTemplate() throws IOException, TemplateException {
+        addTemplate("lib.ftl", "<#global x = 'lib'><#macro m>${x}</#macro>");
+        assertOutput("${x} <#import 'lib.ftl' as lib>${x} <@lib.m />", "dm lib lib");
+    }
+
+    @Test
+    public void testDeclaredInImportingTemplate() throws IOException, TemplateException {
+        addTemplate("lib.ftl", "<#macro m>${x}</#macro>");
+        assertOutput("<#import 'lib.ftl' as lib><@lib.m /> <#global x = 'main'><@lib.m />", "dm main");
+        addTemplate("inc.ftl", "${x}");
+        assertOutput("<#include 'inc.ftl'> <#list ['loop'] as x><#include 'inc.ftl'></#list>", "dm loop");
+    }
+
+    @Test
+    public void testDeclaredInInterpretedTemplate() throws IOException, TemplateException {
+        assertOutput("${x} <@'<#assign x = \"interpreted\">'?interpret />${x}", "dm interpreted");
+    }
+
+    @Test
+    public void testDeclaredViaJavaApi() throws IOException, TemplateException {
+        addToDataModel("setX", (TemplateDirectiveModel) (env, params, loopVars, body) ->
+                env.setVariable("x", new SimpleScalar("java")));
+        assertOutput("${x} <@setX />${x}", "dm java");
+    }
+
+    @Test
+    public void testSharedVariableFallback() throws Exception {
+        getConfiguration().setSharedVariable("sv", "shared");
+        assertOutput("${sv} ${x}", "shared dm");
+    }
+
+}
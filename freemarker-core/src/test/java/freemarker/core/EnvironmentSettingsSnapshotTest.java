@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class EnvironmentSettingsSnapshotTest extends TemplateTest {
+
+    @Test
+    public void testSettingDirective() throws TemplateException, IOException {
+        assertOutput(
+                "${.locale} <#setting locale='de_DE'>${.locale} ${1.5} <#setting locale='en_US'>${.locale} ${1.5}",
+                "en_US de_DE 1,5 en_US 1.5");
+        assertOutput(
+                "${(1 / 3)?c} <#setting arithmeticEngine='conservative'>${(1 / 3)?c}",
+                "0.333333333333 0.3333333333333333");
+        assertErrorContains("${noSuchVar}<#setting classicCompatible=true>", "noSuchVar");
+        assertOutput("<#setting classicCompatible=true>[${noSuchVar}]", "[]");
+    }
+
+    @Test
+    public void testJavaApiChangesAreVisible() throws TemplateException, IOException {
+        Template t = new Template(null, "${.locale} ${(1 / 3)?c}", getConfiguration());
+        Environment env = t.createProcessingEnvironment(null, new StringWriter());
+        assertEquals(Locale.US, env.getLocale());
+        assertSame(ArithmeticEngine.BIGDECIMAL_ENGINE, env.getArithmeticEngine());
+
+        // Changing the parents before processing is allowed:
+        t.setLocale(Locale.GERMANY);
+        t.setArithmeticEngine(ArithmeticEngine.CONSERVATIVE_ENGINE);
+        StringWriter out = new StringWriter();
+        env.setOut(out);
+        env.process();
+        assertEquals("de_DE 0.3333333333333333", out.toString());
+
+        env.setLocale(Locale.FRANCE);
+        env.setArithmeticEngine(ArithmeticEngine.BIGDECIMAL_ENGINE);
+        assertEquals(Locale.FRANCE, env.getLocale());
+        assertSame(ArithmeticEngine.BIGDECIMAL_ENGINE, env.getArithmeticEngine());
+        out = new StringWriter();
+        env.setOut(out);
+        env.process();
+        assertEquals("fr_FR 0.333333333333", out.toString());
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setLocale(Locale.US);
+        return cfg;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.cache.CacheStorage;
+import freemarker.cache.MruCacheStorage;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class FragmentCacheTest extends TemplateTest {
+
+    private FragmentCache fragmentCache;
+
+    @Before
+    public void setUp() {
+        fragmentCache = new FragmentCache(new MruCacheStorage(100, 0));
+        getConfiguration().setFragmentCache(fragmentCache);
+    }
+
+    @Test
+    public void testCachedByKey() throws IOException, TemplateException {
+        Template t = new Template(null, "<#cache key=k>${x}</#cache>", getConfiguration());
+
+        addToDataModel("k", "a");
+        addToDataModel("x", 1);
+        assertOutput(t, "1");
+        addToDataModel("x", 2);
+        assertOutput(t, "1");
+        addToDataModel("k", "b");
+        assertOutput(t, "2");
+        addToDataModel("x", 3);
+        addToDataModel("k", "a");
+        assertOutput(t, "1");
+
+        assertEquals(2, fragmentCache.getHitCount());
+        assertEquals(2, fragmentCache.getMissCount());
+        assertEquals(0.5, fragmentCache.getHitRate(), 0);
+
+        fragmentCache.clear();
+        assertOutput(t, "3");
+        assertEquals(3, fragmentCache.getMissCount());
+    }
+
+    @Test
+    public void testKeysOfDifferentDirectivesDoNotClash() throws IOException, TemplateException {
+        addToDataModel("x", 1);
+        assertOutput("<#cache key='k'>${x}</#cache><#assign x = 2><#cache key='k'>${x}</#cache>", "12");
+    }
+
+    @Test
+    public void testReloadedTemplate() throws IOException, TemplateException {
+        addToDataModel("x", 1);
+        assertOutput(new Template("t.ftl", "<#cache key='k'>${x}</#cache>", getConfiguration()), "1");
+        addToDataModel("x", 2);
+        // Another Template object with the same source (like after reloading) can use the entry:
+        assertOutput(new Template("t.ftl", "<#cache key='k'>${x}</#cache>", getConfiguration()), "1");
+        // But not if the content of the #cache block has changed:
+        assertOutput(new Template("t.ftl", "<#cache key='k'>${x}!</#cache>", getConfiguration()), "2!");
+        // Nor if it's in another template:
+        assertOutput(new Template("t2.ftl", "<#cache key='k'>${x}</#cache>", getConfiguration()), "2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonConcurrentStorageRejected() {
+        new FragmentCache(new CacheStorage() {
+            @Override
+            public Object get(Object key) {
+                return null;
+            }
+
+            @Override
+            public void put(Object key, Object value) {
+            }
+
+            @Override
+            public void remove(Object key) {
+            }
+
+            @Override
+            public void clear() {
+            }
+        });
+    }
+
+    @Test
+    public void testTtl() throws IOException, TemplateException, InterruptedException {
+        Template t = new Template(null, "<#cache key='k' ttl=ttl>${x}</#cache>", getConfiguration());
+
+        addToDataModel("ttl", 0);
+        addToDataModel("x", 1);
+        assertOutput(t, "1");
+        addToDataModel("x", 2);
+        assertOutput(t, "2");
+        assertEquals(0, fragmentCache.getHitCount() + fragmentCache.getMissCount());
+
+        addToDataModel("ttl", 0.05);
+        assertOutput(t, "2");
+        addToDataModel("x", 3);
+        assertOutput(t, "2");
+        Thread.sleep(100);
+        assertOutput(t, "3");
+
+        assertErrorContains("<#cache key='k' ttl=-1>x</#cache>", "can't be negative");
+    }
+
+    @Test
+    public void testNoFragmentCache() throws IOException, TemplateException {
+        getConfiguration().setFragmentCache(null);
+        Template t = new Template(null, "<#cache key='k'>${x}</#cache>", getConfiguration());
+        addToDataModel("x", 1);
+        assertOutput(t, "1");
+        addToDataModel("x", 2);
+        assertOutput(t, "2");
+    }
+
+    @Test
+    public void testMarkupOutputFormat() throws IOException, TemplateException {
+        Template t = new Template("t.ftlh", "<#cache key='k'><p>${x}</p>${x?noEsc}</#cache>", getConfiguration());
+        addToDataModel("x", "<&>");
+        assertOutput(t, "<p>&lt;&amp;&gt;</p><&>");
+        addToDataModel("x", "-");
+        assertOutput(t, "<p>&lt;&amp;&gt;</p><&>");
+        assertEquals(1, fragmentCache.getHitCount());
+    }
+
+    @Test
+    public void testParsingErrors() {
+        assertErrorContains("<#cache>x</#cache>", ParseException.class);
+        assertErrorContains("<#cache ttl=1>x</#cache>", "Missing required parameter", "key");
+        assertErrorContains("<#cache key='k' foo=1>x</#cache>", "Unsupported named #cache parameter", "foo");
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = super.createConfiguration();
+        cfg.setRecognizeStandardFileExtensions(true);
+        return cfg;
+    }
+
+}
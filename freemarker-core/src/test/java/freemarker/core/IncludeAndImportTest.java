@@ -244,6 +244,23 @@ public class IncludeAndImportTest extends TemplateTest {
         }
     }
     
+    @Test
+    public void includeInLoopUsesTheRightTemplate() throws IOException, TemplateException {
+        assertOutput("<#list 1..3 as i><#include 'inc1.ftl'></#list>${inc1Cnt}", "[inc1][inc1][inc1]3");
+        assertOutput(
+                "<#list 1..2 as i><#include 'missing.ftl' ignore_missing=true>[${i}]</#list>"
+                + "<#list 1..2 as i><#include 'inc2.ftl' parse=false></#list>",
+                "[1][2][inc2][inc2]");
+        assertErrorContains(
+                "<#include 'missing.ftl' ignore_missing=true><#include 'missing.ftl'>",
+                TemplateNotFoundException.class, "missing.ftl");
+        
+        // The locale is part of the lookup key:
+        assertOutput(
+                "<#list ['en_US', 'de_DE', 'en_US'] as l><#setting locale=l><#include 'lib.ftl'>[<@m/>]</#list>",
+                "[en][de][en]");
+    }
+
     /**
      * Ensures that all methods are overridden so that they will do the lazy initialization.
      */
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class MacroContextReuseTest extends TemplateTest {
+
+    @Test
+    public void testLocalsDoNotLeakBetweenCalls() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro m a b=2><#if x??>${x}<#else>-</#if><#local x = a + b>${x}</#macro>"
+                + "<@m a=1 b=10 />; <@m a=1 />; <@m 5 />",
+                "-11; -3; -7");
+        assertOutput(""
+                + "<#function f a b=a><#return a + b></#function>"
+                + "${f(1, 2)} ${f(3)} ${f(f(1), f(2, f(3)))}",
+                "3 6 10");
+    }
+
+    @Test
+    public void testDeepRecursion() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#function fact n><#return (n <= 1)?then(1, n * fact(n - 1))></#function>"
+                + "<#macro countdown n>${n}<#if n != 0> <@countdown n=n - 1 /></#if>${n}</#macro>"
+                + "${fact(25)?c}; <@countdown 20 />",
+                "15511210043330985984000000; "
+                + "20 19 18 17 16 15 14 13 12 11 10 9 8 7 6 5 4 3 2 1 0"
+                + "01234567891011121314151617181920");
+    }
+
+    @Test
+    public void testLocalsHashOutlivesCall() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro m a b=2><#local c = 3><#global g = .locals><#local d = 4></#macro>"
+                + "<@m a=1 /><@m a=10 b=20 />"
+                + "<#list g?keys?sort as k>${k}=${g[k]}<#sep>, </#list>",
+                "a=10, b=20, c=3, d=4");
+        assertOutput(""
+                + "<#macro m a><#local locals = .locals><#local a = 2>${locals.a} ${a}</#macro>"
+                + "<@m a=1 />",
+                "2 2");
+    }
+
+    @Test
+    public void testCatchAllParameter() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro m a others...>${a}:${others?size}<#list others as k, v> ${k}=${v}</#list></#macro>"
+                + "<@m a=1 />; <@m a=1 b=2 c=3 />; <@m a=1 />",
+                "1:0; 1:2 b=2 c=3; 1:0");
+        assertOutput(""
+                + "<#function f a others...><#return a + others?size></#function>"
+                + "${f(1)} ${f(1, 2, 3)} ${f(1)}",
+                "1 3 1");
+        assertOutput(""
+                + "<#macro m others...><#local others = 1>${others}</#macro>"
+                + "<@m /> <@m a=1 />",
+                "1 1");
+    }
+
+    @Test
+    public void testNullArguments() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro m a b=a>${a!'-'} ${b!'-'}</#macro>"
+                + "<@m a=1 />; <@m a=1 b=2 />",
+                "1 1; 1 2");
+        assertErrorContains("<#macro m a b>${b}</#macro><@m a=1 b=null />",
+                "specified, but had null/missing value");
+        assertErrorContains("<#macro m a b>${b}</#macro><@m a=1 />",
+                "not specified");
+    }
+
+    @Test
+    public void testNestedContentSeesCallerContext() throws IOException, TemplateException {
+        assertOutput(""
+                + "<#macro outer x><#nested x * 2></#macro>"
+                + "<#macro inner y><@outer x=y; z>${y}/${z}</@outer></#macro>"
+                + "<@inner y=1 /> <@inner y=2 />",
+                "1/2 2/4");
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateExceptionHandler;
+
+public class ProcessingBudgetTest {
+
+    private static final String LIST_FTL = "<#list 1..10 as i>${i}</#list>";
+    private static final String RECURSION_FTL = "<#macro r n>${n}<#if n gt 0><@r n - 1 /></#if></#macro><@r 10 />";
+
+    private final Configuration cfg;
+
+    public ProcessingBudgetTest() {
+        cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.IGNORE_HANDLER);
+        cfg.setLogTemplateExceptions(false);
+    }
+
+    @Test
+    public void testDefaults() throws Exception {
+        Environment env = createEnvironment(LIST_FTL, new StringWriter());
+        assertEquals(Long.MAX_VALUE, env.getProcessingDeadline());
+        assertEquals(Long.MAX_VALUE, env.getMaxOutputCharacters());
+        assertEquals(Long.MAX_VALUE, env.getMaxLoopIterations());
+        assertEquals(Integer.MAX_VALUE, env.getMaxMacroCallDepth());
+    }
+
+    @Test
+    public void testMaxLoopIterations() throws Exception {
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment(LIST_FTL, out);
+        env.setMaxLoopIterations(10);
+        env.process();
+        assertEquals("12345678910", out.toString());
+
+        env = createEnvironment(LIST_FTL + LIST_FTL, new StringWriter());
+        env.setMaxLoopIterations(15);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.LOOP_ITERATIONS);
+    }
+
+    @Test
+    public void testCantBeRecovered() throws Exception {
+        Environment env = createEnvironment(
+                "<#attempt>" + LIST_FTL + "<#recover>recovered</#attempt>", new StringWriter());
+        env.setMaxLoopIterations(5);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.LOOP_ITERATIONS);
+    }
+
+    @Test
+    public void testMaxMacroCallDepth() throws Exception {
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment(RECURSION_FTL, out);
+        env.setMaxMacroCallDepth(11);
+        env.process();
+        assertEquals("109876543210", out.toString());
+
+        env = createEnvironment(RECURSION_FTL, new StringWriter());
+        env.setMaxMacroCallDepth(10);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.MACRO_CALL_DEPTH);
+    }
+
+    @Test
+    public void testMaxOutputCharacters() throws Exception {
+        StringWriter out = new StringWriter();
+        Environment env = createEnvironment(LIST_FTL, out);
+        env.setMaxOutputCharacters(11);
+        env.process();
+        assertEquals("12345678910", out.toString());
+        assertSame(out, env.getOut());
+
+        out = new StringWriter();
+        env = createEnvironment(LIST_FTL, out);
+        env.setMaxOutputCharacters(5);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.OUTPUT_CHARACTERS);
+        assertEquals("123456", out.toString());
+    }
+
+    @Test
+    public void testProcessingDeadline() throws Exception {
+        Environment env = createEnvironment("<#list 1..1000 as i>${i}</#list>", new StringWriter());
+        env.setProcessingDeadline(System.currentTimeMillis() + 60 * 60 * 1000);
+        env.process();
+
+        env = createEnvironment("<#list 1..1000 as i>${i}</#list>", new StringWriter());
+        env.setProcessingDeadline(System.currentTimeMillis() - 1);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.DEADLINE);
+    }
+
+    @Test
+    public void testProcessingDeadlineWithEmptyLoopBody() throws Exception {
+        Environment env = createEnvironment("<#list 1..1000000 as i></#list>", new StringWriter());
+        env.setProcessingDeadline(System.currentTimeMillis() - 1);
+        assertBudgetExceeded(env, ProcessingBudgetExceededException.Limit.DEADLINE);
+    }
+
+    private Environment createEnvironment(String ftl, StringWriter out) throws Exception {
+        return new Template(null, ftl, cfg).createProcessingEnvironment(null, out);
+    }
+
+    private static void assertBudgetExceeded(Environment env, ProcessingBudgetExceededException.Limit limit)
+            throws Exception {
+        try {
+            env.process();
+            fail();
+        } catch (ProcessingBudgetExceededException e) {
+            assertEquals(limit, e.getLimit());
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import freemarker.template.TemplateException;
+import freemarker.test.TemplateTest;
+
+public class RegexpPatternCachingTest extends TemplateTest {
+
+    @Test
+    public void testLiteralPatterns() throws IOException, TemplateException {
+        assertOutput(
+                "<#list ['a1', 'b22', 'c'] as s>${s?matches(r'\\w\\d+')?c} ${s?replace(r'\\d', '#', 'r')} "
+                + "<#list s?split(r'(?<=\\w)', 'r') as p>[${p}]</#list>; </#list>",
+                "true a# [a][1]; true b## [b][2][2]; false c [c]; ");
+    }
+
+    @Test
+    public void testChangingPatternAtTheSamePlace() throws IOException, TemplateException {
+        assertOutput(
+                "<#list [r'\\d', 'x', r'\\d', '[ab]'] as p>${'ab1x'?replace(p, '_', 'r')} </#list>",
+                "ab_x ab1_ ab_x __1x ");
+        assertOutput(
+                "<#list ['i', '', 'i'] as f>${'aA'?replace('a', '_', 'r' + f)} </#list>",
+                "__ _A __ ");
+    }
+
+    @Test
+    public void testMalformedPatternIsStillARuntimeError() throws IOException, TemplateException {
+        assertOutput("<#if false>${'x'?matches('(')?c}</#if>ok", "ok");
+        assertErrorContains("${'x'?matches('(')?c}", "Malformed regular expression");
+    }
+
+}
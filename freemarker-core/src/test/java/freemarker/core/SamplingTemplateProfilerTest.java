@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.utility.NullWriter;
+
+public class SamplingTemplateProfilerTest {
+
+    private static final String TEMPLATE_TEXT =
+            "<#macro m>[<#nested>]</#macro>\n" +
+            "<#list 1..3 as i>\n" +
+            "<@m>${i}</@m>\n" +
+            "</#list>\n";
+
+    @Test
+    public void testStatistics() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        Template t = new Template("test.ftl", TEMPLATE_TEXT, cfg);
+        SamplingTemplateProfiler profiler = new SamplingTemplateProfiler();
+
+        for (int i = 0; i < 2; i++) {
+            Environment env = t.createProcessingEnvironment(null, NullWriter.INSTANCE);
+            assertTrue(profiler.startProfiling(env));
+            env.process();
+        }
+        assertEquals(2, profiler.getSampledProcessingCount());
+
+        List<SamplingTemplateProfiler.ElementStatistics> stats = profiler.getElementStatistics();
+        SamplingTemplateProfiler.ElementStatistics listStats = findStatistics(stats, 2, 1, "#list");
+        assertEquals(2, listStats.getCallCount());
+        assertEquals("test.ftl", listStats.getTemplateSourceName());
+        SamplingTemplateProfiler.ElementStatistics callStats = findStatistics(stats, 3, 1, "@m");
+        assertEquals(6, callStats.getCallCount());
+        assertEquals(6, findStatistics(stats, 3, 5, "${i}").getCallCount());
+        assertTrue(listStats.getTotalTimeNanos() >= callStats.getTotalTimeNanos());
+        for (SamplingTemplateProfiler.ElementStatistics it : stats) {
+            assertTrue(it.toString(), it.getSelfTimeNanos() >= 0);
+            assertTrue(it.toString(), it.getSelfTimeNanos() <= it.getTotalTimeNanos());
+        }
+        for (int i = 1; i < stats.size(); i++) {
+            assertTrue(stats.get(i - 1).getSelfTimeNanos() >= stats.get(i).getSelfTimeNanos());
+        }
+
+        StringWriter out = new StringWriter();
+        profiler.writeCollapsedStacks(out);
+        for (String line : out.toString().split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            assertTrue(line, line.matches("test\\.ftl:\\d+:\\d+ [^;]+(;test\\.ftl:\\d+:\\d+ [^;]+)* \\d+"));
+        }
+
+        profiler.reset();
+        assertEquals(0, profiler.getSampledProcessingCount());
+        assertTrue(profiler.getElementStatistics().isEmpty());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        Template t = new Template("test.ftl", TEMPLATE_TEXT, cfg);
+        SamplingTemplateProfiler profiler = new SamplingTemplateProfiler(1000);
+        assertEquals(1000, profiler.getSamplingInterval());
+
+        int profiled = 0;
+        for (int i = 0; i < 100; i++) {
+            Environment env = t.createProcessingEnvironment(null, NullWriter.INSTANCE);
+            if (profiler.startProfiling(env)) {
+                profiled++;
+            } else {
+                assertNull(env.getTemplateProcessingTracer());
+            }
+            env.process();
+        }
+        assertEquals(profiled, profiler.getSampledProcessingCount());
+        assertTrue(profiled < 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSamplingInterval() {
+        new SamplingTemplateProfiler(0);
+    }
+
+    private static SamplingTemplateProfiler.ElementStatistics findStatistics(
+            List<SamplingTemplateProfiler.ElementStatistics> stats, int line, int column, String description) {
+        String labelStart = "test.ftl:" + line + ":" + column + " " + description;
+        SamplingTemplateProfiler.ElementStatistics found = null;
+        for (SamplingTemplateProfiler.ElementStatistics it : stats) {
+            if (it.getLabel().startsWith(labelStart)) {
+                assertEquals(line, it.getBeginLine());
+                assertEquals(column, it.getBeginColumn());
+                assertNull("Multiple matches for " + labelStart, found);
+                found = it;
+            }
+        }
+        assertNotNull("No match for " + labelStart + " in " + stats, found);
+        return found;
+    }
+
+}
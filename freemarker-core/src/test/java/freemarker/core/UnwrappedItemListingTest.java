@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.test.TemplateTest;
+
+public class UnwrappedItemListingTest extends TemplateTest {
+
+    private CountingObjectWrapper objectWrapper;
+
+    @Before
+    public void setup() {
+        List<String> list = Arrays.asList("a", "b", "c");
+        addToDataModel("list", list);
+        addToDataModel("seqList", new LinkedList<>(list));
+        addToDataModel("array", list.toArray(new String[0]));
+        addToDataModel("iterable", (Iterable<String>) list::iterator);
+        addToDataModel("intArray", new int[] { 1, 2, 3 });
+    }
+
+    @Test
+    public void testItemsOnlyWrappedWhenRead() throws IOException, TemplateException {
+        for (String listed : new String[] { "list", "seqList", "array", "iterable" }) {
+            assertWrapCount("<#list " + listed + " as x>${x?index}${x?has_next?c} </#list>", "0true 1true 2false ", 0);
+            assertWrapCount("<#list " + listed + " as x>${x}${x}</#list>", "aabbcc", 3);
+            assertWrapCount("<#list " + listed + " as x><#if x?index != 1>${x}</#if></#list>", "ac", 2);
+            assertWrapCount("<#list " + listed + ">[<#items as x>${x}<#sep>, </#items>]</#list>", "[a, b, c]", 3);
+            assertWrapCount("<#list " + listed + " as x>${x}<#if x == 'b'><#break></#if></#list>", "ab", 2);
+            assertWrapCount("<#list " + listed + " as x><#list " + listed + " as y>${x}${y} </#list></#list>",
+                    "aa ab ac ba bb bc ca cb cc ", 12);
+            assertWrapCount("<#list " + listed + " as x>${x?counter}<#else>empty</#list>", "123", 0);
+        }
+        // Not supported, so falls back to the normal TemplateSequenceModel API:
+        assertOutput("<#list intArray as x>${x}</#list>", "123");
+    }
+
+    private void assertWrapCount(String ftl, String expectedOutput, int expectedWrapCount)
+            throws IOException, TemplateException {
+        getConfiguration(); // Ensures that objectWrapper is set
+        objectWrapper.stringWrapCount = 0;
+        assertOutput(ftl, expectedOutput);
+        assertEquals(ftl, expectedWrapCount, objectWrapper.stringWrapCount);
+    }
+
+    @Override
+    protected Configuration createConfiguration() throws Exception {
+        Configuration cfg = super.createConfiguration();
+        objectWrapper = new CountingObjectWrapper();
+        objectWrapper.setIterableSupport(true);
+        cfg.setObjectWrapper(objectWrapper);
+        return cfg;
+    }
+
+    private static class CountingObjectWrapper extends DefaultObjectWrapper {
+        private int stringWrapCount;
+
+        CountingObjectWrapper() {
+            super(Configuration.VERSION_2_3_32);
+        }
+
+        @Override
+        public TemplateModel wrap(Object obj) throws TemplateModelException {
+            if (obj instanceof String) {
+                stringWrapCount++;
+            }
+            return super.wrap(obj);
+        }
+    }
+
+}
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.core;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.Thread.State;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import freemarker.cache.MruCacheStorage;
+import freemarker.cache.StringTemplateLoader;
+import freemarker.cache.TemplateLoader;
+import freemarker.ext.beans.BeansWrapper;
+import freemarker.ext.beans.BeansWrapperBuilder;
+import freemarker.ext.beans.ClassMemberAccessPolicy;
+import freemarker.ext.beans.DefaultMemberAccessPolicy;
+import freemarker.ext.beans.MemberAccessPolicy;
+import freemarker.template.Configuration;
+import freemarker.template.DefaultObjectWrapperBuilder;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateScalarModel;
+
+/**
+ * Checks that the template processing doesn't hold or wait for object monitors ({@code synchronized}) where it could
+ * block, as on Java 21-23 that pins the carrier thread of virtual threads. As this must run on Java 8 too, it doesn't
+ * use virtual threads, but inspects the monitors held by the current thread at the points where the template calls
+ * out to code that might block (I/O), and the way threads wait for each other.
+ */
+public class VirtualThreadFriendlinessTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Test
+    public void testNoMonitorHeldOnCallOuts() throws Throwable {
+        final Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setLocale(Locale.US);
+        // MruCacheStorage used to be synchronized on by the TemplateCache:
+        cfg.setCacheStorage(new MruCacheStorage(10, 10));
+        StringTemplateLoader stringTemplateLoader = new StringTemplateLoader();
+        stringTemplateLoader.putTemplate("main.ftl",
+                "<#include 'inc.ftl'>${bean.name} ${bean.check()} "
+                + "<#list 1..3 as i>${i}</#list> <#if 'abc'?matches('a.c')>m</#if> ${1.5}");
+        stringTemplateLoader.putTemplate("inc.ftl", "[${bean.check()}]");
+        cfg.setTemplateLoader(new MonitorCheckingTemplateLoader(stringTemplateLoader));
+        DefaultObjectWrapperBuilder owb = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_32);
+        owb.setUseModelCache(true);
+        cfg.setObjectWrapper(owb.build());
+
+        runOnNewThread(new ThrowingRunnable() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < 2; i++) {
+                    MonitorCheckingWriter out = new MonitorCheckingWriter();
+                    cfg.getTemplate("main.ftl").process(
+                            Collections.singletonMap("bean", new TestBean()), out);
+                    assertEquals("[ok]x ok 123 m 1.5", out.toString());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testWaitingForClassIntrospectionDoesNotUseMonitor() throws Throwable {
+        final CountDownLatch introspectionStarted = new CountDownLatch(1);
+        final CountDownLatch introspectionMayFinish = new CountDownLatch(1);
+        final MemberAccessPolicy defaultPolicy = DefaultMemberAccessPolicy.getInstance(Configuration.VERSION_2_3_30);
+        BeansWrapperBuilder bwb = new BeansWrapperBuilder(Configuration.VERSION_2_3_32);
+        // Also ensures that we get a ClassIntrospector that's not shared with other tests:
+        bwb.setMemberAccessPolicy(new MemberAccessPolicy() {
+            @Override
+            public ClassMemberAccessPolicy forClass(Class<?> contextClass) {
+                if (contextClass == TestBean.class) {
+                    introspectionStarted.countDown();
+                    try {
+                        introspectionMayFinish.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return defaultPolicy.forClass(contextClass);
+            }
+
+            @Override
+            public boolean isToStringAlwaysExposed() {
+                return defaultPolicy.isToStringAlwaysExposed();
+            }
+        });
+        final BeansWrapper bw = bwb.build();
+
+        ThrowingRunnable getName = new ThrowingRunnable() {
+            @Override
+            public void run() throws Exception {
+                TemplateHashModel beanModel = (TemplateHashModel) bw.wrap(new TestBean());
+                assertEquals("x", ((TemplateScalarModel) beanModel.get("name")).getAsString());
+            }
+        };
+        
+        AtomicReference<Throwable> introspectingThreadFailure = new AtomicReference<>();
+        Thread introspectingThread = startThread(getName, introspectingThreadFailure);
+        AtomicReference<Throwable> waitingThreadFailure = new AtomicReference<>();
+        Thread waitingThread;
+        try {
+            assertTrue(introspectionStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            
+            waitingThread = startThread(getName, waitingThreadFailure);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            State state;
+            while ((state = waitingThread.getState()) != State.WAITING && state != State.BLOCKED) {
+                assertNotEquals(State.TERMINATED, state);
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            
+            assertNotEquals(State.BLOCKED, state); // Would mean waiting for a monitor
+            ThreadInfo threadInfo = ManagementFactory.getThreadMXBean().getThreadInfo(
+                    new long[] { waitingThread.getId() }, true, false)[0];
+            assertEquals(0, threadInfo.getLockedMonitors().length);
+            // Object.wait() would be reported as waiting for an Object (the shared introspection lock):
+            assertThat(threadInfo.getLockName(), startsWith("java.util.concurrent."));
+        } finally {
+            introspectionMayFinish.countDown();
+        }
+        
+        introspectingThread.join(TIMEOUT_MILLIS);
+        waitingThread.join(TIMEOUT_MILLIS);
+        rethrowIfNotNull(introspectingThreadFailure.get());
+        rethrowIfNotNull(waitingThreadFailure.get());
+    }
+
+    private static void assertNoMonitorsHeld() {
+        ThreadInfo threadInfo = ManagementFactory.getThreadMXBean().getThreadInfo(
+                new long[] { Thread.currentThread().getId() }, true, false)[0];
+        MonitorInfo[] lockedMonitors = threadInfo.getLockedMonitors();
+        if (lockedMonitors.length != 0) {
+            StringBuilder sb = new StringBuilder("Monitors held:");
+            for (MonitorInfo lockedMonitor : lockedMonitors) {
+                sb.append("\n").append(lockedMonitor).append(" locked at ").append(lockedMonitor.getLockedStackFrame());
+            }
+            fail(sb.toString());
+        }
+    }
+
+    private static void runOnNewThread(ThrowingRunnable runnable) throws Throwable {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread thread = startThread(runnable, failure);
+        thread.join(TIMEOUT_MILLIS);
+        assertFalse(thread.isAlive());
+        rethrowIfNotNull(failure.get());
+    }
+
+    private static Thread startThread(final ThrowingRunnable runnable, final AtomicReference<Throwable> failure) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void rethrowIfNotNull(Throwable e) throws Throwable {
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    public static class TestBean {
+
+        public String getName() {
+            return "x";
+        }
+
+        public String check() {
+            assertNoMonitorsHeld();
+            return "ok";
+        }
+
+    }
+
+    /**
+     * Note that {@link Writer} itself has {@code synchronized} methods, so we must override all.
+     */
+    private static class MonitorCheckingWriter extends Writer {
+
+        private final StringBuilder sb = new StringBuilder();
+
+        @Override
+        public void write(int c) throws IOException {
+            assertNoMonitorsHeld();
+            sb.append((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            assertNoMonitorsHeld();
+            sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            assertNoMonitorsHeld();
+            sb.append(str);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            assertNoMonitorsHeld();
+            sb.append(str, off, off + len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            assertNoMonitorsHeld();
+        }
+
+        @Override
+        public void close() throws IOException {
+            assertNoMonitorsHeld();
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+
+    }
+
+    private static class MonitorCheckingTemplateLoader implements TemplateLoader {
+
+        private final TemplateLoader delegate;
+
+        MonitorCheckingTemplateLoader(TemplateLoader delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object findTemplateSource(String name) throws IOException {
+            assertNoMonitorsHeld();
+            return delegate.findTemplateSource(name);
+        }
+
+        @Override
+        public long getLastModified(Object templateSource) {
+            assertNoMonitorsHeld();
+            return delegate.getLastModified(templateSource);
+        }
+
+        @Override
+        public Reader getReader(Object templateSource, String encoding) throws IOException {
+            assertNoMonitorsHeld();
+            return delegate.getReader(templateSource, encoding);
+        }
+
+        @Override
+        public void closeTemplateSource(Object templateSource) throws IOException {
+            delegate.closeTemplateSource(templateSource);
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AdaptedItemMemoizationTest {
+
+    @Test
+    public void testListAdapter() throws TemplateModelException {
+        List<Object> list = new ArrayList<>(Arrays.asList("a", Arrays.asList(1, 2), "c"));
+        DefaultObjectWrapper ow = createObjectWrapper(true);
+        DefaultListAdapter adapter = (DefaultListAdapter) ow.wrap(list);
+
+        TemplateModel item0 = adapter.get(0);
+        TemplateModel item1 = adapter.get(1);
+        assertEquals("a", ((TemplateScalarModel) item0).getAsString());
+        assertSame(item0, adapter.get(0));
+        assertSame(item1, adapter.get(1));
+        assertNull(adapter.get(3));
+        assertNull(adapter.get(-1));
+
+        // Changes in the list are visible:
+        list.set(0, "A");
+        TemplateModel newItem0 = adapter.get(0);
+        assertEquals("A", ((TemplateScalarModel) newItem0).getAsString());
+        assertSame(newItem0, adapter.get(0));
+        list.add("d");
+        assertEquals("d", ((TemplateScalarModel) adapter.get(3)).getAsString());
+        assertSame(item1, adapter.get(1));
+        list.remove(3);
+        assertNull(adapter.get(3));
+
+        DefaultListAdapter nonMemoizingAdapter = (DefaultListAdapter) createObjectWrapper(false).wrap(list);
+        assertNotSame(nonMemoizingAdapter.get(0), nonMemoizingAdapter.get(0));
+    }
+
+    @Test
+    public void testMapAdapter() throws TemplateModelException {
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, "v" + i);
+        }
+        map.put("nested", new HashMap<>(map));
+        DefaultObjectWrapper ow = createObjectWrapper(true);
+        DefaultMapAdapter adapter = (DefaultMapAdapter) ow.wrap(map);
+
+        List<TemplateModel> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TemplateModel value = adapter.get("k" + i);
+            assertEquals("v" + i, ((TemplateScalarModel) value).getAsString());
+            values.add(value);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertSame(values.get(i), adapter.get("k" + i));
+        }
+        assertNull(adapter.get("noSuchKey"));
+
+        TemplateHashModel nested = (TemplateHashModel) adapter.get("nested");
+        assertSame(nested, adapter.get("nested"));
+        assertSame(nested.get("k1"), nested.get("k1"));
+
+        // Changes in the map are visible:
+        map.put("k1", "V1");
+        TemplateModel newValue = adapter.get("k1");
+        assertEquals("V1", ((TemplateScalarModel) newValue).getAsString());
+        assertSame(newValue, adapter.get("k1"));
+        map.remove("k2");
+        assertNull(adapter.get("k2"));
+
+        DefaultMapAdapter nonMemoizingAdapter = (DefaultMapAdapter) createObjectWrapper(false).wrap(map);
+        assertNotSame(nonMemoizingAdapter.get("k0"), nonMemoizingAdapter.get("k0"));
+    }
+
+    private DefaultObjectWrapper createObjectWrapper(boolean memoizeAdaptedItems) {
+        DefaultObjectWrapperBuilder builder = new DefaultObjectWrapperBuilder(Configuration.VERSION_2_3_32);
+        builder.setMemoizeAdaptedItems(memoizeAdaptedItems);
+        return builder.build();
+    }
+
+}
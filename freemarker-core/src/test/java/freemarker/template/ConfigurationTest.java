@@ -35,6 +35,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.junit.Test;
 import org.junit.internal.runners.JUnit38ClassRunner;
@@ -42,6 +45,7 @@ import org.junit.runner.RunWith;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import freemarker.cache.CacheStorageWithGetSize;
@@ -708,6 +712,58 @@ public class ConfigurationTest extends TestCase {
         assertEquals(1, cacheStorage.getSize());
     }
 
+    public void testPreloadTemplates() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setCacheStorage(new StrongCacheStorage());
+        StringTemplateLoader tl = new StringTemplateLoader();
+        for (int i = 0; i < 20; i++) {
+            tl.putTemplate("t" + i + ".ftl", "${" + i + "}");
+        }
+        tl.putTemplate("bad.ftl", "<#if>");
+        cfg.setTemplateLoader(tl);
+        
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            names.add("t" + i + ".ftl");
+        }
+        names.add("bad.ftl");
+        names.add("missing.ftl");
+        
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<TemplatePreloadResult> results = cfg.preloadTemplates(names, executor);
+            assertEquals(names.size(), results.size());
+            for (int i = 0; i < 20; i++) {
+                TemplatePreloadResult result = results.get(i);
+                assertEquals("t" + i + ".ftl", result.getName());
+                assertTrue(result.isSuccessful());
+                assertSame(result.getTemplate(), cfg.getTemplate(result.getName()));
+                assertTrue(result.getLoadingTimeNanos() >= 0);
+            }
+            assertThat(results.get(20).getException(), instanceOf(ParseException.class));
+            assertNull(results.get(20).getTemplate());
+            assertThat(results.get(21).getException(), instanceOf(TemplateNotFoundException.class));
+            assertEquals(22, ((CacheStorageWithGetSize) cfg.getCacheStorage()).getSize());
+        } finally {
+            executor.shutdown();
+        }
+        
+        // Without executor
+        cfg.clearTemplateCache();
+        List<TemplatePreloadResult> results = cfg.preloadTemplates(ImmutableList.of("t1.ftl", "bad.ftl"), null);
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+
+        // With an executor that rejects the tasks
+        ExecutorService shutDownExecutor = Executors.newSingleThreadExecutor();
+        shutDownExecutor.shutdown();
+        results = cfg.preloadTemplates(ImmutableList.of("t1.ftl", "t2.ftl"), shutDownExecutor);
+        assertEquals(2, results.size());
+        for (TemplatePreloadResult result : results) {
+            assertThat(result.getException(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+
     public void testChangingLocalizedLookupClearsCache() throws Exception {
         Configuration cfg = new Configuration();
         cfg.setCacheStorage(new StrongCacheStorage());
@@ -1328,6 +1384,67 @@ public class ConfigurationTest extends TestCase {
         }
     }
 
+    public void testSharedVariableModificationsAreAtomic() throws TemplateModelException {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        cfg.setSharedVariables(ImmutableMap.of("a", "aa", "b", "bb"));
+
+        Configuration cfgCopy = (Configuration) cfg.clone();
+
+        assertTrue(cfg.removeSharedVariable("a"));
+        assertFalse(cfg.removeSharedVariable("a"));
+        assertNull(cfg.getSharedVariable("a"));
+        assertNotNull(cfg.getSharedVariable("compress"));
+        // The clone has its own shared variables:
+        assertNotNull(cfgCopy.getSharedVariable("a"));
+
+        // Removed variables aren't resurrected by re-wrapping:
+        cfg.setObjectWrapper(new BeansWrapperBuilder(Configuration.VERSION_2_3_0).build());
+        assertNull(cfg.getSharedVariable("a"));
+        assertEquals(GenericObjectModel.class, cfg.getSharedVariable("b").getClass());
+
+        cfg.setObjectWrapper(obj -> {
+            if (obj instanceof TemplateModel) {
+                return (TemplateModel) obj;
+            }
+            if ("bad".equals(obj)) {
+                throw new TemplateModelException("Can't wrap");
+            }
+            return new SimpleScalar(obj.toString());
+        });
+        try {
+            cfg.setSharedVariables(ImmutableMap.of("x", "xx", "y", "bad"));
+            fail();
+        } catch (TemplateModelException e) {
+            // expected
+        }
+        // Nothing was changed:
+        assertNull(cfg.getSharedVariable("x"));
+        assertEquals("bb", ((TemplateScalarModel) cfg.getSharedVariable("b")).getAsString());
+        assertEquals(
+                ImmutableSet.of("b", "capture_output", "compress", "html_escape", "normalize_newlines", "xml_escape"),
+                cfg.getSharedVariableNames());
+
+        cfg.setAllSharedVariables(new SimpleHash(ImmutableMap.of("x", "xx", "y", "yy"), cfg.getObjectWrapper()));
+        assertEquals("xx", ((TemplateScalarModel) cfg.getSharedVariable("x")).getAsString());
+        assertEquals("yy", ((TemplateScalarModel) cfg.getSharedVariable("y")).getAsString());
+
+        // The hash values are already TemplateModel-s, so they aren't wrapped again:
+        SimpleHash hash = new SimpleHash(ImmutableMap.of("z", "zz"), cfg.getObjectWrapper());
+        TemplateModel zValue = hash.get("z");
+        cfg.setObjectWrapper(obj -> {
+            if (obj instanceof TemplateModel) {
+                throw new TemplateModelException("Shouldn't be called with a TemplateModel");
+            }
+            return new SimpleScalar(obj.toString());
+        });
+        cfg.setAllSharedVariables(hash);
+        assertSame(zValue, cfg.getSharedVariable("z"));
+
+        cfg.clearSharedVariables();
+        assertNull(cfg.getSharedVariable("x"));
+        assertNotNull(cfg.getSharedVariable("compress"));
+    }
+
     @Test
     public void testApiBuiltinEnabled() throws IOException, TemplateException {
         for (Version v : new Version[] { Configuration.VERSION_2_3_0, Configuration.VERSION_2_3_22 }) {
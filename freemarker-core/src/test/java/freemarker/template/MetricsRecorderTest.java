@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.template;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import freemarker.cache.StringTemplateLoader;
+import freemarker.template.utility.NullWriter;
+
+public class MetricsRecorderTest {
+
+    @Test
+    public void test() throws Exception {
+        Configuration cfg = new Configuration(Configuration.VERSION_2_3_32);
+        StringTemplateLoader templateLoader = new StringTemplateLoader();
+        templateLoader.putTemplate("main.ftl", "<#include 'inc.ftl'>${n}");
+        templateLoader.putTemplate("inc.ftl", "${d?string('yyyy')}");
+        templateLoader.putTemplate("fail.ftl", "${noSuchVariable}");
+        cfg.setTemplateLoader(templateLoader);
+        cfg.setLocalizedLookup(false);
+        cfg.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        cfg.setLogTemplateExceptions(false);
+
+        assertNull(cfg.getMetricsRecorder());
+        TestMetricsRecorder metrics = new TestMetricsRecorder();
+        cfg.setMetricsRecorder(metrics);
+        assertSame(metrics, cfg.getMetricsRecorder());
+
+        Map<String, Object> dataModel = new HashMap<>();
+        dataModel.put("n", 1.5);
+        dataModel.put("d", new java.util.Date(0));
+        cfg.getTemplate("main.ftl").process(dataModel, NullWriter.INSTANCE);
+        assertEquals(2, metrics.getCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES));
+        assertEquals(0, metrics.getCounter(MetricsRecorder.TEMPLATE_CACHE_HITS));
+        assertEquals(2, metrics.getTimerCount(MetricsRecorder.TEMPLATE_PARSING_TIME));
+        assertEquals(2, metrics.getTimerCount(MetricsRecorder.TEMPLATE_LOADER_FIND_TIME));
+        assertEquals(1, metrics.getTimerCount(MetricsRecorder.TEMPLATE_PROCESSING_TIME));
+        assertEquals(0, metrics.getCounter(MetricsRecorder.TEMPLATE_PROCESSING_ERRORS));
+        assertEquals(1,
+                metrics.getCounter(MetricsRecorder.NUMBER_FORMAT_CACHE_HITS)
+                + metrics.getCounter(MetricsRecorder.NUMBER_FORMAT_CACHE_MISSES));
+        assertEquals(1,
+                metrics.getCounter(MetricsRecorder.DATE_FORMAT_CACHE_HITS)
+                + metrics.getCounter(MetricsRecorder.DATE_FORMAT_CACHE_MISSES));
+
+        cfg.getTemplate("main.ftl").process(dataModel, new StringWriter());
+        assertEquals(2, metrics.getCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES));
+        assertEquals(2, metrics.getCounter(MetricsRecorder.TEMPLATE_CACHE_HITS));
+        assertEquals(2, metrics.getTimerCount(MetricsRecorder.TEMPLATE_PARSING_TIME));
+        assertEquals(2, metrics.getTimerCount(MetricsRecorder.TEMPLATE_PROCESSING_TIME));
+
+        try {
+            cfg.getTemplate("fail.ftl").process(Collections.emptyMap(), NullWriter.INSTANCE);
+            fail();
+        } catch (TemplateException e) {
+            // Expected
+        }
+        assertEquals(3, metrics.getTimerCount(MetricsRecorder.TEMPLATE_PROCESSING_TIME));
+        assertEquals(1, metrics.getCounter(MetricsRecorder.TEMPLATE_PROCESSING_ERRORS));
+
+        try {
+            cfg.getTemplate("missing.ftl");
+            fail();
+        } catch (TemplateNotFoundException e) {
+            // Expected
+        }
+        assertEquals(4, metrics.getCounter(MetricsRecorder.TEMPLATE_CACHE_MISSES));
+
+        assertEquals(4, metrics.getGaugeValue(MetricsRecorder.TEMPLATE_CACHE_SIZE));
+        assertTrue(metrics.getGaugeValue(MetricsRecorder.INTROSPECTED_CLASS_COUNT) >= 0);
+        assertEquals(0, metrics.getGaugeValue(MetricsRecorder.MODEL_CACHE_MISSES));
+        cfg.setObjectWrapper(new SimpleObjectWrapper(Configuration.VERSION_2_3_32));
+        assertTrue(metrics.getGaugeValue(MetricsRecorder.INTROSPECTED_CLASS_COUNT) >= 0);
+        cfg.setObjectWrapper(new ObjectWrapper() {
+            @Override
+            public TemplateModel wrap(Object obj) throws TemplateModelException {
+                return null;
+            }
+        });
+        assertEquals(-1, metrics.getGaugeValue(MetricsRecorder.INTROSPECTED_CLASS_COUNT));
+    }
+
+    private static class TestMetricsRecorder implements MetricsRecorder {
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> timerCounts = new ConcurrentHashMap<>();
+        private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+        @Override
+        public void incrementCounter(String name) {
+            counters.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+        }
+
+        @Override
+        public void recordTime(String name, long nanos) {
+            assertTrue(nanos >= 0);
+            timerCounts.computeIfAbsent(name, k -> new AtomicLong()).incrementAndGet();
+        }
+
+        @Override
+        public void registerGauge(String name, Gauge gauge) {
+            gauges.put(name, gauge);
+        }
+
+        long getCounter(String name) {
+            AtomicLong counter = counters.get(name);
+            return counter != null ? counter.get() : 0;
+        }
+
+        long getTimerCount(String name) {
+            AtomicLong counter = timerCounts.get(name);
+            return counter != null ? counter.get() : 0;
+        }
+
+        long getGaugeValue(String name) {
+            Gauge gauge = gauges.get(name);
+            assertNotNull(name, gauge);
+            return gauge.getValue();
+        }
+    }
+
+}
@@ -27,6 +27,7 @@ import java.io.FilenameFilter;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -42,11 +43,17 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
@@ -133,6 +140,8 @@ public class TaglibFactory implements TemplateHashModel {
     private ObjectWrapper objectWrapper;
     private List/*<MetaInfTldSource>*/ metaInfTldSources = DEFAULT_META_INF_TLD_SOURCES;
     private List/*<String>*/ classpathTlds = DEFAULT_CLASSPATH_TLDS;
+    private int tldScanningThreadCount = 1;
+    private File tldLocationIndexFile;
     
     boolean test_emulateNoUrlToFileConversions = false;
     boolean test_emulateNoJarURLConnections = false;
@@ -382,6 +391,67 @@ public class TaglibFactory implements TemplateHashModel {
         this.classpathTlds = classpathTlds;
     }
 
+    /**
+     * See {@link #setTldScanningThreadCount(int)}.
+     * 
+     * @since 2.3.33
+     */
+    public int getTldScanningThreadCount() {
+        return tldScanningThreadCount;
+    }
+
+    /**
+     * Sets the maximum number of threads used for discovering the TLD-s in the jars (and directories) specified by
+     * {@link #setMetaInfTldSources(List)}. The threads are only created for the time of the discovery (which happens
+     * when the first taglib is looked up that's not mapped explicitly, like in {@code web.xml}), and if there are
+     * multiple jars to scan. The result is the same as with scanning the jars one after the other, including the order
+     * of precedence when multiple TLD-s define the same taglib URI. Defaults to 1, which means that the scanning is
+     * done on the calling thread only.
+     * 
+     * <p>
+     * This is usually set via the init-params of {@link FreemarkerServlet}.
+     * 
+     * @see #setTldLocationIndexFile(File)
+     * 
+     * @since 2.3.33
+     */
+    public void setTldScanningThreadCount(int tldScanningThreadCount) {
+        checkNotStarted();
+        if (tldScanningThreadCount < 1) {
+            throw new IllegalArgumentException("tldScanningThreadCount must be at least 1, but was "
+                    + tldScanningThreadCount);
+        }
+        this.tldScanningThreadCount = tldScanningThreadCount;
+    }
+
+    /**
+     * See {@link #setTldLocationIndexFile(File)}.
+     * 
+     * @since 2.3.33
+     */
+    public File getTldLocationIndexFile() {
+        return tldLocationIndexFile;
+    }
+
+    /**
+     * Sets the file where we store which TLD-s were found in which jar during the discovery of the TLD-s specified by
+     * {@link #setMetaInfTldSources(List)}, so that after a restart the jars that weren't changed since then (based on
+     * their path, size, and last modification time) needn't be scanned again. If the file doesn't exist yet, it will
+     * be created. Jars whose size and last modification time isn't available (like jars that aren't directly in the
+     * file system) are always scanned. Defaults to {@code null}, which means that no such index is used.
+     * 
+     * <p>
+     * This is usually set via the init-params of {@link FreemarkerServlet}.
+     * 
+     * @see #setTldScanningThreadCount(int)
+     * 
+     * @since 2.3.33
+     */
+    public void setTldLocationIndexFile(File tldLocationIndexFile) {
+        checkNotStarted();
+        this.tldLocationIndexFile = tldLocationIndexFile;
+    }
+
     private void checkNotStarted() {
         synchronized (lock) {
             if (nextTldLocationLookupPhase != 0) {
@@ -474,6 +544,9 @@ public class TaglibFactory implements TemplateHashModel {
             return;
         }
 
+        final TldLocationIndex tldLocationIndex = tldLocationIndexFile != null
+                ? TldLocationIndex.load(tldLocationIndexFile) : null;
+
         Set/*<URLWithExternalForm>*/ cpMetaInfDirUrlsWithEF = null;
         
         // Skip past the last "clear":
@@ -489,7 +562,7 @@ public class TaglibFactory implements TemplateHashModel {
             MetaInfTldSource miTldSource = (MetaInfTldSource) metaInfTldSources.get(srcIdx);
             
             if (miTldSource == WebInfPerLibJarMetaInfTldSource.INSTANCE) {
-                addTldLocationsFromWebInfPerLibJarMetaInfTlds();
+                addTldLocationsFromWebInfPerLibJarMetaInfTlds(tldLocationIndex);
             } else if (miTldSource instanceof ClasspathMetaInfTldSource) {
                 ClasspathMetaInfTldSource cpMiTldLocation = (ClasspathMetaInfTldSource) miTldSource;
                 if (LOG.isDebugEnabled()) {
@@ -502,6 +575,8 @@ public class TaglibFactory implements TemplateHashModel {
                     cpMetaInfDirUrlsWithEF = collectMetaInfUrlsFromClassLoaders();
                 }
 
+                List<TldScan> tldScans = new ArrayList<>();
+
                 for (Iterator iterator = cpMetaInfDirUrlsWithEF.iterator(); iterator.hasNext(); ) {
                     URLWithExternalForm urlWithEF = (URLWithExternalForm) iterator.next();
                     final URL url = urlWithEF.getUrl();
@@ -521,9 +596,9 @@ public class TaglibFactory implements TemplateHashModel {
                     if (cpMiTldLocation.getRootContainerPattern().matcher(rootContainerUrl).matches()) {
                         final File urlAsFile = urlToFileOrNull(url);
                         if (urlAsFile != null) {
-                            addTldLocationsFromFileDirectory(urlAsFile);
+                            tldScans.add(new FileDirectoryTldScan(urlAsFile));
                         } else if (isJarUrl) {
-                            addTldLocationsFromJarDirectoryEntryURL(url);
+                            tldScans.add(new JarDirectoryEntryUrlTldScan(url, rootContainerUrl));
                         } else {
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("Can't list entries under this URL; TLD-s won't be discovered here: "
@@ -532,13 +607,19 @@ public class TaglibFactory implements TemplateHashModel {
                         }
                     }
                 }
+                addTldLocationsFromScans(tldScans, tldLocationIndex);
             } else {
                 throw new BugException();
             }
         }
+
+        if (tldLocationIndex != null) {
+            tldLocationIndex.saveIfModified(tldLocationIndexFile);
+        }
     }
     
-    private void addTldLocationsFromWebInfPerLibJarMetaInfTlds() throws IOException, SAXException {
+    private void addTldLocationsFromWebInfPerLibJarMetaInfTlds(TldLocationIndex tldLocationIndex)
+            throws IOException, SAXException {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Looking for TLD locations in servletContext:/WEB-INF/lib/*.{jar,zip}" + META_INF_ABS_PATH
                     + "*.tld");
@@ -546,12 +627,14 @@ public class TaglibFactory implements TemplateHashModel {
 
         Set libEntPaths = servletContext.getResourcePaths("/WEB-INF/lib");
         if (libEntPaths != null) {
+            List<TldScan> tldScans = new ArrayList<>();
             for (Iterator iter = libEntPaths.iterator(); iter.hasNext(); ) {
                 final String libEntryPath = (String) iter.next();
                 if (isJarPath(libEntryPath)) {
-                    addTldLocationsFromServletContextJar(libEntryPath);
+                    tldScans.add(new ServletContextJarTldScan(libEntryPath));
                 }
             }
+            addTldLocationsFromScans(tldScans, tldLocationIndex);
         }
     }
 
@@ -596,11 +679,76 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
+    /**
+     * Adds the TLD locations found by the {@link TldScan}-s, in the order of the {@link TldScan}-s. The scans that
+     * can't be served from the {@link TldLocationIndex} are run first, possibly in parallel (see
+     * {@link #setTldScanningThreadCount(int)}).
+     * 
+     * @param tldLocationIndex
+     *            {@code null} if no index is used
+     */
+    private void addTldLocationsFromScans(List<TldScan> tldScans, TldLocationIndex tldLocationIndex)
+            throws IOException, SAXException {
+        List<TldScan> tldScansToRun = new ArrayList<>(tldScans.size());
+        for (TldScan tldScan : tldScans) {
+            if (tldLocationIndex == null || !tldScan.loadFromIndex(tldLocationIndex)) {
+                tldScansToRun.add(tldScan);
+            }
+        }
+        if (tldLocationIndex != null && LOG.isDebugEnabled()) {
+            LOG.debug("TLD location index had up-to-date entries for "
+                    + (tldScans.size() - tldScansToRun.size()) + " of " + tldScans.size() + " TLD container(s)");
+        }
+
+        runTldScans(tldScansToRun);
+
+        for (TldScan tldScan : tldScans) {
+            tldScan.rethrowException();
+            for (Map.Entry<String, String> ent : tldScan.taglibUris.entrySet()) {
+                addTldLocation(tldScan.createTldLocation(ent.getKey()), ent.getValue());
+            }
+            if (tldLocationIndex != null) {
+                tldScan.addToIndex(tldLocationIndex);
+            }
+        }
+    }
+
+    private void runTldScans(List<TldScan> tldScans) throws IOException {
+        int threadCount = Math.min(tldScanningThreadCount, tldScans.size());
+        if (threadCount <= 1) {
+            for (TldScan tldScan : tldScans) {
+                tldScan.call();
+            }
+            return;
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scanning " + tldScans.size() + " TLD container(s) on " + threadCount + " threads");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FreeMarker TLD scanner " + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            executor.invokeAll(tldScans);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while scanning for TLD-s");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Finds and processes *.tld inside a jar in the servet context.
      */
-    private void addTldLocationsFromServletContextJar(
-            final String jarResourcePath)
+    private void findTldsInServletContextJar(final String jarResourcePath, TldScan tldScan)
             throws IOException, MalformedURLException, SAXException {
         final String metaInfEntryPath = normalizeJarEntryPath(META_INF_ABS_PATH, true);
         
@@ -611,12 +759,16 @@ public class TaglibFactory implements TemplateHashModel {
                 LOG.debug("Scanning for " + META_INF_ABS_PATH + "*.tld-s in JarFile: servletContext:"
                         + jarResourcePath);
             }
-            for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
-                final JarEntry curEntry = (JarEntry) entries.nextElement();
-                final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
-                if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                    addTldLocationFromTld(new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath));
+            try {
+                for (Enumeration/*<JarEntry>*/ entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                    final JarEntry curEntry = (JarEntry) entries.nextElement();
+                    final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
+                    if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
+                        tldScan.addTld(curEntryPath, null);
+                    }
                 }
+            } finally {
+                jarFile.close();
             }
         } else {  // jarFile == null => fall back to streamed access
             if (LOG.isDebugEnabled()) {
@@ -636,8 +788,7 @@ public class TaglibFactory implements TemplateHashModel {
 
                         String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
                         if (curEntryPath.startsWith(metaInfEntryPath) && curEntryPath.endsWith(".tld")) {
-                            addTldLocationFromTld(zipIn,
-                                    new ServletContextJarEntryTldLocation(jarResourcePath, curEntryPath));
+                            tldScan.addTld(curEntryPath, zipIn);
                         }
                     }
                 }
@@ -654,7 +805,7 @@ public class TaglibFactory implements TemplateHashModel {
      *            Something like "jar:file:/C:/foo%20bar/baaz.jar!/META-INF/". If this is not a jar(-like) URL, the
      *            behavior is undefined.
      */
-    private void addTldLocationsFromJarDirectoryEntryURL(final URL jarBaseEntryUrl)
+    private void findTldsInJarDirectoryEntryURL(final URL jarBaseEntryUrl, TldScan tldScan)
             throws IOException, MalformedURLException, SAXException {
         // Null for non-random-access backing resource:
         final JarFile jarFile;
@@ -697,9 +848,7 @@ public class TaglibFactory implements TemplateHashModel {
                 final JarEntry curEntry = (JarEntry) entries.nextElement();
                 final String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
                 if (curEntryPath.startsWith(baseEntryPath) && curEntryPath.endsWith(".tld")) {
-                    final String curEntryBaseRelativePath = curEntryPath.substring(baseEntryPath.length());
-                    final URL tldUrl = createJarEntryUrl(jarBaseEntryUrl, curEntryBaseRelativePath);
-                    addTldLocationFromTld(new JarEntryUrlTldLocation(tldUrl, null));
+                    tldScan.addTld(curEntryPath.substring(baseEntryPath.length()), null);
                 }
             }
         } else {
@@ -718,9 +867,7 @@ public class TaglibFactory implements TemplateHashModel {
 
                         String curEntryPath = normalizeJarEntryPath(curEntry.getName(), false);
                         if (curEntryPath.startsWith(baseEntryPath) && curEntryPath.endsWith(".tld")) {
-                            final String curEntryBaseRelativePath = curEntryPath.substring(baseEntryPath.length());
-                            final URL tldUrl = createJarEntryUrl(jarBaseEntryUrl, curEntryBaseRelativePath);
-                            addTldLocationFromTld(zipIn, new JarEntryUrlTldLocation(tldUrl, null));
+                            tldScan.addTld(curEntryPath.substring(baseEntryPath.length()), zipIn);
                         }
                     }
                 } finally {
@@ -740,7 +887,7 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
-    private void addTldLocationsFromFileDirectory(final File dir) throws IOException, SAXException {
+    private void findTldsInFileDirectory(final File dir, TldScan tldScan) throws IOException, SAXException {
         if (dir.isDirectory()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Scanning for *.tld-s in File directory: " + StringUtil.jQuoteNoXSS(dir));
@@ -757,8 +904,7 @@ public class TaglibFactory implements TemplateHashModel {
                 throw new IOException("Can't list this directory for some reason: " + dir);
             }
             for (int i = 0; i < tldFiles.length; i++) {
-                final File file = tldFiles[i];
-                addTldLocationFromTld(new FileTldLocation(file));
+                tldScan.addTld(tldFiles[i].getName(), null);
             }
         } else {
             LOG.warn("Skipped scanning for *.tld for non-existent directory: " + StringUtil.jQuoteNoXSS(dir));
@@ -785,12 +931,9 @@ public class TaglibFactory implements TemplateHashModel {
             IOException {
         String taglibUri;
         try {
-            taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId());
+            taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId(), null);
         } catch (SAXException e) {
-            LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
-            synchronized (failedTldLocations) {
-                failedTldLocations.add(tldLocation.toString());
-            }
+            onTldParsingFailure(tldLocation, e);
             taglibUri = null;
         }
         if (taglibUri != null) {
@@ -798,6 +941,13 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
+    private void onTldParsingFailure(TldLocation tldLocation, SAXException e) {
+        LOG.error("Error while parsing TLD; skipping: " + tldLocation, e);
+        synchronized (failedTldLocations) {
+            failedTldLocations.add(tldLocation.toString());
+        }
+    }
+
     private void addTldLocation(TldLocation tldLocation, String taglibUri) {
         if (tldLocations.containsKey(taglibUri)) {
             if (LOG.isDebugEnabled()) {
@@ -838,9 +988,14 @@ public class TaglibFactory implements TemplateHashModel {
         }
     }
 
-    private String getTaglibUriFromTld(InputStream tldFileIn, String tldFileXmlSystemId) throws SAXException, IOException {
+    /**
+     * @param saxParserFactory
+     *            The factory to reuse; if {@code null}, a new one will be created.
+     */
+    private String getTaglibUriFromTld(InputStream tldFileIn, String tldFileXmlSystemId,
+            SAXParserFactory saxParserFactory) throws SAXException, IOException {
         TldParserForTaglibUriExtraction tldParser = new TldParserForTaglibUriExtraction();
-        parseXml(tldFileIn, tldFileXmlSystemId, tldParser);
+        parseXml(tldFileIn, tldFileXmlSystemId, tldParser, saxParserFactory);
         return tldParser.getTaglibUri();
     }
 
@@ -863,13 +1018,23 @@ public class TaglibFactory implements TemplateHashModel {
 
     private static void parseXml(InputStream in, String systemId, DefaultHandler handler)
             throws SAXException, IOException {
+        parseXml(in, systemId, handler, null);
+    }
+
+    /**
+     * @param factory
+     *            The factory to reuse (created with {@link #newSAXParserFactory()}); if {@code null}, a new one will be
+     *            created.
+     */
+    private static void parseXml(InputStream in, String systemId, DefaultHandler handler, SAXParserFactory factory)
+            throws SAXException, IOException {
         InputSource inSrc = new InputSource();
         inSrc.setSystemId(systemId);
         inSrc.setByteStream(toCloseIgnoring(in));
         
-        SAXParserFactory factory = SAXParserFactory.newInstance();
-        factory.setNamespaceAware(false);
-        factory.setValidating(false); // Especially as we use dummy empty DTD-s
+        if (factory == null) {
+            factory = newSAXParserFactory();
+        }
         XMLReader reader;
         try {
             reader = factory.newSAXParser().getXMLReader();
@@ -884,6 +1049,13 @@ public class TaglibFactory implements TemplateHashModel {
         reader.parse(inSrc);
     }
 
+    private static SAXParserFactory newSAXParserFactory() {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(false);
+        factory.setValidating(false); // Especially as we use dummy empty DTD-s
+        return factory;
+    }
+
     private static String resolveRelativeUri(String uri) throws TaglibGettingException {
         TemplateModel reqHash;
         try {
@@ -1054,6 +1226,32 @@ public class TaglibFactory implements TemplateHashModel {
         return new JarFile(jarResourceAsFile);
     }
 
+    /**
+     * Gets the file of servlet context resource for the {@link TldLocationIndex}; {@code null} if it's not a file.
+     */
+    private File servletContextResourceToFileForIndexOrNull(String jarResourcePath) {
+        if (test_emulateNoUrlToFileConversions) {
+            return null;
+        }
+        String realPath = servletContext.getRealPath(jarResourcePath);
+        return realPath != null ? new File(realPath) : null;
+    }
+
+    /**
+     * Gets the file of a jar URL, like "jar:file:/C:/foo%20bar/baaz.jar", for the {@link TldLocationIndex};
+     * {@code null} if it's not a file.
+     */
+    private File jarUrlToFileOrNull(String jarUrl) {
+        if (!jarUrl.startsWith("jar:")) {
+            return null;
+        }
+        try {
+            return urlToFileOrNull(new URL(jarUrl.substring("jar:".length())));
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
     private static URL tryCreateServletContextJarEntryUrl(
             ServletContext servletContext, final String servletContextJarFilePath, final String entryPath) {
         try {
@@ -1199,6 +1397,202 @@ public class TaglibFactory implements TemplateHashModel {
     
     }
 
+    /**
+     * Finds the TLD-s in a single container (jar, or directory), and extracts the taglib URI-s from them, but doesn't
+     * add them to {@link TaglibFactory#tldLocations}. That's done later by {@link #addTldLocationsFromScans}, in the
+     * order of the containers, which allows running the scans in parallel. A scan only touches
+     * {@link TaglibFactory#failedTldLocations} (which is synchronized) from the shared state.
+     */
+    private abstract class TldScan implements Callable<Void> {
+
+        /** The key in the {@link TldLocationIndex}; {@code null} if the result of the scan can't be indexed. */
+        private final String indexKey;
+        /** The file whose size and last modification time is stored in the index; {@code null} if can't be indexed. */
+        private final File indexedFile;
+        private long indexedFileSize;
+        private long indexedFileLastModified;
+        private boolean loadedFromIndex;
+
+        /** Maps the container-relative paths of the found TLD-s to their taglib URI-s, in the order of discovery. */
+        private final Map<String, String> taglibUris = new LinkedHashMap<>();
+        private boolean hadTldParsingFailure;
+        private Throwable exception;
+        private SAXParserFactory saxParserFactory;
+
+        TldScan(String indexKey, File indexedFile) {
+            this.indexKey = indexedFile != null ? indexKey : null;
+            this.indexedFile = indexKey != null ? indexedFile : null;
+        }
+
+        /**
+         * Finds the TLD-s, and calls {@link #addTld(String, InputStream)} for each.
+         */
+        protected abstract void scan() throws IOException, SAXException;
+
+        /**
+         * Creates the {@link TldLocation} from the path that was passed to {@link #addTld(String, InputStream)}.
+         */
+        protected abstract TldLocation createTldLocation(String path) throws IOException;
+
+        @Override
+        public Void call() {
+            try {
+                scan();
+            } catch (Throwable e) {
+                // Errors too, as otherwise on a pool thread they would be silently swallowed by the Future
+                exception = e;
+            }
+            return null;
+        }
+
+        /**
+         * @param reusedIn
+         *            The stream to read the TLD from, if we already have it; {@code null} if the stream should be
+         *            opened from the {@link TldLocation}.
+         */
+        protected void addTld(String path, InputStream reusedIn) throws IOException, SAXException {
+            final TldLocation tldLocation = createTldLocation(path);
+            if (saxParserFactory == null) {
+                saxParserFactory = newSAXParserFactory();
+            }
+            String taglibUri;
+            try {
+                if (reusedIn != null) {
+                    taglibUri = getTaglibUriFromTld(reusedIn, tldLocation.getXmlSystemId(), saxParserFactory);
+                } else {
+                    try (InputStream in = tldLocation.getInputStream()) {
+                        taglibUri = getTaglibUriFromTld(in, tldLocation.getXmlSystemId(), saxParserFactory);
+                    }
+                }
+            } catch (SAXException e) {
+                onTldParsingFailure(tldLocation, e);
+                hadTldParsingFailure = true;
+                return;
+            }
+            if (taglibUri != null && !taglibUris.containsKey(path)) {
+                taglibUris.put(path, taglibUri);
+            }
+        }
+
+        /**
+         * Uses the result stored in the index instead of scanning, if the container is unchanged since then.
+         * 
+         * @return Whether the result was loaded from the index.
+         */
+        boolean loadFromIndex(TldLocationIndex tldLocationIndex) {
+            if (indexKey == null) {
+                return false;
+            }
+            // Captured before scanning, so that if the file is changed during scanning, the index entry will be stale.
+            indexedFileSize = indexedFile.length();
+            indexedFileLastModified = indexedFile.lastModified();
+            if (indexedFileLastModified == 0) {
+                return false; // The file doesn't exist, or there was some I/O error
+            }
+            Map<String, String> indexedTaglibUris = tldLocationIndex.get(
+                    indexKey, indexedFileSize, indexedFileLastModified);
+            if (indexedTaglibUris == null) {
+                return false;
+            }
+            taglibUris.putAll(indexedTaglibUris);
+            loadedFromIndex = true;
+            return true;
+        }
+
+        void addToIndex(TldLocationIndex tldLocationIndex) {
+            if (indexKey != null && !loadedFromIndex && indexedFileLastModified != 0
+                    && exception == null && !hadTldParsingFailure) {
+                tldLocationIndex.put(indexKey, indexedFileSize, indexedFileLastModified, taglibUris);
+            }
+        }
+
+        void rethrowException() throws IOException, SAXException {
+            if (exception instanceof IOException) {
+                throw (IOException) exception;
+            }
+            if (exception instanceof SAXException) {
+                throw (SAXException) exception;
+            }
+            if (exception instanceof RuntimeException) {
+                throw (RuntimeException) exception;
+            }
+            if (exception instanceof Error) {
+                throw (Error) exception;
+            }
+            if (exception != null) {
+                throw new RuntimeException("TLD scanning has failed", exception);
+            }
+        }
+
+    }
+
+    private class ServletContextJarTldScan extends TldScan {
+
+        private final String jarResourcePath;
+
+        ServletContextJarTldScan(String jarResourcePath) {
+            super("servletContext:" + jarResourcePath, servletContextResourceToFileForIndexOrNull(jarResourcePath));
+            this.jarResourcePath = jarResourcePath;
+        }
+
+        @Override
+        protected void scan() throws IOException, SAXException {
+            findTldsInServletContextJar(jarResourcePath, this);
+        }
+
+        @Override
+        protected TldLocation createTldLocation(String path) {
+            return new ServletContextJarEntryTldLocation(jarResourcePath, path);
+        }
+
+    }
+
+    private class JarDirectoryEntryUrlTldScan extends TldScan {
+
+        private final URL jarBaseEntryUrl;
+
+        /**
+         * @param rootContainerUrl
+         *            The URL of the jar, like "jar:file:/C:/foo%20bar/baaz.jar"
+         */
+        JarDirectoryEntryUrlTldScan(URL jarBaseEntryUrl, String rootContainerUrl) {
+            super(jarBaseEntryUrl.toExternalForm(), jarUrlToFileOrNull(rootContainerUrl));
+            this.jarBaseEntryUrl = jarBaseEntryUrl;
+        }
+
+        @Override
+        protected void scan() throws IOException, SAXException {
+            findTldsInJarDirectoryEntryURL(jarBaseEntryUrl, this);
+        }
+
+        @Override
+        protected TldLocation createTldLocation(String path) throws MalformedURLException {
+            return new JarEntryUrlTldLocation(createJarEntryUrl(jarBaseEntryUrl, path), null);
+        }
+
+    }
+
+    private class FileDirectoryTldScan extends TldScan {
+
+        private final File dir;
+
+        FileDirectoryTldScan(File dir) {
+            super(null, null); // Listing a directory is cheap
+            this.dir = dir;
+        }
+
+        @Override
+        protected void scan() throws IOException, SAXException {
+            findTldsInFileDirectory(dir, this);
+        }
+
+        @Override
+        protected TldLocation createTldLocation(String path) {
+            return new FileTldLocation(new File(dir, path));
+        }
+
+    }
+
     private class ServletContextTldLocation implements TldLocation {
         
         private final String fileResourcePath;
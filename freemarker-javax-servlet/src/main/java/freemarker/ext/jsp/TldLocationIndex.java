@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.jsp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import freemarker.log.Logger;
+import freemarker.template.utility.StringUtil;
+
+/**
+ * Stores which TLD-s were found in which jar, and what taglib URI-s those TLD-s define, so that after a restart the
+ * jars that weren't changed since then needn't be scanned again. A jar is considered to be unchanged if its size and
+ * last modification time is the same as when it was scanned. Used by {@link TaglibFactory}, if
+ * {@link TaglibFactory#setTldLocationIndexFile(File)} was set.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @since 2.3.33
+ */
+final class TldLocationIndex {
+
+    private static final Logger LOG = Logger.getLogger("freemarker.jsp");
+
+    /** Increase this if the file format changes; files with other versions are ignored. */
+    private static final int FORMAT_VERSION = 0x464d5401; // "FMT" + 1
+
+    private final Map<String, JarEntry> jarEntries;
+    private final Set<String> usedJarKeys = new HashSet<>();
+    private boolean modified;
+
+    private TldLocationIndex(Map<String, JarEntry> jarEntries) {
+        this.jarEntries = jarEntries;
+    }
+
+    /**
+     * Loads the index from the file; if the file doesn't exist, or can't be loaded for some reason, returns an empty
+     * index.
+     */
+    static TldLocationIndex load(File file) {
+        Map<String, JarEntry> jarEntries = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                LOG.warn("Ignored TLD location index file with unsupported format: " + StringUtil.jQuoteNoXSS(file));
+                return new TldLocationIndex(jarEntries);
+            }
+            int jarCount = in.readInt();
+            for (int jarIdx = 0; jarIdx < jarCount; jarIdx++) {
+                String key = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                int tldCount = in.readInt();
+                Map<String, String> taglibUris = new LinkedHashMap<>();
+                for (int tldIdx = 0; tldIdx < tldCount; tldIdx++) {
+                    String entryPath = in.readUTF();
+                    taglibUris.put(entryPath, in.readUTF());
+                }
+                jarEntries.put(key, new JarEntry(size, lastModified, taglibUris));
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loaded TLD location index for " + jarCount + " jar(s) from " + StringUtil.jQuoteNoXSS(file));
+            }
+        } catch (FileNotFoundException e) {
+            LOG.debug("TLD location index file doesn't exist yet: " + StringUtil.jQuoteNoXSS(file));
+        } catch (IOException e) {
+            LOG.warn("Failed to load TLD location index file (will scan for TLD-s): "
+                    + StringUtil.jQuoteNoXSS(file), e);
+            jarEntries.clear();
+        }
+        return new TldLocationIndex(jarEntries);
+    }
+
+    /**
+     * Returns the TLD-s found in the jar earlier, if the jar is unchanged since then.
+     *
+     * @param key
+     *            Identifies the jar, typically its path.
+     *
+     * @return Maps the paths of the TLD-s inside the jar to the taglib URI-s they define, in the order the jar entries
+     *         were found; {@code null} if the jar isn't in the index, or was changed since it was indexed.
+     */
+    Map<String, String> get(String key, long size, long lastModified) {
+        JarEntry jarEntry = jarEntries.get(key);
+        if (jarEntry == null || jarEntry.size != size || jarEntry.lastModified != lastModified) {
+            return null;
+        }
+        usedJarKeys.add(key);
+        return jarEntry.taglibUris;
+    }
+
+    /**
+     * Stores the TLD-s found in the jar; see {@link #get(String, long, long)} for the meaning of the parameters.
+     */
+    void put(String key, long size, long lastModified, Map<String, String> taglibUris) {
+        jarEntries.put(key, new JarEntry(size, lastModified, Collections.unmodifiableMap(taglibUris)));
+        usedJarKeys.add(key);
+        modified = true;
+    }
+
+    /**
+     * Saves the index, if it was changed since it was loaded. Jars that weren't accessed with {@link #get} or
+     * {@link #put} are dropped from the index. Errors are only logged, as the index is just an optimization. The
+     * file is replaced atomically (if the file system supports that), so concurrent readers never see a half written
+     * file.
+     */
+    void saveIfModified(File file) {
+        for (Iterator<String> it = jarEntries.keySet().iterator(); it.hasNext(); ) {
+            if (!usedJarKeys.contains(it.next())) {
+                it.remove();
+                modified = true;
+            }
+        }
+        if (!modified) {
+            return;
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tempFile = null;
+        try {
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + dir);
+            }
+            tempFile = File.createTempFile(file.getName(), ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(jarEntries.size());
+                for (Map.Entry<String, JarEntry> jarEnt : jarEntries.entrySet()) {
+                    JarEntry jarEntry = jarEnt.getValue();
+                    out.writeUTF(jarEnt.getKey());
+                    out.writeLong(jarEntry.size);
+                    out.writeLong(jarEntry.lastModified);
+                    out.writeInt(jarEntry.taglibUris.size());
+                    for (Map.Entry<String, String> tldEnt : jarEntry.taglibUris.entrySet()) {
+                        out.writeUTF(tldEnt.getKey());
+                        out.writeUTF(tldEnt.getValue());
+                    }
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            tempFile = null;
+            modified = false;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Saved TLD location index for " + jarEntries.size() + " jar(s) to "
+                        + StringUtil.jQuoteNoXSS(file));
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to save TLD location index file: " + StringUtil.jQuoteNoXSS(file), e);
+        } finally {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static final class JarEntry {
+        private final long size;
+        private final long lastModified;
+        private final Map<String, String> taglibUris;
+
+        private JarEntry(long size, long lastModified, Map<String, String> taglibUris) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.taglibUris = taglibUris;
+        }
+    }
+
+}
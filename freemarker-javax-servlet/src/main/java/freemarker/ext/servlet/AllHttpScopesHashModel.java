@@ -50,7 +50,9 @@ import freemarker.template.utility.NullArgumentException;
 public class AllHttpScopesHashModel extends SimpleHash {
     private final ServletContext context;
     private final HttpServletRequest request;
-    private final Map unlistedModels = new HashMap();
+    /** Created on demand, as usually all the unlisted models come from {@link #unlistedModelSource}. */
+    private Map unlistedModels;
+    private UnlistedModelSource unlistedModelSource;
      
     /**
      * Creates a new instance of AllHttpScopesHashModel for handling a single 
@@ -75,9 +77,23 @@ public class AllHttpScopesHashModel extends SimpleHash {
      * @param model the stored model
      */
     public void putUnlistedModel(String key, TemplateModel model) {
+        if (unlistedModels == null) {
+            unlistedModels = new HashMap();
+        }
         unlistedModels.put(key, model);
     }
 
+    /**
+     * Sets the source of the unlisted models that aren't added with {@link #putUnlistedModel(String, TemplateModel)};
+     * it's only asked when the model is first needed. (The models added with
+     * {@link #putUnlistedModel(String, TemplateModel)} have precedence.)
+     * 
+     * @since 2.3.33
+     */
+    void setUnlistedModelSource(UnlistedModelSource unlistedModelSource) {
+        this.unlistedModelSource = unlistedModelSource;
+    }
+
     @Override
     public TemplateModel get(String key) throws TemplateModelException {
         // Lookup in page scope
@@ -87,9 +103,17 @@ public class AllHttpScopesHashModel extends SimpleHash {
         }
 
         // Look in unlisted models
-        model = (TemplateModel) unlistedModels.get(key);
-        if (model != null) {
-            return model;
+        if (unlistedModels != null) {
+            model = (TemplateModel) unlistedModels.get(key);
+            if (model != null) {
+                return model;
+            }
+        }
+        if (unlistedModelSource != null) {
+            model = unlistedModelSource.getUnlistedModel(key);
+            if (model != null) {
+                return model;
+            }
         }
         
         // Lookup in request scope
@@ -116,4 +140,19 @@ public class AllHttpScopesHashModel extends SimpleHash {
         // return wrapper's null object (probably null).        
         return wrap(null);
     }
+
+    /**
+     * Creates (or finds) the unlisted models when they are first needed; see
+     * {@link AllHttpScopesHashModel#setUnlistedModelSource(UnlistedModelSource)}.
+     * 
+     * @since 2.3.33
+     */
+    interface UnlistedModelSource {
+
+        /**
+         * @return {@code null} if there's no unlisted model with the given key.
+         */
+        TemplateModel getUnlistedModel(String key) throws TemplateModelException;
+
+    }
 }
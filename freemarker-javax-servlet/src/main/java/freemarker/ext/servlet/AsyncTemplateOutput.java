@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package freemarker.ext.servlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import freemarker.log.Logger;
+
+/**
+ * Collects the output of a template that's rendered asynchronously by {@link FreemarkerServlet} (see
+ * {@link FreemarkerServlet#INIT_PARAM_ASYNC_RENDERING}), then writes it to the client with the non-blocking I/O
+ * of Servlet 3.1. The output is encoded to bytes on the rendering thread, and is stored in chunks that are borrowed
+ * from a {@link ChunkPool}, and are returned to it when they were written to the client.
+ * 
+ * <p>It's also an {@link AsyncListener}, so that if the asynchronous processing times out, or fails, it stops writing,
+ * and returns its chunks to the pool. Exactly one party calls {@link AsyncContext#complete()}; which one is decided
+ * with compare-and-set operations on the state of this object.
+ * 
+ * <p>This class references Servlet 3.1 API-s, so it must only be loaded if asynchronous rendering is enabled.
+ * 
+ * @since 2.3.33
+ */
+final class AsyncTemplateOutput extends OutputStream implements WriteListener, AsyncListener {
+
+    private static final Logger LOG = Logger.getLogger("freemarker.servlet");
+
+    /** The template is being executed; only the rendering thread touches the chunks. */
+    private static final int STATE_RENDERING = 0;
+    /** The output is being written to the client; the chunks are only touched while holding {@link #writeLock}. */
+    private static final int STATE_WRITING = 1;
+    /**
+     * The asynchronous processing has ended (timed out, or failed) during rendering; the rendering thread still has to
+     * release the chunks, but mustn't complete the {@link AsyncContext}.
+     */
+    private static final int STATE_ABORTED_WHILE_RENDERING = 2;
+    /** Finished (successfully or not), the chunks were released, and the {@link AsyncContext} was completed. */
+    private static final int STATE_FINISHED = 3;
+
+    private final AsyncContext asyncContext;
+    private final ChunkPool chunkPool;
+    private final Writer writer;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    /** The chunk we are filling; {@code null} if we have no chunk yet, or if the last one is full. */
+    private byte[] currentChunk;
+    private int currentChunkLength;
+    private int lastChunkLength;
+
+    private ServletOutputStream out;
+    private int nextChunkIndex;
+    /**
+     * The chunk whose writing was started, but that the container might still use, so it can't be returned to the
+     * pool until {@link ServletOutputStream#isReady()} returns {@code true} again.
+     */
+    private byte[] pendingChunk;
+
+    private final AtomicInteger state = new AtomicInteger(STATE_RENDERING);
+    /**
+     * Guards writing to the client, as {@link #onWritePossible()} can be called concurrently with the
+     * {@link AsyncListener} methods.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * @param charset
+     *            The charset with which {@link #getWriter()} encodes the characters; usually the value of
+     *            {@link javax.servlet.ServletResponse#getCharacterEncoding()}.
+     */
+    AsyncTemplateOutput(AsyncContext asyncContext, ChunkPool chunkPool, String charset) throws IOException {
+        this.asyncContext = asyncContext;
+        this.chunkPool = chunkPool;
+        this.writer = new OutputStreamWriter(this, charset);
+    }
+
+    AsyncContext getAsyncContext() {
+        return asyncContext;
+    }
+
+    /**
+     * The {@link Writer} to which the template should print its output.
+     */
+    Writer getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (currentChunk == null) {
+            startNewChunk();
+        }
+        currentChunk[currentChunkLength++] = (byte) b;
+        if (currentChunkLength == currentChunk.length) {
+            currentChunk = null;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (currentChunk == null) {
+                startNewChunk();
+            }
+            int copyLen = Math.min(len, currentChunk.length - currentChunkLength);
+            System.arraycopy(b, off, currentChunk, currentChunkLength, copyLen);
+            currentChunkLength += copyLen;
+            off += copyLen;
+            len -= copyLen;
+            if (currentChunkLength == currentChunk.length) {
+                currentChunk = null;
+            }
+        }
+    }
+
+    private void startNewChunk() {
+        currentChunk = chunkPool.borrow();
+        currentChunkLength = 0;
+        chunks.add(currentChunk);
+    }
+
+    /**
+     * Starts writing the collected output to the client; must be called after the template was successfully
+     * executed. When all the output was written (or writing has failed), {@link AsyncContext#complete()} will be
+     * called.
+     * 
+     * @return {@code false} if the asynchronous processing has already ended (like it has timed out), in which case
+     *         the chunks were released, and nothing was written.
+     */
+    boolean startWriting() throws IOException {
+        writer.flush();
+        lastChunkLength = currentChunkLength;
+        currentChunk = null;
+        if (!state.compareAndSet(STATE_RENDERING, STATE_WRITING)) {
+            releaseChunks();
+            state.set(STATE_FINISHED);
+            return false;
+        }
+        out = asyncContext.getResponse().getOutputStream();
+        // This will call onWritePossible, possibly on another thread:
+        out.setWriteListener(this);
+        return true;
+    }
+
+    /**
+     * Returns the chunks to the pool without writing them out; used when the template execution (or
+     * {@link #startWriting()}) has failed.
+     * 
+     * @return Whether the caller is responsible for completing the {@link AsyncContext}; {@code false} if it was
+     *         already completed, or will be completed by someone else.
+     */
+    boolean discard() {
+        if (state.compareAndSet(STATE_RENDERING, STATE_FINISHED)) {
+            releaseChunks();
+            return true;
+        }
+        if (state.get() == STATE_ABORTED_WHILE_RENDERING) {
+            releaseChunks();
+            state.set(STATE_FINISHED);
+            return false;
+        }
+        return abortWriting();
+    }
+
+    /**
+     * Stops writing to the client if we are in {@link #STATE_WRITING}.
+     * 
+     * @return Whether the caller is responsible for completing the {@link AsyncContext}.
+     */
+    private boolean abortWriting() {
+        writeLock.lock();
+        try {
+            if (!state.compareAndSet(STATE_WRITING, STATE_FINISHED)) {
+                return false;
+            }
+            // The pendingChunk is possibly still used by the container, so we just let it be garbage collected.
+            pendingChunk = null;
+            releaseChunks();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Called when the asynchronous processing has ended without us completing it.
+     * 
+     * @return Whether the caller is responsible for completing the {@link AsyncContext}.
+     */
+    private boolean abort() {
+        if (state.compareAndSet(STATE_RENDERING, STATE_ABORTED_WHILE_RENDERING)) {
+            // The rendering thread will release the chunks when it's finished.
+            return true;
+        }
+        return abortWriting();
+    }
+
+    private void completeAsyncContext() {
+        try {
+            asyncContext.complete();
+        } catch (IllegalStateException e) {
+            // The container has already completed it (like after a timeout)
+            LOG.debug("Failed to complete AsyncContext", e);
+        }
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        writeLock.lock();
+        try {
+            while (state.get() == STATE_WRITING && out.isReady()) {
+                if (pendingChunk != null) {
+                    // Now we know that the container doesn't use it anymore.
+                    chunkPool.release(pendingChunk);
+                    pendingChunk = null;
+                }
+
+                if (nextChunkIndex == chunks.size()) {
+                    chunks.clear();
+                    state.set(STATE_FINISHED);
+                    completeAsyncContext();
+                    return;
+                }
+
+                byte[] chunk = chunks.get(nextChunkIndex);
+                chunks.set(nextChunkIndex, null);
+                nextChunkIndex++;
+                pendingChunk = chunk;
+                out.write(chunk, 0, nextChunkIndex == chunks.size() ? lastChunkLength : chunk.length);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        // Usually it's just the client that has closed the connection, so this isn't logged as an error. 
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Failed to write the asynchronously rendered response", t);
+        }
+        if (abortWriting()) {
+            completeAsyncContext();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+        LOG.warn("The asynchronous rendering (or the writing of its output) has timed out");
+        if (abort()) {
+            completeAsyncContext();
+        }
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Asynchronous processing has failed", event.getThrowable());
+        }
+        // The container completes the AsyncContext after this
+        abort();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+        // Nothing to do
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+        // Nothing to do
+    }
+
+    private void releaseChunks() {
+        for (int i = nextChunkIndex; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            if (chunk != null) {
+                chunkPool.release(chunk);
+            }
+        }
+        chunks.clear();
+        currentChunk = null;
+    }
+
+    /**
+     * Thread safe pool of the byte arrays used by {@link AsyncTemplateOutput}-s; one instance is shared by all
+     * the requests served by the same {@link FreemarkerServlet}. It only holds on to a limited number of chunks, so
+     * a burst of large responses doesn't permanently increase the memory footprint.
+     */
+    static final class ChunkPool {
+
+        private final int chunkSize;
+        private final int maxPooledChunks;
+        private final ConcurrentLinkedQueue<byte[]> pooledChunks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pooledChunkCount = new AtomicInteger();
+
+        ChunkPool(int chunkSize, int maxPooledChunks) {
+            this.chunkSize = chunkSize;
+            this.maxPooledChunks = maxPooledChunks;
+        }
+
+        byte[] borrow() {
+            byte[] chunk = pooledChunks.poll();
+            if (chunk == null) {
+                return new byte[chunkSize];
+            }
+            pooledChunkCount.decrementAndGet();
+            return chunk;
+        }
+
+        void release(byte[] chunk) {
+            if (pooledChunkCount.incrementAndGet() <= maxPooledChunks) {
+                pooledChunks.offer(chunk);
+            } else {
+                pooledChunkCount.decrementAndGet();
+            }
+        }
+
+    }
+
+}
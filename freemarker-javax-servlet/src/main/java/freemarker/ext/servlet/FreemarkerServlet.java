@@ -19,6 +19,7 @@
 
 package freemarker.ext.servlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -31,8 +32,12 @@ import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -255,6 +260,40 @@ import freemarker.template.utility.StringUtil;
  * {@value #SYSTEM_PROPERTY_CLASSPATH_TLDS} system property. If both the init-param and the system property exists, the
  * items listed in system property will be added after those specified by the init-param.</li>
  * 
+ * <li><strong>{@value #INIT_PARAM_TLD_SCANNING_THREAD_COUNT}</strong> (since 2.3.33): The maximum number of threads
+ * used for discovering the TLD-s in the jars; see {@link TaglibFactory#setTldScanningThreadCount(int)}.</li>
+ * 
+ * <li><strong>{@value #INIT_PARAM_TLD_LOCATION_INDEX_FILE}</strong> (since 2.3.33): The path of the file where the
+ * TLD-s found in the jars are remembered, so that unchanged jars needn't be scanned again after a restart; see
+ * {@link TaglibFactory#setTldLocationIndexFile(File)}. A relative path is resolved relatively to the temporary
+ * directory of the web application (the {@code javax.servlet.context.tempdir} servlet context attribute), so a value
+ * like {@code freemarker-tld-index.bin} is typically enough. Defaults to no index file.</li>
+ * 
+ * <li><strong>{@value #INIT_PARAM_ASYNC_RENDERING}</strong> (since 2.3.33): If {@code true}, the template is
+ * executed outside the request processing thread of the servlet container, and its output is written to the client
+ * with the non-blocking I/O of Servlet 3.1, so slow clients don't keep the container threads busy. The template
+ * output is collected in memory (encoded to bytes, in pooled chunks), and is only written to the client after the
+ * template execution has finished. The template is executed by the {@link Executor} returned by
+ * {@link #createAsyncRenderingExecutor()}, which by default is the thread pool of the servlet container (see
+ * {@link AsyncContext#start(Runnable)}). This requires Servlet 3.1 or later, and that asynchronous processing is
+ * enabled for the servlet (and for all the filters of the request) in {@code web.xml}
+ * ({@code <async-supported>true</async-supported>}); for requests that don't support asynchronous processing, the
+ * template is executed synchronously, like if this init-param was {@code false}. Defaults to {@code false}.</li>
+ * 
+ * <li><strong>{@value #INIT_PARAM_ASYNC_RENDERING_TIMEOUT}</strong> (since 2.3.33): The timeout in milliseconds of
+ * the asynchronous processing when {@value #INIT_PARAM_ASYNC_RENDERING} is {@code true}, which includes both the
+ * template execution, and writing the output to the client (see {@link AsyncContext#setTimeout(long)}). If the
+ * timeout is reached, the writing of the output is stopped, so the client receives a truncated response (or no
+ * response, if the template execution hasn't finished yet). 0 or less means no timeout. Defaults to 0, so the
+ * (usually short) default timeout of the servlet container isn't used.</li>
+ * 
+ * <li><strong>{@value #INIT_PARAM_LAZY_SESSION}</strong> (since 2.3.33): If {@code true}, the session is only looked
+ * up (and {@link #initializeSession(HttpServletRequest, HttpServletResponse)} is only called) when the template first
+ * accesses the {@value #KEY_SESSION} variable, so requests whose template doesn't use the session needn't check it.
+ * Note that then {@link #initializeSession(HttpServletRequest, HttpServletResponse)} may be called after the response
+ * was already committed, so it shouldn't try to modify the response. Defaults to {@code false}, in which case the
+ * session is checked for each request before the template is executed.</li>
+ * 
  * <li><strong>"Debug"</strong>: Deprecated, has no effect since 2.3.22. (Earlier it has enabled/disabled sending
  * debug-level log messages to the servlet container log, but this servlet doesn't log debug level messages into the
  * servlet container log anymore, only into the FreeMarker log.)</li>
@@ -396,6 +435,41 @@ public class FreemarkerServlet extends HttpServlet {
      * @since 2.3.22
      */
     public static final String INIT_PARAM_CLASSPATH_TLDS = "ClasspathTlds";
+
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.33
+     */
+    public static final String INIT_PARAM_TLD_SCANNING_THREAD_COUNT = "TldScanningThreadCount";
+
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.33
+     */
+    public static final String INIT_PARAM_TLD_LOCATION_INDEX_FILE = "TldLocationIndexFile";
+
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.33
+     */
+    public static final String INIT_PARAM_ASYNC_RENDERING = "AsyncRendering";
+
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.33
+     */
+    public static final String INIT_PARAM_ASYNC_RENDERING_TIMEOUT = "AsyncRenderingTimeout";
+
+    /**
+     * Init-param name - see the {@link FreemarkerServlet} class documentation about the init-params.
+     * 
+     * @since 2.3.33
+     */
+    public static final String INIT_PARAM_LAZY_SESSION = "LazySession";
     
     private static final String INIT_PARAM_DEBUG = "Debug";
 
@@ -499,6 +573,9 @@ public class FreemarkerServlet extends HttpServlet {
         EXPIRATION_DATE = httpDate.format(expiration.getTime());
     }
 
+    private static final int ASYNC_OUTPUT_CHUNK_SIZE = 8 * 1024;
+    private static final int ASYNC_OUTPUT_MAX_POOLED_CHUNKS = 256;
+
     // Init-param values:
     private String templatePath;
     private boolean noCache;
@@ -525,6 +602,14 @@ public class FreemarkerServlet extends HttpServlet {
     private OverrideResponseLocale overrideResponseLocale = OverrideResponseLocale.ALWAYS;
     private List/*<MetaInfTldSource>*/ metaInfTldSources;
     private List/*<String>*/ classpathTlds;
+    private Integer tldScanningThreadCount;
+    private String tldLocationIndexFile;
+    private boolean asyncRendering;
+    private long asyncRenderingTimeout;
+    private boolean lazySession;
+
+    private Executor asyncRenderingExecutor;
+    private AsyncTemplateOutput.ChunkPool asyncOutputChunkPool;
 
     private Object lazyInitFieldsLock = new Object();
     @SuppressFBWarnings(value="SE_BAD_FIELD", justification="Not investing into making this Servlet serializable")
@@ -688,6 +773,16 @@ public class FreemarkerServlet extends HttpServlet {
                     }
                     newClasspathTlds.addAll(InitParamParser.parseCommaSeparatedList(value));
                     classpathTlds = newClasspathTlds;
+                } else if (name.equals(INIT_PARAM_TLD_SCANNING_THREAD_COUNT)) {
+                    tldScanningThreadCount = Integer.valueOf(value.trim());
+                } else if (name.equals(INIT_PARAM_TLD_LOCATION_INDEX_FILE)) {
+                    tldLocationIndexFile = value.trim();
+                } else if (name.equals(INIT_PARAM_ASYNC_RENDERING)) {
+                    asyncRendering = StringUtil.getYesNo(value);
+                } else if (name.equals(INIT_PARAM_ASYNC_RENDERING_TIMEOUT)) {
+                    asyncRenderingTimeout = Long.parseLong(value.trim());
+                } else if (name.equals(INIT_PARAM_LAZY_SESSION)) {
+                    lazySession = StringUtil.getYesNo(value);
                 } else {
                     config.setSetting(name, value);
                 }
@@ -703,7 +798,20 @@ public class FreemarkerServlet extends HttpServlet {
                     new IllegalStateException("You can't specify the charset in the content type, because the \"" +
                             INIT_PARAM_RESPONSE_CHARACTER_ENCODING + "\" init-param isn't set to "
                             + "\"" + INIT_PARAM_VALUE_LEGACY + "\"."));
-        }        
+        }
+
+        if (asyncRendering) {
+            try {
+                // The class name is written literally, so that it's not loaded unless this init-param is true:
+                Class.forName("javax.servlet.WriteListener");
+            } catch (ClassNotFoundException e) {
+                throw new InitParamValueException(INIT_PARAM_ASYNC_RENDERING, String.valueOf(asyncRendering),
+                        "Asynchronous rendering requires Servlet 3.1 or later.");
+            }
+            asyncOutputChunkPool = new AsyncTemplateOutput.ChunkPool(
+                    ASYNC_OUTPUT_CHUNK_SIZE, ASYNC_OUTPUT_MAX_POOLED_CHUNKS);
+            asyncRenderingExecutor = createAsyncRenderingExecutor();
+        }
     }
     
     private List/*<MetaInfTldSource>*/ parseAsMetaInfTldLocations(String value) throws ParseException {
@@ -744,6 +852,30 @@ public class FreemarkerServlet extends HttpServlet {
         return metaInfTldSources;
     }
 
+    /**
+     * Creates the {@link Executor} that executes the templates if the {@value #INIT_PARAM_ASYNC_RENDERING}
+     * init-param is {@code true}; this is only called then. The default implementation returns {@code null}, which
+     * means that the tasks are passed to {@link AsyncContext#start(Runnable)}, so they will run on a thread of the
+     * servlet container. Override this to use a dedicated thread pool, or, on Java 21 or later, virtual threads
+     * (like {@code Executors.newVirtualThreadPerTaskExecutor()}). If the returned object is an
+     * {@link ExecutorService}, it will be shut down in {@link #destroy()}.
+     * 
+     * <p>If the {@link Executor} rejects a task, the template will be executed on the request processing thread.
+     * 
+     * @since 2.3.33
+     */
+    protected Executor createAsyncRenderingExecutor() {
+        return null;
+    }
+
+    @Override
+    public void destroy() {
+        if (asyncRenderingExecutor instanceof ExecutorService) {
+            ((ExecutorService) asyncRenderingExecutor).shutdown();
+        }
+        super.destroy();
+    }
+
     /**
      * Create the template loader. The default implementation will create a {@link ClassTemplateLoader} if the template
      * path starts with {@code "class://"}, a {@link FileTemplateLoader} if the template path starts with
@@ -860,6 +992,28 @@ public class FreemarkerServlet extends HttpServlet {
 
         setBrowserCachingPolicy(response);
 
+        if (asyncRendering && request.isAsyncSupported()) {
+            startAsyncRendering(request, response, template);
+        } else {
+            if (asyncRendering && LOG.isDebugEnabled()) {
+                LOG.debug("Rendering " + StringUtil.jQuoteNoXSS(templatePath) + " synchronously, as the request "
+                        + "doesn't support asynchronous processing.");
+            }
+            processTemplate(request, response, template, null);
+        }
+    }
+
+    /**
+     * Executes the template, and handles the {@link TemplateException}-s.
+     * 
+     * @param asyncOutput
+     *            The output to which the template will write if the template is rendered asynchronously, or
+     *            {@code null} if it should write directly into the response.
+     */
+    private void processTemplate(
+            HttpServletRequest request, HttpServletResponse response, Template template,
+            AsyncTemplateOutput asyncOutput)
+            throws ServletException, IOException {
         ServletContext servletContext = getServletContext();
         try {
             logWarnOnObjectWrapperMismatch();
@@ -870,7 +1024,8 @@ public class FreemarkerServlet extends HttpServlet {
             if (preTemplateProcess(request, response, template, model)) {
                 try {
                     // Process the template
-                    Environment env = template.createProcessingEnvironment(model, response.getWriter());
+                    Environment env = template.createProcessingEnvironment(model,
+                            asyncOutput == null ? response.getWriter() : asyncOutput.getWriter());
                     if (responseCharacterEncoding != ResponseCharacterEncoding.LEGACY) {
                         String actualOutputCharset = response.getCharacterEncoding();
                         if (actualOutputCharset != null) {
@@ -890,7 +1045,9 @@ public class FreemarkerServlet extends HttpServlet {
             // Ensure that debug handler responses aren't rolled back:
             if (teh == TemplateExceptionHandler.HTML_DEBUG_HANDLER || teh == TemplateExceptionHandler.DEBUG_HANDLER
                     || teh.getClass().getName().contains("Debug")) {
-                response.flushBuffer();
+                if (asyncOutput == null) {
+                    response.flushBuffer();
+                } // else the collected output will be written to the client as usual
 
                 // Apparently, if the status is 200, yet the servlet throw an exception, Jetty (9.4.53) closes the
                 // connection, so the developer possibly won't see the debug error page (or not all of it).
@@ -910,6 +1067,69 @@ public class FreemarkerServlet extends HttpServlet {
         }
     }
 
+    private void startAsyncRendering(
+            final HttpServletRequest request, final HttpServletResponse response, final Template template)
+            throws IOException {
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AsyncTemplateOutput output = new AsyncTemplateOutput(
+                asyncContext, asyncOutputChunkPool, response.getCharacterEncoding());
+        // Otherwise the default timeout of the container applies, which is often too short for rendering plus writing
+        // to a slow client.
+        asyncContext.setTimeout(asyncRenderingTimeout > 0 ? asyncRenderingTimeout : 0);
+        asyncContext.addListener(output);
+        Runnable renderingTask = new Runnable() {
+            @Override
+            public void run() {
+                renderAsynchronously(request, response, template, output);
+            }
+        };
+        if (asyncRenderingExecutor != null) {
+            try {
+                asyncRenderingExecutor.execute(renderingTask);
+            } catch (RejectedExecutionException e) {
+                LOG.warn("The asynchronous rendering executor has rejected the task; rendering on the request "
+                        + "processing thread instead.", e);
+                renderingTask.run();
+            }
+        } else {
+            asyncContext.start(renderingTask);
+        }
+    }
+
+    private void renderAsynchronously(
+            HttpServletRequest request, HttpServletResponse response, Template template, AsyncTemplateOutput output) {
+        try {
+            processTemplate(request, response, template, output);
+            // From here on, the output will complete the AsyncContext (unless it has already ended):
+            if (!output.startWriting()) {
+                LOG.warn("The asynchronous processing has ended (like timed out) before the rendering of template "
+                        + StringUtil.jQuoteNoXSS(template.getName()) + " has finished");
+            }
+        } catch (Throwable e) {
+            LOG.error("Error during the asynchronous rendering of template "
+                    + StringUtil.jQuoteNoXSS(template.getName()), e);
+            // Errors too, as otherwise the chunks aren't released, and the request only ends with the timeout
+            if (output.discard()) {
+                try {
+                    if (!response.isCommitted()) {
+                        response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                } catch (Exception e2) {
+                    LOG.debug("Failed to send HTTP 500 error response", e2);
+                } finally {
+                    try {
+                        output.getAsyncContext().complete();
+                    } catch (IllegalStateException e2) {
+                        LOG.debug("Failed to complete AsyncContext", e2);
+                    }
+                }
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
     /**
      * This is the method that actually executes the template. The original implementation coming from
      * {@link FreemarkerServlet} simply calls {@link Environment#process()}. Overriding this method allows you to
@@ -1021,7 +1241,7 @@ public class FreemarkerServlet extends HttpServlet {
                                         final HttpServletResponse response) throws TemplateModelException {
         try {
             AllHttpScopesHashModel params = new AllHttpScopesHashModel(objectWrapper, servletContext, request);
-    
+
             // Create hash model wrapper for servlet context (the application)
             final ServletContextHashModel servletContextModel;
             final TaglibFactory taglibFactory;
@@ -1044,49 +1264,130 @@ public class FreemarkerServlet extends HttpServlet {
                 }
             }
             
-            params.putUnlistedModel(KEY_APPLICATION, servletContextModel);
-            params.putUnlistedModel(KEY_APPLICATION_PRIVATE, servletContextModel);
-            params.putUnlistedModel(KEY_JSP_TAGLIBS, taglibFactory);
-            // Create hash model wrapper for session
-            HttpSessionHashModel sessionModel;
-            HttpSession session = request.getSession(false);
-            if (session != null) {
-                sessionModel = (HttpSessionHashModel) session.getAttribute(ATTR_SESSION_MODEL);
-                if (sessionModel == null || sessionModel.isOrphaned(session)) {
-                    sessionModel = new HttpSessionHashModel(session, objectWrapper);
-                    initializeSessionAndInstallModel(request, response, 
-                            sessionModel, session);
-                }
-            } else {
-                sessionModel = new HttpSessionHashModel(this, request, response, objectWrapper);
+            // The scope models are only created when they are first accessed, as most templates only use a few of
+            // them (if any).
+            LazyScopeModels scopeModels = new LazyScopeModels(
+                    objectWrapper, request, response, servletContextModel, taglibFactory);
+            if (!lazySession) {
+                // Unless it was enabled, we must not defer this, as initializeSession may rely on that the response
+                // wasn't committed yet.
+                scopeModels.getSessionModel();
             }
-            params.putUnlistedModel(KEY_SESSION, sessionModel);
-    
-            // Create hash model wrapper for request
-            HttpRequestHashModel requestModel =
-                (HttpRequestHashModel) request.getAttribute(ATTR_REQUEST_MODEL);
-            if (requestModel == null || requestModel.getRequest() != request) {
-                requestModel = new HttpRequestHashModel(request, response, objectWrapper);
-                request.setAttribute(ATTR_REQUEST_MODEL, requestModel);
-                request.setAttribute(
-                    ATTR_REQUEST_PARAMETERS_MODEL,
-                    createRequestParametersHashModel(request));
-            }
-            params.putUnlistedModel(KEY_REQUEST, requestModel);
-            params.putUnlistedModel(KEY_INCLUDE, new IncludePage(request, response));
-            params.putUnlistedModel(KEY_REQUEST_PRIVATE, requestModel);
-    
-            // Create hash model wrapper for request parameters
-            HttpRequestParametersHashModel requestParametersModel =
-                (HttpRequestParametersHashModel) request.getAttribute(
-                    ATTR_REQUEST_PARAMETERS_MODEL);
-            params.putUnlistedModel(KEY_REQUEST_PARAMETERS, requestParametersModel);
+            params.setUnlistedModelSource(scopeModels);
             return params;
         } catch (ServletException | IOException e) {
             throw new TemplateModelException(e);
         }
     }
 
+    /**
+     * Creates the scope models of
+     * {@link #createModel(ObjectWrapper, ServletContext, HttpServletRequest, HttpServletResponse)} on demand. Used for
+     * a single request, so it's not thread safe.
+     */
+    private final class LazyScopeModels implements AllHttpScopesHashModel.UnlistedModelSource {
+
+        private final ObjectWrapper objectWrapper;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final ServletContextHashModel servletContextModel;
+        private final TaglibFactory taglibFactory;
+
+        private HttpSessionHashModel sessionModel;
+        private HttpRequestHashModel requestModel;
+        private HttpRequestParametersHashModel requestParametersModel;
+        private IncludePage includePage;
+
+        LazyScopeModels(ObjectWrapper objectWrapper, HttpServletRequest request, HttpServletResponse response,
+                ServletContextHashModel servletContextModel, TaglibFactory taglibFactory) {
+            this.objectWrapper = objectWrapper;
+            this.request = request;
+            this.response = response;
+            this.servletContextModel = servletContextModel;
+            this.taglibFactory = taglibFactory;
+        }
+
+        @Override
+        public TemplateModel getUnlistedModel(String key) throws TemplateModelException {
+            switch (key) {
+            case KEY_APPLICATION:
+            case KEY_APPLICATION_PRIVATE:
+                return servletContextModel;
+            case KEY_JSP_TAGLIBS:
+                return taglibFactory;
+            case KEY_SESSION:
+                return getSessionModel();
+            case KEY_REQUEST:
+            case KEY_REQUEST_PRIVATE:
+                return getRequestModel();
+            case KEY_REQUEST_PARAMETERS:
+                return getRequestParametersModel();
+            case KEY_INCLUDE:
+                if (includePage == null) {
+                    includePage = new IncludePage(request, response);
+                }
+                return includePage;
+            default:
+                return null;
+            }
+        }
+
+        private HttpSessionHashModel getSessionModel() throws TemplateModelException {
+            if (sessionModel == null) {
+                HttpSessionHashModel sessionModel;
+                HttpSession session = request.getSession(false);
+                if (session != null) {
+                    sessionModel = (HttpSessionHashModel) session.getAttribute(ATTR_SESSION_MODEL);
+                    if (sessionModel == null || sessionModel.isOrphaned(session)) {
+                        sessionModel = new HttpSessionHashModel(session, objectWrapper);
+                        try {
+                            initializeSessionAndInstallModel(request, response, sessionModel, session);
+                        } catch (ServletException | IOException e) {
+                            throw new TemplateModelException(e);
+                        }
+                    }
+                } else {
+                    sessionModel = new HttpSessionHashModel(
+                            FreemarkerServlet.this, request, response, objectWrapper);
+                }
+                this.sessionModel = sessionModel;
+            }
+            return sessionModel;
+        }
+
+        private HttpRequestHashModel getRequestModel() {
+            if (requestModel == null) {
+                HttpRequestHashModel requestModel = (HttpRequestHashModel) request.getAttribute(ATTR_REQUEST_MODEL);
+                if (requestModel == null || requestModel.getRequest() != request) {
+                    requestModel = new HttpRequestHashModel(request, response, objectWrapper);
+                    request.setAttribute(ATTR_REQUEST_MODEL, requestModel);
+                    // The parameters model belongs to the same request, so it has to be replaced too; it will be
+                    // created by getRequestParametersModel() if it's needed.
+                    request.removeAttribute(ATTR_REQUEST_PARAMETERS_MODEL);
+                }
+                this.requestModel = requestModel;
+            }
+            return requestModel;
+        }
+
+        private HttpRequestParametersHashModel getRequestParametersModel() {
+            if (requestParametersModel == null) {
+                // Ensures that a parameters model left there for an earlier request object isn't used:
+                getRequestModel();
+
+                HttpRequestParametersHashModel requestParametersModel =
+                        (HttpRequestParametersHashModel) request.getAttribute(ATTR_REQUEST_PARAMETERS_MODEL);
+                if (requestParametersModel == null) {
+                    requestParametersModel = createRequestParametersHashModel(request);
+                    request.setAttribute(ATTR_REQUEST_PARAMETERS_MODEL, requestParametersModel);
+                }
+                this.requestParametersModel = requestParametersModel;
+            }
+            return requestParametersModel;
+        }
+
+    }
+
     /**
      * Called to create the {@link TaglibFactory} once per servlet context.
      * The default implementation configures it based on the servlet-init parameters and various other environmental
@@ -1159,6 +1460,26 @@ public class FreemarkerServlet extends HttpServlet {
             
             taglibFactory.setClasspathTlds(mergedClassPathTlds);
         }
+
+        if (tldScanningThreadCount != null) {
+            taglibFactory.setTldScanningThreadCount(tldScanningThreadCount.intValue());
+        }
+
+        if (tldLocationIndexFile != null && tldLocationIndexFile.length() != 0) {
+            File indexFile = new File(tldLocationIndexFile);
+            if (!indexFile.isAbsolute()) {
+                Object tempDir = servletContext.getAttribute(ServletContext.TEMPDIR);
+                if (tempDir instanceof File) {
+                    indexFile = new File((File) tempDir, tldLocationIndexFile);
+                } else {
+                    LOG.warn("Ignored relative \"" + INIT_PARAM_TLD_LOCATION_INDEX_FILE + "\" init-param value, as the "
+                            + "\"" + ServletContext.TEMPDIR + "\" servlet context attribute isn't set: "
+                            + StringUtil.jQuote(tldLocationIndexFile));
+                    indexFile = null;
+                }
+            }
+            taglibFactory.setTldLocationIndexFile(indexFile);
+        }
         
         return taglibFactory;        
     }
@@ -1408,6 +1729,9 @@ public class FreemarkerServlet extends HttpServlet {
      * action on first request in the session. By default it does nothing. It
      * is only invoked on newly created sessions; it's not invoked when a
      * replicated session is reinstantiated in another servlet container.
+     * If the {@value #INIT_PARAM_LAZY_SESSION} init-param is {@code true}, the session is only checked when the
+     * template first accesses the {@value #KEY_SESSION} variable (or when the session is created by that), so this is
+     * not invoked for requests that don't use the session, and may be invoked after the response was committed.
      * 
      * @param request the actual HTTP request
      * @param response the actual HTTP response
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package freemarker.ext.jsp;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TldLocationIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "subdir/tld-index.bin");
+
+        TldLocationIndex index = TldLocationIndex.load(file);
+        assertNull(index.get("a.jar", 10, 100));
+        Map<String, String> taglibUris = new LinkedHashMap<>();
+        taglibUris.put("/META-INF/z.tld", "http://example.com/z");
+        taglibUris.put("/META-INF/a.tld", "http://example.com/a");
+        index.put("a.jar", 10, 100, taglibUris);
+        index.put("b.jar", 20, 200, new LinkedHashMap<String, String>());
+        index.saveIfModified(file);
+        assertTrue(file.isFile());
+
+        index = TldLocationIndex.load(file);
+        Map<String, String> loadedTaglibUris = index.get("a.jar", 10, 100);
+        assertEquals(taglibUris, loadedTaglibUris);
+        // The order of the TLD-s matters, as the first wins if they define the same taglib URI:
+        assertEquals("/META-INF/z.tld", loadedTaglibUris.keySet().iterator().next());
+        assertEquals(0, index.get("b.jar", 20, 200).size());
+
+        // Changed jars:
+        assertNull(index.get("a.jar", 11, 100));
+        assertNull(index.get("a.jar", 10, 101));
+    }
+
+    @Test
+    public void testUnusedEntriesDropped() throws IOException {
+        File file = temporaryFolder.newFile("tld-index.bin");
+        file.delete();
+
+        TldLocationIndex index = TldLocationIndex.load(file);
+        index.put("a.jar", 10, 100, new LinkedHashMap<String, String>());
+        index.put("b.jar", 20, 200, new LinkedHashMap<String, String>());
+        index.saveIfModified(file);
+
+        index = TldLocationIndex.load(file);
+        assertNotNull(index.get("a.jar", 10, 100));
+        index.saveIfModified(file);
+
+        index = TldLocationIndex.load(file);
+        assertNotNull(index.get("a.jar", 10, 100));
+        assertNull(index.get("b.jar", 20, 200));
+    }
+
+    @Test
+    public void testCorruptFileIgnored() throws IOException {
+        File file = temporaryFolder.newFile("tld-index.bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] { 1, 2, 3 });
+        }
+        TldLocationIndex index = TldLocationIndex.load(file);
+        assertNull(index.get("a.jar", 10, 100));
+
+        index.put("a.jar", 10, 100, new LinkedHashMap<String, String>());
+        index.saveIfModified(file);
+        assertNotNull(TldLocationIndex.load(file).get("a.jar", 10, 100));
+    }
+
+}
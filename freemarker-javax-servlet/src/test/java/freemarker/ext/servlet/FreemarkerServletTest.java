@@ -22,19 +22,30 @@ import static freemarker.ext.servlet.FreemarkerServlet.*;
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
 import org.springframework.mock.web.MockServletConfig;
 import org.springframework.mock.web.MockServletContext;
 
@@ -46,8 +57,12 @@ import freemarker.cache.TemplateLoader;
 import freemarker.core.Environment;
 import freemarker.core.TemplateConfiguration;
 import freemarker.template.Configuration;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleScalar;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
 
 public class FreemarkerServletTest {
 
@@ -55,6 +70,9 @@ public class FreemarkerServletTest {
     private static final String CONTENT_TYPE_ATTR_FTL = "contentTypeAttr.ftl";
     private static final String CONTENT_TYPE_ATTR_WITH_CHARSET_FTL = "contentTypeAttrWithCharset.ftl";
     private static final String FOO_FTL = "foo.ftl";
+    private static final String LONG_OUTPUT_FTL = "longOutput.ftl";
+    private static final String SESSION_FTL = "session.ftl";
+    private static final String SCOPES_FTL = "scopes.ftl";
     private static final String FOO_SRC_UTF8_FTL = "foo-src-utf8.ftl";
     private static final String FOO_OUT_UTF8_FTL = "foo-out-utf8.ftl";
     private static final String STD_OUTPUT_FORMAT_HTML_FTL = "stdOutputFormatHTML.ftl";
@@ -396,6 +414,262 @@ public class FreemarkerServletTest {
                 CONTENT_TYPE_ATTR_WITH_CHARSET_FTL);
     }
 
+    @Test
+    public void testAsyncRendering() throws Exception {
+        MockServletConfig servletConfig = new MockServletConfig(servletContext);
+        servletConfig.addInitParameter(INIT_PARAM_ASYNC_RENDERING, "true");
+        servletConfig.addInitParameter(Configuration.DEFAULT_ENCODING_KEY, "UTF-8");
+
+        TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet();
+        try {
+            freemarkerServlet.init(servletConfig);
+
+            String expectedOutput = getLongOutputFtlExpectedOutput();
+
+            {
+                MockHttpServletRequest request = createMockHttpServletRequest(servletContext, LONG_OUTPUT_FTL, null);
+                request.setAsyncSupported(true);
+                NonBlockingMockHttpServletResponse response = new NonBlockingMockHttpServletResponse();
+
+                freemarkerServlet.doGet(request, response);
+
+                assertFalse(request.isAsyncStarted()); // Was completed
+                assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+                assertEquals("UTF-8", response.getCharacterEncoding());
+                assertEquals(expectedOutput, new String(response.out.toByteArray(), "UTF-8"));
+            }
+
+            // The output stream is not ready after each write, like with a slow client:
+            {
+                MockHttpServletRequest request = createMockHttpServletRequest(servletContext, LONG_OUTPUT_FTL, null);
+                request.setAsyncSupported(true);
+                NonBlockingMockHttpServletResponse response = new NonBlockingMockHttpServletResponse(true);
+
+                freemarkerServlet.doGet(request, response);
+                assertTrue(request.isAsyncStarted()); // Waits for the output stream to be ready again
+
+                int resumeCount = 0;
+                while (response.resumeWriting()) {
+                    resumeCount++;
+                }
+                assertThat(resumeCount, greaterThan(1));
+                assertFalse(request.isAsyncStarted()); // Was completed
+                assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+                assertEquals(expectedOutput, new String(response.out.toByteArray(), "UTF-8"));
+            }
+
+            // Falls back to synchronous rendering:
+            {
+                MockHttpServletRequest request = createMockHttpServletRequest(servletContext, LONG_OUTPUT_FTL, null);
+                MockHttpServletResponse response = new MockHttpServletResponse();
+
+                freemarkerServlet.doGet(request, response);
+
+                assertFalse(request.isAsyncStarted());
+                assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+                assertEquals(expectedOutput, response.getContentAsString());
+            }
+        } finally {
+            freemarkerServlet.destroy();
+        }
+    }
+
+    @Test
+    public void testAsyncRenderingTimeoutWhileWriting() throws Exception {
+        MockServletConfig servletConfig = new MockServletConfig(servletContext);
+        servletConfig.addInitParameter(INIT_PARAM_ASYNC_RENDERING, "true");
+        servletConfig.addInitParameter(INIT_PARAM_ASYNC_RENDERING_TIMEOUT, "60000");
+        servletConfig.addInitParameter(Configuration.DEFAULT_ENCODING_KEY, "UTF-8");
+
+        TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet();
+        try {
+            freemarkerServlet.init(servletConfig);
+
+            MockHttpServletRequest request = createMockHttpServletRequest(servletContext, LONG_OUTPUT_FTL, null);
+            request.setAsyncSupported(true);
+            NonBlockingMockHttpServletResponse response = new NonBlockingMockHttpServletResponse(true);
+
+            freemarkerServlet.doGet(request, response);
+            MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+            assertEquals(60000, asyncContext.getTimeout());
+            CompletionCountingAsyncListener completionCounter = new CompletionCountingAsyncListener();
+            asyncContext.addListener(completionCounter);
+
+            assertTrue(response.resumeWriting());
+            fireTimeout(asyncContext);
+            assertFalse(request.isAsyncStarted());
+            assertEquals(1, completionCounter.completionCount);
+
+            // Only the write that was already in progress is finished:
+            int writtenLength = response.out.size();
+            assertTrue(response.resumeWriting());
+            assertFalse(response.resumeWriting());
+            assertThat(response.out.size(), greaterThan(writtenLength));
+            assertThat(
+                    new String(response.out.toByteArray(), "UTF-8").length(),
+                    lessThan(getLongOutputFtlExpectedOutput().length()));
+            assertEquals(1, completionCounter.completionCount);
+        } finally {
+            freemarkerServlet.destroy();
+        }
+    }
+
+    @Test
+    public void testAsyncRenderingTimeoutWhileRendering() throws Exception {
+        MockServletConfig servletConfig = new MockServletConfig(servletContext);
+        servletConfig.addInitParameter(INIT_PARAM_ASYNC_RENDERING, "true");
+
+        final List<Runnable> renderingTasks = new ArrayList<>();
+        TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet() {
+            @Override
+            protected Executor createAsyncRenderingExecutor() {
+                return renderingTasks::add;
+            }
+        };
+        try {
+            freemarkerServlet.init(servletConfig);
+
+            MockHttpServletRequest request = createMockHttpServletRequest(servletContext, LONG_OUTPUT_FTL, null);
+            request.setAsyncSupported(true);
+            NonBlockingMockHttpServletResponse response = new NonBlockingMockHttpServletResponse();
+
+            freemarkerServlet.doGet(request, response);
+            MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+            // The default timeout of the container isn't used:
+            assertEquals(0, asyncContext.getTimeout());
+            CompletionCountingAsyncListener completionCounter = new CompletionCountingAsyncListener();
+            asyncContext.addListener(completionCounter);
+
+            fireTimeout(asyncContext);
+            assertFalse(request.isAsyncStarted());
+            assertEquals(1, completionCounter.completionCount);
+
+            assertEquals(1, renderingTasks.size());
+            renderingTasks.get(0).run();
+            assertEquals(0, response.out.size());
+            assertEquals(1, completionCounter.completionCount);
+        } finally {
+            freemarkerServlet.destroy();
+        }
+    }
+
+    private static void fireTimeout(MockAsyncContext asyncContext) throws IOException {
+        for (AsyncListener listener : new ArrayList<>(asyncContext.getListeners())) {
+            listener.onTimeout(new AsyncEvent(asyncContext));
+        }
+    }
+
+    private static String getLongOutputFtlExpectedOutput() {
+        StringBuilder expectedOutput = new StringBuilder();
+        for (int i = 1; i <= 10000; i++) {
+            expectedOutput.append(i).append("\u00E1 ");
+        }
+        return expectedOutput.toString();
+    }
+
+    @Test
+    public void testSessionCheckedEagerlyByDefault() throws Exception {
+        TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet();
+        try {
+            freemarkerServlet.init(new MockServletConfig(servletContext));
+
+            SessionAccessCountingMockHttpServletRequest request = createSessionAccessCountingRequest(FOO_FTL);
+            request.setSession(new MockHttpSession(servletContext));
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            freemarkerServlet.doGet(request, response);
+
+            assertEquals("foo", response.getContentAsString());
+            assertThat(request.sessionAccessCount, greaterThan(0));
+            assertEquals(1, freemarkerServlet.initializeSessionCallCount);
+        } finally {
+            freemarkerServlet.destroy();
+        }
+    }
+
+    @Test
+    public void testLazySession() throws Exception {
+        MockServletConfig servletConfig = new MockServletConfig(servletContext);
+        servletConfig.addInitParameter(INIT_PARAM_LAZY_SESSION, "true");
+
+        TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet();
+        try {
+            freemarkerServlet.init(servletConfig);
+
+            {
+                SessionAccessCountingMockHttpServletRequest request = createSessionAccessCountingRequest(FOO_FTL);
+                request.setSession(new MockHttpSession(servletContext));
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                freemarkerServlet.doGet(request, response);
+
+                assertEquals("foo", response.getContentAsString());
+                assertEquals(0, request.sessionAccessCount);
+                assertEquals(0, freemarkerServlet.initializeSessionCallCount);
+            }
+
+            {
+                SessionAccessCountingMockHttpServletRequest request = createSessionAccessCountingRequest(SESSION_FTL);
+                MockHttpSession session = new MockHttpSession(servletContext);
+                session.setAttribute("x", "1");
+                request.setSession(session);
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                freemarkerServlet.doGet(request, response);
+
+                assertEquals("1", response.getContentAsString());
+                assertThat(request.sessionAccessCount, greaterThan(0));
+                assertEquals(1, freemarkerServlet.initializeSessionCallCount);
+            }
+
+            // No session exists, and it's not created just because the template has read a session attribute:
+            {
+                SessionAccessCountingMockHttpServletRequest request = createSessionAccessCountingRequest(SESSION_FTL);
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                freemarkerServlet.doGet(request, response);
+
+                assertEquals("-", response.getContentAsString());
+                assertNull(request.getSession(false));
+                assertEquals(1, freemarkerServlet.initializeSessionCallCount);
+            }
+        } finally {
+            freemarkerServlet.destroy();
+        }
+    }
+
+    @Test
+    public void testPutUnlistedModelOverridesScopeModels() throws Exception {
+        for (boolean lazySession : new boolean[] { false, true }) {
+            MockServletConfig servletConfig = new MockServletConfig(servletContext);
+            servletConfig.addInitParameter(INIT_PARAM_LAZY_SESSION, String.valueOf(lazySession));
+
+            TestFreemarkerServlet freemarkerServlet = new TestFreemarkerServlet() {
+                @Override
+                protected TemplateModel createModel(ObjectWrapper objectWrapper, ServletContext servletContext,
+                        HttpServletRequest request, HttpServletResponse response) throws TemplateModelException {
+                    AllHttpScopesHashModel model = (AllHttpScopesHashModel) super.createModel(
+                            objectWrapper, servletContext, request, response);
+                    model.putUnlistedModel(KEY_SESSION, new SimpleScalar("overriddenSession"));
+                    model.putUnlistedModel(KEY_REQUEST, new SimpleScalar("overriddenRequest"));
+                    return model;
+                }
+            };
+            try {
+                freemarkerServlet.init(servletConfig);
+
+                SessionAccessCountingMockHttpServletRequest request = createSessionAccessCountingRequest(SCOPES_FTL);
+                request.setSession(new MockHttpSession(servletContext));
+                request.addParameter("p", "1");
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                freemarkerServlet.doGet(request, response);
+
+                assertEquals("overriddenSession overriddenRequest 1", response.getContentAsString());
+                if (lazySession) {
+                    assertEquals(0, request.sessionAccessCount);
+                }
+            } finally {
+                freemarkerServlet.destroy();
+            }
+        }
+    }
+
     private void assertResponseContentTypeEquals(
             String exptectContentType,
             String ctInitParam, String overrideCTInitParam,
@@ -516,14 +790,23 @@ public class FreemarkerServletTest {
                 return requestLocale;
             }
         };
+        initMockHttpServletRequest(servletRequest, pathInfo);
+        return servletRequest;
+    }
+
+    private SessionAccessCountingMockHttpServletRequest createSessionAccessCountingRequest(String pathInfo) {
+        SessionAccessCountingMockHttpServletRequest servletRequest
+                = new SessionAccessCountingMockHttpServletRequest(servletContext);
+        initMockHttpServletRequest(servletRequest, pathInfo);
+        return servletRequest;
+    }
 
+    private static void initMockHttpServletRequest(MockHttpServletRequest servletRequest, String pathInfo) {
         servletRequest.setServerName("localhost");
         servletRequest.setServerPort(8080);
         servletRequest.setContextPath("");
         servletRequest.setRequestURI(pathInfo);
         servletRequest.setPathInfo(pathInfo);
-
-        return servletRequest;
     }
 
     static class TestFreemarkerServlet extends FreemarkerServlet {
@@ -531,6 +814,7 @@ public class FreemarkerServletTest {
         private Template lastMainTemplate;
         private Locale lastLocale;
         private String lastOutputEncoding;
+        private int initializeSessionCallCount;
 
         @Override
         protected Configuration createConfiguration() {
@@ -570,6 +854,9 @@ public class FreemarkerServletTest {
                 StringTemplateLoader tl = new StringTemplateLoader();
                 
                 tl.putTemplate(FOO_FTL, "foo");
+                tl.putTemplate(LONG_OUTPUT_FTL, "<#list 1..10000 as i>${i?c}\u00E1 </#list>");
+                tl.putTemplate(SESSION_FTL, "${Session.x!'-'}");
+                tl.putTemplate(SCOPES_FTL, "${Session} ${Request} ${RequestParameters.p!'-'}");
                 tl.putTemplate(FOO_SRC_UTF8_FTL, "foo");
                 tl.putTemplate(FOO_OUT_UTF8_FTL, "foo");
                 tl.putTemplate(CONTENT_TYPE_ATTR_FTL, "<#ftl attributes={ 'content_type': 'text/plain' }>foo");
@@ -600,6 +887,144 @@ public class FreemarkerServletTest {
             super.processEnvironment(env, request, response);
         }
 
+        @Override
+        protected void initializeSession(HttpServletRequest request, HttpServletResponse response)
+                throws ServletException, IOException {
+            initializeSessionCallCount++;
+        }
+
+    }
+
+    private static class CompletionCountingAsyncListener implements AsyncListener {
+
+        private int completionCount;
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            completionCount++;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // Nothing to do
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Nothing to do
+        }
+
+    }
+
+    /**
+     * Counts the {@link #getSession(boolean)} calls done before the test inspects the request.
+     */
+    private static class SessionAccessCountingMockHttpServletRequest extends MockHttpServletRequest {
+
+        private int sessionAccessCount;
+
+        SessionAccessCountingMockHttpServletRequest(ServletContext servletContext) {
+            super(servletContext);
+        }
+
+        @Override
+        public HttpSession getSession(boolean create) {
+            sessionAccessCount++;
+            return super.getSession(create);
+        }
+
+    }
+
+    /**
+     * {@link MockHttpServletResponse#getOutputStream()} doesn't support non-blocking I/O, hence this class.
+     */
+    private static class NonBlockingMockHttpServletResponse extends MockHttpServletResponse {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        /**
+         * If {@code true}, the output stream isn't ready after each write, until {@link #resumeWriting()} is called.
+         * Until then the written bytes are only referred, not copied, like a container might do it.
+         */
+        private final boolean slowClient;
+        private WriteListener writeListener;
+        private byte[] pendingBytes;
+        private int pendingOff;
+        private int pendingLen;
+
+        NonBlockingMockHttpServletResponse() {
+            this(false);
+        }
+
+        NonBlockingMockHttpServletResponse(boolean slowClient) {
+            this.slowClient = slowClient;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return new ServletOutputStream() {
+
+                @Override
+                public boolean isReady() {
+                    return pendingBytes == null;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                    NonBlockingMockHttpServletResponse.this.writeListener = writeListener;
+                    notifyWriteListener();
+                }
+
+                @Override
+                public void write(int b) {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    if (pendingBytes != null) {
+                        throw new IllegalStateException("Not ready");
+                    }
+                    if (slowClient) {
+                        pendingBytes = b;
+                        pendingOff = off;
+                        pendingLen = len;
+                    } else {
+                        out.write(b, off, len);
+                    }
+                }
+
+            };
+        }
+
+        /**
+         * Finishes the pending write, and then calls {@link WriteListener#onWritePossible()}, like the container would
+         * do after {@link ServletOutputStream#isReady()} has returned {@code false}.
+         * 
+         * @return Whether there was a pending write.
+         */
+        boolean resumeWriting() {
+            if (pendingBytes == null) {
+                return false;
+            }
+            out.write(pendingBytes, pendingOff, pendingLen);
+            pendingBytes = null;
+            notifyWriteListener();
+            return true;
+        }
+
+        private void notifyWriteListener() {
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException e) {
+                writeListener.onError(e);
+            }
+        }
+
     }
 
-}
\ No newline at end of file
+}